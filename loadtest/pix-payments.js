@@ -0,0 +1,66 @@
+// Teste de carga (k6) dos endpoints de geração e publicação pacs.008.
+//
+// Compare os modelos de execução iniciando a aplicação no perfil "local"
+// com e sem threads virtuais e executando o mesmo cenário:
+//
+//   java -jar app.jar --spring.profiles.active=local --spring.threads.virtual.enabled=false
+//   k6 run -e BASE_URL=http://localhost:8080 loadtest/pix-payments.js
+//
+//   java -jar app.jar --spring.profiles.active=local --spring.threads.virtual.enabled=true
+//   k6 run -e BASE_URL=http://localhost:8080 loadtest/pix-payments.js
+//
+// Métricas a comparar: http_reqs (vazão), http_req_duration p(95)/p(99) e http_req_failed.
+import http from 'k6/http';
+import { check } from 'k6';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080';
+
+export const options = {
+    scenarios: {
+        payments: {
+            executor: 'ramping-vus',
+            startVUs: 10,
+            stages: [
+                { duration: '30s', target: 200 },
+                { duration: '1m', target: 1000 },
+                { duration: '30s', target: 0 },
+            ],
+        },
+    },
+    thresholds: {
+        http_req_failed: ['rate<0.01'],
+    },
+};
+
+const payment = JSON.stringify({
+    payerName: 'Fulano de Tal',
+    payerCpfCnpj: '11122233344',
+    payerIspb: '12345678',
+    payerAgency: '0001',
+    payerAccount: '123456',
+    payerAccountType: 'CACC',
+    receiverName: 'Ciclano Comercio LTDA',
+    receiverCpfCnpj: '11222333000144',
+    receiverIspb: '87654321',
+    receiverAgency: '0001',
+    receiverAccount: '654321',
+    receiverAccountType: 'CACC',
+    receiverPixKey: 'f4d8-e2c8-4a6c-b9b2',
+    amount: 99.5,
+    description: 'Pagamento do pedido 54321',
+});
+
+export default function () {
+    const created = http.post(`${BASE_URL}/api/pix/payments`, payment, {
+        headers: { 'Content-Type': 'application/json', 'Accept': 'application/xml' },
+    });
+    check(created, { 'mensagem gerada': (r) => r.status === 201 });
+    if (created.status !== 201) {
+        return;
+    }
+
+    const published = http.post(`${BASE_URL}/api/pix/publish`, JSON.stringify({ xmlContent: created.body }), {
+        headers: { 'Content-Type': 'application/json' },
+    });
+    check(published, { 'mensagem publicada': (r) => r.status === 200 });
+}
@@ -0,0 +1,129 @@
+package com.example.pacs008;
+
+import com.example.pacs008.dto.PaymentRequestDto;
+import com.example.pacs008.service.metrics.PaymentMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.jms.Connection;
+import jakarta.jms.ConnectionFactory;
+import jakarta.jms.Session;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Infraestrutura comum dos benchmarks JMH: um contexto Spring mínimo (sem Spring Boot) com
+ * apenas os componentes medidos, o perfil {@code local} (broker Artemis em memória no lugar
+ * do IBM MQ) e um keystore de teste gerado com o {@code keytool} do JDK.
+ */
+public final class BenchmarkSupport {
+
+    public static final String QUEUE = "QL.REQ.BENCH.SPI";
+
+    private static final String STORE_PASSWORD = "changeit";
+    private static final String KEY_ALIAS = "benchmark";
+
+    private static Path keyStore;
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Inicia um contexto com os componentes informados, um {@link SimpleMeterRegistry},
+     * as métricas de etapa ({@link PaymentMetrics}) e as propriedades dos benchmarks.
+     */
+    public static AnnotationConfigApplicationContext startContext(Class<?>... componentClasses) throws Exception {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().setActiveProfiles("local");
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties()));
+        context.registerBean(SimpleMeterRegistry.class);
+        context.registerBean(PaymentMetrics.class);
+        context.register(componentClasses);
+        context.refresh();
+        return context;
+    }
+
+    /**
+     * Consome e descarta as mensagens publicadas, para que o broker em memória não acumule
+     * a fila durante a medição.
+     */
+    public static Connection startDrainingConsumer(ConnectionFactory connectionFactory, String queueName) throws Exception {
+        Connection connection = connectionFactory.createConnection();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        session.createConsumer(session.createQueue(queueName)).setMessageListener(message -> {
+        });
+        connection.start();
+        return connection;
+    }
+
+    public static PaymentRequestDto samplePayment() {
+        PaymentRequestDto request = new PaymentRequestDto();
+        request.setPayerName("Fulano de Tal");
+        request.setPayerCpfCnpj("12345678901");
+        request.setPayerIspb("12345678");
+        request.setPayerAgency("0001");
+        request.setPayerAccount("1234567");
+        request.setPayerAccountType("CACC");
+        request.setReceiverName("Beltrano de Tal");
+        request.setReceiverCpfCnpj("10987654321");
+        request.setReceiverIspb("87654321");
+        request.setReceiverAgency("0002");
+        request.setReceiverAccount("7654321");
+        request.setReceiverAccountType("CACC");
+        request.setReceiverPixKey("beltrano@example.com");
+        request.setAmount(new BigDecimal("150.75"));
+        request.setDescription("Benchmark");
+        return request;
+    }
+
+    private static Map<String, Object> properties() throws Exception {
+        String store = testKeyStore().toString();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("ibm.mq.ssl.key-store", store);
+        properties.put("ibm.mq.ssl.key-store-password", STORE_PASSWORD);
+        properties.put("ibm.mq.ssl.key-alias", KEY_ALIAS);
+        properties.put("ibm.mq.ssl.key-password", STORE_PASSWORD);
+        properties.put("ibm.mq.ssl.trust-store", store);
+        properties.put("ibm.mq.ssl.trust-store-password", STORE_PASSWORD);
+        properties.put("ibm.mq.ssl.cipher-suite", "TLS_RSA_WITH_AES_256_GCM_SHA384");
+        properties.put("ibm.mq.host-name", "localhost");
+        properties.put("ibm.mq.port", "1414");
+        properties.put("ibm.mq.queue-manager", "QM_BENCH");
+        properties.put("ibm.mq.channel", "CANAL.BENCH");
+        properties.put("ibm.mq.user", "");
+        properties.put("ibm.mq.password", "");
+        properties.put("ibm.mq.outbound-queue", QUEUE);
+        properties.put("ibm.mq.inbound-queue", "QL.RSP.BENCH.SPI");
+        properties.put("pix.id.node-id", "1");
+        properties.put("pix.signature.key-reload-interval-ms", "0");
+        properties.put("pix.inbound.enabled", "false");
+        return properties;
+    }
+
+    /**
+     * Gera (uma vez por JVM) um keystore JKS com um par RSA 2048 e certificado autoassinado.
+     */
+    private static synchronized Path testKeyStore() throws IOException, InterruptedException {
+        if (keyStore == null) {
+            Path file = Files.createTempDirectory("pixspi-benchmark").resolve("benchmark.jks");
+            Path keytool = Path.of(System.getProperty("java.home"), "bin", "keytool");
+            Process process = new ProcessBuilder(keytool.toString(), "-genkeypair",
+                    "-alias", KEY_ALIAS, "-keyalg", "RSA", "-keysize", "2048", "-sigalg", "SHA256withRSA",
+                    "-dname", "CN=pixspi-benchmark", "-validity", "2", "-storetype", "JKS",
+                    "-keystore", file.toString(), "-storepass", STORE_PASSWORD, "-keypass", STORE_PASSWORD)
+                    .inheritIO()
+                    .start();
+            if (process.waitFor() != 0) {
+                throw new IllegalStateException("Falha ao gerar o keystore de teste com o keytool.");
+            }
+            file.toFile().deleteOnExit();
+            keyStore = file;
+        }
+        return keyStore;
+    }
+}
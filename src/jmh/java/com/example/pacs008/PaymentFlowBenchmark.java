@@ -0,0 +1,78 @@
+package com.example.pacs008;
+
+import com.example.pacs008.config.JmsConfig;
+import com.example.pacs008.config.LocalBrokerConfig;
+import com.example.pacs008.dto.PaymentRequestDto;
+import com.example.pacs008.service.Pacs008Service;
+import com.example.pacs008.service.SignatureService;
+import com.example.pacs008.service.SignedPacs008Message;
+import com.example.pacs008.service.id.PixIdGenerator;
+import com.example.pacs008.service.inbound.PaymentCorrelationIndex;
+import com.example.pacs008.service.signing.JksSignerBackend;
+import com.example.pacs008.service.mq.MqBatchPublisher;
+import com.example.pacs008.service.mq.MqClientService;
+import com.example.pacs008.service.validation.PaymentRequestValidator;
+import com.example.pacs008.service.validation.SchemaAuditor;
+import com.example.pacs008.service.xml.JaxbMarshallerPool;
+import jakarta.jms.Connection;
+import jakarta.jms.ConnectionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vazão de ponta a ponta: construção, marshalling, assinatura e publicação confirmada no
+ * broker em memória, com tantas threads quanto processadores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(Threads.MAX)
+public class PaymentFlowBenchmark {
+
+    private AnnotationConfigApplicationContext context;
+    private Connection drainingConsumer;
+    private Pacs008Service pacs008Service;
+    private MqClientService mqClientService;
+    private PaymentRequestDto request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = BenchmarkSupport.startContext(LocalBrokerConfig.class, JmsConfig.class,
+                JksSignerBackend.class, SignatureService.class, JaxbMarshallerPool.class, PixIdGenerator.class, PaymentCorrelationIndex.class,
+                PaymentRequestValidator.class, SchemaAuditor.class, Pacs008Service.class,
+                MqBatchPublisher.class, MqClientService.class);
+        pacs008Service = context.getBean(Pacs008Service.class);
+        mqClientService = context.getBean(MqClientService.class);
+        drainingConsumer = BenchmarkSupport.startDrainingConsumer(context.getBean("mqConnectionFactory", ConnectionFactory.class), BenchmarkSupport.QUEUE);
+        request = BenchmarkSupport.samplePayment();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        drainingConsumer.close();
+        context.close();
+    }
+
+    @Benchmark
+    public String createSignAndPublish() throws Exception {
+        SignedPacs008Message message = pacs008Service.createSignedPacs008Message(request);
+        return mqClientService.publish(message.xml(), BenchmarkSupport.QUEUE);
+    }
+}
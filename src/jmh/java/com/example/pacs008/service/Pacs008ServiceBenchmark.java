@@ -0,0 +1,148 @@
+package com.example.pacs008.service;
+
+import br.gov.bcb.pi.pacs008.v1.CreditTransferTransaction43;
+import br.gov.bcb.pi.pacs008.v1.ObjectFactory;
+import br.gov.bcb.pi.pacs008.v1.SPIEnvelopeMessage;
+import com.example.pacs008.BenchmarkSupport;
+import com.example.pacs008.dto.PaymentRequestDto;
+import com.example.pacs008.service.id.PixIdGenerator;
+import com.example.pacs008.service.inbound.PaymentCorrelationIndex;
+import com.example.pacs008.service.signing.JksSignerBackend;
+import com.example.pacs008.service.validation.PaymentRequestValidator;
+import com.example.pacs008.service.validation.SchemaAuditor;
+import com.example.pacs008.service.xml.JaxbMarshallerPool;
+import com.example.pacs008.util.ObjectPool;
+import jakarta.xml.bind.Marshaller;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.w3c.dom.Document;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo de cada etapa da geração de uma pacs.008: validação, construção da árvore de objetos,
+ * marshalling JAXB, assinatura XMLDSig e o fluxo completo de {@link Pacs008Service}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Pacs008ServiceBenchmark {
+
+    /** Geração da mensagem em createSignedMessage (pix.pacs008.writer). */
+    @Param({"jaxb", "template"})
+    private String writer;
+
+    private AnnotationConfigApplicationContext context;
+    private Pacs008Service pacs008Service;
+    private SignatureService signatureService;
+    private JaxbMarshallerPool marshallerPool;
+    private PixIdGenerator idGenerator;
+    private PaymentRequestValidator validator;
+
+    private PaymentRequestDto request;
+    private ObjectFactory factory;
+    private SPIEnvelopeMessage envelope;
+    private Document unsignedDocument;
+    private DocumentBuilder documentBuilder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        System.setProperty("pix.pacs008.writer", writer);
+        context = BenchmarkSupport.startContext(JksSignerBackend.class, SignatureService.class, JaxbMarshallerPool.class,
+                PixIdGenerator.class, PaymentCorrelationIndex.class, PaymentRequestValidator.class, SchemaAuditor.class,
+                Pacs008Service.class);
+        pacs008Service = context.getBean(Pacs008Service.class);
+        signatureService = context.getBean(SignatureService.class);
+        marshallerPool = context.getBean(JaxbMarshallerPool.class);
+        idGenerator = context.getBean(PixIdGenerator.class);
+        validator = context.getBean(PaymentRequestValidator.class);
+
+        request = BenchmarkSupport.samplePayment();
+        factory = new ObjectFactory();
+        envelope = pacs008Service.buildEnvelope(request);
+
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        documentBuilder = dbf.newDocumentBuilder();
+        unsignedDocument = documentBuilder.newDocument();
+        try (ObjectPool.Lease<Marshaller> lease = marshallerPool.borrowMarshaller()) {
+            lease.get().marshal(envelope, unsignedDocument);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    /** Validação do DTO contra as facetas do XSD. */
+    @Benchmark
+    public PaymentRequestDto validate() {
+        validator.validate(request);
+        return request;
+    }
+
+    /** Árvore de objetos de uma transação (CdtTrfTxInf). */
+    @Benchmark
+    public CreditTransferTransaction43 buildTransactionInfo() {
+        XMLGregorianCalendar now = idGenerator.currentTimestamp();
+        return pacs008Service.createTransactionInfo(factory, request, idGenerator.newEndToEndId(request.getPayerIspb()), now);
+    }
+
+    /** Envelope completo (AppHdr + Document), com identificadores e carimbo de tempo. */
+    @Benchmark
+    public SPIEnvelopeMessage buildEnvelope() {
+        return pacs008Service.buildEnvelope(request);
+    }
+
+    /** Marshalling para um DOM, como no fluxo de assinatura. */
+    @Benchmark
+    public Document marshalToDom() throws Exception {
+        Document doc = documentBuilder.newDocument();
+        try (ObjectPool.Lease<Marshaller> lease = marshallerPool.borrowMarshaller()) {
+            lease.get().marshal(envelope, doc);
+        }
+        return doc;
+    }
+
+    /** Marshalling direto para bytes UTF-8. */
+    @Benchmark
+    public byte[] marshalToBytes() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        try (ObjectPool.Lease<Marshaller> lease = marshallerPool.borrowMarshaller()) {
+            lease.get().marshal(envelope, out);
+        }
+        return out.toByteArray();
+    }
+
+    /** Assinatura RSA-SHA256 e serialização de um DOM já construído (cópia + assinatura + bytes). */
+    @Benchmark
+    public byte[] sign() throws Exception {
+        return signatureService.signToBytes(doc -> doc.appendChild(doc.importNode(unsignedDocument.getDocumentElement(), true)));
+    }
+
+    /** Fluxo completo: validação, construção e marshalling (ou escrita pelo modelo) e assinatura. */
+    @Benchmark
+    public SignedPacs008Message createSignedMessage() throws Exception {
+        return pacs008Service.createSignedPacs008Message(request);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.pacs008.service.id;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Geração de BizMsgIdr, EndToEndId e carimbos de tempo, com uma thread e sob contenção
+ * da sequência compartilhada.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PixIdGeneratorBenchmark {
+
+    private static final String ISPB = "12345678";
+
+    private PixIdGenerator generator;
+
+    @Setup
+    public void setUp() {
+        generator = new PixIdGenerator();
+        generator.init();
+    }
+
+    @Benchmark
+    public String newMsgId() {
+        return generator.newMsgId(ISPB);
+    }
+
+    @Benchmark
+    public String newEndToEndId() {
+        return generator.newEndToEndId(ISPB);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String newEndToEndIdContended() {
+        return generator.newEndToEndId(ISPB);
+    }
+
+    @Benchmark
+    public XMLGregorianCalendar currentTimestamp() {
+        return generator.currentTimestamp();
+    }
+}
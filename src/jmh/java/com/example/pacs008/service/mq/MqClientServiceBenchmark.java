@@ -0,0 +1,102 @@
+package com.example.pacs008.service.mq;
+
+import com.example.pacs008.BenchmarkSupport;
+import com.example.pacs008.config.JmsConfig;
+import com.example.pacs008.config.LocalBrokerConfig;
+import com.example.pacs008.service.inbound.PaymentCorrelationIndex;
+import jakarta.jms.Connection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publicação pelo {@link MqClientService} (buffer, micro-lotes transacionados e cache de
+ * sessões) em um broker Artemis em memória, que substitui o IBM MQ. Com várias threads
+ * publicando ao mesmo tempo, os lotes se completam antes do linger.
+ *
+ * <p>{@code payload=bytes} publica o XML em UTF-8 como {@code BytesMessage};
+ * {@code payload=string} usa a sobrecarga com String e {@code TextMessage}. A diferença de
+ * alocação aparece em {@code gc.alloc.rate.norm}.
+ *
+ * <p>{@code brokers=2} inicia dois brokers independentes e distribui as publicações entre
+ * eles por rodízio, como com vários queue managers ({@code ibm.mq.endpoints}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MqClientServiceBenchmark {
+
+    // Tamanho típico de uma pacs.008 assinada
+    private static final String MESSAGE = "<Envelope><Document><EndToEndId>E1234567820260101000000000000000</EndToEndId>"
+            + "x".repeat(4000) + "</Document></Envelope>";
+    private static final byte[] MESSAGE_BYTES = MESSAGE.getBytes(StandardCharsets.UTF_8);
+
+    @Param({"bytes", "string"})
+    public String payload;
+
+    @Param({"1", "2"})
+    public int brokers;
+
+    private AnnotationConfigApplicationContext context;
+    private final List<Connection> drainingConsumers = new ArrayList<>();
+    private MqClientService mqClientService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        System.setProperty("pix.mq.publisher.message-type", payload.equals("bytes") ? "bytes" : "text");
+        System.setProperty("pix.local.brokers", Integer.toString(brokers));
+        context = BenchmarkSupport.startContext(LocalBrokerConfig.class, JmsConfig.class,
+                PaymentCorrelationIndex.class, MqBatchPublisher.class, MqClientService.class);
+        mqClientService = context.getBean(MqClientService.class);
+        for (MqEndpoints.Endpoint endpoint : context.getBean(MqEndpoints.class).all()) {
+            drainingConsumers.add(BenchmarkSupport.startDrainingConsumer(endpoint.connectionFactory(), BenchmarkSupport.QUEUE));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        for (Connection drainingConsumer : drainingConsumers) {
+            drainingConsumer.close();
+        }
+        drainingConsumers.clear();
+        context.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String publishSingleThread() {
+        return publish();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String publishConcurrent() {
+        return publish();
+    }
+
+    private String publish() {
+        return payload.equals("bytes")
+                ? mqClientService.publish(MESSAGE_BYTES, BenchmarkSupport.QUEUE)
+                : mqClientService.publish(MESSAGE, BenchmarkSupport.QUEUE);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.pacs008.service.reconciliation;
+
+import com.example.pacs008.BenchmarkSupport;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Vazão de gravação do {@link SentMessageIndex}: cada operação é uma mensagem enfileirada e
+ * efetivamente gravada pela thread {@code reconciliation-writer} (compressão, CRC, segmento
+ * mapeado e índices). Os segmentos pequenos fazem a medição incluir a troca de segmento, e a
+ * capacidade inicial pequena do índice hash, as ampliações dele.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SentMessageIndexBenchmark {
+
+    private static final int BATCH = 1000;
+    private static final int DISTINCT_MESSAGES = 4096;
+
+    private AnnotationConfigApplicationContext context;
+    private Path directory;
+    private SentMessageIndex index;
+    private Counter records;
+    private byte[][] messages;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("pixspi-reconciliation-benchmark");
+        System.setProperty("pix.reconciliation.enabled", "true");
+        System.setProperty("pix.reconciliation.directory", directory.toString());
+        System.setProperty("pix.reconciliation.segment-size-mb", "8");
+        System.setProperty("pix.reconciliation.index-capacity", "65536");
+        context = BenchmarkSupport.startContext(SentMessageIndex.class);
+        index = context.getBean(SentMessageIndex.class);
+        records = context.getBean(MeterRegistry.class).get("pix.reconciliation.records").counter();
+
+        // Tamanho típico de uma pacs.008 assinada; a assinatura (aleatória) não se comprime
+        Random random = new Random(42);
+        messages = new byte[DISTINCT_MESSAGES][];
+        for (int i = 0; i < DISTINCT_MESSAGES; i++) {
+            byte[] signature = new byte[256];
+            random.nextBytes(signature);
+            messages[i] = ("<Envelope><AppHdr><BizMsgIdr>M1234567820260101000000" + String.format("%08d", i)
+                    + "</BizMsgIdr><Sgntr>" + Base64.getEncoder().encodeToString(signature) + "</Sgntr></AppHdr>"
+                    + "<Document><GrpHdr><CreDtTm>2026-01-01T10:00:00.000Z</CreDtTm></GrpHdr><CdtTrfTxInf><PmtId>"
+                    + "<EndToEndId>E12345678202601011000" + String.format("%011d", i) + "</EndToEndId></PmtId>"
+                    + "x".repeat(3000) + "</CdtTrfTxInf></Document></Envelope>").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void record() {
+        double target = records.count() + BATCH;
+        for (int i = 0; i < BATCH; i++) {
+            index.record(messages[(int) (sequence++ % DISTINCT_MESSAGES)], BenchmarkSupport.QUEUE);
+        }
+        while (records.count() < target) {
+            LockSupport.parkNanos(10_000);
+        }
+    }
+}
@@ -1,23 +1,59 @@
 package com.example.pacs008.config;
 
+import com.example.pacs008.service.inbound.SpiResponseListener;
+import com.example.pacs008.service.mq.MqEndpoints;
 import com.ibm.mq.jms.MQConnectionFactory;
 import com.ibm.msg.client.wmq.WMQConstants;
 import jakarta.jms.ConnectionFactory;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.MessageListener;
+import jakarta.jms.Session;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.annotation.JmsListenerConfigurer;
+import org.springframework.jms.config.DefaultJmsListenerContainerFactory;
+import org.springframework.jms.config.SimpleJmsListenerEndpoint;
+import org.springframework.jms.connection.CachingConnectionFactory;
 import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.jms.listener.SessionAwareMessageListener;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Configuração do JMS para conectar a um servidor IBM MQ real do SPI.
- * Esta classe é responsável por criar a ConnectionFactory com as propriedades
- * de segurança (mTLS) e conexão necessárias.
+ * Esta classe é responsável por criar as ConnectionFactories dos endpoints MQ (um ou mais
+ * queue managers/canais) com as propriedades de segurança (mTLS) e conexão necessárias.
  */
 @Configuration
 @EnableJms
+@RequiredArgsConstructor
 public class JmsConfig {
 
+    private final Environment environment;
+
     // Injeta os valores do application.properties
     @Value("${ibm.mq.host-name}")
     private String host;
@@ -41,39 +77,96 @@ public class JmsConfig {
     private String trustStorePath;
     @Value("${ibm.mq.ssl.trust-store-password}")
     private String trustStorePassword;
+    @Value("${ibm.mq.inbound-queue}")
+    private String inboundQueue;
+    @Value("${ibm.mq.session-cache-size:10}")
+    private int sessionCacheSize;
+    // Consumers da fila de retorno: mínimo-máximo (ex: 2-16)
+    @Value("${pix.inbound.concurrency:2-16}")
+    private String inboundConcurrency;
+    @Value("${pix.inbound.max-messages-per-task:100}")
+    private int inboundMaxMessagesPerTask;
+    @Value("${pix.inbound.receive-timeout-ms:1000}")
+    private long inboundReceiveTimeoutMs;
 
     /**
-     * Cria e configura o Bean da ConnectionFactory para o IBM MQ.
+     * Cria as ConnectionFactories dos endpoints IBM MQ: um por item de {@code ibm.mq.endpoints},
+     * ou apenas o endpoint definido diretamente em {@code ibm.mq.*} se a lista estiver vazia.
+     * Cada propriedade omitida em um item assume o valor de {@code ibm.mq.*}.
      *
-     * @return A ConnectionFactory configurada.
+     * <p>Cada endpoint recebe o seu próprio {@link SSLContext}, montado a partir do seu keystore
+     * e truststore, em vez das propriedades globais {@code javax.net.ssl.*} da JVM.
+     *
+     * @return Os endpoints configurados, o principal primeiro.
      * @throws Exception se houver erro na configuração.
      */
     @Bean
-    public ConnectionFactory mqConnectionFactory() throws Exception {
-        MQConnectionFactory connectionFactory = new MQConnectionFactory();
-
-        // Configurações básicas de conexão
-        connectionFactory.setHostName(host);
-        connectionFactory.setPort(port);
-        connectionFactory.setQueueManager(queueManager);
-        connectionFactory.setChannel(channel);
-        connectionFactory.setTransportType(WMQConstants.WMQ_CM_CLIENT); // Modo Cliente é obrigatório
-
-        // Credenciais
-        connectionFactory.setStringProperty(WMQConstants.USERID, user);
-        connectionFactory.setStringProperty(WMQConstants.PASSWORD, password);
-
-        // Configuração de Segurança (SSL/mTLS)
-        connectionFactory.setSSLCipherSuite(sslCipherSuite);
-        
-        // Define as propriedades do sistema para os keystores
-        // O cliente IBM MQ lê estas propriedades do sistema para configurar o contexto SSL
-        System.setProperty("javax.net.ssl.keyStore", trustStorePath.startsWith("classpath:") ? getPathFromClasspath(keyStorePath) : keyStorePath);
-        System.setProperty("javax.net.ssl.keyStorePassword", keyStorePassword);
-        System.setProperty("javax.net.ssl.trustStore", trustStorePath.startsWith("classpath:") ? getPathFromClasspath(trustStorePath) : trustStorePath);
-        System.setProperty("javax.net.ssl.trustStorePassword", trustStorePassword);
-        
-        return connectionFactory;
+    @Profile("!local")
+    public MqEndpoints mqEndpoints() throws Exception {
+        List<EndpointProperties> configured = Binder.get(environment)
+                .bind("ibm.mq.endpoints", Bindable.listOf(EndpointProperties.class))
+                .orElseGet(() -> List.of(new EndpointProperties()));
+
+        List<MqEndpoints.Endpoint> endpoints = new ArrayList<>(configured.size());
+        for (EndpointProperties properties : configured) {
+            String endpointQueueManager = valueOrDefault(properties.getQueueManager(), queueManager);
+            String endpointHost = valueOrDefault(properties.getHostName(), host);
+            int endpointPort = properties.getPort() != null ? properties.getPort() : port;
+            String name = valueOrDefault(properties.getName(), endpointQueueManager + "@" + endpointHost + ":" + endpointPort);
+            SSLContext sslContext = createSslContext(
+                    valueOrDefault(properties.getKeyStore(), keyStorePath),
+                    valueOrDefault(properties.getKeyStorePassword(), keyStorePassword),
+                    valueOrDefault(properties.getTrustStore(), trustStorePath),
+                    valueOrDefault(properties.getTrustStorePassword(), trustStorePassword));
+
+            MQConnectionFactory connectionFactory = new MQConnectionFactory();
+
+            // Configurações básicas de conexão
+            connectionFactory.setHostName(endpointHost);
+            connectionFactory.setPort(endpointPort);
+            connectionFactory.setQueueManager(endpointQueueManager);
+            connectionFactory.setChannel(valueOrDefault(properties.getChannel(), channel));
+            connectionFactory.setTransportType(WMQConstants.WMQ_CM_CLIENT); // Modo Cliente é obrigatório
+
+            // Credenciais
+            connectionFactory.setStringProperty(WMQConstants.USERID, valueOrDefault(properties.getUser(), user));
+            connectionFactory.setStringProperty(WMQConstants.PASSWORD, valueOrDefault(properties.getPassword(), password));
+
+            // Configuração de Segurança (SSL/mTLS), restrita a este endpoint
+            connectionFactory.setSSLCipherSuite(valueOrDefault(properties.getCipherSuite(), sslCipherSuite));
+            connectionFactory.setSSLSocketFactory(sslContext.getSocketFactory());
+
+            endpoints.add(new MqEndpoints.Endpoint(name, connectionFactory));
+        }
+        return new MqEndpoints(endpoints);
+    }
+
+    /**
+     * A ConnectionFactory do endpoint principal, sem cache. Usada pelos listeners das
+     * respostas do SPI e como destino da {@link CachingConnectionFactory} principal.
+     */
+    @Bean
+    public ConnectionFactory mqConnectionFactory(MqEndpoints mqEndpoints) {
+        return mqEndpoints.primary().connectionFactory();
+    }
+
+    /**
+     * Envolve a ConnectionFactory do MQ (ou do broker local) em uma CachingConnectionFactory,
+     * que mantém uma única conexão e reaproveita sessões e producers. Sem ela, cada envio
+     * abriria uma nova conexão mTLS com o queue manager. O {@code MqBatchPublisher} mantém
+     * a sua própria, uma por endpoint.
+     *
+     * @param mqConnectionFactory A ConnectionFactory de destino.
+     * @return A ConnectionFactory com cache do endpoint principal.
+     */
+    @Bean
+    @Primary
+    public CachingConnectionFactory cachingConnectionFactory(@Qualifier("mqConnectionFactory") ConnectionFactory mqConnectionFactory) {
+        CachingConnectionFactory cachingConnectionFactory = new CachingConnectionFactory(mqConnectionFactory);
+        cachingConnectionFactory.setSessionCacheSize(sessionCacheSize);
+        cachingConnectionFactory.setCacheProducers(true);
+        cachingConnectionFactory.setReconnectOnException(true);
+        return cachingConnectionFactory;
     }
 
     /**
@@ -88,13 +181,132 @@ public class JmsConfig {
     }
 
     /**
-     * Helper para obter o caminho absoluto de um recurso no classpath.
+     * Cria a fábrica dos listeners das mensagens recebidas do SPI (pacs.002, pacs.004).
+     * O DefaultMessageListenerContainer inicia com o mínimo de {@code pix.inbound.concurrency}
+     * consumers e cria novos, até o máximo, enquanto todos estiverem ocupados; consumers
+     * ociosos são encerrados a cada {@code max-messages-per-task} mensagens processadas.
+     *
+     * @param mqConnectionFactory A ConnectionFactory do MQ, sem o cache usado nos envios
+     *                            (o próprio container mantém suas sessões e consumers).
+     * @return A fábrica de containers, referenciada como {@code inboundListenerFactory}.
+     */
+    @Bean
+    public DefaultJmsListenerContainerFactory inboundListenerFactory(@Qualifier("mqConnectionFactory") ConnectionFactory mqConnectionFactory) {
+        return createInboundListenerFactory(mqConnectionFactory);
+    }
+
+    /**
+     * Registra, para cada endpoint além do principal, um listener da fila de retorno com a
+     * mesma configuração de {@code inboundListenerFactory}: as respostas do SPI podem chegar
+     * por qualquer um dos queue managers usados no envio.
+     *
+     * @param mqEndpoints      Os endpoints MQ.
+     * @param responseListener O listener das respostas, ausente com {@code pix.inbound.enabled=false}.
+     * @return O configurador dos listeners adicionais.
+     */
+    @Bean
+    public JmsListenerConfigurer secondaryInboundListeners(MqEndpoints mqEndpoints, ObjectProvider<SpiResponseListener> responseListener) {
+        return registrar -> {
+            SpiResponseListener listener = responseListener.getIfAvailable();
+            if (listener == null) {
+                return;
+            }
+            for (MqEndpoints.Endpoint endpoint : mqEndpoints.all().subList(1, mqEndpoints.size())) {
+                SimpleJmsListenerEndpoint listenerEndpoint = new SimpleJmsListenerEndpoint();
+                listenerEndpoint.setId("spi-responses-" + endpoint.name());
+                listenerEndpoint.setDestination(inboundQueue);
+                listenerEndpoint.setMessageListener(new SessionAwareResponseListener(listener));
+                registrar.registerEndpoint(listenerEndpoint, createInboundListenerFactory(endpoint.connectionFactory()));
+            }
+        };
+    }
+
+    private DefaultJmsListenerContainerFactory createInboundListenerFactory(ConnectionFactory connectionFactory) {
+        DefaultJmsListenerContainerFactory factory = new DefaultJmsListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setConcurrency(inboundConcurrency);
+        factory.setMaxMessagesPerTask(inboundMaxMessagesPerTask);
+        factory.setReceiveTimeout(inboundReceiveTimeoutMs);
+        factory.setCacheLevel(DefaultMessageListenerContainer.CACHE_CONSUMER);
+        // A mensagem só é removida da fila após o processamento
+        factory.setSessionTransacted(true);
+        return factory;
+    }
+
+    /**
+     * Monta um SSLContext (mTLS) a partir de um keystore e um truststore, sem alterar as
+     * propriedades globais da JVM.
      */
-    private String getPathFromClasspath(String resourcePath) {
-        try {
-            return getClass().getClassLoader().getResource(resourcePath.substring("classpath:".length())).getPath();
-        } catch (Exception e) {
-            throw new RuntimeException("Não foi possível encontrar o recurso no classpath: " + resourcePath, e);
+    private static SSLContext createSslContext(String keyStore, String keyStorePassword,
+                                               String trustStore, String trustStorePassword) throws Exception {
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(loadStore(keyStore, keyStorePassword), keyStorePassword.toCharArray());
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(loadStore(trustStore, trustStorePassword));
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagers.getKeyManagers(), trustManagers.getTrustManagers(), null);
+        return sslContext;
+    }
+
+    /**
+     * Carrega um keystore do classpath ({@code classpath:...}) ou do sistema de arquivos.
+     * O tipo padrão da JVM (PKCS12) também lê arquivos JKS.
+     */
+    private static KeyStore loadStore(String path, String password) throws Exception {
+        Resource resource = path.startsWith("classpath:")
+                ? new ClassPathResource(path.substring("classpath:".length()))
+                : new FileSystemResource(path);
+        KeyStore store = KeyStore.getInstance(KeyStore.getDefaultType());
+        try (InputStream in = resource.getInputStream()) {
+            store.load(in, password.toCharArray());
+        } catch (FileNotFoundException e) {
+            throw new IllegalStateException("Keystore não encontrado: " + path, e);
         }
+        return store;
+    }
+
+    private static String valueOrDefault(String value, String defaultValue) {
+        return value != null && !value.isBlank() ? value : defaultValue;
+    }
+
+    /**
+     * Adapta o {@link SpiResponseListener} aos endpoints adicionais. O container usa a
+     * interface {@link SessionAwareMessageListener}, que fornece a sessão transacionada em que a
+     * mensagem foi recebida (usada para encaminhar mensagens rejeitadas); {@link MessageListener}
+     * é exigida apenas pelo {@link SimpleJmsListenerEndpoint}.
+     */
+    private record SessionAwareResponseListener(SpiResponseListener listener)
+            implements MessageListener, SessionAwareMessageListener<Message> {
+
+        @Override
+        public void onMessage(Message message, Session session) throws JMSException {
+            // Uma exceção desfaz a transação da sessão, como no listener do endpoint principal
+            listener.onMessage(message, session);
+        }
+
+        @Override
+        public void onMessage(Message message) {
+            throw new IllegalStateException("O listener das respostas do SPI requer a sessão JMS.");
+        }
+    }
+
+    /**
+     * Um item de {@code ibm.mq.endpoints}. As propriedades omitidas assumem os valores de {@code ibm.mq.*}.
+     */
+    @Data
+    public static class EndpointProperties {
+        private String name;
+        private String hostName;
+        private Integer port;
+        private String queueManager;
+        private String channel;
+        private String user;
+        private String password;
+        private String cipherSuite;
+        private String keyStore;
+        private String keyStorePassword;
+        private String trustStore;
+        private String trustStorePassword;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,67 @@
+package com.example.pacs008.config;
+
+import com.example.pacs008.service.mq.MqEndpoints;
+import jakarta.annotation.PreDestroy;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.apache.activemq.artemis.jms.client.ActiveMQConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Brokers JMS embarcados (ActiveMQ Artemis, em memória) que substituem o IBM MQ do SPI
+ * no perfil {@code local}. Permite executar e testar a carga do fluxo de publicação
+ * sem acesso à RSFN: {@code --spring.profiles.active=local}.
+ *
+ * <p>Com {@code pix.local.brokers} maior que 1, são iniciados vários brokers independentes
+ * ({@code vm://0}, {@code vm://1}, ...), um por endpoint, para exercitar a distribuição e o
+ * failover entre queue managers.
+ */
+@Configuration
+@Profile("local")
+public class LocalBrokerConfig {
+
+    private static final String BROKER_URL_PREFIX = "vm://";
+
+    @Value("${pix.local.brokers:1}")
+    private int brokerCount;
+
+    private final List<EmbeddedActiveMQ> brokers = new ArrayList<>();
+
+    /**
+     * Inicia os brokers embarcados, sem persistência e sem segurança, e devolve um endpoint
+     * por broker. As filas são criadas automaticamente no primeiro envio.
+     */
+    @Bean
+    public MqEndpoints mqEndpoints() throws Exception {
+        List<MqEndpoints.Endpoint> endpoints = new ArrayList<>(brokerCount);
+        for (int i = 0; i < Math.max(1, brokerCount); i++) {
+            String url = BROKER_URL_PREFIX + i;
+            org.apache.activemq.artemis.core.config.Configuration configuration = new ConfigurationImpl()
+                    .setName("local-" + i)
+                    .setPersistenceEnabled(false)
+                    .setSecurityEnabled(false)
+                    .setJMXManagementEnabled(false)
+                    .addAcceptorConfiguration("in-vm", url);
+
+            EmbeddedActiveMQ broker = new EmbeddedActiveMQ();
+            broker.setConfiguration(configuration);
+            broker.start();
+            brokers.add(broker);
+            endpoints.add(new MqEndpoints.Endpoint("local-" + i, new ActiveMQConnectionFactory(url)));
+        }
+        return new MqEndpoints(endpoints);
+    }
+
+    @PreDestroy
+    public void stopBrokers() throws Exception {
+        for (EmbeddedActiveMQ broker : brokers) {
+            broker.stop();
+        }
+    }
+}
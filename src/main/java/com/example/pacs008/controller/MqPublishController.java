@@ -0,0 +1,101 @@
+package com.example.pacs008.controller;
+
+import com.example.pacs008.dto.PublishRequestDto;
+import com.example.pacs008.service.metrics.PaymentMetrics;
+import com.example.pacs008.service.metrics.PaymentMetrics.Outcome;
+import com.example.pacs008.service.mq.MqClientService;
+import com.example.pacs008.service.outbox.OutboxLog;
+import com.example.pacs008.util.OverloadedException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Controller REST para publicar no MQ do SPI uma mensagem pacs.008 já assinada.
+ */
+@RestController
+@RequestMapping("/api/pix/publish")
+@RequiredArgsConstructor
+public class MqPublishController {
+
+    private final MqClientService mqClientService;
+    // Presente apenas com pix.outbox.enabled=true
+    private final Optional<OutboxLog> outboxLog;
+    private final PaymentMetrics metrics;
+
+    @Value("${ibm.mq.outbound-queue}")
+    private String outboundQueue;
+
+    /**
+     * Endpoint para publicar uma mensagem assinada. A requisição é respondida de forma
+     * assíncrona, quando o lote que contém a mensagem for confirmado no MQ, sem ocupar
+     * uma thread do servidor durante a espera.
+     *
+     * <p>Com a outbox habilitada, a requisição é respondida com 202 assim que a mensagem
+     * estiver gravada em disco localmente; a entrega ao MQ é feita em segundo plano. Se a
+     * gravação falhar (500), ela foi desfeita e a mensagem não será entregue: o cliente pode
+     * reenviá-la.
+     *
+     * <p>Com o MQ sobrecarregado (limite de concorrência ou buffer esgotados, circuito
+     * aberto), a requisição é recusada com 503 e o cabeçalho {@code Retry-After}.
+     *
+     * @param request DTO com o XML assinado e, opcionalmente, a fila de destino.
+     * @return O status da publicação.
+     */
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.TEXT_PLAIN_VALUE)
+    public CompletableFuture<ResponseEntity<String>> publish(@RequestBody PublishRequestDto request) {
+        String queueName = request.getQueueName() == null || request.getQueueName().isBlank()
+                ? outboundQueue : request.getQueueName();
+        long start = System.nanoTime();
+        try {
+            if (outboxLog.isPresent()) {
+                return appendToOutbox(outboxLog.get(), request.getXmlContent(), queueName, start);
+            }
+            return mqClientService.publishAsync(request.getXmlContent(), queueName)
+                    .handle((ignored, error) -> {
+                        if (error == null) {
+                            metrics.recordRequest("publish", Outcome.SUCCESS, start);
+                            return ResponseEntity.ok("Mensagem publicada na fila '" + queueName + "' com sucesso.");
+                        }
+                        metrics.recordRequest("publish", Outcome.MQ_ERROR, start);
+                        return ResponseEntity.status(502).body("Falha na comunicação com o servidor MQ: " + error.getMessage());
+                    });
+        } catch (IllegalArgumentException e) {
+            metrics.recordRequest("publish", Outcome.VALIDATION_ERROR, start);
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            // MQ sobrecarregado ou circuito aberto: o cliente deve tentar novamente mais tarde
+            metrics.recordRequest("publish", Outcome.REJECTED, start);
+            return CompletableFuture.completedFuture(ResponseEntity.status(503)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(OverloadedException.retryAfterSeconds(e)))
+                    .body(e.getMessage()));
+        }
+    }
+
+    private CompletableFuture<ResponseEntity<String>> appendToOutbox(OutboxLog outbox, String message, String queueName, long start) {
+        if (message == null || message.isBlank()) {
+            throw new IllegalArgumentException("A mensagem para publicação não pode ser vazia.");
+        }
+        return outbox.append(queueName, message.getBytes(StandardCharsets.UTF_8))
+                .handle((sequence, error) -> {
+                    if (error == null) {
+                        metrics.recordRequest("publish", Outcome.SUCCESS, start);
+                        return ResponseEntity.accepted().body("Mensagem registrada na outbox (sequência " + sequence
+                                + ") para publicação na fila '" + queueName + "'.");
+                    }
+                    metrics.recordRequest("publish", Outcome.ERROR, start);
+                    return ResponseEntity.internalServerError().body("Falha ao gravar a mensagem na outbox: " + error.getMessage());
+                });
+    }
+}
@@ -1,14 +1,34 @@
 package com.example.pacs008.controller;
 
+import com.example.pacs008.dto.BatchItemResultDto;
 import com.example.pacs008.dto.PaymentRequestDto;
 import com.example.pacs008.service.Pacs008Service;
+import com.example.pacs008.service.SignedPacs008Message;
+import com.example.pacs008.service.aggregation.AggregatedPayment;
+import com.example.pacs008.service.aggregation.Pacs008Aggregator;
+import com.example.pacs008.service.batch.BatchPaymentService;
+import com.example.pacs008.service.idempotency.IdempotencyConflictException;
+import com.example.pacs008.service.idempotency.IdempotencyStore;
+import com.example.pacs008.service.idempotency.RequestFingerprint;
+import com.example.pacs008.service.metrics.PaymentMetrics;
+import com.example.pacs008.service.metrics.PaymentMetrics.Outcome;
+import com.example.pacs008.service.validation.PaymentValidationException;
+import com.example.pacs008.util.OverloadedException;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Controller REST para expor o serviço de geração de mensagens pacs.008.
@@ -16,27 +36,134 @@ import org.springframework.web.bind.annotation.RestController;
 @RestController
 @RequestMapping("/api/pix/payments")
 @RequiredArgsConstructor
+@Slf4j
 public class Pacs008Controller {
 
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+    // Agregação: a chave de idempotência guarda apenas os identificadores, sem o XML do grupo
+    private static final byte[] NO_XML = new byte[0];
+
     private final Pacs008Service pacs008Service;
+    private final BatchPaymentService batchPaymentService;
+    private final IdempotencyStore idempotencyStore;
+    private final PaymentMetrics metrics;
+    // Presente apenas com pix.pacs008.aggregation.enabled=true
+    private final Optional<Pacs008Aggregator> aggregator;
 
     /**
      * Endpoint para criar uma nova ordem de pagamento Pix (pacs.008).
      * Recebe os dados do pagamento em formato JSON, processa-os e retorna
-     * a mensagem XML completa e formatada.
+     * a mensagem XML completa e assinada.
+     *
+     * <p>Se o cliente enviar o cabeçalho {@code Idempotency-Key}, novas tentativas com a
+     * mesma chave recebem a mesma mensagem (mesmo EndToEndId), sinalizada pelo cabeçalho
+     * de resposta {@code Idempotent-Replayed: true}, em vez de gerar um novo pagamento.
      *
-     * @param request DTO com os dados do pagamento.
+     * <p>Solicitações que violam as regras do XSD recebem 400 com todas as violações:
+     * {@code <errors><error field="payerIspb" xsdType="ISPBType">...</error></errors>}.
+     *
+     * <p>Com a agregação habilitada, a mensagem é publicada pelo próprio serviço, junto com as
+     * demais transações do mesmo pagador, e a resposta (202) contém apenas os identificadores
+     * da transação do solicitante:
+     * {@code <payment status="PUBLISHED"><BizMsgIdr>...</BizMsgIdr><EndToEndId>...</EndToEndId></payment>}.
+     *
+     * @param request        DTO com os dados do pagamento.
+     * @param idempotencyKey Chave de idempotência opcional definida pelo cliente.
      * @return Uma ResponseEntity contendo a string XML da mensagem pacs.008
      *         ou uma mensagem de erro em caso de falha.
      */
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_XML_VALUE)
-    public ResponseEntity<String> createPixPayment(@RequestBody PaymentRequestDto request) {
+    public ResponseEntity<String> createPixPayment(@RequestBody PaymentRequestDto request,
+                                                   @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        long start = System.nanoTime();
         try {
-            String pacs008Xml = pacs008Service.createAndProcessPacs008Message(request);
-            return ResponseEntity.status(201).body(pacs008Xml);
+            int createdStatus = aggregator.isPresent() ? 202 : 201;
+            if (idempotencyKey == null) {
+                String body = responseBody(createSigned(request));
+                metrics.recordRequest("payment", Outcome.SUCCESS, start);
+                return ResponseEntity.status(createdStatus).body(body);
+            }
+            IdempotencyStore.Result result = idempotencyStore.getOrCompute(idempotencyKey, RequestFingerprint.of(request),
+                    () -> createSigned(request));
+            metrics.recordRequest("payment", Outcome.SUCCESS, start);
+            return ResponseEntity.status(result.replayed() ? 200 : createdStatus)
+                    .header(IDEMPOTENT_REPLAYED_HEADER, String.valueOf(result.replayed()))
+                    .body(responseBody(result.message()));
+        } catch (IdempotencyConflictException e) {
+            metrics.recordRequest("payment", Outcome.CONFLICT, start);
+            return ResponseEntity.status(422).body("<error>" + e.getMessage() + "</error>");
+        } catch (PaymentValidationException e) {
+            metrics.recordRequest("payment", Outcome.VALIDATION_ERROR, start);
+            log.debug("Solicitação de pagamento inválida: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(toXml(e));
+        } catch (IllegalArgumentException e) {
+            metrics.recordRequest("payment", Outcome.VALIDATION_ERROR, start);
+            log.debug("Solicitação de pagamento inválida: {}", e.getMessage());
+            return ResponseEntity.badRequest().body("<error>Solicitação inválida: " + e.getMessage() + "</error>");
+        } catch (RejectedExecutionException e) {
+            // Limite de assinaturas simultâneas esgotado: o cliente deve tentar novamente mais tarde
+            metrics.recordRequest("payment", Outcome.REJECTED, start);
+            return ResponseEntity.status(503)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(OverloadedException.retryAfterSeconds(e)))
+                    .body("<error>" + e.getMessage() + "</error>");
         } catch (Exception e) {
-            e.printStackTrace();
+            metrics.recordRequest("payment", Outcome.ERROR, start);
+            log.error("Falha ao gerar a mensagem pacs.008: {}", e.getMessage(), e);
             return ResponseEntity.status(500).body("<error>Falha ao gerar a mensagem pacs.008: " + e.getMessage() + "</error>");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Endpoint para criar um lote de ordens de pagamento Pix (pacs.008).
+     * Recebe um array JSON ou um fluxo NDJSON de solicitações e devolve, em NDJSON,
+     * um resultado por item (XML assinado ou erro), na mesma ordem da entrada.
+     * Os resultados são enviados à medida que ficam prontos; um item inválido
+     * não interrompe o processamento dos demais.
+     *
+     * @param request A requisição HTTP, cujo corpo é lido de forma incremental.
+     * @return Uma ResponseEntity com o fluxo de resultados em NDJSON.
+     */
+    @PostMapping(path = "/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> createPixPaymentBatch(HttpServletRequest request) {
+        StreamingResponseBody body = out -> batchPaymentService.process(request.getInputStream(), out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Gera a mensagem individualmente ou, com a agregação habilitada, inclui a transação em
+     * uma mensagem com as demais do mesmo pagador, publicada pelo agregador; nesse caso,
+     * apenas os identificadores da transação são retornados (sem o XML do grupo).
+     */
+    private SignedPacs008Message createSigned(PaymentRequestDto request) throws Exception {
+        if (aggregator.isEmpty()) {
+            return pacs008Service.createSignedPacs008Message(request);
+        }
+        AggregatedPayment payment = aggregator.get().submitAndWait(request);
+        return new SignedPacs008Message(payment.bizMsgIdr(), payment.endToEndId(), NO_XML);
+    }
+
+    private String responseBody(SignedPacs008Message message) {
+        if (aggregator.isEmpty()) {
+            return message.xmlAsString();
+        }
+        return "<payment status=\"" + BatchItemResultDto.STATUS_PUBLISHED + "\"><BizMsgIdr>" + escape(message.bizMsgIdr())
+                + "</BizMsgIdr><EndToEndId>" + escape(message.endToEndId()) + "</EndToEndId></payment>";
+    }
+
+    private static String toXml(PaymentValidationException e) {
+        StringBuilder xml = new StringBuilder("<errors>");
+        for (PaymentValidationException.Violation violation : e.getViolations()) {
+            xml.append("<error field=\"").append(escape(violation.field()))
+                    .append("\" xsdType=\"").append(escape(violation.xsdType()))
+                    .append("\">").append(escape(violation.message())).append("</error>");
+        }
+        return xml.append("</errors>").toString();
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
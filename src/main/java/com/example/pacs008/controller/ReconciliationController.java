@@ -0,0 +1,95 @@
+package com.example.pacs008.controller;
+
+import com.example.pacs008.service.reconciliation.SentMessage;
+import com.example.pacs008.service.reconciliation.SentMessageIndex;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Controller REST para consultar as mensagens publicadas no MQ ({@link SentMessageIndex}),
+ * usado na conciliação com o SPI.
+ */
+@RestController
+@RequestMapping("/api/pix/reconciliation")
+@ConditionalOnProperty(name = "pix.reconciliation.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class ReconciliationController {
+
+    private static final int MAX_LIMIT = 10_000;
+
+    private final SentMessageIndex sentMessageIndex;
+
+    /**
+     * Os envios da transação (mais de um se a mensagem foi reenviada), em ordem de envio.
+     *
+     * @return 404 se nenhuma mensagem com o EndToEndId foi publicada dentro da retenção.
+     */
+    @GetMapping(value = "/end-to-end/{endToEndId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<SentMessage>> findByEndToEndId(@PathVariable String endToEndId) {
+        return found(sentMessageIndex.findByEndToEndId(endToEndId));
+    }
+
+    /**
+     * O XML assinado do último envio da transação.
+     */
+    @GetMapping(value = "/end-to-end/{endToEndId}/xml", produces = MediaType.APPLICATION_XML_VALUE)
+    public ResponseEntity<byte[]> xmlByEndToEndId(@PathVariable String endToEndId) {
+        return lastXml(sentMessageIndex.findByEndToEndId(endToEndId));
+    }
+
+    /**
+     * Os envios da mensagem com o BizMsgIdr informado, em ordem de envio.
+     */
+    @GetMapping(value = "/messages/{bizMsgIdr}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<SentMessage>> findByBizMsgIdr(@PathVariable String bizMsgIdr) {
+        return found(sentMessageIndex.findByBizMsgIdr(bizMsgIdr));
+    }
+
+    /**
+     * O XML assinado do último envio da mensagem com o BizMsgIdr informado.
+     */
+    @GetMapping(value = "/messages/{bizMsgIdr}/xml", produces = MediaType.APPLICATION_XML_VALUE)
+    public ResponseEntity<byte[]> xmlByBizMsgIdr(@PathVariable String bizMsgIdr) {
+        return lastXml(sentMessageIndex.findByBizMsgIdr(bizMsgIdr));
+    }
+
+    /**
+     * As mensagens criadas (CreDtTm) no período {@code [from, to)}, em ordem de criação e sem
+     * o XML. Acima de {@code limit} mensagens, apenas as mais antigas são retornadas: a
+     * consulta seguinte pode começar no CreDtTm da última.
+     *
+     * @param from  Início do período (ISO-8601, ex: {@code 2024-05-01T00:00:00Z}).
+     * @param to    Fim do período, exclusivo.
+     * @param limit Quantidade máxima de mensagens (até 10.000).
+     */
+    @GetMapping(value = "/messages", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<SentMessage>> findByCreationTime(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(defaultValue = "1000") int limit) {
+        if (!from.isBefore(to) || limit < 1 || limit > MAX_LIMIT) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(sentMessageIndex.findByCreationTime(from, to, limit));
+    }
+
+    private static ResponseEntity<List<SentMessage>> found(List<SentMessage> messages) {
+        return messages.isEmpty() ? ResponseEntity.notFound().build() : ResponseEntity.ok(messages);
+    }
+
+    private static ResponseEntity<byte[]> lastXml(List<SentMessage> messages) {
+        return messages.isEmpty() ? ResponseEntity.notFound().build()
+                : ResponseEntity.ok(messages.get(messages.size() - 1).xml());
+    }
+}
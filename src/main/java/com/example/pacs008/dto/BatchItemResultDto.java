@@ -0,0 +1,41 @@
+package com.example.pacs008.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Resultado de um item de um lote de pagamentos: a mensagem assinada ou o erro
+ * que impediu a sua geração. O campo {@code index} é a posição do item no lote recebido.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResultDto {
+
+    public static final String STATUS_SIGNED = "SIGNED";
+    public static final String STATUS_ERROR = "ERROR";
+    // Ingestão de arquivos e agregação: mensagem publicada no MQ (ou gravada na outbox), sem o XML no resultado
+    public static final String STATUS_PUBLISHED = "PUBLISHED";
+
+    private long index;
+    private String status;
+    private String bizMsgIdr;
+    private String endToEndId;
+    private String xml;
+    private String error;
+
+    public static BatchItemResultDto signed(long index, String bizMsgIdr, String endToEndId, String xml) {
+        return new BatchItemResultDto(index, STATUS_SIGNED, bizMsgIdr, endToEndId, xml, null);
+    }
+
+    public static BatchItemResultDto published(long index, String bizMsgIdr, String endToEndId) {
+        return new BatchItemResultDto(index, STATUS_PUBLISHED, bizMsgIdr, endToEndId, null, null);
+    }
+
+    public static BatchItemResultDto error(long index, String error) {
+        return new BatchItemResultDto(index, STATUS_ERROR, null, null, null, error);
+    }
+}
@@ -26,4 +26,7 @@ public class PaymentRequestDto {
 
     private BigDecimal amount;
     private String description;
+
+    // Nível de serviço (SvcLvl/Prtry): PAGPRI (padrão, InstrPrty HIGH), PAGAGD ou PAGFRD (InstrPrty NORM)
+    private String serviceLevel;
 }
\ No newline at end of file
@@ -0,0 +1,12 @@
+package com.example.pacs008.dto;
+
+import lombok.Data;
+
+/**
+ * DTO que encapsula o conteúdo XML assinado a ser publicado no MQ.
+ */
+@Data
+public class PublishRequestDto {
+    private String xmlContent;
+    private String queueName; // Opcional: usa a fila de saída configurada quando ausente
+}
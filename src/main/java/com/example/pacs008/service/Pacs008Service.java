@@ -2,76 +2,423 @@ package com.example.pacs008.service;
 
 import br.gov.bcb.pi.pacs008.v1.*;
 import com.example.pacs008.dto.PaymentRequestDto;
-import jakarta.xml.bind.JAXBContext;
+import com.example.pacs008.service.id.PixIdGenerator;
+import com.example.pacs008.service.inbound.PaymentCorrelationIndex;
+import com.example.pacs008.service.metrics.PaymentMetrics;
+import com.example.pacs008.service.metrics.PaymentMetrics.Stage;
+import com.example.pacs008.service.validation.PaymentRequestValidator;
+import com.example.pacs008.service.validation.SchemaAuditor;
+import com.example.pacs008.service.xml.JaxbMarshallerPool;
+import com.example.pacs008.service.xml.Pacs008Template;
+import com.example.pacs008.util.ObjectPool;
+import com.example.pacs008.util.ObjectPoolMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import jakarta.xml.bind.Marshaller;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
+import java.io.ByteArrayOutputStream;
 import java.io.StringWriter;
+import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.time.ZonedDateTime;
-import java.util.GregorianCalendar;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Serviço responsável por criar, preencher e processar a mensagem pacs.008.
+ *
+ * <p>A mensagem é gerada pelo JAXB ou, com {@code pix.pacs008.writer=template}, por um
+ * modelo pré-compilado ({@link Pacs008Template}) que escreve apenas os campos variáveis.
+ * O modelo é extraído da saída do JAXB na inicialização. A equivalência entre as duas formas
+ * (forma canônica idêntica) é garantida pelos testes com arquivos de referência; com
+ * {@code pix.pacs008.template.verify-on-startup=true}, ela também é conferida na
+ * inicialização e, se houver diferença, o JAXB continua sendo usado.
+ *
+ * <p>A prioridade da mensagem ({@code PmtTpInf}) vem do nível de serviço da solicitação
+ * ({@link PaymentRequestDto#getServiceLevel()}, {@code PAGPRI} se não informado):
+ * {@code InstrPrty HIGH} para {@code PAGPRI} e {@code NORM} para os demais. É por ela que o
+ * publicador escolhe a faixa de despacho ({@link com.example.pacs008.service.mq.MqPriority#of}).
  */
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class Pacs008Service {
 
     private final SignatureService signatureService;
+    private final JaxbMarshallerPool jaxbMarshallerPool;
+    private final PixIdGenerator idGenerator;
+    private final PaymentCorrelationIndex correlationIndex;
+    private final PaymentMetrics metrics;
+    private final PaymentRequestValidator validator;
+    private final SchemaAuditor schemaAuditor;
+    private final MeterRegistry meterRegistry;
     private static final String BCB_ISPB = "00000000";
-    private static final String SETTLEMENT_METHOD = "CLRG";
+    /** Método de liquidação (SttlmMtd) das mensagens geradas. */
+    public static final String SETTLEMENT_METHOD = "CLRG";
     private static final String LOCAL_INSTRUMENT = "MANU"; // Iniciação Manual como exemplo
+    private static final String WRITER_TEMPLATE = "template";
+
+    // Saída indentada: apenas para depuração (aumenta o tamanho e o custo da canonicalização)
+    @Value("${pix.pacs008.formatted-output:false}")
+    private boolean formattedOutput;
+    // Geração da mensagem: jaxb (padrão) ou template
+    @Value("${pix.pacs008.writer:jaxb}")
+    private String writer;
+    // Buffers do modelo (0 = 2x o número de processadores)
+    @Value("${pix.pacs008.template.pool-size:0}")
+    private int templatePoolSize;
+    @Value("${pix.pacs008.template.pool-timeout-ms:5000}")
+    private long templatePoolTimeoutMs;
+    // Conferência do modelo contra o JAXB na inicialização (coberta pelos testes; desligada por padrão)
+    @Value("${pix.pacs008.template.verify-on-startup:false}")
+    private boolean verifyTemplateOnStartup;
+
+    // Um modelo por nível de serviço (o PmtTpInf é fixo em cada um)
+    private Map<PrtrySvcLvlCode, Pacs008Template> templates;
+    private ObjectPool<Pacs008Template.Buffer> templateBuffers;
+
+    @PostConstruct
+    public void init() {
+        if (!WRITER_TEMPLATE.equalsIgnoreCase(writer)) {
+            return;
+        }
+        if (formattedOutput) {
+            log.warn("pix.pacs008.writer=template é ignorado com pix.pacs008.formatted-output=true; usando JAXB.");
+            return;
+        }
+        try {
+            Map<PrtrySvcLvlCode, Pacs008Template> compiled = new EnumMap<>(PrtrySvcLvlCode.class);
+            for (PrtrySvcLvlCode serviceLevel : PrtrySvcLvlCode.values()) {
+                compiled.put(serviceLevel, compileTemplate(serviceLevel));
+            }
+            if (verifyTemplateOnStartup) {
+                for (Map.Entry<PrtrySvcLvlCode, Pacs008Template> entry : compiled.entrySet()) {
+                    verifyTemplate(entry.getKey(), entry.getValue());
+                }
+            }
+            int size = templatePoolSize > 0 ? templatePoolSize : Runtime.getRuntime().availableProcessors() * 2;
+            templateBuffers = new ObjectPool<>("pacs008-template", size, templatePoolTimeoutMs, () -> new Pacs008Template.Buffer(8192));
+            ObjectPoolMetrics.bind(templateBuffers, meterRegistry);
+            templates = compiled;
+            log.info("Modelo da pacs.008 compilado{}; escrita pelo modelo ativa.",
+                    verifyTemplateOnStartup ? " e verificado contra o JAXB" : "");
+        } catch (Exception e) {
+            log.error("Modelo da pacs.008 descartado, a mensagem será gerada pelo JAXB: {}", e.getMessage(), e);
+        }
+    }
 
     /**
      * Cria e processa uma mensagem pacs.008 a partir dos dados de uma solicitação.
-     * O método constrói a estrutura completa do XML, preenche os campos obrigatórios
-     * e realiza o marshalling (conversão de objeto para XML).
+     * Delega a {@link #createSignedPacs008Message(PaymentRequestDto)} e devolve o XML
+     * assinado como texto.
      *
      * @param request O DTO contendo os dados do pagamento.
-     * @return A string XML da mensagem pacs.008, pronta para ser assinada e enviada.
+     * @return A string XML da mensagem pacs.008 assinada, pronta para ser enviada.
      * @throws Exception se ocorrer um erro durante a geração do XML.
      */
     public String createAndProcessPacs008Message(PaymentRequestDto request) throws Exception {
+        return createSignedPacs008Message(request).xmlAsString();
+    }
+
+    /**
+     * Cria e assina uma mensagem pacs.008 em uma única passagem: o envelope JAXB é
+     * escrito diretamente em um DOM, assinado no próprio DOM e serializado em bytes UTF-8,
+     * prontos para um {@code BytesMessage} do MQ.
+     *
+     * @param request O DTO contendo os dados do pagamento.
+     * @return A mensagem assinada e seus identificadores.
+     * @throws com.example.pacs008.service.validation.PaymentValidationException se a solicitação
+     *         violar as regras do XSD; nenhum objeto JAXB é criado nesse caso.
+     * @throws Exception se ocorrer um erro durante a geração ou assinatura do XML.
+     */
+    public SignedPacs008Message createSignedPacs008Message(PaymentRequestDto request) throws Exception {
+        validator.validate(request);
+        if (templates != null) {
+            return createFromTemplate(request);
+        }
+        SPIEnvelopeMessage envelope = buildEnvelope(request);
+
+        // 3. Marshalling direto para o DOM e assinatura
+        byte[] signedXml;
+        try (ObjectPool.Lease<Marshaller> lease = jaxbMarshallerPool.borrowMarshaller()) {
+            Marshaller marshaller = lease.get();
+            if (formattedOutput) {
+                // Modo de depuração: a indentação precisa existir antes da assinatura
+                long start = System.nanoTime();
+                StringWriter sw = new StringWriter();
+                marshaller.marshal(envelope, sw);
+                metrics.recordStage(Stage.MARSHAL, start);
+                signedXml = signatureService.signXmlToBytes(sw.toString());
+            } else {
+                signedXml = signatureService.signToBytes(doc -> {
+                    long start = System.nanoTime();
+                    marshaller.marshal(envelope, doc);
+                    metrics.recordStage(Stage.MARSHAL, start);
+                });
+            }
+        }
+
+        String bizMsgIdr = envelope.getAppHdr().getBizMsgIdr();
+        String endToEndId = envelope.getDocument().getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getPmtId().getEndToEndId();
+        return registered(bizMsgIdr, endToEndId, signedXml);
+    }
+
+    private SignedPacs008Message createFromTemplate(PaymentRequestDto request) throws Exception {
+        XMLGregorianCalendar now = idGenerator.currentTimestamp();
+        String bizMsgIdr = idGenerator.newMsgId(request.getPayerIspb());
+        String endToEndId = idGenerator.newEndToEndId(request.getPayerIspb());
+
+        byte[] signedXml;
+        try (ObjectPool.Lease<Pacs008Template.Buffer> lease = templateBuffers.borrow()) {
+            Pacs008Template.Buffer buffer = lease.get();
+            long start = System.nanoTime();
+            templates.get(serviceLevel(request)).write(buffer, request, bizMsgIdr, endToEndId, now.toXMLFormat());
+            metrics.recordStage(Stage.TEMPLATE, start);
+            signedXml = signatureService.signXmlToBytes(buffer.array(), buffer.size());
+        }
+        return registered(bizMsgIdr, endToEndId, signedXml);
+    }
+
+    /**
+     * Cria e assina uma única mensagem pacs.008 com uma transação (CdtTrfTxInf) por
+     * solicitação, todas do mesmo pagador e nível de serviço: um AppHdr, um GrpHdr com {@code NbOfTxs} igual à
+     * quantidade de transações e uma única assinatura para todo o grupo.
+     *
+     * @param requests As solicitações, já validadas, com o mesmo ISPB pagador e nível de serviço.
+     * @return Um resultado por solicitação, na mesma ordem, todos com o mesmo BizMsgIdr e o
+     *         mesmo XML assinado (compartilhado, sem cópia), cada um com o seu EndToEndId.
+     * @throws Exception se ocorrer um erro durante a geração ou assinatura do XML.
+     */
+    public List<SignedPacs008Message> createSignedPacs008Message(List<PaymentRequestDto> requests) throws Exception {
+        String payerIspb = requests.get(0).getPayerIspb();
+        PrtrySvcLvlCode serviceLevel = serviceLevel(requests.get(0));
+        for (PaymentRequestDto request : requests) {
+            if (!payerIspb.equals(request.getPayerIspb())) {
+                throw new IllegalArgumentException("Todas as transações de uma mensagem devem ter o mesmo ISPB pagador.");
+            }
+            if (serviceLevel != serviceLevel(request)) {
+                throw new IllegalArgumentException("Todas as transações de uma mensagem devem ter o mesmo nível de serviço.");
+            }
+        }
+
+        ObjectFactory factory = new ObjectFactory();
+        SPIEnvelopeMessage envelope = factory.createSPIEnvelopeMessage();
+        XMLGregorianCalendar now = idGenerator.currentTimestamp();
+        String bizMsgIdr = idGenerator.newMsgId(payerIspb);
+
+        long start = System.nanoTime();
+        envelope.setAppHdr(createHeader(factory, payerIspb, bizMsgIdr, now));
+        metrics.recordStage(Stage.HEADER, start);
+
+        start = System.nanoTime();
+        SPIpacs00800109 document = factory.createSPIpacs00800109();
+        FIToFICustomerCreditTransferV09 creditTransfer = factory.createFIToFICustomerCreditTransferV09();
+        document.setFIToFICstmrCdtTrf(creditTransfer);
+        envelope.setDocument(document);
+        creditTransfer.setGrpHdr(createGroupHeader(factory, bizMsgIdr, requests.size(), serviceLevel, now));
+        List<String> endToEndIds = new ArrayList<>(requests.size());
+        for (PaymentRequestDto request : requests) {
+            String endToEndId = idGenerator.newEndToEndId(payerIspb);
+            endToEndIds.add(endToEndId);
+            creditTransfer.getCdtTrfTxInf().add(createTransactionInfo(factory, request, endToEndId, now));
+        }
+        metrics.recordStage(Stage.DOCUMENT, start);
+
+        byte[] signedXml;
+        try (ObjectPool.Lease<Marshaller> lease = jaxbMarshallerPool.borrowMarshaller()) {
+            Marshaller marshaller = lease.get();
+            signedXml = signatureService.signToBytes(doc -> {
+                long marshalStart = System.nanoTime();
+                marshaller.marshal(envelope, doc);
+                metrics.recordStage(Stage.MARSHAL, marshalStart);
+            });
+        }
+
+        List<SignedPacs008Message> messages = new ArrayList<>(requests.size());
+        for (String endToEndId : endToEndIds) {
+            correlationIndex.register(bizMsgIdr, endToEndId);
+            messages.add(new SignedPacs008Message(bizMsgIdr, endToEndId, signedXml));
+        }
+        schemaAuditor.maybeAudit(bizMsgIdr, signedXml);
+        return messages;
+    }
+
+    private SignedPacs008Message registered(String bizMsgIdr, String endToEndId, byte[] signedXml) {
+        // Permite correlacionar a resposta do SPI (pacs.002/pacs.004) com esta mensagem
+        correlationIndex.register(bizMsgIdr, endToEndId);
+        schemaAuditor.maybeAudit(bizMsgIdr, signedXml);
+        return new SignedPacs008Message(bizMsgIdr, endToEndId, signedXml);
+    }
+
+    // Visível no pacote para os benchmarks JMH (src/jmh/java)
+    SPIEnvelopeMessage buildEnvelope(PaymentRequestDto request) {
+        // Um único instante para CreDt, CreDtTm e AccptncDtTm
+        XMLGregorianCalendar now = idGenerator.currentTimestamp();
+        return buildEnvelope(request, idGenerator.newMsgId(request.getPayerIspb()),
+                idGenerator.newEndToEndId(request.getPayerIspb()), now);
+    }
+
+    private SPIEnvelopeMessage buildEnvelope(PaymentRequestDto request, String bizMsgIdr, String endToEndId, XMLGregorianCalendar now) {
         ObjectFactory factory = new ObjectFactory();
         SPIEnvelopeMessage envelope = factory.createSPIEnvelopeMessage();
 
         // 1. Construir o Cabeçalho (AppHdr)
-        envelope.setAppHdr(createHeader(factory, request.getPayerIspb()));
+        long start = System.nanoTime();
+        envelope.setAppHdr(createHeader(factory, request.getPayerIspb(), bizMsgIdr, now));
+        metrics.recordStage(Stage.HEADER, start);
 
         // 2. Construir o Documento (Document)
+        start = System.nanoTime();
         SPIpacs00800109 document = factory.createSPIpacs00800109();
         FIToFICustomerCreditTransferV09 creditTransfer = factory.createFIToFICustomerCreditTransferV09();
         document.setFIToFICstmrCdtTrf(creditTransfer);
         envelope.setDocument(document);
 
         // 2.1. Cabeçalho do Grupo (GrpHdr)
-        creditTransfer.setGrpHdr(createGroupHeader(factory, envelope.getAppHdr().getBizMsgIdr()));
+        creditTransfer.setGrpHdr(createGroupHeader(factory, bizMsgIdr, 1, serviceLevel(request), now));
 
         // 2.2. Informações da Transação (CdtTrfTxInf)
-        creditTransfer.getCdtTrfTxInf().add(createTransactionInfo(factory, request, envelope.getAppHdr().getBizMsgIdr()));
-
-        // 3. Marshalling para XML
-        StringWriter sw = new StringWriter();
-        JAXBContext context = JAXBContext.newInstance(SPIEnvelopeMessage.class);
-        Marshaller marshaller = context.createMarshaller();
-        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-        marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
-        marshaller.marshal(envelope, sw);
-        
-        String xmlContent = sw.toString();
+        creditTransfer.getCdtTrfTxInf().add(createTransactionInfo(factory, request, endToEndId, now));
+        metrics.recordStage(Stage.DOCUMENT, start);
 
-        // 4. Assinar o XML (Etapa simulada)
-        return signatureService.signXml(xmlContent);
+        return envelope;
+    }
+
+    // Modelo da pacs.008 (pix.pacs008.writer=template)
+
+    /**
+     * Gera pelo JAXB as duas formas da mensagem (com e sem descrição) do nível de serviço
+     * informado, com valores sentinela nos campos variáveis, e as recorta no modelo.
+     */
+    // Visível no pacote para os testes com arquivos de referência (src/test/java)
+    Pacs008Template compileTemplate(PrtrySvcLvlCode serviceLevel) throws Exception {
+        Map<Pacs008Template.Field, String> sentinels = new EnumMap<>(Pacs008Template.Field.class);
+        for (Pacs008Template.Field field : Pacs008Template.Field.values()) {
+            sentinels.put(field, "~" + field.name() + "~");
+        }
+        // Campos numéricos e enumerados não aceitam texto livre: valores que não ocorrem no restante da mensagem
+        sentinels.put(Pacs008Template.Field.PAYER_AGENCY, "9871");
+        sentinels.put(Pacs008Template.Field.PAYER_ACCOUNT, "98765432109876543211");
+        sentinels.put(Pacs008Template.Field.PAYER_ACCOUNT_TYPE, "CACC");
+        sentinels.put(Pacs008Template.Field.RECEIVER_AGENCY, "9872");
+        sentinels.put(Pacs008Template.Field.RECEIVER_ACCOUNT, "98765432109876543222");
+        sentinels.put(Pacs008Template.Field.RECEIVER_ACCOUNT_TYPE, "SVGS");
+        sentinels.put(Pacs008Template.Field.AMOUNT, "987654321.98");
+        XMLGregorianCalendar timestamp = DatatypeFactory.newInstance().newXMLGregorianCalendar("2099-12-31T23:59:58.987Z");
+        sentinels.put(Pacs008Template.Field.TIMESTAMP, timestamp.toXMLFormat());
+
+        PaymentRequestDto sample = new PaymentRequestDto();
+        sample.setPayerName(sentinels.get(Pacs008Template.Field.PAYER_NAME));
+        sample.setPayerCpfCnpj(sentinels.get(Pacs008Template.Field.PAYER_CPF_CNPJ));
+        sample.setPayerIspb(sentinels.get(Pacs008Template.Field.PAYER_ISPB));
+        sample.setPayerAgency(sentinels.get(Pacs008Template.Field.PAYER_AGENCY));
+        sample.setPayerAccount(sentinels.get(Pacs008Template.Field.PAYER_ACCOUNT));
+        sample.setPayerAccountType(sentinels.get(Pacs008Template.Field.PAYER_ACCOUNT_TYPE));
+        sample.setReceiverCpfCnpj(sentinels.get(Pacs008Template.Field.RECEIVER_CPF_CNPJ));
+        sample.setReceiverIspb(sentinels.get(Pacs008Template.Field.RECEIVER_ISPB));
+        sample.setReceiverAgency(sentinels.get(Pacs008Template.Field.RECEIVER_AGENCY));
+        sample.setReceiverAccount(sentinels.get(Pacs008Template.Field.RECEIVER_ACCOUNT));
+        sample.setReceiverAccountType(sentinels.get(Pacs008Template.Field.RECEIVER_ACCOUNT_TYPE));
+        sample.setReceiverPixKey(sentinels.get(Pacs008Template.Field.RECEIVER_PIX_KEY));
+        sample.setAmount(new BigDecimal(sentinels.get(Pacs008Template.Field.AMOUNT)));
+        sample.setDescription(sentinels.get(Pacs008Template.Field.DESCRIPTION));
+        sample.setServiceLevel(serviceLevel.value());
+        String bizMsgIdr = sentinels.get(Pacs008Template.Field.BIZ_MSG_IDR);
+        String endToEndId = sentinels.get(Pacs008Template.Field.END_TO_END_ID);
+
+        byte[] withDescription = marshalUnsigned(sample, bizMsgIdr, endToEndId, timestamp);
+        sample.setDescription(null);
+        byte[] withoutDescription = marshalUnsigned(sample, bizMsgIdr, endToEndId, timestamp);
+        return Pacs008Template.compile(withDescription, withoutDescription, sentinels);
+    }
+
+    /**
+     * Compara, byte a byte na forma canônica, a saída do modelo com a do JAXB para mensagens
+     * de verificação (com escapes, acentos, zeros à esquerda e sem descrição).
+     */
+    private void verifyTemplate(PrtrySvcLvlCode serviceLevel, Pacs008Template compiled) throws Exception {
+        PaymentRequestDto sample = new PaymentRequestDto();
+        sample.setServiceLevel(serviceLevel.value());
+        sample.setPayerName("José & Filhos <Comércio> \"Ltda\" 'ME' \u00e7\u00e3o \ud83d\ude00");
+        sample.setPayerCpfCnpj("12345678901");
+        sample.setPayerIspb("12345678");
+        sample.setPayerAgency("0001");
+        sample.setPayerAccount("0001234567");
+        sample.setPayerAccountType("CACC");
+        sample.setReceiverCpfCnpj("AB345678000195");
+        sample.setReceiverIspb("87654321");
+        sample.setReceiverAgency("0");
+        sample.setReceiverAccount("98765");
+        sample.setReceiverAccountType("TRAN");
+        sample.setReceiverPixKey("+5561999999999");
+        // Sem CR: na saída em stream o JAXB não o escapa (o parser o normalizaria), ao contrário do DOM assinado
+        sample.setDescription("Pagamento > R$ 10 & <teste>\nsegunda linha\tç");
+
+        List<PaymentRequestDto> samples = new ArrayList<>();
+        for (String amount : new String[]{"150.75", "0.01", "1000", "1234567890123456.70"}) {
+            PaymentRequestDto copy = copy(sample);
+            copy.setAmount(new BigDecimal(amount));
+            samples.add(copy);
+        }
+        PaymentRequestDto withoutDescription = copy(sample);
+        withoutDescription.setAmount(BigDecimal.TEN);
+        withoutDescription.setDescription(null);
+        samples.add(withoutDescription);
+
+        Pacs008Template.Buffer buffer = new Pacs008Template.Buffer(8192);
+        for (PaymentRequestDto request : samples) {
+            XMLGregorianCalendar now = idGenerator.currentTimestamp();
+            String bizMsgIdr = idGenerator.newMsgId(request.getPayerIspb());
+            String endToEndId = idGenerator.newEndToEndId(request.getPayerIspb());
+
+            byte[] expected = marshalUnsigned(request, bizMsgIdr, endToEndId, now);
+            compiled.write(buffer, request, bizMsgIdr, endToEndId, now.toXMLFormat());
+            if (!Arrays.equals(Pacs008Template.canonicalize(expected, expected.length),
+                    Pacs008Template.canonicalize(buffer.array(), buffer.size()))) {
+                throw new IllegalStateException("A forma canônica do modelo difere da do JAXB para a mensagem de verificação "
+                        + (samples.indexOf(request) + 1) + ".");
+            }
+        }
+    }
+
+    /**
+     * Gera pelo JAXB, sem assinatura, a mensagem de uma solicitação com os identificadores e o
+     * instante informados.
+     */
+    // Visível no pacote para os testes com arquivos de referência (src/test/java)
+    byte[] marshalUnsigned(PaymentRequestDto request, String bizMsgIdr, String endToEndId, XMLGregorianCalendar now)
+            throws Exception {
+        SPIEnvelopeMessage envelope = buildEnvelope(request, bizMsgIdr, endToEndId, now);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        try (ObjectPool.Lease<Marshaller> lease = jaxbMarshallerPool.borrowMarshaller()) {
+            lease.get().marshal(envelope, out);
+        }
+        return out.toByteArray();
+    }
+
+    private static PaymentRequestDto copy(PaymentRequestDto source) {
+        PaymentRequestDto copy = new PaymentRequestDto();
+        BeanUtils.copyProperties(source, copy);
+        return copy;
     }
 
     // Métodos auxiliares para criar partes da mensagem
+
+    /** Nível de serviço da solicitação, já validado contra o XSD ({@code PAGPRI} se não informado). */
+    public static PrtrySvcLvlCode serviceLevel(PaymentRequestDto request) {
+        return request.getServiceLevel() == null ? PrtrySvcLvlCode.PAGPRI : PrtrySvcLvlCode.fromValue(request.getServiceLevel());
+    }
     
-    private SPIhead00100101 createHeader(ObjectFactory factory, String fromIspb) throws Exception {
+    private SPIhead00100101 createHeader(ObjectFactory factory, String fromIspb, String bizMsgIdr, XMLGregorianCalendar now) {
         SPIhead00100101 header = factory.createSPIhead00100101();
         
         // Remetente (PSP Pagador) e Destinatário (SPI/BCB)
@@ -83,9 +430,9 @@ public class Pacs008Service {
         to.setFIId(createFinancialInstitution(factory, BCB_ISPB));
         header.setTo(to);
 
-        header.setBizMsgIdr(generateMsgId(fromIspb));
+        header.setBizMsgIdr(bizMsgIdr);
         header.setMsgDefIdr("pacs.008.spi.1.13");
-        header.setCreDt(getCurrentXmlTimestamp());
+        header.setCreDt(now);
         
         // A assinatura será adicionada após o marshalling
         header.setSgntr(factory.createSignatureEnvelope());
@@ -93,32 +440,35 @@ public class Pacs008Service {
         return header;
     }
 
-    private GroupHeader93 createGroupHeader(ObjectFactory factory, String msgId) throws Exception {
+    private GroupHeader93 createGroupHeader(ObjectFactory factory, String msgId, int nbOfTxs, PrtrySvcLvlCode serviceLevel,
+                                            XMLGregorianCalendar now) {
         GroupHeader93 grpHdr = factory.createGroupHeader93();
         grpHdr.setMsgId(msgId);
-        grpHdr.setCreDtTm(getCurrentXmlTimestamp());
-        grpHdr.setNbOfTxs("1");
+        grpHdr.setCreDtTm(now);
+        grpHdr.setNbOfTxs(Integer.toString(nbOfTxs));
 
         SettlementInstruction7 sttlmInf = factory.createSettlementInstruction7();
         sttlmInf.setSttlmMtd(SettlementMethod1Code.fromValue(SETTLEMENT_METHOD));
         grpHdr.setSttlmInf(sttlmInf);
 
         PaymentTypeInformation28 pmtTpInf = factory.createPaymentTypeInformation28();
-        pmtTpInf.setInstrPrty(Priority2Code.HIGH);
+        pmtTpInf.setInstrPrty(serviceLevel == PrtrySvcLvlCode.PAGPRI ? Priority2Code.HIGH : Priority2Code.NORM);
         ServiceLevel8Choice slv = factory.createServiceLevel8Choice();
-        slv.setPrtry(PrtrySvcLvlCode.PAGPRI);
+        slv.setPrtry(serviceLevel);
         pmtTpInf.setSvcLvl(slv);
         grpHdr.setPmtTpInf(pmtTpInf);
         
         return grpHdr;
     }
     
-    private CreditTransferTransaction43 createTransactionInfo(ObjectFactory factory, PaymentRequestDto request, String msgId) throws Exception {
+    // Visível no pacote para os benchmarks JMH (src/jmh/java)
+    CreditTransferTransaction43 createTransactionInfo(ObjectFactory factory, PaymentRequestDto request, String endToEndId,
+                                                      XMLGregorianCalendar now) {
         CreditTransferTransaction43 txInfo = factory.createCreditTransferTransaction43();
 
         // Ids
         PaymentIdentification13 pmtId = factory.createPaymentIdentification13();
-        pmtId.setEndToEndId(generateEndToEndId(request.getPayerIspb()));
+        pmtId.setEndToEndId(endToEndId);
         pmtId.setTxId("TXID1234567890"); // Geralmente vem de um QR Code ou da iniciação
         txInfo.setPmtId(pmtId);
 
@@ -127,7 +477,7 @@ public class Pacs008Service {
         amount.setValue(request.getAmount());
         amount.setCcy(ActiveCurrencyCode.BRL);
         txInfo.setIntrBkSttlmAmt(amount);
-        txInfo.setAccptncDtTm(getCurrentXmlTimestamp());
+        txInfo.setAccptncDtTm(now);
         txInfo.setChrgBr(ChargeBearerType1Code.SLEV);
         
         // Informação de Iniciação
@@ -216,20 +566,4 @@ public class Pacs008Service {
         acctTp.setCd(ExternalCashAccountType1Code.fromValue(type));
         return acctTp;
     }
-
-    private String generateMsgId(String ispb) {
-        String uuidPart = UUID.randomUUID().toString().replaceAll("-", "").substring(0, 23).toUpperCase();
-        return "M" + ispb + uuidPart;
-    }
-
-    private String generateEndToEndId(String ispb) {
-        String timestamp = ZonedDateTime.now().toInstant().toString().replaceAll("[^0-9]", "").substring(0, 14);
-        String uuidPart = UUID.randomUUID().toString().replaceAll("-", "").substring(0, 9).toUpperCase();
-        return "E" + ispb + timestamp + uuidPart;
-    }
-
-    private XMLGregorianCalendar getCurrentXmlTimestamp() throws Exception {
-        GregorianCalendar gcal = GregorianCalendar.from(ZonedDateTime.now());
-        return DatatypeFactory.newInstance().newXMLGregorianCalendar(gcal);
-    }
 }
\ No newline at end of file
@@ -1,5 +1,18 @@
 package com.example.pacs008.service;
 
+import com.example.pacs008.service.metrics.PaymentMetrics;
+import com.example.pacs008.service.metrics.PaymentMetrics.Stage;
+import com.example.pacs008.service.signing.SignerBackend;
+import com.example.pacs008.service.signing.SigningKey;
+import com.example.pacs008.service.signing.SigningLanes;
+import com.example.pacs008.util.ConcurrencyLimiter;
+import com.example.pacs008.util.ObjectPool;
+import com.example.pacs008.util.ObjectPoolMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.w3c.dom.Document;
@@ -7,109 +20,336 @@ import org.xml.sax.InputSource;
 
 import javax.xml.crypto.dsig.*;
 import javax.xml.crypto.dsig.dom.DOMSignContext;
-import javax.xml.crypto.dsig.keyinfo.KeyInfo;
-import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
-import javax.xml.crypto.dsig.keyinfo.X509Data;
 import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
 import javax.xml.crypto.dsig.spec.TransformParameterSpec;
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import java.io.FileInputStream;
-import java.io.InputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
-import java.security.KeyStore;
-import java.security.PrivateKey;
-import java.security.Provider;
-import java.security.cert.X509Certificate;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Serviço responsável por realizar a assinatura digital de mensagens XML
  * utilizando o padrão XMLDSig (Enveloped Signature).
- * Esta é uma implementação de produção que utiliza um keystore JKS.
+ *
+ * <p>A chave privada e o certificado vêm do {@link SignerBackend} configurado
+ * ({@code pix.signature.backend}: keystore JKS ou token PKCS#11) e são carregados uma
+ * única vez na inicialização. Quando o backend permite, a origem é monitorada e as chaves
+ * recarregadas automaticamente em caso de rotação do certificado.
+ *
+ * <p>A assinatura XMLDSig (digest, canonicalização e operação RSA) é executada nas
+ * {@link SigningLanes}, uma por sessão de assinatura; o limitador de concorrência continua
+ * controlando a admissão. As fábricas XMLDSig, os parsers e os transformers são
+ * reaproveitados através de um pool, pois nenhum deles é garantidamente thread-safe.
  */
 @Service
+@RequiredArgsConstructor
+@Slf4j
 public class SignatureService {
 
-    @Value("${ibm.mq.ssl.key-store}")
-    private String keyStorePath;
-    @Value("${ibm.mq.ssl.key-store-password}")
-    private String keyStorePassword;
-    @Value("${ibm.mq.ssl.key-alias}")
-    private String keyAlias;
-    @Value("${ibm.mq.ssl.key-password}")
-    private String keyPassword;
+    private static final String RSA_SHA256 = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256";
+    // Propriedade do XMLDSig do JDK que seleciona o provider da operação de assinatura
+    private static final String SIGNATURE_PROVIDER = "org.jcp.xml.dsig.internal.dom.SignatureProvider";
+
+    private final MeterRegistry meterRegistry;
+    private final PaymentMetrics metrics;
+    private final SignerBackend backend;
+
+    // Tamanho do pool de assinatura (0 = 2x o número de processadores)
+    @Value("${pix.signature.pool-size:0}")
+    private int poolSize;
+    @Value("${pix.signature.pool-timeout-ms:5000}")
+    private long poolTimeoutMs;
+    // Lanes de assinatura (0 = padrão do backend: processadores no JKS, slots x sessões no PKCS#11)
+    @Value("${pix.signature.lanes:0}")
+    private int laneCount;
+    // Espera máxima pelo resultado de uma assinatura nas lanes (ex: sessão travada no HSM)
+    @Value("${pix.signature.timeout-ms:10000}")
+    private long signingTimeoutMs;
+    // Assinaturas admitidas simultaneamente, em execução ou na fila das lanes (0 = 2x o número de lanes)
+    @Value("${pix.limits.signing.max-concurrent:0}")
+    private int signingMaxConcurrent;
+    @Value("${pix.limits.signing.acquire-timeout-ms:5000}")
+    private long signingAcquireTimeoutMs;
+    // Intervalo de verificação de rotação do keystore (0 desabilita)
+    @Value("${pix.signature.key-reload-interval-ms:60000}")
+    private long keyReloadIntervalMs;
+
+    private SigningLanes lanes;
+    private ObjectPool<XmlSigningToolkit> toolkits;
+    private ConcurrencyLimiter signingLimiter;
+    private ScheduledExecutorService keyReloader;
 
     /**
-     * Assina um documento XML utilizando a chave privada do keystore configurado.
+     * Carrega o material de assinatura e pré-cria o pool de ferramentas XML.
+     */
+    @PostConstruct
+    public void init() throws Exception {
+        int n = laneCount > 0 ? laneCount : backend.defaultLanes();
+        lanes = new SigningLanes(backend.loadKeys(n), signingTimeoutMs);
+        lanes.bindTo(meterRegistry);
+        log.info("Assinatura com o backend {} em {} lanes.", backend.name(), n);
+
+        int size = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors() * 2;
+        toolkits = new ObjectPool<>("xmldsig", size, poolTimeoutMs, XmlSigningToolkit::new);
+        ObjectPoolMetrics.bind(toolkits, meterRegistry);
+
+        // A assinatura RSA é limitada por CPU (ou pelo HSM): com threads virtuais, o limite evita
+        // que milhares de requisições ocupem todas as threads portadoras ao mesmo tempo
+        int maxConcurrent = signingMaxConcurrent > 0 ? signingMaxConcurrent : n * 2;
+        signingLimiter = new ConcurrencyLimiter("signing", maxConcurrent, signingAcquireTimeoutMs);
+        signingLimiter.bindTo(meterRegistry);
+
+        if (keyReloadIntervalMs > 0 && backend.supportsReload()) {
+            keyReloader = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "keystore-reloader");
+                t.setDaemon(true);
+                return t;
+            });
+            keyReloader.scheduleWithFixedDelay(this::reloadIfChanged,
+                    keyReloadIntervalMs, keyReloadIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (keyReloader != null) {
+            keyReloader.shutdownNow();
+        }
+        if (lanes != null) {
+            lanes.shutdown();
+        }
+    }
+
+    /**
+     * Assina um documento XML utilizando a chave privada do backend configurado.
      * O método implementa o padrão "Enveloped Signature", onde a tag <Signature>
      * é inserida dentro do próprio documento que ela assina.
      *
      * @param xmlContent O conteúdo XML original (sem assinatura) como uma String.
      * @return O conteúdo XML com a tag <Signature> adicionada, como uma String.
      * @throws Exception se ocorrer qualquer erro durante o processo de assinatura,
-     *                   seja no carregamento do keystore, na manipulação do XML
-     *                   ou na operação criptográfica.
+     *                   seja na manipulação do XML ou na operação criptográfica.
      */
     public String signXml(String xmlContent) throws Exception {
-        // 1. Carregar a chave privada e o certificado do Keystore
-        KeyStore keyStore = KeyStore.getInstance("JKS");
-        // Remove "classpath:" para carregar como recurso do sistema
-        String path = keyStorePath.substring("classpath:".length());
-        try (InputStream is = getClass().getClassLoader().getResourceAsStream(path)) {
-            if (is == null) {
-                throw new RuntimeException("Keystore não encontrado em: " + keyStorePath);
+        try (ObjectPool.Lease<XmlSigningToolkit> lease = toolkits.borrow()) {
+            XmlSigningToolkit toolkit = lease.get();
+
+            // 1. Parsear o XML de String para um Documento DOM
+            Document doc = parse(toolkit, new InputSource(new StringReader(xmlContent)));
+
+            // 2. Assinar o documento com o material de assinatura vigente
+            sign(lease, doc);
+
+            // 3. Converter o Documento DOM assinado de volta para String
+            long start = System.nanoTime();
+            StringWriter sw = new StringWriter();
+            toolkit.transformer.transform(new DOMSource(doc), new StreamResult(sw));
+            metrics.recordStage(Stage.SERIALIZE, start);
+            return sw.toString();
+        }
+    }
+
+    /**
+     * Constrói e assina um documento em uma única passagem: o {@code writer} preenche
+     * um DOM vazio (ex: marshalling JAXB direto para o nó), a assinatura é aplicada
+     * no próprio DOM e o resultado é serializado diretamente em bytes UTF-8,
+     * sem passar por uma String intermediária.
+     *
+     * @param writer Callback que escreve o conteúdo (sem assinatura) no documento vazio.
+     * @return O XML assinado, codificado em UTF-8.
+     * @throws Exception se ocorrer qualquer erro na escrita, assinatura ou serialização.
+     */
+    public byte[] signToBytes(DocumentWriter writer) throws Exception {
+        try (ObjectPool.Lease<XmlSigningToolkit> lease = toolkits.borrow()) {
+            XmlSigningToolkit toolkit = lease.get();
+
+            Document doc = toolkit.documentBuilder.newDocument();
+            writer.writeTo(doc);
+            sign(lease, doc);
+            return serialize(toolkit, doc);
+        }
+    }
+
+    /**
+     * Assina um XML já serializado e devolve o resultado em bytes UTF-8.
+     * Usado quando o documento precisa ser formatado antes da assinatura (modo de depuração).
+     *
+     * @param xmlContent O conteúdo XML original (sem assinatura) como uma String.
+     * @return O XML assinado, codificado em UTF-8.
+     * @throws Exception se ocorrer qualquer erro durante o processo de assinatura.
+     */
+    public byte[] signXmlToBytes(String xmlContent) throws Exception {
+        try (ObjectPool.Lease<XmlSigningToolkit> lease = toolkits.borrow()) {
+            XmlSigningToolkit toolkit = lease.get();
+
+            Document doc = parse(toolkit, new InputSource(new StringReader(xmlContent)));
+            sign(lease, doc);
+            return serialize(toolkit, doc);
+        }
+    }
+
+    /**
+     * Assina um XML em bytes UTF-8 (ex: escrito pelo modelo da pacs.008 em um buffer
+     * reaproveitado) e devolve o resultado em bytes UTF-8.
+     *
+     * @param xml    O buffer com o XML original (sem assinatura).
+     * @param length A quantidade de bytes válidos no buffer.
+     * @return O XML assinado, codificado em UTF-8.
+     * @throws Exception se ocorrer qualquer erro durante o processo de assinatura.
+     */
+    public byte[] signXmlToBytes(byte[] xml, int length) throws Exception {
+        try (ObjectPool.Lease<XmlSigningToolkit> lease = toolkits.borrow()) {
+            XmlSigningToolkit toolkit = lease.get();
+
+            Document doc = parse(toolkit, new InputSource(new ByteArrayInputStream(xml, 0, length)));
+            sign(lease, doc);
+            return serialize(toolkit, doc);
+        }
+    }
+
+    private Document parse(XmlSigningToolkit toolkit, InputSource source) throws Exception {
+        long start = System.nanoTime();
+        Document doc = toolkit.documentBuilder.parse(source);
+        metrics.recordStage(Stage.PARSE, start);
+        return doc;
+    }
+
+    /**
+     * Assina o documento em uma lane. Se o prazo da lane expirar com a assinatura em
+     * execução, o toolkit (não thread-safe) e a permissão do limitador passam para a lane,
+     * que os devolve ao terminar: nenhum dos dois é reaproveitado enquanto ela ainda os usa.
+     */
+    private void sign(ObjectPool.Lease<XmlSigningToolkit> lease, Document doc) throws Exception {
+        XmlSigningToolkit toolkit = lease.get();
+        AtomicBoolean handedOver = new AtomicBoolean();
+        // A suspensão das métricas (aquecimento) vale para a thread de quem chama, não para a lane
+        boolean timed = !metrics.stagesSuspended();
+        signingLimiter.acquire();
+        try {
+            // A espera pelo limitador aparece nas métricas pix.limiter.* e a espera pela lane em
+            // pix.signature.queue-wait; o tempo da etapa é medido na própria lane
+            lanes.execute(key -> {
+                long start = System.nanoTime();
+                toolkit.sign(doc, key);
+                if (timed) {
+                    metrics.recordStage(Stage.SIGN, start);
+                }
+                return null;
+            }, () -> {
+                handedOver.set(true);
+                ObjectPool.Lease<XmlSigningToolkit> transferred = lease.transfer();
+                return () -> {
+                    transferred.close();
+                    signingLimiter.release();
+                };
+            });
+        } finally {
+            if (!handedOver.get()) {
+                signingLimiter.release();
             }
-            keyStore.load(is, keyStorePassword.toCharArray());
         }
+    }
+
+    private byte[] serialize(XmlSigningToolkit toolkit, Document doc) throws Exception {
+        long start = System.nanoTime();
+        byte[] xml = toolkit.serialize(doc);
+        metrics.recordStage(Stage.SERIALIZE, start);
+        return xml;
+    }
 
-        PrivateKey privateKey = (PrivateKey) keyStore.getKey(keyAlias, keyPassword.toCharArray());
-        X509Certificate certificate = (X509Certificate) keyStore.getCertificate(keyAlias);
-
-        // 2. Parsear o XML de String para um Documento DOM
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        dbf.setNamespaceAware(true); // Essencial para XMLDSig
-        Document doc = dbf.newDocumentBuilder().parse(new InputSource(new StringReader(xmlContent)));
-
-        // 3. Preparar o contexto da assinatura
-        // A assinatura será inserida dentro da tag <Sgntr>
-        DOMSignContext dsc = new DOMSignContext(privateKey, doc.getElementsByTagName("Sgntr").item(0));
-
-        // 4. Criar a fábrica de assinaturas XML
-        XMLSignatureFactory fac = XMLSignatureFactory.getInstance("DOM");
-
-        // 5. Criar uma Referência para o documento a ser assinado (todo o documento)
-        // O Transform.ENVELOPED é crucial para que a própria tag de assinatura seja excluída do cálculo do hash.
-        Reference ref = fac.newReference("", fac.newDigestMethod(DigestMethod.SHA256, null),
-                Collections.singletonList(fac.newTransform(Transform.ENVELOPED, (TransformParameterSpec) null)),
-                null, null);
-
-        // 6. Criar o SignedInfo, que agrupa a referência e os métodos
-        SignedInfo si = fac.newSignedInfo(
-                fac.newCanonicalizationMethod(CanonicalizationMethod.INCLUSIVE, (C14NMethodParameterSpec) null),
-                fac.newSignatureMethod("http://www.w3.org/2001/04/xmldsig-more#rsa-sha256", null), // RSA-SHA256
-                Collections.singletonList(ref));
-
-        // 7. Adicionar o certificado público à assinatura (KeyInfo)
-        KeyInfoFactory kif = fac.getKeyInfoFactory();
-        X509Data x509Data = kif.newX509Data(List.of(certificate.getSubjectX500Principal().getName(), certificate));
-        KeyInfo ki = kif.newKeyInfo(Collections.singletonList(x509Data));
-
-        // 8. Criar a assinatura XML e assiná-la
-        XMLSignature signature = fac.newXMLSignature(si, ki);
-        signature.sign(dsc);
-
-        // 9. Converter o Documento DOM assinado de volta para String
-        StringWriter sw = new StringWriter();
-        TransformerFactory tf = TransformerFactory.newInstance();
-        Transformer trans = tf.newTransformer();
-        trans.transform(new DOMSource(doc), new StreamResult(sw));
-
-        return sw.toString();
+    /**
+     * Escreve o conteúdo a ser assinado em um documento DOM vazio.
+     */
+    @FunctionalInterface
+    public interface DocumentWriter {
+        void writeTo(Document document) throws Exception;
+    }
+
+    /**
+     * Verifica se as chaves foram alteradas na origem e, em caso positivo, recarrega
+     * o material das lanes. Em caso de falha, o material anterior é mantido.
+     */
+    private void reloadIfChanged() {
+        try {
+            if (backend.hasChanged()) {
+                lanes.replaceKeys(backend.loadKeys(lanes.size()));
+                log.info("Chaves de assinatura do backend {} recarregadas após alteração.", backend.name());
+            }
+        } catch (Exception e) {
+            log.error("Falha ao recarregar as chaves do backend {}. As chaves atuais serão mantidas: {}", backend.name(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Conjunto de objetos não thread-safe usados em uma assinatura. Cada instância
+     * é usada por uma única thread por vez, através do pool.
+     */
+    private static final class XmlSigningToolkit {
+
+        private final XMLSignatureFactory fac;
+        private final DocumentBuilder documentBuilder;
+        private final Transformer transformer;
+        private final DigestMethod digestMethod;
+        private final List<Transform> transforms;
+        private final CanonicalizationMethod canonicalizationMethod;
+        private final SignatureMethod signatureMethod;
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream(16 * 1024);
+
+        private XmlSigningToolkit() throws Exception {
+            fac = XMLSignatureFactory.getInstance("DOM");
+
+            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+            dbf.setNamespaceAware(true); // Essencial para XMLDSig
+            documentBuilder = dbf.newDocumentBuilder();
+            transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.ENCODING, StandardCharsets.UTF_8.name());
+
+            // O Transform.ENVELOPED é crucial para que a própria tag de assinatura seja excluída do cálculo do hash.
+            digestMethod = fac.newDigestMethod(DigestMethod.SHA256, null);
+            transforms = Collections.singletonList(fac.newTransform(Transform.ENVELOPED, (TransformParameterSpec) null));
+            canonicalizationMethod = fac.newCanonicalizationMethod(CanonicalizationMethod.INCLUSIVE, (C14NMethodParameterSpec) null);
+            signatureMethod = fac.newSignatureMethod(RSA_SHA256, null);
+        }
+
+        private void sign(Document doc, SigningKey key) throws Exception {
+            // A assinatura será inserida dentro da tag <Sgntr>
+            // (busca pelo nome local, independente do prefixo de namespace gerado pelo marshaller)
+            DOMSignContext dsc = new DOMSignContext(key.privateKey(), doc.getElementsByTagNameNS("*", "Sgntr").item(0));
+            if (key.provider() != null) {
+                // Operação RSA no provider do token (a chave PKCS#11 não é utilizável por outro provider)
+                dsc.setProperty(SIGNATURE_PROVIDER, key.provider());
+            }
+
+            // Reference e SignedInfo guardam o digest calculado, por isso são criados a cada assinatura
+            Reference ref = fac.newReference("", digestMethod, transforms, null, null);
+            SignedInfo si = fac.newSignedInfo(canonicalizationMethod, signatureMethod, Collections.singletonList(ref));
+
+            XMLSignature signature = fac.newXMLSignature(si, key.keyInfo());
+            signature.sign(dsc);
+        }
+
+        /**
+         * Serializa no buffer reaproveitado do toolkit (que cresce até o tamanho da maior
+         * mensagem) e devolve uma única cópia com o tamanho exato, que segue até o MQ.
+         */
+        private byte[] serialize(Document doc) throws Exception {
+            output.reset();
+            transformer.transform(new DOMSource(doc), new StreamResult(output));
+            return output.toByteArray();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,20 @@
+package com.example.pacs008.service;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Mensagem pacs.008 assinada, pronta para envio ao SPI.
+ *
+ * @param bizMsgIdr  Identificador da mensagem (AppHdr/BizMsgIdr).
+ * @param endToEndId Identificador fim a fim da transação (PmtId/EndToEndId).
+ * @param xml        O XML assinado, codificado em UTF-8.
+ */
+public record SignedPacs008Message(String bizMsgIdr, String endToEndId, byte[] xml) {
+
+    /**
+     * @return O XML assinado como String.
+     */
+    public String xmlAsString() {
+        return new String(xml, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.pacs008.service.aggregation;
+
+/**
+ * Resultado de um pagamento incluído em uma mensagem agregada, já publicada no MQ (ou gravada
+ * na outbox). Contém apenas os identificadores da transação do solicitante: o XML do grupo,
+ * com as transações dos demais solicitantes, não é devolvido.
+ *
+ * @param bizMsgIdr  Identificador da mensagem agregada (AppHdr/BizMsgIdr).
+ * @param endToEndId Identificador fim a fim da transação do solicitante (PmtId/EndToEndId).
+ */
+public record AggregatedPayment(String bizMsgIdr, String endToEndId) {
+}
@@ -0,0 +1,347 @@
+package com.example.pacs008.service.aggregation;
+
+import br.gov.bcb.pi.pacs008.v1.PrtrySvcLvlCode;
+import com.example.pacs008.dto.PaymentRequestDto;
+import com.example.pacs008.service.Pacs008Service;
+import com.example.pacs008.service.SignedPacs008Message;
+import com.example.pacs008.service.inbound.PaymentCorrelationIndex;
+import com.example.pacs008.service.mq.MqClientService;
+import com.example.pacs008.service.mq.MqPriority;
+import com.example.pacs008.service.outbox.OutboxLog;
+import com.example.pacs008.service.validation.PaymentRequestValidator;
+import com.example.pacs008.util.OverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Agrega pagamentos do mesmo pagador em uma única pacs.008 com várias transações
+ * (CdtTrfTxInf), para que o AppHdr, o GrpHdr, a assinatura RSA e o put no MQ sejam pagos
+ * uma vez por grupo e não uma vez por pagamento.
+ *
+ * <p>As solicitações são acumuladas por (ISPB pagador, método de liquidação, nível de
+ * serviço) até
+ * {@code max-transactions} transações, até o tamanho estimado de {@code max-message-kb}
+ * ou até {@code linger-ms} após a primeira, o que ocorrer antes. O grupo é então assinado
+ * em uma thread de trabalho e publicado uma única vez no MQ (ou gravado na outbox, se
+ * habilitada), na faixa de despacho do nível de serviço. Cada solicitante recebe apenas o BizMsgIdr do grupo e o EndToEndId da sua
+ * transação ({@link AggregatedPayment}): o XML, que contém os dados dos demais pagamentos,
+ * não é devolvido. Um grupo com uma única transação gera uma mensagem comum.
+ *
+ * <p>A fila de grupos aguardando assinatura é limitada ({@code queue-capacity}): com ela
+ * cheia, novas solicitações são recusadas com {@link OverloadedException} (503 com
+ * {@code Retry-After}) em vez de acumularem memória e latência.
+ *
+ * <p>Ativo apenas com {@code pix.pacs008.aggregation.enabled=true}, onde o catálogo do SPI
+ * permitir mensagens com mais de uma transação.
+ */
+@Component
+@ConditionalOnProperty(name = "pix.pacs008.aggregation.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class Pacs008Aggregator {
+
+    // Estimativa do XML de uma transação sem os campos variáveis (elementos, namespaces e códigos fixos)
+    private static final int TRANSACTION_OVERHEAD_BYTES = 1500;
+    // Estimativa do AppHdr, do GrpHdr e da assinatura
+    private static final int ENVELOPE_OVERHEAD_BYTES = 4096;
+
+    private final Pacs008Service pacs008Service;
+    private final PaymentRequestValidator validator;
+    private final MqClientService mqClientService;
+    private final PaymentCorrelationIndex correlationIndex;
+    // Presente apenas com pix.outbox.enabled=true
+    private final Optional<OutboxLog> outboxLog;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${pix.pacs008.aggregation.max-transactions:20}")
+    private int maxTransactions;
+    @Value("${pix.pacs008.aggregation.max-message-kb:100}")
+    private int maxMessageKb;
+    @Value("${pix.pacs008.aggregation.linger-ms:5}")
+    private long lingerMs;
+    // Threads de construção/assinatura dos grupos (0 = número de processadores)
+    @Value("${pix.pacs008.aggregation.workers:0}")
+    private int workers;
+    // Grupos aguardando assinatura (0 = 16x o número de threads)
+    @Value("${pix.pacs008.aggregation.queue-capacity:0}")
+    private int queueCapacity;
+    @Value("${ibm.mq.outbound-queue}")
+    private String outboundQueue;
+
+    private final Map<GroupKey, Group> groups = new ConcurrentHashMap<>();
+    private ScheduledExecutorService lingerTimer;
+    private ThreadPoolExecutor executor;
+    private DistributionSummary transactionsPerMessage;
+    private Counter flushedBySize;
+    private Counter flushedByLinger;
+    private Counter rejected;
+
+    @PostConstruct
+    public void init() {
+        int threads = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        int capacity = queueCapacity > 0 ? queueCapacity : threads * 16;
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(capacity), r -> {
+            Thread t = new Thread(r, "pacs008-aggregator-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        lingerTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pacs008-aggregator-linger");
+            t.setDaemon(true);
+            return t;
+        });
+
+        transactionsPerMessage = DistributionSummary.builder("pix.aggregation.transactions")
+                .description("Transações por mensagem pacs.008 agregada")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        flushedBySize = flushCounter("size");
+        flushedByLinger = flushCounter("linger");
+        rejected = Counter.builder("pix.aggregation.rejected")
+                .description("Solicitações recusadas com a fila de mensagens agregadas cheia")
+                .register(meterRegistry);
+        log.info("Agregação de pacs.008 ativa: até {} transações, {} KB ou {} ms por mensagem.",
+                maxTransactions, maxMessageKb, lingerMs);
+    }
+
+    /**
+     * Assina e publica os grupos ainda pendentes antes de encerrar.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        lingerTimer.shutdownNow();
+        for (GroupKey key : groups.keySet()) {
+            Group group = groups.remove(key);
+            if (group != null) {
+                execute(group);
+            }
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Inclui a solicitação no grupo do seu pagador.
+     *
+     * @param request A solicitação de pagamento.
+     * @return Um future concluído quando o grupo for assinado e publicado (ou gravado na outbox).
+     * @throws com.example.pacs008.service.validation.PaymentValidationException se a solicitação
+     *         for inválida (verificado antes da inclusão, para não afetar o restante do grupo).
+     * @throws OverloadedException se a fila de grupos aguardando assinatura estiver cheia.
+     */
+    public CompletableFuture<AggregatedPayment> submit(PaymentRequestDto request) {
+        validator.validate(request);
+        if (executor.getQueue().remainingCapacity() == 0) {
+            rejected.increment();
+            throw new OverloadedException("Fila de mensagens agregadas cheia; tente novamente.", 1);
+        }
+        Pending pending = new Pending(request, new CompletableFuture<>());
+        int size = estimatedSize(request);
+        GroupKey key = new GroupKey(request.getPayerIspb(), Pacs008Service.SETTLEMENT_METHOD, Pacs008Service.serviceLevel(request));
+
+        Group[] full = new Group[1];
+        Group[] ready = new Group[1];
+        Group[] created = new Group[1];
+        groups.compute(key, (k, group) -> {
+            if (group != null && group.estimatedBytes + size > maxMessageKb * 1024L) {
+                // A nova transação não cabe: o grupo atual é fechado e ela inicia o próximo
+                full[0] = group;
+                group = null;
+            }
+            if (group == null) {
+                group = new Group(k.priority());
+                created[0] = group;
+            }
+            group.pending.add(pending);
+            group.estimatedBytes += size;
+            if (group.pending.size() >= maxTransactions) {
+                ready[0] = group;
+                return null;
+            }
+            return group;
+        });
+        // Despachados fora do compute: uma recusa do executor conclui futures de outros solicitantes
+        if (full[0] != null) {
+            dispatch(full[0], flushedBySize);
+        }
+        if (ready[0] != null) {
+            dispatch(ready[0], flushedBySize);
+        }
+        if (created[0] != null && created[0] != ready[0]) {
+            // Agendado fora do compute: o grupo já está no mapa quando o linger expirar
+            Group group = created[0];
+            group.lingerTask = lingerTimer.schedule(() -> expire(key, group), lingerMs, TimeUnit.MILLISECONDS);
+        }
+        return pending.result();
+    }
+
+    /**
+     * Inclui a solicitação no grupo do seu pagador e aguarda a assinatura e a publicação.
+     *
+     * @return Os identificadores da transação da solicitação na mensagem publicada.
+     * @throws Exception a mesma exceção que a geração individual ou a publicação lançaria.
+     */
+    public AggregatedPayment submitAndWait(PaymentRequestDto request) throws Exception {
+        try {
+            return submit(request).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void expire(GroupKey key, Group group) {
+        if (groups.remove(key, group)) {
+            dispatch(group, flushedByLinger);
+        }
+    }
+
+    private void dispatch(Group group, Counter reason) {
+        ScheduledFuture<?> lingerTask = group.lingerTask;
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+        }
+        reason.increment();
+        execute(group);
+    }
+
+    private void execute(Group group) {
+        try {
+            executor.execute(() -> signAndPublish(group));
+        } catch (RejectedExecutionException e) {
+            // Fila cheia entre a verificação em submit e o despacho, ou aplicação em encerramento
+            rejected.increment(group.pending.size());
+            OverloadedException overloaded = new OverloadedException("Fila de mensagens agregadas cheia; tente novamente.", 1, e);
+            for (Pending p : group.pending) {
+                p.result().completeExceptionally(overloaded);
+            }
+        }
+    }
+
+    private void signAndPublish(Group group) {
+        List<Pending> pending = group.pending;
+        transactionsPerMessage.record(pending.size());
+        List<SignedPacs008Message> messages;
+        try {
+            if (pending.size() == 1) {
+                messages = List.of(pacs008Service.createSignedPacs008Message(pending.get(0).request()));
+            } else {
+                List<PaymentRequestDto> requests = new ArrayList<>(pending.size());
+                for (Pending p : pending) {
+                    requests.add(p.request());
+                }
+                messages = pacs008Service.createSignedPacs008Message(requests);
+            }
+        } catch (Exception e) {
+            log.error("Falha ao gerar a mensagem agregada com {} transações: {}", pending.size(), e.getMessage(), e);
+            for (Pending p : pending) {
+                p.result().completeExceptionally(e);
+            }
+            return;
+        }
+
+        // Todas as transações estão no mesmo XML: uma única publicação para o grupo
+        CompletableFuture<?> published;
+        try {
+            published = publish(messages.get(0).xml(), group.priority);
+        } catch (RuntimeException e) {
+            published = CompletableFuture.failedFuture(e);
+        }
+        published.whenComplete((ignored, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause != null) {
+                log.error("Falha ao publicar a mensagem agregada {} com {} transações: {}",
+                        messages.get(0).bizMsgIdr(), pending.size(), cause.getMessage());
+            }
+            for (int i = 0; i < pending.size(); i++) {
+                SignedPacs008Message message = messages.get(i);
+                if (cause == null) {
+                    pending.get(i).result().complete(new AggregatedPayment(message.bizMsgIdr(), message.endToEndId()));
+                } else {
+                    // A mensagem não foi enviada: nenhuma resposta do SPI deve ser aguardada
+                    correlationIndex.complete(message.endToEndId());
+                    pending.get(i).result().completeExceptionally(cause);
+                }
+            }
+        });
+    }
+
+    private CompletableFuture<?> publish(byte[] xml, MqPriority priority) {
+        if (outboxLog.isPresent()) {
+            return outboxLog.get().append(outboundQueue, xml, priority);
+        }
+        return mqClientService.publishAsync(xml, outboundQueue, priority);
+    }
+
+    private static int estimatedSize(PaymentRequestDto request) {
+        int chars = length(request.getPayerName()) + length(request.getPayerCpfCnpj()) + length(request.getPayerAccount())
+                + length(request.getReceiverCpfCnpj()) + length(request.getReceiverAccount())
+                + length(request.getReceiverPixKey()) + length(request.getDescription());
+        // Pior caso: 3 bytes por caractere em UTF-8
+        return TRANSACTION_OVERHEAD_BYTES + chars * 3;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private Counter flushCounter(String reason) {
+        return Counter.builder("pix.aggregation.flushes")
+                .description("Mensagens agregadas fechadas, por motivo")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private record GroupKey(String payerIspb, String settlementMethod, PrtrySvcLvlCode serviceLevel) {
+
+        /** A faixa de despacho do grupo: a do {@code InstrPrty} gerado para o nível de serviço. */
+        MqPriority priority() {
+            return serviceLevel == PrtrySvcLvlCode.PAGPRI ? MqPriority.HIGH : MqPriority.NORMAL;
+        }
+    }
+
+    private record Pending(PaymentRequestDto request, CompletableFuture<AggregatedPayment> result) {
+    }
+
+    /**
+     * Transações acumuladas de um pagador. Alterado apenas dentro de {@code groups.compute}.
+     */
+    private static final class Group {
+        private final MqPriority priority;
+        private final List<Pending> pending = new ArrayList<>();
+        private long estimatedBytes = ENVELOPE_OVERHEAD_BYTES;
+        private volatile ScheduledFuture<?> lingerTask;
+
+        private Group(MqPriority priority) {
+            this.priority = priority;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.pacs008.service.batch;
+
+import com.example.pacs008.dto.BatchItemResultDto;
+import com.example.pacs008.dto.PaymentRequestDto;
+import com.example.pacs008.service.Pacs008Service;
+import com.example.pacs008.service.SignedPacs008Message;
+import com.example.pacs008.service.aggregation.AggregatedPayment;
+import com.example.pacs008.service.aggregation.Pacs008Aggregator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processa lotes de solicitações de pagamento (array JSON ou NDJSON).
+ *
+ * <p>A construção e a assinatura de cada item são distribuídas em um pool de threads
+ * limitado ao número de processadores (a assinatura RSA é limitada por CPU). Os resultados
+ * são escritos como NDJSON na mesma ordem da entrada, à medida que ficam prontos.
+ * Uma janela de itens em andamento limita a memória e aplica contrapressão à leitura
+ * da requisição. Um item inválido gera apenas um resultado de erro e não interrompe o lote.
+ *
+ * <p>Com a agregação habilitada ({@code pix.pacs008.aggregation.enabled=true}), os itens do
+ * mesmo pagador são reunidos em mensagens com várias transações ({@link Pacs008Aggregator}),
+ * publicadas pelo próprio agregador: cada item recebe o status {@code PUBLISHED} com os seus
+ * identificadores, sem o XML do grupo.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BatchPaymentService {
+
+    private static final byte[] NEW_LINE = {'\n'};
+
+    private final Pacs008Service pacs008Service;
+    private final ObjectMapper objectMapper;
+    // Presente apenas com pix.pacs008.aggregation.enabled=true
+    private final Optional<Pacs008Aggregator> aggregator;
+
+    // Threads de construção/assinatura (0 = número de processadores)
+    @Value("${pix.batch.workers:0}")
+    private int workers;
+    // Itens em andamento por lote (0 = 4x o número de threads)
+    @Value("${pix.batch.max-in-flight:0}")
+    private int maxInFlight;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        int threads = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        if (maxInFlight <= 0) {
+            maxInFlight = threads * 4;
+        }
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 64),
+                r -> {
+                    Thread t = new Thread(r, "pix-batch-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                // Fila cheia: a própria thread do lote executa o item (contrapressão)
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Lê as solicitações do lote, processa-as em paralelo e escreve os resultados em ordem.
+     *
+     * @param in  Array JSON ou NDJSON de {@link PaymentRequestDto}.
+     * @param out Destino dos resultados, um {@link BatchItemResultDto} por linha.
+     * @throws IOException se houver erro de escrita na resposta.
+     */
+    public void process(InputStream in, OutputStream out) throws IOException {
+        ObjectReader reader = objectMapper.readerFor(PaymentRequestDto.class);
+        ObjectWriter writer = objectMapper.writerFor(BatchItemResultDto.class);
+        Deque<CompletableFuture<BatchItemResultDto>> inFlight = new ArrayDeque<>(maxInFlight);
+        long index = 0;
+
+        // O MappingIterator aceita tanto um array JSON (que é desempacotado) quanto NDJSON
+        try (MappingIterator<PaymentRequestDto> items = reader.readValues(in)) {
+            while (true) {
+                PaymentRequestDto request;
+                try {
+                    if (!items.hasNextValue()) {
+                        break;
+                    }
+                    request = items.nextValue();
+                } catch (JsonMappingException e) {
+                    // Item com tipos inválidos: o iterador se ressincroniza no próximo item
+                    inFlight.add(CompletableFuture.completedFuture(BatchItemResultDto.error(index++, "Item inválido: " + e.getOriginalMessage())));
+                    writeCompleted(inFlight, writer, out, false);
+                    continue;
+                } catch (JsonProcessingException e) {
+                    // JSON malformado: não é possível localizar os próximos itens
+                    inFlight.add(CompletableFuture.completedFuture(BatchItemResultDto.error(index++, "Lote interrompido, JSON malformado: " + e.getOriginalMessage())));
+                    break;
+                }
+
+                long itemIndex = index++;
+                inFlight.add(aggregator.isPresent()
+                        ? aggregateItem(aggregator.get(), itemIndex, request)
+                        : CompletableFuture.supplyAsync(() -> processItem(itemIndex, request), executor));
+                writeCompleted(inFlight, writer, out, inFlight.size() >= maxInFlight);
+            }
+        }
+
+        while (!inFlight.isEmpty()) {
+            writeCompleted(inFlight, writer, out, true);
+        }
+        out.flush();
+    }
+
+    private BatchItemResultDto processItem(long index, PaymentRequestDto request) {
+        try {
+            SignedPacs008Message message = pacs008Service.createSignedPacs008Message(request);
+            return BatchItemResultDto.signed(index, message.bizMsgIdr(), message.endToEndId(), message.xmlAsString());
+        } catch (Exception e) {
+            return errorResult(index, e);
+        }
+    }
+
+    /**
+     * Inclui o item em uma mensagem agregada; o resultado fica pronto quando o grupo do
+     * pagador for assinado e publicado, sem ocupar uma thread do pool durante a espera.
+     */
+    private CompletableFuture<BatchItemResultDto> aggregateItem(Pacs008Aggregator aggregator, long index, PaymentRequestDto request) {
+        CompletableFuture<AggregatedPayment> published;
+        try {
+            published = aggregator.submit(request);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(errorResult(index, e));
+        }
+        return published.handle((payment, error) -> payment != null
+                ? BatchItemResultDto.published(index, payment.bizMsgIdr(), payment.endToEndId())
+                : errorResult(index, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error));
+    }
+
+    private static BatchItemResultDto errorResult(long index, Throwable e) {
+        log.debug("Falha ao processar o item {} do lote: {}", index, e.getMessage(), e);
+        return BatchItemResultDto.error(index, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+    }
+
+    /**
+     * Escreve, em ordem, os resultados já concluídos do início da janela.
+     *
+     * @param waitForHead se verdadeiro, aguarda a conclusão do primeiro item da janela.
+     */
+    private void writeCompleted(Deque<CompletableFuture<BatchItemResultDto>> inFlight, ObjectWriter writer,
+                                OutputStream out, boolean waitForHead) throws IOException {
+        boolean wrote = false;
+        while (!inFlight.isEmpty() && (waitForHead || inFlight.peekFirst().isDone())) {
+            BatchItemResultDto result = await(inFlight.pollFirst());
+            out.write(writer.writeValueAsBytes(result));
+            out.write(NEW_LINE);
+            wrote = true;
+            waitForHead = false;
+        }
+        if (wrote) {
+            out.flush();
+        }
+    }
+
+    private static BatchItemResultDto await(CompletableFuture<BatchItemResultDto> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Processamento do lote interrompido.", e);
+        } catch (ExecutionException e) {
+            // processItem não lança exceções; mantido por segurança
+            throw new IOException("Falha inesperada no processamento do lote.", e.getCause());
+        }
+    }
+}
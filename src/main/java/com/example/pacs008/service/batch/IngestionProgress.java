@@ -0,0 +1,328 @@
+package com.example.pacs008.service.batch;
+
+import com.example.pacs008.service.SignedPacs008Message;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Progresso da ingestão de um arquivo de pagamentos, em um arquivo de apenas-acréscimo
+ * com três tipos de linha:
+ * <ul>
+ *     <li>{@code S \t número \t BizMsgIdr \t EndToEndId \t XML em Base64}: a mensagem
+ *     assinada da solicitação, confirmada em disco antes da publicação;</li>
+ *     <li>{@code P \t número \t BizMsgIdr \t EndToEndId}: a solicitação foi publicada
+ *     (gravada logo após a confirmação, em qualquer ordem);</li>
+ *     <li>{@code C \t posição \t solicitações \t tamanho dos resultados}: ponto de retomada,
+ *     gravado depois que todos os resultados até a posição foram escritos e confirmados em
+ *     disco.</li>
+ * </ul>
+ *
+ * <p>Na retomada, a leitura recomeça no último ponto de retomada e o arquivo de resultados
+ * é truncado no tamanho correspondente. As solicitações posteriores a esse ponto que já
+ * foram publicadas (linhas {@code P}) não são enviadas novamente: o resultado é reescrito a
+ * partir do registro. As que foram assinadas mas cuja publicação não foi registrada (linha
+ * {@code S} sem {@code P}) podem ter chegado ao MQ: a mesma mensagem, com os mesmos
+ * identificadores, é reenviada, para que o SPI a reconheça como duplicada em vez de receber
+ * um segundo pagamento com outro BizMsgIdr.
+ *
+ * <p>As linhas {@code S} são confirmadas em disco em grupo: quem grava recebe um future, e um
+ * único {@code force()} confirma todas as linhas gravadas até ali, pelas várias threads de
+ * assinatura, antes de concluir os seus futures. A cada ponto de retomada o arquivo é
+ * compactado: ele é reescrito apenas com a linha {@code C} e as linhas {@code S}/{@code P}
+ * das solicitações posteriores a ela (no máximo a janela em andamento), de modo que o
+ * tamanho não cresce com a quantidade de solicitações do arquivo de entrada.
+ */
+final class IngestionProgress implements Closeable {
+
+    private static final char FIELD_SEPARATOR = '\t';
+
+    private final Path file;
+    private final Checkpoint checkpoint;
+    // Publicadas após o último ponto de retomada: número -> {BizMsgIdr, EndToEndId}
+    private final Map<Long, String[]> published;
+    // Assinadas após o último ponto de retomada, sem publicação registrada
+    private final Map<Long, SignedPacs008Message> signed;
+
+    // lock protege o arquivo, as linhas e a sequência das linhas S; forceLock, a confirmação em disco
+    private final Object lock = new Object();
+    private final ReentrantLock forceLock = new ReentrantLock();
+    private FileChannel channel;
+    // Última linha S/P de cada solicitação posterior ao último ponto de retomada, mantida na compactação
+    private final TreeMap<Long, String> lines = new TreeMap<>();
+    private final ArrayDeque<DurabilityWaiter> waiters = new ArrayDeque<>();
+    private volatile long writtenSequence;
+    // Linhas S com o resultado da confirmação já entregue (com sucesso ou falha)
+    private volatile long settledSequence;
+
+    private IngestionProgress(Path file, FileChannel channel, Checkpoint checkpoint, Map<Long, String[]> published,
+                              Map<Long, SignedPacs008Message> signed) {
+        this.file = file;
+        this.channel = channel;
+        this.checkpoint = checkpoint;
+        this.published = published;
+        this.signed = signed;
+        // Mantidas na próxima compactação enquanto não forem alcançadas pelo ponto de retomada
+        published.forEach((number, ids) -> lines.put(number, publishedLine(number, ids[0], ids[1])));
+        signed.forEach((number, message) -> lines.put(number, signedLine(number, message)));
+    }
+
+    /**
+     * Ponto de retomada.
+     *
+     * @param inputOffset Posição no arquivo de entrada logo após a última solicitação concluída.
+     * @param rows        Quantidade de solicitações concluídas.
+     * @param outputSize  Tamanho do arquivo de resultados correspondente.
+     */
+    record Checkpoint(long inputOffset, long rows, long outputSize) {
+        static final Checkpoint START = new Checkpoint(0, 0, 0);
+    }
+
+    /**
+     * Abre (ou cria) o registro de progresso e recupera o último ponto de retomada.
+     */
+    static IngestionProgress open(Path file) throws IOException {
+        Checkpoint checkpoint = Checkpoint.START;
+        Map<Long, String[]> published = new HashMap<>();
+        Map<Long, SignedPacs008Message> signed = new HashMap<>();
+        if (Files.exists(file)) {
+            // Uma última linha sem quebra de linha foi interrompida durante a gravação
+            boolean lastLineComplete = endsWithNewLine(file);
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line = reader.readLine();
+                for (String next; line != null; line = next) {
+                    next = reader.readLine();
+                    if (next == null && !lastLineComplete) {
+                        break;
+                    }
+                    String[] fields = line.split(String.valueOf(FIELD_SEPARATOR), -1);
+                    try {
+                        if (fields.length == 4 && fields[0].equals("C")) {
+                            checkpoint = new Checkpoint(Long.parseLong(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+                        } else if (fields.length == 4 && fields[0].equals("P")) {
+                            published.put(Long.parseLong(fields[1]), new String[]{fields[2], fields[3]});
+                        } else if (fields.length == 5 && fields[0].equals("S")) {
+                            signed.put(Long.parseLong(fields[1]),
+                                    new SignedPacs008Message(fields[2], fields[3], Base64.getDecoder().decode(fields[4])));
+                        }
+                        // Qualquer outra linha é ignorada
+                    } catch (IllegalArgumentException e) {
+                        // Idem (inclui NumberFormatException e Base64 inválido)
+                    }
+                }
+            }
+            long rows = checkpoint.rows();
+            published.keySet().removeIf(number -> number < rows);
+            signed.keySet().removeIf(number -> number < rows || published.containsKey(number));
+        }
+        // READ e APPEND não podem ser combinados: as escritas começam no fim do arquivo
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        IngestionProgress progress = new IngestionProgress(file, channel, checkpoint, published, signed);
+        if (!endsWithNewLine(channel)) {
+            // Linha interrompida: as próximas começam em uma nova linha
+            write(channel, "\n");
+        }
+        return progress;
+    }
+
+    private static boolean endsWithNewLine(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return endsWithNewLine(channel);
+        }
+    }
+
+    /** Se o arquivo está vazio ou termina com uma quebra de linha. */
+    private static boolean endsWithNewLine(FileChannel channel) throws IOException {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        return channel.size() == 0 || channel.read(last, channel.size() - 1) != 1 || last.get(0) == '\n';
+    }
+
+    Checkpoint checkpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Os identificadores da solicitação, se ela já foi publicada antes da retomada.
+     */
+    String[] publishedBefore(long number) {
+        return published.remove(number);
+    }
+
+    /**
+     * A mensagem assinada antes da retomada, se a publicação dela não foi registrada.
+     */
+    SignedPacs008Message signedBefore(long number) {
+        return signed.remove(number);
+    }
+
+    /**
+     * Registra a mensagem assinada de uma solicitação. A publicação deve esperar o future:
+     * ele é concluído quando a linha estiver confirmada em disco, para que uma retomada
+     * reenvie os mesmos bytes. Pode ser chamado por várias threads; a thread que encontra a
+     * confirmação livre a faz para todas as linhas gravadas até ali.
+     *
+     * @return Um future concluído quando a linha estiver em disco, ou com a falha de gravação.
+     */
+    CompletableFuture<Void> markSigned(long number, SignedPacs008Message message) {
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        try {
+            synchronized (lock) {
+                append(number, signedLine(number, message));
+                waiters.add(new DurabilityWaiter(++writtenSequence, durable));
+            }
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        flush();
+        return durable;
+    }
+
+    /**
+     * Registra a publicação de uma solicitação. Pode ser chamado por várias threads.
+     */
+    void markPublished(long number, String bizMsgIdr, String endToEndId) throws IOException {
+        synchronized (lock) {
+            append(number, publishedLine(number, bizMsgIdr, endToEndId));
+        }
+    }
+
+    /**
+     * Registra um ponto de retomada e compacta o arquivo: ele é substituído por um novo, com
+     * a linha {@code C} e as linhas das solicitações posteriores a ela, confirmado em disco
+     * antes da troca. Os resultados correspondentes devem ter sido confirmados antes. As
+     * linhas {@code S} pendentes de confirmação são confirmadas pela própria cópia.
+     */
+    void checkpoint(Checkpoint checkpoint) throws IOException {
+        forceLock.lock();
+        try {
+            long target;
+            synchronized (lock) {
+                lines.headMap(checkpoint.rows()).clear();
+                Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+                try (BufferedWriter writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+                    writer.write(checkpointLine(checkpoint));
+                    for (String line : lines.values()) {
+                        writer.write(line);
+                    }
+                }
+                try (FileChannel compactedChannel = FileChannel.open(compacted, StandardOpenOption.WRITE)) {
+                    compactedChannel.force(false);
+                }
+                Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                channel.close();
+                channel = FileChannel.open(file, StandardOpenOption.WRITE);
+                channel.position(channel.size());
+                target = writtenSequence;
+            }
+            settle(target, null);
+        } finally {
+            forceLock.unlock();
+        }
+        // Linhas S gravadas enquanto a confirmação estava com a compactação
+        flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            channel.close();
+        }
+        // Gravadas e ainda não confirmadas: falham em vez de deixar quem gravou esperando
+        settle(Long.MAX_VALUE, new IOException("Registro de progresso encerrado."));
+    }
+
+    /**
+     * Confirma em disco as linhas S gravadas e conclui os futures correspondentes. Apenas
+     * uma thread confirma por vez; as demais retornam e as suas linhas entram nessa
+     * confirmação ou na seguinte, feita por quem termina a atual (a condição do laço é
+     * reavaliada depois de liberar {@code forceLock}).
+     */
+    private void flush() {
+        while (settledSequence < writtenSequence && forceLock.tryLock()) {
+            try {
+                long target;
+                FileChannel current;
+                synchronized (lock) {
+                    target = writtenSequence;
+                    current = channel;
+                }
+                IOException failure = null;
+                try {
+                    current.force(false);
+                } catch (IOException e) {
+                    failure = e;
+                }
+                settle(target, failure);
+            } finally {
+                forceLock.unlock();
+            }
+        }
+    }
+
+    private void settle(long upToSequence, IOException failure) {
+        List<DurabilityWaiter> settled = new ArrayList<>();
+        synchronized (lock) {
+            while (!waiters.isEmpty() && waiters.peek().sequence() <= upToSequence) {
+                settled.add(waiters.poll());
+            }
+            settledSequence = Math.max(settledSequence, Math.min(upToSequence, writtenSequence));
+        }
+        for (DurabilityWaiter waiter : settled) {
+            if (failure == null) {
+                waiter.result().complete(null);
+            } else {
+                waiter.result().completeExceptionally(failure);
+            }
+        }
+    }
+
+    /** Grava a linha e a guarda para a compactação. Chamado com {@code lock}. */
+    private void append(long number, String line) throws IOException {
+        write(channel, line);
+        lines.put(number, line);
+    }
+
+    private static String signedLine(long number, SignedPacs008Message message) {
+        return "S" + FIELD_SEPARATOR + number + FIELD_SEPARATOR + message.bizMsgIdr() + FIELD_SEPARATOR
+                + message.endToEndId() + FIELD_SEPARATOR + Base64.getEncoder().encodeToString(message.xml()) + '\n';
+    }
+
+    private static String publishedLine(long number, String bizMsgIdr, String endToEndId) {
+        return "P" + FIELD_SEPARATOR + number + FIELD_SEPARATOR + bizMsgIdr + FIELD_SEPARATOR + endToEndId + '\n';
+    }
+
+    private static String checkpointLine(Checkpoint checkpoint) {
+        return "C" + FIELD_SEPARATOR + checkpoint.inputOffset() + FIELD_SEPARATOR + checkpoint.rows()
+                + FIELD_SEPARATOR + checkpoint.outputSize() + '\n';
+    }
+
+    /** Grava uma linha inteira (com {@code lock}, para que escritas concorrentes não se intercalem). */
+    private static void write(FileChannel channel, String line) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private record DurabilityWaiter(long sequence, CompletableFuture<Void> result) {
+    }
+}
@@ -0,0 +1,417 @@
+package com.example.pacs008.service.batch;
+
+import com.example.pacs008.dto.BatchItemResultDto;
+import com.example.pacs008.dto.PaymentRequestDto;
+import com.example.pacs008.service.Pacs008Service;
+import com.example.pacs008.service.SignedPacs008Message;
+import com.example.pacs008.service.batch.IngestionProgress.Checkpoint;
+import com.example.pacs008.service.batch.PaymentFileReader.Format;
+import com.example.pacs008.service.batch.PaymentFileReader.Row;
+import com.example.pacs008.service.mq.MqClientService;
+import com.example.pacs008.service.mq.MqPriority;
+import com.example.pacs008.service.outbox.OutboxLog;
+import com.example.pacs008.util.OverloadedException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Ingestão de arquivos de pagamento do back office (NDJSON ou CSV, ver {@link PaymentFileReader}).
+ *
+ * <p>O diretório {@code input-directory} é verificado a cada {@code poll-interval-ms}. Cada
+ * arquivo é lido de forma incremental e suas solicitações passam por três etapas limitadas:
+ * construção e assinatura em um pool de threads, publicação no MQ (ou na outbox, se
+ * habilitada) limitada por {@code pix.limits.mq.*}, e escrita dos resultados, em ordem, em
+ * {@code output-directory/<arquivo>.results.ndjson}. Uma janela de {@code max-in-flight}
+ * solicitações em andamento aplica contrapressão à leitura. Ao final, o arquivo é movido
+ * para {@code processed-directory}.
+ *
+ * <p>O progresso é registrado em {@code output-directory/<arquivo>.progress}
+ * ({@link IngestionProgress}): após uma parada, a ingestão é retomada a partir do último
+ * ponto de retomada, sem reenviar as solicitações já publicadas. Cada mensagem assinada é
+ * confirmada nesse registro antes de ser publicada; se a publicação não chegou a ser
+ * registrada, a retomada reenvia a mesma mensagem em vez de assinar uma nova, com outros
+ * identificadores.
+ *
+ * <p>Os arquivos devem ser colocados no diretório já completos (ex: gravados com outro nome
+ * e renomeados); arquivos iniciados por ponto são ignorados.
+ */
+@Service
+@ConditionalOnProperty(name = "pix.ingest.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentFileIngestionService {
+
+    private static final byte[] NEW_LINE = {'\n'};
+    private static final String RESULTS_SUFFIX = ".results.ndjson";
+    private static final String PROGRESS_SUFFIX = ".progress";
+
+    private final Pacs008Service pacs008Service;
+    private final MqClientService mqClientService;
+    // Presente apenas com pix.outbox.enabled=true
+    private final Optional<OutboxLog> outboxLog;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ibm.mq.outbound-queue}")
+    private String outboundQueue;
+    @Value("${pix.ingest.input-directory:./data/ingest/in}")
+    private String inputDirectory;
+    @Value("${pix.ingest.output-directory:./data/ingest/out}")
+    private String outputDirectory;
+    @Value("${pix.ingest.processed-directory:./data/ingest/processed}")
+    private String processedDirectory;
+    @Value("${pix.ingest.poll-interval-ms:5000}")
+    private long pollIntervalMs;
+    // Threads de construção/assinatura (0 = número de processadores)
+    @Value("${pix.ingest.workers:0}")
+    private int workers;
+    // Solicitações em andamento (0 = 4x o número de threads)
+    @Value("${pix.ingest.max-in-flight:0}")
+    private int maxInFlight;
+    @Value("${pix.ingest.chunk-kb:1024}")
+    private int chunkKb;
+    // Solicitações entre pontos de retomada
+    @Value("${pix.ingest.checkpoint-interval:1000}")
+    private int checkpointInterval;
+    @Value("${pix.ingest.csv-delimiter:,}")
+    private char csvDelimiter;
+
+    private Path inputDir;
+    private Path outputDir;
+    private Path processedDir;
+    private ObjectReader requestReader;
+    private ObjectWriter resultWriter;
+    private ThreadPoolExecutor executor;
+    private ScheduledExecutorService scanner;
+    private volatile boolean running;
+
+    private Counter publishedRows;
+    private Counter failedRows;
+    private Counter resumedRows;
+
+    @PostConstruct
+    public void init() throws IOException {
+        inputDir = Files.createDirectories(Path.of(inputDirectory));
+        outputDir = Files.createDirectories(Path.of(outputDirectory));
+        processedDir = Files.createDirectories(Path.of(processedDirectory));
+        requestReader = objectMapper.readerFor(PaymentRequestDto.class);
+        resultWriter = objectMapper.writerFor(BatchItemResultDto.class);
+
+        int threads = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        if (maxInFlight <= 0) {
+            maxInFlight = threads * 4;
+        }
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 64),
+                r -> {
+                    Thread t = new Thread(r, "pix-ingest-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                // Fila cheia: a thread de leitura executa a solicitação (contrapressão)
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        publishedRows = rowCounter("published");
+        failedRows = rowCounter("error");
+        resumedRows = rowCounter("resumed");
+
+        running = true;
+        scanner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "payment-file-scanner");
+            t.setDaemon(true);
+            return t;
+        });
+        scanner.scheduleWithFixedDelay(this::scan, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Ingestão de arquivos de pagamento ativa em {}.", inputDir.toAbsolutePath());
+    }
+
+    /**
+     * Interrompe a leitura, aguarda as solicitações em andamento e registra o ponto de retomada.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        scanner.shutdown();
+        scanner.awaitTermination(30, TimeUnit.SECONDS);
+        executor.shutdown();
+    }
+
+    private void scan() {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(inputDir)) {
+            files = listing.filter(file -> !file.getFileName().toString().startsWith(".")
+                            && Format.of(file) != null && Files.isRegularFile(file))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            log.error("Falha ao listar o diretório de ingestão {}: {}", inputDir, e.getMessage());
+            return;
+        }
+        for (Path file : files) {
+            if (!running) {
+                return;
+            }
+            try {
+                if (ingest(file)) {
+                    Files.move(file, processedDir.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                    Files.deleteIfExists(outputDir.resolve(file.getFileName() + PROGRESS_SUFFIX));
+                }
+            } catch (Exception e) {
+                log.error("Falha na ingestão do arquivo {}; ela será retomada na próxima verificação: {}", file, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Processa (ou retoma) um arquivo de pagamentos.
+     *
+     * @param file O arquivo de pagamentos.
+     * @return true se o arquivo foi processado até o fim; false se a ingestão foi interrompida.
+     * @throws IOException se houver erro de leitura, de escrita dos resultados ou do progresso.
+     */
+    public boolean ingest(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        long start = System.nanoTime();
+        try (IngestionProgress progress = IngestionProgress.open(outputDir.resolve(name + PROGRESS_SUFFIX));
+             FileChannel results = FileChannel.open(outputDir.resolve(name + RESULTS_SUFFIX),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            Checkpoint checkpoint = progress.checkpoint();
+            // Resultados escritos após o último ponto de retomada são refeitos
+            results.truncate(checkpoint.outputSize());
+            results.position(checkpoint.outputSize());
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(results), 64 * 1024);
+            if (checkpoint.rows() > 0) {
+                log.info("Retomando a ingestão de {} a partir da solicitação {}.", file, checkpoint.rows());
+            }
+
+            PaymentFileReader reader;
+            try {
+                reader = PaymentFileReader.open(file, Format.of(file), requestReader, csvDelimiter,
+                        chunkKb * 1024, checkpoint.inputOffset(), checkpoint.rows());
+            } catch (IllegalArgumentException e) {
+                out.write(resultWriter.writeValueAsBytes(BatchItemResultDto.error(0, "Arquivo inválido: " + e.getMessage())));
+                out.write(NEW_LINE);
+                out.flush();
+                log.warn("Arquivo de pagamentos {} inválido: {}", file, e.getMessage());
+                return true;
+            }
+
+            Window window = new Window(progress, results, out, checkpoint);
+            boolean completed;
+            try (reader) {
+                completed = process(reader, window);
+            }
+            window.checkpoint();
+            if (completed) {
+                log.info("Arquivo {} processado: {} solicitações em {} ms.", file, window.rows,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } else {
+                log.info("Ingestão de {} interrompida na solicitação {}; será retomada na próxima inicialização.", file, window.rows);
+            }
+            return completed;
+        }
+    }
+
+    private boolean process(PaymentFileReader reader, Window window) throws IOException {
+        Deque<InFlight> inFlight = new ArrayDeque<>(maxInFlight);
+        boolean completed = false;
+        while (running) {
+            Row row = reader.next();
+            if (row == null) {
+                completed = true;
+                break;
+            }
+            inFlight.add(new InFlight(row, submit(row, window.progress)));
+            writeCompleted(inFlight, window, inFlight.size() >= maxInFlight);
+        }
+        while (!inFlight.isEmpty()) {
+            writeCompleted(inFlight, window, true);
+        }
+        return completed;
+    }
+
+    private CompletableFuture<BatchItemResultDto> submit(Row row, IngestionProgress progress) {
+        long number = row.number();
+        if (row.error() != null) {
+            return CompletableFuture.completedFuture(BatchItemResultDto.error(number, row.error()));
+        }
+        String[] ids = progress.publishedBefore(number);
+        if (ids != null) {
+            // Publicada antes da parada: não é reenviada
+            resumedRows.increment();
+            return CompletableFuture.completedFuture(BatchItemResultDto.published(number, ids[0], ids[1]));
+        }
+        SignedPacs008Message signedBefore = progress.signedBefore(number);
+        CompletableFuture<SignedPacs008Message> signed;
+        if (signedBefore != null) {
+            // Assinada antes da parada, talvez publicada: reenvia os mesmos bytes
+            resumedRows.increment();
+            signed = CompletableFuture.completedFuture(signedBefore);
+        } else {
+            // Publicada só depois de a linha S estar em disco (confirmação em grupo com as demais)
+            signed = CompletableFuture.supplyAsync(() -> sign(row.request()), executor)
+                    .thenCompose(message -> progress.markSigned(number, message).thenApply(durable -> message));
+        }
+        return signed
+                .thenCompose(message -> publish(message).thenApply(ignored -> {
+                    try {
+                        progress.markPublished(number, message.bizMsgIdr(), message.endToEndId());
+                    } catch (IOException e) {
+                        // A mensagem foi publicada: o resultado é PUBLISHED mesmo sem o registro
+                        log.error("Falha ao registrar a publicação da solicitação {}: {}", number, e.getMessage());
+                    }
+                    return BatchItemResultDto.published(number, message.bizMsgIdr(), message.endToEndId());
+                }))
+                .exceptionally(error -> errorResult(number, error));
+    }
+
+    private SignedPacs008Message sign(PaymentRequestDto request) {
+        try {
+            return pacs008Service.createSignedPacs008Message(request);
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private CompletableFuture<?> publish(SignedPacs008Message message) {
+        // Carga em lote: faixa BULK, atrás dos pagamentos online, também quando entregue pela outbox
+        if (outboxLog.isPresent()) {
+            return outboxLog.get().append(outboundQueue, message.xml(), MqPriority.BULK);
+        }
+        try {
+            return mqClientService.publishAsync(message.xml(), outboundQueue, MqPriority.BULK);
+        } catch (OverloadedException e) {
+            // MQ lento ou circuito aberto: nova tentativa após o tempo sugerido, sem ocupar uma
+            // thread de assinatura durante a espera
+            if (!running) {
+                return CompletableFuture.failedFuture(e);
+            }
+            log.debug("MQ sobrecarregado; nova tentativa em {} s: {}", e.getRetryAfterSeconds(), e.getMessage());
+            Executor delayed = CompletableFuture.delayedExecutor(e.getRetryAfterSeconds(), TimeUnit.SECONDS);
+            return CompletableFuture.supplyAsync(() -> message, delayed).thenCompose(this::publish);
+        }
+    }
+
+    private static BatchItemResultDto errorResult(long number, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        log.debug("Falha ao processar a solicitação {} do arquivo: {}", number, cause.getMessage(), cause);
+        return BatchItemResultDto.error(number, cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName());
+    }
+
+    /**
+     * Escreve, em ordem, os resultados já concluídos do início da janela.
+     *
+     * @param waitForHead se verdadeiro, aguarda a conclusão do primeiro item da janela.
+     */
+    private void writeCompleted(Deque<InFlight> inFlight, Window window, boolean waitForHead) throws IOException {
+        while (!inFlight.isEmpty() && (waitForHead || inFlight.peekFirst().result().isDone())) {
+            InFlight head = inFlight.pollFirst();
+            BatchItemResultDto result = await(head.result());
+            if (BatchItemResultDto.STATUS_ERROR.equals(result.getStatus())) {
+                failedRows.increment();
+            } else {
+                publishedRows.increment();
+            }
+            window.out.write(resultWriter.writeValueAsBytes(result));
+            window.out.write(NEW_LINE);
+            window.completed(head.row());
+            waitForHead = false;
+        }
+    }
+
+    private static BatchItemResultDto await(CompletableFuture<BatchItemResultDto> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Ingestão do arquivo interrompida.", e);
+        } catch (ExecutionException e) {
+            // Os erros são convertidos em resultados; mantido por segurança
+            throw new IOException("Falha inesperada na ingestão do arquivo.", e.getCause());
+        }
+    }
+
+    private Counter rowCounter(String result) {
+        return Counter.builder("pix.ingest.rows")
+                .description("Solicitações dos arquivos de pagamento, por resultado")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private record InFlight(Row row, CompletableFuture<BatchItemResultDto> result) {
+    }
+
+    /**
+     * Resultados escritos de um arquivo e o ponto de retomada correspondente.
+     */
+    private final class Window {
+        private final IngestionProgress progress;
+        private final FileChannel results;
+        private final OutputStream out;
+        private long inputOffset;
+        private long rows;
+        private int sinceCheckpoint;
+
+        private Window(IngestionProgress progress, FileChannel results, OutputStream out, Checkpoint start) {
+            this.progress = progress;
+            this.results = results;
+            this.out = out;
+            this.inputOffset = start.inputOffset();
+            this.rows = start.rows();
+        }
+
+        private void completed(Row row) throws IOException {
+            inputOffset = row.endOffset();
+            rows = row.number() + 1;
+            if (++sinceCheckpoint >= checkpointInterval) {
+                checkpoint();
+            }
+        }
+
+        /**
+         * Confirma os resultados em disco e então registra o ponto de retomada.
+         */
+        private void checkpoint() throws IOException {
+            out.flush();
+            results.force(false);
+            progress.checkpoint(new Checkpoint(inputOffset, rows, results.position()));
+            sinceCheckpoint = 0;
+        }
+    }
+}
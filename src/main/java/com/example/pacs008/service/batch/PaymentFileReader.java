@@ -0,0 +1,353 @@
+package com.example.pacs008.service.batch;
+
+import com.example.pacs008.dto.PaymentRequestDto;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Leitor incremental de arquivos de pagamento, uma solicitação por linha: NDJSON (um
+ * {@link PaymentRequestDto} em JSON por linha) ou CSV (com cabeçalho, colunas com os nomes
+ * dos campos do DTO).
+ *
+ * <p>O arquivo é lido em blocos de {@code chunkSize} bytes por um {@link FileChannel}, e cada
+ * linha é convertida diretamente dos bytes do bloco para o DTO, sem carregar o arquivo em
+ * memória nem criar uma String por linha. Cada {@link Row} informa a posição do fim da linha
+ * no arquivo, usada como ponto de retomada.
+ *
+ * <p>Não é thread-safe. Campos CSV entre aspas podem conter o delimitador e aspas duplicadas
+ * ({@code ""}), mas não quebras de linha.
+ */
+public final class PaymentFileReader implements Closeable {
+
+    /**
+     * Formato do arquivo, definido pela extensão.
+     */
+    public enum Format {
+        NDJSON, CSV;
+
+        /** O formato correspondente à extensão do arquivo, ou null se não for suportada. */
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase();
+            if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+                return NDJSON;
+            }
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Uma linha do arquivo.
+     *
+     * @param number    Posição da solicitação no arquivo (a partir de 0, sem cabeçalho e linhas em branco).
+     * @param endOffset Posição no arquivo logo após a linha.
+     * @param request   A solicitação, ou null se a linha for inválida.
+     * @param error     O motivo da linha ser inválida, ou null.
+     */
+    public record Row(long number, long endOffset, PaymentRequestDto request, String error) {
+    }
+
+    private static final Map<String, BiConsumer<PaymentRequestDto, String>> CSV_COLUMNS = Map.ofEntries(
+            Map.entry("payerName", PaymentRequestDto::setPayerName),
+            Map.entry("payerCpfCnpj", PaymentRequestDto::setPayerCpfCnpj),
+            Map.entry("payerIspb", PaymentRequestDto::setPayerIspb),
+            Map.entry("payerAgency", PaymentRequestDto::setPayerAgency),
+            Map.entry("payerAccount", PaymentRequestDto::setPayerAccount),
+            Map.entry("payerAccountType", PaymentRequestDto::setPayerAccountType),
+            Map.entry("receiverName", PaymentRequestDto::setReceiverName),
+            Map.entry("receiverCpfCnpj", PaymentRequestDto::setReceiverCpfCnpj),
+            Map.entry("receiverIspb", PaymentRequestDto::setReceiverIspb),
+            Map.entry("receiverAgency", PaymentRequestDto::setReceiverAgency),
+            Map.entry("receiverAccount", PaymentRequestDto::setReceiverAccount),
+            Map.entry("receiverAccountType", PaymentRequestDto::setReceiverAccountType),
+            Map.entry("receiverPixKey", PaymentRequestDto::setReceiverPixKey),
+            Map.entry("amount", (request, value) -> request.setAmount(new BigDecimal(value))),
+            Map.entry("description", PaymentRequestDto::setDescription),
+            Map.entry("serviceLevel", PaymentRequestDto::setServiceLevel));
+
+    private final FileChannel channel;
+    private final Format format;
+    private final ObjectReader jsonReader;
+    private final byte csvDelimiter;
+    // Setter de cada coluna do CSV (null para colunas desconhecidas, que são ignoradas)
+    private BiConsumer<PaymentRequestDto, String>[] columns;
+    private String[] columnNames;
+
+    private ByteBuffer buffer;
+    // Posição no arquivo do primeiro byte do buffer
+    private long bufferOffset;
+    private long nextNumber;
+    private boolean eof;
+
+    private PaymentFileReader(FileChannel channel, Format format, ObjectReader jsonReader, char csvDelimiter, int chunkSize) {
+        this.channel = channel;
+        this.format = format;
+        this.jsonReader = jsonReader;
+        this.csvDelimiter = (byte) csvDelimiter;
+        this.buffer = ByteBuffer.allocate(chunkSize).flip();
+    }
+
+    /**
+     * Abre o arquivo e posiciona a leitura no ponto de retomada.
+     *
+     * @param file        O arquivo de pagamentos.
+     * @param format      O formato do arquivo.
+     * @param jsonReader  Leitor Jackson de {@link PaymentRequestDto} (NDJSON).
+     * @param csvDelimiter O delimitador de campos (CSV).
+     * @param chunkSize   O tamanho do bloco de leitura (a maior linha aceita cresce o bloco).
+     * @param startOffset A posição de retomada (0 no início do arquivo).
+     * @param startNumber O número da próxima solicitação na posição de retomada.
+     * @throws IllegalArgumentException se o cabeçalho do CSV for inválido.
+     */
+    public static PaymentFileReader open(Path file, Format format, ObjectReader jsonReader, char csvDelimiter,
+                                         int chunkSize, long startOffset, long startNumber) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        PaymentFileReader reader = new PaymentFileReader(channel, format, jsonReader, csvDelimiter, chunkSize);
+        try {
+            reader.skipByteOrderMark();
+            if (format == Format.CSV) {
+                reader.readHeader();
+            }
+            if (startOffset > reader.position()) {
+                reader.seek(startOffset);
+            }
+            reader.nextNumber = startNumber;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    /**
+     * Lê a próxima solicitação.
+     *
+     * @return A próxima linha não vazia, ou null no fim do arquivo.
+     */
+    public Row next() throws IOException {
+        while (true) {
+            int lineEnd = findLineEnd();
+            if (lineEnd < 0) {
+                return null;
+            }
+            int start = buffer.position();
+            int end = lineEnd;
+            if (end > start && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+            buffer.position(Math.min(lineEnd + 1, buffer.limit()));
+            if (isBlank(start, end)) {
+                continue;
+            }
+            long number = nextNumber++;
+            long endOffset = position();
+            try {
+                return new Row(number, endOffset, format == Format.CSV ? parseCsv(start, end) : parseJson(start, end), null);
+            } catch (JsonProcessingException e) {
+                return new Row(number, endOffset, null, "Item inválido: " + e.getOriginalMessage());
+            } catch (IllegalArgumentException e) {
+                return new Row(number, endOffset, null, "Item inválido: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Posição no arquivo do próximo byte a ser lido. */
+    public long position() {
+        return bufferOffset + buffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private PaymentRequestDto parseJson(int start, int end) throws IOException {
+        return jsonReader.readValue(buffer.array(), start, end - start);
+    }
+
+    private PaymentRequestDto parseCsv(int start, int end) {
+        PaymentRequestDto request = new PaymentRequestDto();
+        List<String> fields = splitCsv(start, end);
+        if (fields.size() != columns.length) {
+            throw new IllegalArgumentException("esperadas " + columns.length + " colunas, encontradas " + fields.size() + ".");
+        }
+        for (int i = 0; i < columns.length; i++) {
+            String value = fields.get(i);
+            if (columns[i] != null && !value.isEmpty()) {
+                try {
+                    columns[i].accept(request, value);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("valor numérico inválido na coluna " + columnNames[i] + ".");
+                }
+            }
+        }
+        return request;
+    }
+
+    /**
+     * Separa os campos de uma linha CSV, decodificando cada um diretamente do buffer.
+     */
+    private List<String> splitCsv(int start, int end) {
+        byte[] bytes = buffer.array();
+        List<String> fields = new ArrayList<>(columns != null ? columns.length : 16);
+        int i = start;
+        while (true) {
+            if (i < end && bytes[i] == '"') {
+                // Campo entre aspas: "" representa uma aspa
+                StringBuilder value = null;
+                int segment = ++i;
+                while (true) {
+                    if (i >= end) {
+                        throw new IllegalArgumentException("aspas não fechadas.");
+                    }
+                    if (bytes[i] == '"') {
+                        if (i + 1 < end && bytes[i + 1] == '"') {
+                            value = append(value, bytes, segment, i + 1);
+                            i += 2;
+                            segment = i;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                fields.add(value == null ? utf8(bytes, segment, i) : append(value, bytes, segment, i).toString());
+                i++;
+                if (i < end && bytes[i] != csvDelimiter) {
+                    throw new IllegalArgumentException("conteúdo após o fechamento das aspas.");
+                }
+            } else {
+                int fieldStart = i;
+                while (i < end && bytes[i] != csvDelimiter) {
+                    i++;
+                }
+                fields.add(utf8(bytes, fieldStart, i));
+            }
+            if (i >= end) {
+                return fields;
+            }
+            i++; // delimitador
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readHeader() throws IOException {
+        int lineEnd = findLineEnd();
+        if (lineEnd < 0) {
+            throw new IllegalArgumentException("Arquivo CSV sem cabeçalho.");
+        }
+        int start = buffer.position();
+        int end = lineEnd > start && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+        buffer.position(Math.min(lineEnd + 1, buffer.limit()));
+
+        List<String> names = splitCsv(start, end);
+        columnNames = names.stream().map(String::trim).toArray(String[]::new);
+        columns = new BiConsumer[columnNames.length];
+        boolean any = false;
+        for (int i = 0; i < columnNames.length; i++) {
+            columns[i] = CSV_COLUMNS.get(columnNames[i]);
+            any |= columns[i] != null;
+        }
+        if (!any) {
+            throw new IllegalArgumentException("Cabeçalho do CSV sem colunas conhecidas: " + Arrays.toString(columnNames));
+        }
+    }
+
+    /**
+     * Retorna a posição no buffer do fim ({@code \n}) da linha atual, lendo mais blocos do
+     * arquivo se necessário. No fim do arquivo, a última linha sem {@code \n} termina no
+     * limite do buffer; retorna -1 se não houver mais nada a ler.
+     */
+    private int findLineEnd() throws IOException {
+        int scanFrom = buffer.position();
+        while (true) {
+            byte[] bytes = buffer.array();
+            for (int i = scanFrom; i < buffer.limit(); i++) {
+                if (bytes[i] == '\n') {
+                    return i;
+                }
+            }
+            if (eof) {
+                return buffer.hasRemaining() ? buffer.limit() : -1;
+            }
+            scanFrom = buffer.remaining();
+            fill();
+            // fill() move a linha parcial para o início do buffer
+            scanFrom = Math.min(scanFrom, buffer.limit());
+        }
+    }
+
+    /**
+     * Move os bytes ainda não lidos para o início do buffer (dobrando-o se estiver cheio)
+     * e lê o próximo bloco do arquivo.
+     */
+    private void fill() throws IOException {
+        bufferOffset += buffer.position();
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        int read = channel.read(buffer);
+        if (read < 0) {
+            eof = true;
+        }
+        buffer.flip();
+    }
+
+    private void seek(long offset) throws IOException {
+        channel.position(offset);
+        bufferOffset = offset;
+        buffer.clear().flip();
+        eof = false;
+    }
+
+    private void skipByteOrderMark() throws IOException {
+        while (buffer.remaining() < 3 && !eof) {
+            fill();
+        }
+        if (buffer.remaining() >= 3 && buffer.get(buffer.position()) == (byte) 0xEF
+                && buffer.get(buffer.position() + 1) == (byte) 0xBB && buffer.get(buffer.position() + 2) == (byte) 0xBF) {
+            buffer.position(buffer.position() + 3);
+        }
+    }
+
+    private boolean isBlank(int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b != ' ' && b != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String utf8(byte[] bytes, int start, int end) {
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static StringBuilder append(StringBuilder value, byte[] bytes, int start, int end) {
+        if (value == null) {
+            value = new StringBuilder();
+        }
+        return value.append(utf8(bytes, start, end));
+    }
+}
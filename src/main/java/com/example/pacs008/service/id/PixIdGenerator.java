@@ -0,0 +1,220 @@
+package com.example.pacs008.service.id;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.net.InetAddress;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gerador de identificadores e carimbos de tempo das mensagens pacs.008, otimizado
+ * para alta vazão: não usa {@code UUID.randomUUID()} (SecureRandom com contenção),
+ * expressões regulares nem formatação de datas por mensagem.
+ *
+ * <p>Formatos gerados (conforme o XSD pacs.008.spi.1.13):
+ * <ul>
+ *     <li><b>BizMsgIdr/MsgId</b>: {@code M} + ISPB (8) + 23 caracteres
+ *         [nó (2) | epoch em ms (8) | sequência (6) | aleatório (7)];</li>
+ *     <li><b>EndToEndId</b>: {@code E} + ISPB (8) + yyyyMMddHHmm em UTC (12) + 11 caracteres
+ *         [nó (2) | sequência (6) | aleatório (3)].</li>
+ * </ul>
+ *
+ * <p>Unicidade: o identificador do nó ({@code pix.id.node-id}) separa as instâncias e a
+ * sequência monotônica (compartilhada entre threads) separa as mensagens de um mesmo nó.
+ * A sequência é iniciada a partir do relógio (1000 posições por milissegundo), de modo que
+ * um reinício do processo dentro do mesmo minuto não reutiliza valores já emitidos, desde
+ * que o nó não tenha gerado mais de 1 milhão de identificadores por segundo.
+ */
+@Component
+@Slf4j
+public class PixIdGenerator {
+
+    private static final char[] BASE62 = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+    private static final int ISPB_LENGTH = 8;
+    private static final int ID_LENGTH = 32;
+    private static final int MAX_NODE_ID = 62 * 62 - 1;
+    private static final long SEQUENCE_MODULUS = 62L * 62 * 62 * 62 * 62 * 62; // 6 caracteres base62
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+
+    // A implementação do JDK não guarda estado por chamada e pode ser compartilhada
+    private static final DatatypeFactory DATATYPE_FACTORY;
+
+    static {
+        try {
+            DATATYPE_FACTORY = DatatypeFactory.newInstance();
+        } catch (DatatypeConfigurationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Identificador do nó (0 a 3843). -1 = derivado do hostname (ex: nome do pod)
+    @Value("${pix.id.node-id:-1}")
+    private int configuredNodeId;
+
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() * 1000);
+    private volatile MinuteStamp minuteStamp = MinuteStamp.of(System.currentTimeMillis() / MILLIS_PER_MINUTE);
+    private char nodeHigh;
+    private char nodeLow;
+
+    @PostConstruct
+    public void init() {
+        int nodeId = configuredNodeId;
+        if (nodeId < 0) {
+            nodeId = Math.floorMod(hostName().hashCode(), MAX_NODE_ID + 1);
+            log.warn("pix.id.node-id não configurado; usando {} derivado do hostname. "
+                    + "Configure um valor único por instância para garantir a unicidade dos identificadores.", nodeId);
+        } else if (nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("pix.id.node-id deve estar entre 0 e " + MAX_NODE_ID);
+        }
+        nodeHigh = BASE62[nodeId / 62];
+        nodeLow = BASE62[nodeId % 62];
+    }
+
+    /**
+     * Gera um identificador de mensagem (BizMsgIdr / MsgId).
+     *
+     * @param ispb ISPB do participante emissor (8 caracteres).
+     * @return O identificador com 32 caracteres.
+     */
+    public String newMsgId(String ispb) {
+        char[] id = newId('M', ispb);
+        int pos = 1 + ISPB_LENGTH;
+        id[pos++] = nodeHigh;
+        id[pos++] = nodeLow;
+        pos = writeBase62(id, pos, 8, System.currentTimeMillis());
+        pos = writeBase62(id, pos, 6, nextSequence());
+        writeRandom(id, pos, 7);
+        return new String(id);
+    }
+
+    /**
+     * Gera um identificador fim a fim (EndToEndId).
+     *
+     * @param ispb ISPB do participante pagador (8 caracteres).
+     * @return O identificador com 32 caracteres.
+     */
+    public String newEndToEndId(String ispb) {
+        char[] id = newId('E', ispb);
+        int pos = 1 + ISPB_LENGTH;
+        MinuteStamp stamp = currentMinute(System.currentTimeMillis());
+        System.arraycopy(stamp.digits, 0, id, pos, stamp.digits.length);
+        pos += stamp.digits.length;
+        id[pos++] = nodeHigh;
+        id[pos++] = nodeLow;
+        pos = writeBase62(id, pos, 6, nextSequence());
+        writeRandom(id, pos, 3);
+        return new String(id);
+    }
+
+    /**
+     * Retorna o instante atual em UTC com precisão de milissegundos
+     * (formato ISONormalisedDateTime: yyyy-MM-ddTHH:mm:ss.SSSZ).
+     */
+    public XMLGregorianCalendar currentTimestamp() {
+        long now = System.currentTimeMillis();
+        MinuteStamp stamp = currentMinute(now);
+        int millisOfMinute = (int) (now - stamp.minute * MILLIS_PER_MINUTE);
+        return DATATYPE_FACTORY.newXMLGregorianCalendar(stamp.year, stamp.month, stamp.day, stamp.hour, stamp.minuteOfHour,
+                millisOfMinute / 1000, millisOfMinute % 1000, 0);
+    }
+
+    private static char[] newId(char prefix, String ispb) {
+        if (ispb == null || ispb.length() != ISPB_LENGTH) {
+            throw new IllegalArgumentException("ISPB inválido para geração de identificador: " + ispb);
+        }
+        char[] id = new char[ID_LENGTH];
+        id[0] = prefix;
+        ispb.getChars(0, ISPB_LENGTH, id, 1);
+        return id;
+    }
+
+    private long nextSequence() {
+        return Math.floorMod(sequence.getAndIncrement(), SEQUENCE_MODULUS);
+    }
+
+    private MinuteStamp currentMinute(long now) {
+        long minute = now / MILLIS_PER_MINUTE;
+        MinuteStamp stamp = minuteStamp;
+        if (stamp.minute != minute) {
+            // Virada de minuto: recalcula uma única vez (corridas entre threads são inofensivas)
+            stamp = MinuteStamp.of(minute);
+            minuteStamp = stamp;
+        }
+        return stamp;
+    }
+
+    private static int writeBase62(char[] target, int pos, int length, long value) {
+        for (int i = pos + length - 1; i >= pos; i--) {
+            target[i] = BASE62[(int) (value % 62)];
+            value /= 62;
+        }
+        return pos + length;
+    }
+
+    private static void writeRandom(char[] target, int pos, int length) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = pos; i < pos + length; i++) {
+            target[i] = BASE62[random.nextInt(62)];
+        }
+    }
+
+    private static String hostName() {
+        String host = System.getenv("HOSTNAME");
+        if (host != null && !host.isBlank()) {
+            return host;
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "localhost";
+        }
+    }
+
+    /**
+     * Campos de data/hora de um minuto (UTC) e seus dígitos yyyyMMddHHmm pré-formatados.
+     */
+    private static final class MinuteStamp {
+
+        private final long minute;
+        private final int year;
+        private final int month;
+        private final int day;
+        private final int hour;
+        private final int minuteOfHour;
+        private final char[] digits = new char[12];
+
+        private MinuteStamp(long minute) {
+            LocalDateTime dateTime = LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC);
+            this.minute = minute;
+            this.year = dateTime.getYear();
+            this.month = dateTime.getMonthValue();
+            this.day = dateTime.getDayOfMonth();
+            this.hour = dateTime.getHour();
+            this.minuteOfHour = dateTime.getMinute();
+            writeDigits(0, 4, year);
+            writeDigits(4, 2, month);
+            writeDigits(6, 2, day);
+            writeDigits(8, 2, hour);
+            writeDigits(10, 2, minuteOfHour);
+        }
+
+        private static MinuteStamp of(long minute) {
+            return new MinuteStamp(minute);
+        }
+
+        private void writeDigits(int pos, int length, int value) {
+            for (int i = pos + length - 1; i >= pos; i--) {
+                digits[i] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.pacs008.service.idempotency;
+
+/**
+ * Lançada quando uma chave de idempotência é reutilizada com dados de pagamento diferentes
+ * dos da requisição original.
+ */
+public class IdempotencyConflictException extends RuntimeException {
+
+    public IdempotencyConflictException(String idempotencyKey) {
+        super("A chave de idempotência '" + idempotencyKey + "' já foi usada com outros dados de pagamento.");
+    }
+}
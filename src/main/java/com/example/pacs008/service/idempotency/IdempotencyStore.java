@@ -0,0 +1,405 @@
+package com.example.pacs008.service.idempotency;
+
+import com.example.pacs008.service.SignedPacs008Message;
+import com.example.pacs008.util.OverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Armazena o resultado de cada solicitação de pagamento por chave de idempotência
+ * (cabeçalho {@code Idempotency-Key}), para que uma nova tentativa do cliente receba a
+ * mesma mensagem assinada, com o mesmo EndToEndId, em vez de gerar um novo pagamento.
+ *
+ * <p>O cache em memória é limitado em quantidade ({@code max-entries}, descartando as
+ * entradas concluídas mais antigas) e em tempo ({@code ttl-ms}). Uma entrada em andamento
+ * nunca é descartada por tamanho: uma nova tentativa geraria um segundo pagamento. Se o cache
+ * estiver cheio apenas com entradas em andamento, a chave nova é recusada com
+ * {@link OverloadedException} (503). Requisições simultâneas com a mesma
+ * chave aguardam a mesma computação em andamento. Os resultados concluídos são gravados
+ * em um arquivo local de apenas-acréscimo, recarregado na inicialização. O arquivo é
+ * reescrito apenas com as entradas válidas na inicialização e sempre que passa a ter mais de
+ * {@value #COMPACTION_RATIO} linhas por entrada válida (chaves expiradas ou descartadas).
+ * Falhas não são armazenadas: a chave fica livre para uma nova tentativa.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class IdempotencyStore {
+
+    private static final int MAX_KEY_LENGTH = 128;
+    private static final char FIELD_SEPARATOR = '\t';
+    // O arquivo é compactado com mais de COMPACTION_RATIO linhas por entrada válida (e ao menos MIN_COMPACTION_LINES)
+    private static final int COMPACTION_RATIO = 2;
+    private static final int MIN_COMPACTION_LINES = 1000;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${pix.idempotency.max-entries:100000}")
+    private int maxEntries;
+    @Value("${pix.idempotency.ttl-ms:86400000}")
+    private long ttlMs;
+    // Arquivo de persistência (vazio = apenas em memória)
+    @Value("${pix.idempotency.log-file:}")
+    private String logFile;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<KeyedEntry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock logLock = new ReentrantLock();
+    private Path logPath;
+    private FileChannel logChannel;
+    // Linhas no arquivo (protegido por logLock)
+    private long logLines;
+    private ScheduledExecutorService sweeper;
+
+    private Counter hits;
+    private Counter misses;
+    private Counter coalesced;
+    private Counter expiredEvictions;
+    private Counter sizeEvictions;
+
+    @PostConstruct
+    public void init() throws IOException {
+        hits = Counter.builder("pix.idempotency.requests").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("pix.idempotency.requests").tag("result", "miss").register(meterRegistry);
+        coalesced = Counter.builder("pix.idempotency.coalesced")
+                .description("Requisições que aguardaram uma computação em andamento").register(meterRegistry);
+        expiredEvictions = Counter.builder("pix.idempotency.evictions").tag("reason", "expired").register(meterRegistry);
+        sizeEvictions = Counter.builder("pix.idempotency.evictions").tag("reason", "size").register(meterRegistry);
+        Gauge.builder("pix.idempotency.size", entries, Map::size).register(meterRegistry);
+        Gauge.builder("pix.idempotency.hit-ratio", this, IdempotencyStore::hitRatio).register(meterRegistry);
+
+        if (!logFile.isBlank()) {
+            logPath = Path.of(logFile);
+            load(logPath);
+            logLock.lock();
+            try {
+                rewriteLog();
+            } finally {
+                logLock.unlock();
+            }
+        }
+
+        long sweepInterval = Math.max(1000, Math.min(ttlMs, 60_000));
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "idempotency-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        sweeper.shutdownNow();
+        if (logChannel != null) {
+            logChannel.close();
+        }
+    }
+
+    /**
+     * Retorna o resultado já registrado para a chave ou executa a computação uma única vez.
+     *
+     * @param key         A chave de idempotência enviada pelo cliente.
+     * @param fingerprint Impressão digital dos dados da requisição ({@link RequestFingerprint}), para detectar reuso indevido da chave.
+     * @param computation A geração da mensagem assinada.
+     * @return O resultado e se ele foi reaproveitado de uma requisição anterior.
+     * @throws IdempotencyConflictException se a chave já foi usada com dados diferentes.
+     * @throws Exception                    a exceção da computação, se ela falhar.
+     */
+    public Result getOrCompute(String key, String fingerprint, Computation computation) throws Exception {
+        validateKey(key);
+        while (true) {
+            long now = System.currentTimeMillis();
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                Entry created = new Entry(fingerprint, now + ttlMs);
+                if (entries.putIfAbsent(key, created) != null) {
+                    continue; // Outra requisição registrou a chave primeiro
+                }
+                insertionOrder.add(new KeyedEntry(key, created));
+                if (!evictIfFull()) {
+                    OverloadedException overloaded = new OverloadedException(
+                            "Cache de idempotência cheio com solicitações em andamento.", 1);
+                    entries.remove(key, created);
+                    created.result.completeExceptionally(overloaded);
+                    throw overloaded;
+                }
+                misses.increment();
+                return new Result(compute(key, created, computation), false);
+            }
+            if (entry.expiresAtMillis <= now) {
+                if (entries.remove(key, entry)) {
+                    expiredEvictions.increment();
+                }
+                continue;
+            }
+            if (!entry.fingerprint.equals(fingerprint)) {
+                throw new IdempotencyConflictException(key);
+            }
+            hits.increment();
+            if (!entry.result.isDone()) {
+                coalesced.increment();
+            }
+            return new Result(await(entry.result), true);
+        }
+    }
+
+    private SignedPacs008Message compute(String key, Entry entry, Computation computation) throws Exception {
+        SignedPacs008Message message;
+        try {
+            message = computation.compute();
+        } catch (Exception e) {
+            entries.remove(key, entry);
+            entry.result.completeExceptionally(e);
+            throw e;
+        }
+        entry.result.complete(message);
+        append(key, entry, message);
+        return message;
+    }
+
+    private static SignedPacs008Message await(CompletableFuture<SignedPacs008Message> result) throws Exception {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Descarta as entradas concluídas mais antigas até o limite de tamanho. As entradas em
+     * andamento são mantidas.
+     *
+     * @return {@code false} se o cache continuar acima do limite (apenas entradas em andamento).
+     */
+    private boolean evictIfFull() {
+        Iterator<KeyedEntry> oldest = insertionOrder.iterator();
+        while (entries.size() > maxEntries && oldest.hasNext()) {
+            KeyedEntry keyed = oldest.next();
+            if (entries.get(keyed.key()) != keyed.entry()) {
+                oldest.remove(); // Já removida (expirada, falha ou substituída)
+            } else if (keyed.entry().result.isDone()) {
+                if (entries.remove(keyed.key(), keyed.entry())) {
+                    sizeEvictions.increment();
+                }
+                oldest.remove();
+            }
+        }
+        return entries.size() <= maxEntries;
+    }
+
+    private void sweep() {
+        removeExpired();
+        if (logChannel != null) {
+            compactIfNeeded();
+        }
+    }
+
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        entries.forEach((key, entry) -> {
+            if (entry.expiresAtMillis <= now && entries.remove(key, entry)) {
+                expiredEvictions.increment();
+            }
+        });
+        insertionOrder.removeIf(keyed -> entries.get(keyed.key()) != keyed.entry());
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private static void validateKey(String key) {
+        if (key == null || key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("A chave de idempotência deve ter entre 1 e " + MAX_KEY_LENGTH + " caracteres.");
+        }
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c <= ' ' || c > '~') {
+                throw new IllegalArgumentException("A chave de idempotência deve conter apenas caracteres ASCII visíveis.");
+            }
+        }
+    }
+
+    // Persistência: uma linha por resultado
+    // chave \t expiração (epoch ms) \t impressão digital (SHA-256) \t BizMsgIdr \t EndToEndId \t XML em Base64
+
+    private void append(String key, Entry entry, SignedPacs008Message message) {
+        if (logChannel == null) {
+            return;
+        }
+        ByteBuffer line = ByteBuffer.wrap(toLine(key, entry, message).getBytes(StandardCharsets.UTF_8));
+        logLock.lock();
+        try {
+            while (line.hasRemaining()) {
+                logChannel.write(line);
+            }
+            logLines++;
+        } catch (IOException e) {
+            log.error("Falha ao gravar a chave de idempotência {} em {}: {}", key, logFile, e.getMessage(), e);
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    private static String toLine(String key, Entry entry, SignedPacs008Message message) {
+        return key + FIELD_SEPARATOR + entry.expiresAtMillis + FIELD_SEPARATOR + entry.fingerprint
+                + FIELD_SEPARATOR + message.bizMsgIdr() + FIELD_SEPARATOR + message.endToEndId()
+                + FIELD_SEPARATOR + Base64.getEncoder().encodeToString(message.xml()) + '\n';
+    }
+
+    /**
+     * Recarrega as entradas ainda válidas do arquivo.
+     */
+    private void load(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        int loaded = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(String.valueOf(FIELD_SEPARATOR), -1);
+                if (fields.length != 6) {
+                    continue; // Linha incompleta (ex: queda durante a gravação)
+                }
+                try {
+                    long expiresAt = Long.parseLong(fields[1]);
+                    if (expiresAt <= now) {
+                        continue;
+                    }
+                    Entry entry = new Entry(fields[2], expiresAt);
+                    entry.result.complete(new SignedPacs008Message(fields[3], fields[4], Base64.getDecoder().decode(fields[5])));
+                    Entry previous = entries.put(fields[0], entry);
+                    if (previous == null) {
+                        loaded++;
+                    }
+                    insertionOrder.add(new KeyedEntry(fields[0], entry));
+                } catch (IllegalArgumentException e) {
+                    log.warn("Linha inválida ignorada no arquivo de idempotência {}", path);
+                }
+            }
+        }
+        evictIfFull();
+        log.info("{} chaves de idempotência recarregadas de {}", loaded, path);
+    }
+
+    /**
+     * Reescreve o arquivo quando as linhas de chaves expiradas ou descartadas passam a ser
+     * a maior parte dele.
+     */
+    private void compactIfNeeded() {
+        logLock.lock();
+        try {
+            long live = entries.size();
+            if (logLines < MIN_COMPACTION_LINES || logLines <= live * COMPACTION_RATIO) {
+                return;
+            }
+            long before = logLines;
+            rewriteLog();
+            log.info("Arquivo de idempotência {} compactado: {} -> {} linhas", logPath, before, logLines);
+        } catch (IOException e) {
+            log.error("Falha ao compactar o arquivo de idempotência {}: {}", logPath, e.getMessage(), e);
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    /**
+     * Grava as entradas válidas e concluídas em um arquivo temporário, que substitui o atual,
+     * e passa a acrescentar nele. Deve ser chamado com {@code logLock}: nenhuma gravação se
+     * perde durante a troca. Uma entrada concluída durante a cópia pode ser gravada duas vezes,
+     * o que não altera o resultado da recarga.
+     */
+    private void rewriteLog() throws IOException {
+        Path compacted = logPath.resolveSibling(logPath.getFileName() + ".tmp");
+        long now = System.currentTimeMillis();
+        long written = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            for (KeyedEntry keyed : insertionOrder) {
+                Entry entry = keyed.entry();
+                if (entries.get(keyed.key()) == entry && entry.expiresAtMillis > now
+                        && entry.result.isDone() && !entry.result.isCompletedExceptionally()) {
+                    writer.write(toLine(keyed.key(), entry, entry.result.join()));
+                    written++;
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(compacted, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(compacted, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (logChannel != null) {
+            logChannel.close();
+        }
+        logChannel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        logLines = written;
+    }
+
+    /**
+     * Geração do resultado associado a uma chave nova.
+     */
+    @FunctionalInterface
+    public interface Computation {
+        SignedPacs008Message compute() throws Exception;
+    }
+
+    /**
+     * @param message  A mensagem assinada.
+     * @param replayed Verdadeiro se a mensagem foi gerada por uma requisição anterior.
+     */
+    public record Result(SignedPacs008Message message, boolean replayed) {
+    }
+
+    private static final class Entry {
+        private final String fingerprint;
+        private final long expiresAtMillis;
+        private final CompletableFuture<SignedPacs008Message> result = new CompletableFuture<>();
+
+        private Entry(String fingerprint, long expiresAtMillis) {
+            this.fingerprint = fingerprint;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private record KeyedEntry(String key, Entry entry) {
+    }
+}
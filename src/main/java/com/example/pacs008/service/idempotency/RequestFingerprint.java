@@ -0,0 +1,82 @@
+package com.example.pacs008.service.idempotency;
+
+import com.example.pacs008.dto.PaymentRequestDto;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Impressão digital dos dados de uma solicitação de pagamento, usada para detectar o reuso de
+ * uma chave de idempotência com outros dados.
+ *
+ * <p>É o SHA-256 de uma serialização canônica dos campos, em ordem fixa, cada um prefixado
+ * pelo seu tamanho (campos ausentes são distinguidos de campos vazios). O valor é normalizado
+ * ({@code 10.5} e {@code 10.50} são o mesmo pagamento). Diferente de {@code hashCode()},
+ * duas solicitações diferentes não produzem, na prática, a mesma impressão digital.
+ */
+public final class RequestFingerprint {
+
+    private static final int ABSENT = -1;
+
+    private RequestFingerprint() {
+    }
+
+    /**
+     * @return O SHA-256 da solicitação, em hexadecimal (64 caracteres).
+     */
+    public static String of(PaymentRequestDto request) {
+        MessageDigest digest = sha256();
+        update(digest, request.getPayerName());
+        update(digest, request.getPayerCpfCnpj());
+        update(digest, request.getPayerIspb());
+        update(digest, request.getPayerAgency());
+        update(digest, request.getPayerAccount());
+        update(digest, request.getPayerAccountType());
+        update(digest, request.getReceiverName());
+        update(digest, request.getReceiverCpfCnpj());
+        update(digest, request.getReceiverIspb());
+        update(digest, request.getReceiverAgency());
+        update(digest, request.getReceiverAccount());
+        update(digest, request.getReceiverAccountType());
+        update(digest, request.getReceiverPixKey());
+        update(digest, normalize(request.getAmount()));
+        update(digest, request.getDescription());
+        if (request.getServiceLevel() != null) {
+            // Só quando informado: as impressões de solicitações anteriores ao campo não mudam
+            update(digest, request.getServiceLevel());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String normalize(BigDecimal amount) {
+        return amount == null ? null : amount.stripTrailingZeros().toPlainString();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            updateLength(digest, ABSENT);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        updateLength(digest, bytes.length);
+        digest.update(bytes);
+    }
+
+    private static void updateLength(MessageDigest digest, int length) {
+        digest.update((byte) (length >>> 24));
+        digest.update((byte) (length >>> 16));
+        digest.update((byte) (length >>> 8));
+        digest.update((byte) length);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.pacs008.service.inbound;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Índice em memória das mensagens pacs.008 geradas, por EndToEndId, usado para
+ * correlacionar as respostas do SPI (pacs.002, pacs.004) com o envio original e medir
+ * o tempo de ida e volta.
+ *
+ * <p>Cada mensagem é registrada na geração e tem o instante de envio atualizado quando a
+ * publicação é confirmada no MQ. As entradas são removidas na resposta ou após
+ * {@code correlation.ttl-ms}; acima de {@code correlation.max-entries} novos registros
+ * são descartados.
+ */
+@Component
+@RequiredArgsConstructor
+public class PaymentCorrelationIndex {
+
+    private static final byte[] END_TO_END_ID_TAG = "EndToEndId>".getBytes(StandardCharsets.US_ASCII);
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${pix.inbound.correlation.max-entries:1000000}")
+    private int maxEntries;
+    @Value("${pix.inbound.correlation.ttl-ms:3600000}")
+    private long ttlMs;
+
+    private final Map<String, Correlation> byEndToEndId = new ConcurrentHashMap<>();
+    private ScheduledExecutorService sweeper;
+    private Counter dropped;
+    private Counter expired;
+
+    @PostConstruct
+    public void init() {
+        dropped = Counter.builder("pix.inbound.correlation.dropped")
+                .description("Registros descartados com o índice cheio").register(meterRegistry);
+        expired = Counter.builder("pix.inbound.correlation.expired")
+                .description("Mensagens sem resposta dentro do prazo").register(meterRegistry);
+        Gauge.builder("pix.inbound.correlation.size", byEndToEndId, Map::size).register(meterRegistry);
+
+        long sweepInterval = Math.max(1000, Math.min(ttlMs, 60_000));
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "correlation-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::removeExpired, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Registra uma mensagem gerada.
+     */
+    public void register(String bizMsgIdr, String endToEndId) {
+        if (byEndToEndId.size() >= maxEntries) {
+            dropped.increment();
+            return;
+        }
+        byEndToEndId.put(endToEndId, new Correlation(bizMsgIdr, endToEndId, System.currentTimeMillis(), System.nanoTime()));
+    }
+
+    /**
+     * Atualiza o instante de envio das transações da mensagem publicada no MQ. Os EndToEndIds
+     * são localizados diretamente no XML, sem parsing completo; uma mensagem agregada
+     * contém vários.
+     *
+     * @param xml O XML assinado publicado, em UTF-8.
+     */
+    public void markSent(byte[] xml) {
+        if (xml == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        int from = 0;
+        int tag;
+        while ((tag = indexOf(xml, END_TO_END_ID_TAG, from)) >= 0) {
+            int start = tag + END_TO_END_ID_TAG.length;
+            int end = start;
+            while (end < xml.length && xml[end] != '<') {
+                end++;
+            }
+            if (end == xml.length) {
+                return;
+            }
+            // A tag de fechamento (</EndToEndId>) também casa com o padrão, com conteúdo vazio
+            if (end > start) {
+                // O EndToEndId é alfanumérico (ASCII)
+                byEndToEndId.computeIfPresent(new String(xml, start, end - start, StandardCharsets.US_ASCII),
+                        (key, c) -> new Correlation(c.bizMsgIdr(), key, c.registeredAtMillis(), now));
+            }
+            from = end;
+        }
+    }
+
+    /**
+     * Remove e retorna a correlação de uma resposta recebida.
+     *
+     * @return A correlação, ou null se a mensagem não foi gerada por esta instância (ou expirou).
+     */
+    public Correlation complete(String endToEndId) {
+        return endToEndId == null ? null : byEndToEndId.remove(endToEndId);
+    }
+
+    private static int indexOf(byte[] data, byte[] needle, int from) {
+        outer:
+        for (int i = from; i <= data.length - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (data[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private void removeExpired() {
+        long limit = System.currentTimeMillis() - ttlMs;
+        byEndToEndId.values().removeIf(c -> {
+            boolean old = c.registeredAtMillis() < limit;
+            if (old) {
+                expired.increment();
+            }
+            return old;
+        });
+    }
+
+    /**
+     * @param bizMsgIdr          O BizMsgIdr da mensagem original.
+     * @param endToEndId         O EndToEndId da transação.
+     * @param registeredAtMillis Instante da geração (epoch ms), usado na expiração.
+     * @param sentAtNanos        Instante do envio ({@link System#nanoTime()}), usado no tempo de ida e volta.
+     */
+    public record Correlation(String bizMsgIdr, String endToEndId, long registeredAtMillis, long sentAtNanos) {
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.pacs008.service.inbound;
+
+import java.util.List;
+
+/**
+ * Resposta recebida do SPI (pacs.002 ou pacs.004), já com a assinatura verificada.
+ *
+ * @param msgDefIdr     O tipo da mensagem (MsgDefIdr do AppHdr, ex: {@code pacs.002.spi.1.14}).
+ * @param bizMsgIdr     O BizMsgIdr da própria resposta.
+ * @param originalMsgId O BizMsgIdr da mensagem original, quando informado.
+ * @param transactions  O resultado de cada transação referenciada.
+ */
+public record SpiResponse(String msgDefIdr, String bizMsgIdr, String originalMsgId, List<TransactionResult> transactions) {
+
+    /**
+     * Tipo resumido da mensagem (ex: {@code pacs.002}), usado nas métricas: nunca nulo nem
+     * vazio ({@code unknown} sem MsgDefIdr), pois o Micrometer não aceita tags sem valor.
+     */
+    public String messageType() {
+        if (msgDefIdr == null || msgDefIdr.isBlank()) {
+            return "unknown";
+        }
+        int end = msgDefIdr.indexOf('.', msgDefIdr.indexOf('.') + 1);
+        return end < 0 ? msgDefIdr : msgDefIdr.substring(0, end);
+    }
+
+    /**
+     * @param originalEndToEndId O EndToEndId da transação original.
+     * @param status             A situação (ex: {@code ACSP}, {@code RJCT}) ou {@code RTRN} para devoluções.
+     * @param reasonCode         O código do motivo, quando informado.
+     */
+    public record TransactionResult(String originalEndToEndId, String status, String reasonCode) {
+    }
+}
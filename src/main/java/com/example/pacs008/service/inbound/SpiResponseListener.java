@@ -0,0 +1,149 @@
+package com.example.pacs008.service.inbound;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.jms.BytesMessage;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Session;
+import jakarta.jms.TextMessage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SignatureException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consome as respostas do SPI (pacs.002 e pacs.004) da fila de retorno.
+ *
+ * <p>Os consumers são criados pela fábrica {@code inboundListenerFactory} ({@code JmsConfig}),
+ * que ajusta a quantidade de sessões simultâneas dentro de {@code pix.inbound.concurrency}
+ * conforme a fila acumula mensagens. Cada resposta é verificada, correlacionada com o
+ * envio original pelo EndToEndId e registrada nas métricas:
+ * <ul>
+ *     <li>{@code pix.inbound.messages}: mensagens recebidas, por tipo e resultado;</li>
+ *     <li>{@code pix.inbound.round-trip}: tempo entre o envio ao MQ e a resposta, por tipo e situação;</li>
+ *     <li>{@code pix.inbound.uncorrelated}: respostas sem envio correspondente nesta instância.</li>
+ * </ul>
+ *
+ * <p>Mensagens ilegíveis, sem assinatura ou com assinatura inválida são encaminhadas, na
+ * mesma transação da sessão, para a fila de rejeitadas ({@code pix.inbound.backout-queue}),
+ * com o motivo na propriedade {@value #REJECT_REASON_PROPERTY}: saem da fila de retorno sem
+ * bloqueá-la com reentregas e ficam disponíveis para análise. Se o encaminhamento falhar, a
+ * transação é desfeita e a mensagem é reentregue (o limite de reentregas do queue manager,
+ * BOTHRESH/BOQNAME no IBM MQ, continua valendo).
+ */
+@Component
+@ConditionalOnProperty(name = "pix.inbound.enabled", havingValue = "true", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class SpiResponseListener {
+
+    static final String REJECT_REASON_PROPERTY = "pixRejectReason";
+
+    private final SpiResponseParser parser;
+    private final PaymentCorrelationIndex correlationIndex;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${pix.inbound.backout-queue}")
+    private String backoutQueue;
+
+    private final Map<String, Timer> roundTripTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> messageCounters = new ConcurrentHashMap<>();
+
+    @JmsListener(destination = "${ibm.mq.inbound-queue}", containerFactory = "inboundListenerFactory")
+    public void onMessage(Message message, Session session) throws JMSException {
+        SpiResponse response;
+        try {
+            response = parser.parse(body(message));
+        } catch (SignatureException e) {
+            count("unknown", "invalid-signature");
+            log.error("Mensagem {} encaminhada para {}: {}", message.getJMSMessageID(), backoutQueue, e.getMessage());
+            reject(message, session, e.getMessage());
+            return;
+        } catch (Exception e) {
+            count("unknown", "unparseable");
+            log.error("Mensagem {} encaminhada para {}: não foi possível interpretá-la: {}",
+                    message.getJMSMessageID(), backoutQueue, e.getMessage(), e);
+            reject(message, session, "Mensagem ilegível: " + e.getMessage());
+            return;
+        }
+
+        String type = response.messageType();
+        long now = System.nanoTime();
+        for (SpiResponse.TransactionResult tx : response.transactions()) {
+            PaymentCorrelationIndex.Correlation correlation = correlationIndex.complete(tx.originalEndToEndId());
+            if (correlation == null) {
+                meterRegistry.counter("pix.inbound.uncorrelated", "type", type).increment();
+                log.debug("Resposta {} sem envio correspondente: EndToEndId {}", type, tx.originalEndToEndId());
+                continue;
+            }
+            roundTripTimer(type, tx.status()).record(now - correlation.sentAtNanos(), TimeUnit.NANOSECONDS);
+            log.debug("{} recebido para EndToEndId {} (BizMsgIdr {}): situação {}{}", type, tx.originalEndToEndId(),
+                    correlation.bizMsgIdr(), tx.status(), tx.reasonCode() != null ? ", motivo " + tx.reasonCode() : "");
+        }
+        count(type, "processed");
+    }
+
+    /**
+     * Envia uma cópia da mensagem para a fila de rejeitadas na sessão (transacionada) em que ela
+     * foi recebida: o commit remove a mensagem da fila de retorno e a grava na de rejeitadas.
+     */
+    private void reject(Message message, Session session, String reason) throws JMSException {
+        Message copy;
+        if (message instanceof TextMessage textMessage) {
+            copy = session.createTextMessage(textMessage.getText());
+        } else {
+            byte[] body = message instanceof BytesMessage ? message.getBody(byte[].class) : null;
+            BytesMessage bytesMessage = session.createBytesMessage();
+            if (body != null) {
+                bytesMessage.writeBytes(body);
+            }
+            copy = bytesMessage;
+        }
+        copy.setJMSCorrelationID(message.getJMSMessageID());
+        copy.setStringProperty(REJECT_REASON_PROPERTY, reason);
+        MessageProducer producer = session.createProducer(session.createQueue(backoutQueue));
+        try {
+            producer.send(copy);
+        } finally {
+            producer.close();
+        }
+    }
+
+    private static byte[] body(Message message) throws JMSException {
+        if (message instanceof BytesMessage bytesMessage) {
+            return bytesMessage.getBody(byte[].class);
+        }
+        if (message instanceof TextMessage textMessage) {
+            return textMessage.getText().getBytes(StandardCharsets.UTF_8);
+        }
+        throw new JMSException("Tipo de mensagem não suportado: " + message.getClass().getSimpleName());
+    }
+
+    private Timer roundTripTimer(String type, String status) {
+        return roundTripTimers.computeIfAbsent(type + '|' + status, key -> Timer.builder("pix.inbound.round-trip")
+                .description("Tempo entre o envio da pacs.008 e a resposta do SPI")
+                .tag("type", type)
+                .tag("status", status == null ? "unknown" : status)
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    private void count(String type, String outcome) {
+        messageCounters.computeIfAbsent(type + '|' + outcome, key -> Counter.builder("pix.inbound.messages")
+                .tag("type", type)
+                .tag("outcome", outcome)
+                .register(meterRegistry)).increment();
+    }
+}
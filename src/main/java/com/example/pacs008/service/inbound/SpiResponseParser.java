@@ -0,0 +1,390 @@
+package com.example.pacs008.service.inbound;
+
+import com.example.pacs008.util.ObjectPool;
+import com.example.pacs008.util.ObjectPoolMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.XMLConstants;
+import javax.xml.crypto.AlgorithmMethod;
+import javax.xml.crypto.KeySelector;
+import javax.xml.crypto.KeySelectorException;
+import javax.xml.crypto.KeySelectorResult;
+import javax.xml.crypto.XMLCryptoContext;
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.Transform;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureException;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import javax.xml.crypto.dsig.keyinfo.X509Data;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.SignatureException;
+import java.security.cert.CertPathBuilder;
+import java.security.cert.CertStore;
+import java.security.cert.CertificateExpiredException;
+import java.security.cert.CertificateNotYetValidException;
+import java.security.cert.CollectionCertStoreParameters;
+import java.security.cert.PKIXBuilderParameters;
+import java.security.cert.PKIXParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509CertSelector;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Interpreta as mensagens recebidas do SPI (envelope com AppHdr, Document e Sgntr).
+ *
+ * <p>A assinatura XMLDSig é verificada com o certificado incluído no KeyInfo, que deve
+ * constar no truststore configurado ({@code ibm.mq.ssl.trust-store}) ou ter uma cadeia de
+ * certificação válida (PKIX) até uma das autoridades do truststore, com os certificados
+ * intermediários incluídos no KeyInfo. A assinatura deve ser única, estar em
+ * {@code AppHdr/Sgntr} e ter uma única referência, ao documento inteiro ({@code URI=""}), com
+ * exatamente as transformações enveloped-signature e, opcionalmente, a canonicalização; outras
+ * referências e transformações e elementos {@code ds:Object} são recusados. Os dados são lidos
+ * apenas do AppHdr e do Document, fora da assinatura (que não é coberta pelo digest), para que
+ * sejam sempre os assinados (proteção contra "signature wrapping"). Em seguida são extraídos os
+ * identificadores necessários para a correlação: o BizMsgIdr da mensagem original e, por
+ * transação, o EndToEndId original, a situação e o motivo.
+ *
+ * <p>Os parsers DOM e as fábricas XMLDSig não são thread-safe e são reaproveitados
+ * através de um pool.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SpiResponseParser {
+
+    private static final String CLASSPATH_PREFIX = "classpath:";
+    private static final String FILE_PREFIX = "file:";
+    // Canonicalizações aceitas na transformação da referência e no SignedInfo
+    private static final Set<String> CANONICALIZATIONS = Set.of(CanonicalizationMethod.INCLUSIVE, CanonicalizationMethod.EXCLUSIVE);
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ibm.mq.ssl.trust-store}")
+    private String trustStorePath;
+    @Value("${ibm.mq.ssl.trust-store-password}")
+    private String trustStorePassword;
+    // Desabilitar apenas em desenvolvimento (perfil local)
+    @Value("${pix.inbound.verify-signature:true}")
+    private boolean verifySignature;
+    // Tamanho do pool de parsers (0 = 2x o número de processadores)
+    @Value("${pix.inbound.parser-pool-size:0}")
+    private int poolSize;
+
+    private Set<X509Certificate> trustedCertificates = Set.of();
+    private Set<TrustAnchor> trustAnchors = Set.of();
+    private ObjectPool<ParsingToolkit> toolkits;
+
+    @PostConstruct
+    public void init() throws Exception {
+        if (verifySignature) {
+            KeyStore trustStore = loadTrustStore();
+            trustedCertificates = trustedCertificates(trustStore);
+            if (!trustedCertificates.isEmpty()) {
+                trustAnchors = Set.copyOf(new PKIXParameters(trustStore).getTrustAnchors());
+            }
+        } else {
+            log.warn("Verificação de assinatura das mensagens recebidas do SPI DESABILITADA");
+        }
+        int size = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors() * 2;
+        toolkits = new ObjectPool<>("inbound-parser", size, 5000, ParsingToolkit::new);
+        ObjectPoolMetrics.bind(toolkits, meterRegistry);
+    }
+
+    /**
+     * Verifica a assinatura e extrai os dados de correlação de uma mensagem recebida.
+     *
+     * @param xml O XML recebido, em UTF-8.
+     * @return A resposta interpretada.
+     * @throws SignatureException se a assinatura estiver ausente, inválida, feita com um certificado não confiável,
+     *                            fora de {@code AppHdr/Sgntr} ou com referências, transformações ou objetos além
+     *                            dos esperados.
+     * @throws Exception          se o XML não puder ser interpretado.
+     */
+    public SpiResponse parse(byte[] xml) throws Exception {
+        Document doc;
+        try (ObjectPool.Lease<ParsingToolkit> lease = toolkits.borrow()) {
+            ParsingToolkit toolkit = lease.get();
+            doc = toolkit.documentBuilder.parse(new ByteArrayInputStream(xml));
+            if (verifySignature) {
+                toolkit.verify(doc);
+            }
+        }
+
+        Element root = doc.getDocumentElement();
+        Element header = child(root, "AppHdr");
+        Element document = child(root, "Document");
+        if (header == null || document == null) {
+            throw new IllegalArgumentException("Mensagem sem AppHdr ou Document.");
+        }
+        List<SpiResponse.TransactionResult> transactions = new ArrayList<>();
+
+        // pacs.002: TxInfAndSts
+        for (Element tx : elements(document, "TxInfAndSts", false)) {
+            transactions.add(new SpiResponse.TransactionResult(
+                    firstText(tx, "OrgnlEndToEndId"), firstText(tx, "TxSts"), reasonCode(tx, "StsRsnInf")));
+        }
+        // pacs.004: TxInf (devolução)
+        for (Element tx : elements(document, "TxInf", false)) {
+            transactions.add(new SpiResponse.TransactionResult(
+                    firstText(tx, "OrgnlEndToEndId"), "RTRN", reasonCode(tx, "RtrRsnInf")));
+        }
+
+        return new SpiResponse(firstText(header, "MsgDefIdr"), firstText(header, "BizMsgIdr"),
+                firstText(document, "OrgnlMsgId"), transactions);
+    }
+
+    private static String reasonCode(Element tx, String reasonElement) {
+        List<Element> reasons = elements(tx, reasonElement, true);
+        if (reasons.isEmpty()) {
+            return null;
+        }
+        String code = firstText(reasons.get(0), "Cd");
+        return code != null ? code : firstText(reasons.get(0), "Prtry");
+    }
+
+    private static String firstText(Element parent, String localName) {
+        List<Element> nodes = elements(parent, localName, true);
+        return nodes.isEmpty() ? null : nodes.get(0).getTextContent().trim();
+    }
+
+    /** O filho direto com o nome local informado (o primeiro, se houver mais de um). */
+    private static Element child(Element parent, String localName) {
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element element && localName.equals(element.getLocalName())) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Os descendentes com o nome local informado, em ordem de documento, sem entrar nos
+     * elementos do namespace XMLDSig: a assinatura em {@code AppHdr/Sgntr} não é coberta pelo
+     * digest e pode ter recebido elementos de fora.
+     */
+    private static List<Element> elements(Element parent, String localName, boolean firstOnly) {
+        List<Element> found = new ArrayList<>();
+        collect(parent, localName, firstOnly, found);
+        return found;
+    }
+
+    private static boolean collect(Element parent, String localName, boolean firstOnly, List<Element> found) {
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element element && !XMLSignature.XMLNS.equals(element.getNamespaceURI())) {
+                if (localName.equals(element.getLocalName())) {
+                    found.add(element);
+                    if (firstOnly) {
+                        return true;
+                    }
+                }
+                if (collect(element, localName, firstOnly, found)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private KeyStore loadTrustStore() throws Exception {
+        KeyStore trustStore = KeyStore.getInstance("JKS");
+        if (trustStorePath.startsWith(CLASSPATH_PREFIX)) {
+            String path = trustStorePath.substring(CLASSPATH_PREFIX.length());
+            try (InputStream is = getClass().getClassLoader().getResourceAsStream(path)) {
+                if (is == null) {
+                    throw new RuntimeException("Truststore não encontrado em: " + trustStorePath);
+                }
+                trustStore.load(is, trustStorePassword.toCharArray());
+            }
+        } else {
+            Path file = Path.of(trustStorePath.startsWith(FILE_PREFIX) ? trustStorePath.substring(FILE_PREFIX.length()) : trustStorePath);
+            try (InputStream is = Files.newInputStream(file)) {
+                trustStore.load(is, trustStorePassword.toCharArray());
+            }
+        }
+        return trustStore;
+    }
+
+    private static Set<X509Certificate> trustedCertificates(KeyStore trustStore) throws Exception {
+        Set<X509Certificate> certificates = new HashSet<>();
+        for (String alias : Collections.list(trustStore.aliases())) {
+            if (trustStore.getCertificate(alias) instanceof X509Certificate certificate) {
+                certificates.add(certificate);
+            }
+        }
+        log.info("{} certificado(s) confiável(is) carregado(s) para verificação das mensagens do SPI", certificates.size());
+        return Set.copyOf(certificates);
+    }
+
+    /**
+     * Seleciona a chave pública do certificado do KeyInfo, desde que ele seja válido e conste
+     * no truststore ou tenha uma cadeia PKIX até uma autoridade do truststore. A revogação
+     * não é verificada (não há LCR/OCSP configurados); a rotação é feita pelo truststore.
+     */
+    private final class TrustedCertificateSelector extends KeySelector {
+
+        @Override
+        public KeySelectorResult select(KeyInfo keyInfo, Purpose purpose, AlgorithmMethod method, XMLCryptoContext context)
+                throws KeySelectorException {
+            if (keyInfo == null) {
+                throw new KeySelectorException("Assinatura sem KeyInfo.");
+            }
+            List<X509Certificate> certificates = new ArrayList<>();
+            for (Object info : keyInfo.getContent()) {
+                if (info instanceof X509Data data) {
+                    for (Object content : data.getContent()) {
+                        if (content instanceof X509Certificate certificate) {
+                            certificates.add(certificate);
+                        }
+                    }
+                }
+            }
+            X509Certificate signer = signer(certificates);
+            if (signer == null) {
+                throw new KeySelectorException("Assinatura sem certificado no KeyInfo.");
+            }
+            try {
+                signer.checkValidity();
+            } catch (CertificateExpiredException | CertificateNotYetValidException e) {
+                throw new KeySelectorException("Certificado fora da validade: " + signer.getSubjectX500Principal(), e);
+            }
+            boolean[] keyUsage = signer.getKeyUsage();
+            if (keyUsage != null && !keyUsage[0] && !keyUsage[1]) {
+                throw new KeySelectorException("Certificado sem uso para assinatura digital: " + signer.getSubjectX500Principal());
+            }
+            if (!trustedCertificates.contains(signer)) {
+                validateChain(signer, certificates);
+            }
+            return signer::getPublicKey;
+        }
+
+        /**
+         * O certificado do assinante: o único do KeyInfo que não emitiu nenhum dos demais
+         * (os outros são a cadeia intermediária).
+         */
+        private X509Certificate signer(List<X509Certificate> certificates) {
+            for (X509Certificate candidate : certificates) {
+                boolean issuer = false;
+                for (X509Certificate other : certificates) {
+                    if (other != candidate && other.getIssuerX500Principal().equals(candidate.getSubjectX500Principal())) {
+                        issuer = true;
+                        break;
+                    }
+                }
+                if (!issuer) {
+                    return candidate;
+                }
+            }
+            return certificates.isEmpty() ? null : certificates.get(0);
+        }
+
+        private void validateChain(X509Certificate signer, List<X509Certificate> certificates) throws KeySelectorException {
+            try {
+                X509CertSelector target = new X509CertSelector();
+                target.setCertificate(signer);
+                PKIXBuilderParameters parameters = new PKIXBuilderParameters(trustAnchors, target);
+                parameters.addCertStore(CertStore.getInstance("Collection", new CollectionCertStoreParameters(certificates)));
+                parameters.setRevocationEnabled(false);
+                CertPathBuilder.getInstance("PKIX").build(parameters);
+            } catch (Exception e) {
+                throw new KeySelectorException("Certificado da assinatura não consta no truststore nem é emitido por uma "
+                        + "autoridade confiável: " + signer.getSubjectX500Principal(), e);
+            }
+        }
+    }
+
+    /**
+     * Parser e fábrica XMLDSig usados por uma única thread por vez, através do pool.
+     */
+    private final class ParsingToolkit {
+
+        private final DocumentBuilder documentBuilder;
+        private final XMLSignatureFactory fac;
+
+        private ParsingToolkit() throws Exception {
+            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+            dbf.setNamespaceAware(true); // Essencial para XMLDSig
+            // Mensagens externas: sem DTD nem entidades externas
+            dbf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            dbf.setExpandEntityReferences(false);
+            documentBuilder = dbf.newDocumentBuilder();
+            fac = XMLSignatureFactory.getInstance("DOM");
+        }
+
+        private void verify(Document doc) throws Exception {
+            NodeList signatures = doc.getElementsByTagNameNS(XMLSignature.XMLNS, "Signature");
+            if (signatures.getLength() == 0) {
+                throw new SignatureException("Mensagem recebida sem assinatura.");
+            }
+            if (signatures.getLength() > 1) {
+                throw new SignatureException("Mensagem recebida com mais de uma assinatura.");
+            }
+            Node signatureNode = signatures.item(0);
+            Node sgntr = signatureNode.getParentNode();
+            Node header = sgntr.getParentNode();
+            if (!"Sgntr".equals(sgntr.getLocalName()) || header == null || !"AppHdr".equals(header.getLocalName())
+                    || header.getParentNode() != doc.getDocumentElement()) {
+                throw new SignatureException("A assinatura deve estar em AppHdr/Sgntr.");
+            }
+            DOMValidateContext context = new DOMValidateContext(new TrustedCertificateSelector(), signatureNode);
+            XMLSignature signature = fac.unmarshalXMLSignature(context);
+            List<Reference> references = signature.getSignedInfo().getReferences();
+            if (references.size() != 1 || !"".equals(references.get(0).getURI())) {
+                throw new SignatureException("A assinatura deve ter uma única referência, ao documento inteiro (URI=\"\").");
+            }
+            if (!expectedTransforms(references.get(0).getTransforms())
+                    || !CANONICALIZATIONS.contains(signature.getSignedInfo().getCanonicalizationMethod().getAlgorithm())) {
+                throw new SignatureException("A referência da assinatura deve ter apenas as transformações enveloped-signature "
+                        + "e de canonicalização.");
+            }
+            if (!signature.getObjects().isEmpty()) {
+                throw new SignatureException("A assinatura não pode ter elementos ds:Object.");
+            }
+            boolean valid;
+            try {
+                valid = signature.validate(context);
+            } catch (XMLSignatureException e) {
+                // Ex: certificado não confiável (KeySelectorException)
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                throw new SignatureException("Assinatura da mensagem recebida não verificada: " + cause.getMessage(), e);
+            }
+            if (!valid) {
+                throw new SignatureException("Assinatura da mensagem recebida inválida.");
+            }
+        }
+
+        /**
+         * Enveloped-signature, seguida ou não de uma canonicalização: qualquer outra
+         * transformação (ex: XPath, XSLT) poderia excluir do digest parte do documento.
+         */
+        private static boolean expectedTransforms(List<Transform> transforms) {
+            if (transforms.isEmpty() || transforms.size() > 2 || !Transform.ENVELOPED.equals(transforms.get(0).getAlgorithm())) {
+                return false;
+            }
+            return transforms.size() == 1 || CANONICALIZATIONS.contains(transforms.get(1).getAlgorithm());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.pacs008.service.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Temporizadores do caminho crítico de um pagamento Pix.
+ *
+ * <ul>
+ *     <li>{@code pix.stage{stage}}: duração de cada etapa (construção do cabeçalho e do
+ *         documento, marshalling ou escrita pelo modelo, parsing do DOM, assinatura,
+ *         serialização e envio ao MQ);</li>
+ *     <li>{@code pix.requests{endpoint,outcome}}: duração das requisições HTTP por resultado.</li>
+ * </ul>
+ *
+ * <p>Os temporizadores são criados uma única vez e registram em histogramas do Micrometer
+ * (sem bloqueio e sem alocação por registro), publicados com os percentis p50, p99 e p999
+ * e com buckets para agregação no Prometheus ({@code /actuator/prometheus}).
+ *
+ * <p>O registro das etapas pode ser suspenso ({@link #suspendStages()}) nas threads em que o
+ * aquecimento da inicialização gera mensagens sintéticas: as primeiras execuções, ainda sem
+ * compilação JIT, distorceriam os percentis do tráfego real. A suspensão vale só para a
+ * thread que a pediu; as requisições reais recebidas ao mesmo tempo continuam medidas. Uma
+ * etapa executada em outra thread (ex: a assinatura nas lanes) consulta
+ * {@link #stagesSuspended()} na thread de origem antes de submetê-la.
+ */
+@Component
+public class PaymentMetrics {
+
+    private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+
+    private final MeterRegistry registry;
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Map<String, Timer> requestTimers = new ConcurrentHashMap<>();
+    private final ThreadLocal<Boolean> stagesSuspended = new ThreadLocal<>();
+
+    public PaymentMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, histogram(Timer.builder("pix.stage")
+                    .description("Duração de cada etapa da geração e do envio da pacs.008")
+                    .tag("stage", stage.tag)));
+        }
+    }
+
+    /**
+     * Registra a duração de uma etapa.
+     *
+     * @param stage      A etapa.
+     * @param startNanos O início da etapa ({@link System#nanoTime()}).
+     */
+    public void recordStage(Stage stage, long startNanos) {
+        if (!stagesSuspended()) {
+            stageTimers.get(stage).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Suspende o registro das etapas na thread atual, até {@link #resumeStages()} nessa mesma
+     * thread.
+     */
+    public void suspendStages() {
+        stagesSuspended.set(Boolean.TRUE);
+    }
+
+    public void resumeStages() {
+        stagesSuspended.remove();
+    }
+
+    /** Se o registro das etapas está suspenso na thread atual. */
+    public boolean stagesSuspended() {
+        return stagesSuspended.get() != null;
+    }
+
+    /**
+     * Registra a duração de uma requisição HTTP.
+     *
+     * @param endpoint   Nome curto do endpoint (ex: {@code payment}, {@code publish}).
+     * @param outcome    O resultado da requisição.
+     * @param startNanos O início da requisição ({@link System#nanoTime()}).
+     */
+    public void recordRequest(String endpoint, Outcome outcome, long startNanos) {
+        requestTimers.computeIfAbsent(endpoint + '|' + outcome.tag, key -> histogram(Timer.builder("pix.requests")
+                        .description("Duração das requisições de pagamento Pix")
+                        .tag("endpoint", endpoint)
+                        .tag("outcome", outcome.tag)))
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer histogram(Timer.Builder builder) {
+        return builder
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1000))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry);
+    }
+
+    /**
+     * Etapas medidas no caminho crítico.
+     */
+    public enum Stage {
+        HEADER("header"),
+        DOCUMENT("document"),
+        MARSHAL("marshal"),
+        TEMPLATE("template"),
+        PARSE("parse"),
+        SIGN("sign"),
+        SERIALIZE("serialize"),
+        MQ_SEND("mq-send");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    /**
+     * Resultado de uma requisição.
+     */
+    public enum Outcome {
+        SUCCESS("success"),
+        VALIDATION_ERROR("validation-error"),
+        CONFLICT("conflict"),
+        REJECTED("rejected"),
+        MQ_ERROR("mq-error"),
+        ERROR("error");
+
+        private final String tag;
+
+        Outcome(String tag) {
+            this.tag = tag;
+        }
+    }
+}
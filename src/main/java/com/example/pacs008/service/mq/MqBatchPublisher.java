@@ -0,0 +1,673 @@
+package com.example.pacs008.service.mq;
+
+import com.example.pacs008.util.OverloadedException;
+import com.ibm.mq.constants.MQConstants;
+import com.ibm.msg.client.jms.JmsDestination;
+import com.ibm.msg.client.jms.JmsMessage;
+import com.ibm.msg.client.wmq.WMQConstants;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.jms.BytesMessage;
+import jakarta.jms.Connection;
+import jakarta.jms.Destination;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Session;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.connection.CachingConnectionFactory;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publicador assíncrono em micro-lotes para o MQ.
+ *
+ * <p>As mensagens são colocadas em um buffer em memória e agrupadas por threads de
+ * despacho em lotes transacionados: até {@code batch-size} mensagens, ou o que chegar
+ * dentro de {@code linger-ms}, são enviadas na mesma sessão e confirmadas com um único
+ * commit. No IBM MQ o "put" assíncrono é habilitado no destino, de modo que o custo de
+ * ida e volta na rede é pago apenas no commit. Sessões e producers são reaproveitados
+ * por uma {@code CachingConnectionFactory} por endpoint.
+ *
+ * <p>Com vários endpoints ({@link MqEndpoints}: queue managers ou canais), cada um tem o seu
+ * buffer e os seus despachantes, e as publicações são distribuídas entre eles por rodízio
+ * ou pelo ISPB do pagador ({@code pix.mq.sharding}, ver {@link MqSharding}). Quando um lote
+ * falha e o endpoint não aceita uma nova conexão, ele é retirado da distribuição: as
+ * mensagens do seu buffer passam para os demais e novas conexões são testadas com espera
+ * crescente ({@code pix.mq.failover.*}) até que ele volte. As mensagens do lote que falhou
+ * são concluídas com erro, como antes.
+ *
+ * <p>As mensagens são enviadas como {@code BytesMessage} com o XML em UTF-8 exatamente
+ * como foi assinado, sem conversão para String ({@code message-type=bytes}). No IBM MQ, a
+ * mensagem é marcada com o formato {@code MQSTR} e o CCSID 1208 (UTF-8), de modo que o
+ * destinatário a interprete como texto. {@code message-type=text} volta ao {@code TextMessage}.
+ *
+ * <p>O buffer tem uma faixa por {@link MqPriority}, cada uma com capacidade
+ * {@code buffer-capacity}: os despachantes esvaziam {@code HIGH} antes de {@code NORMAL} e
+ * {@code NORMAL} antes de {@code BULK}, de modo que pagamentos prioritários não aguardam atrás
+ * de cargas em lote. Com tráfego prioritário contínuo, as faixas inferiores aguardam.
+ *
+ * <p>Cada mensagem recebe um {@link CompletableFuture}, concluído após o commit do seu lote.
+ * Com a faixa cheia, a publicação aguarda até {@code enqueue-timeout-ms} e então é
+ * rejeitada com {@link OverloadedException} (contrapressão).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MqBatchPublisher {
+
+    private final MqEndpoints mqEndpoints;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${pix.mq.publisher.buffer-capacity:10000}")
+    private int bufferCapacity;
+    @Value("${pix.mq.publisher.batch-size:50}")
+    private int batchSize;
+    @Value("${pix.mq.publisher.linger-ms:5}")
+    private long lingerMs;
+    @Value("${pix.mq.publisher.enqueue-timeout-ms:100}")
+    private long enqueueTimeoutMs;
+    // Threads de despacho por endpoint
+    @Value("${pix.mq.publisher.dispatchers:2}")
+    private int dispatchers;
+    @Value("${pix.mq.publisher.async-put:true}")
+    private boolean asyncPut;
+    // "bytes" (BytesMessage UTF-8) ou "text" (TextMessage)
+    @Value("${pix.mq.publisher.message-type:bytes}")
+    private String messageType;
+    @Value("${ibm.mq.session-cache-size:10}")
+    private int sessionCacheSize;
+    // "round-robin" ou "payer-ispb"
+    @Value("${pix.mq.sharding:round-robin}")
+    private String shardingMode;
+    @Value("${pix.mq.failover.backoff-initial-ms:1000}")
+    private long backoffInitialMs;
+    @Value("${pix.mq.failover.backoff-max-ms:30000}")
+    private long backoffMaxMs;
+
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private List<Shard> shards;
+    private MqSharding sharding;
+    private boolean textMessages;
+    private List<Thread> dispatcherThreads;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        sharding = MqSharding.of(shardingMode);
+        textMessages = "text".equalsIgnoreCase(messageType);
+        shards = new ArrayList<>(mqEndpoints.size());
+        for (MqEndpoints.Endpoint endpoint : mqEndpoints.all()) {
+            Shard shard = new Shard(endpoint, bufferCapacity);
+            Gauge.builder("pix.mq.endpoint.up", shard, sh -> sh.up ? 1 : 0)
+                    .description("1 = endpoint em uso, 0 = fora da distribuição (failover)")
+                    .tag("endpoint", endpoint.name()).register(meterRegistry);
+            FunctionCounter.builder("pix.mq.endpoint.failovers", shard.failovers, LongAdder::sum)
+                    .tag("endpoint", endpoint.name()).register(meterRegistry);
+            shards.add(shard);
+        }
+        for (MqPriority priority : MqPriority.values()) {
+            Gauge.builder("pix.mq.publisher.queue", this, p -> p.getBufferedCount(priority))
+                    .description("Publicações aguardando despacho").tag("priority", priority.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+
+        running = true;
+        dispatcherThreads = new ArrayList<>(dispatchers * shards.size());
+        for (int s = 0; s < shards.size(); s++) {
+            for (int i = 0; i < dispatchers; i++) {
+                Shard shard = shards.get(s);
+                // O primeiro despachante de cada endpoint também conduz o failover e a reconexão
+                boolean recovery = i == 0;
+                Thread t = new Thread(() -> dispatchLoop(shard, recovery), "mq-publisher-" + (s + 1) + "-" + (i + 1));
+                t.setDaemon(true);
+                t.start();
+                dispatcherThreads.add(t);
+            }
+        }
+        log.info("Publicador MQ: {} endpoint(s) {}, distribuição {}", shards.size(),
+                shards.stream().map(sh -> sh.endpoint.name()).toList(), sharding);
+    }
+
+    /**
+     * Encerra os despachantes após enviar as mensagens ainda no buffer.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread t : dispatcherThreads) {
+            t.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        for (Shard shard : shards) {
+            PendingMessage pending;
+            while ((pending = shard.buffer.poll()) != null) {
+                pending.result().completeExceptionally(new IllegalStateException("Publicador MQ encerrado."));
+            }
+            shard.connectionFactory.destroy();
+        }
+    }
+
+    /**
+     * Enfileira uma mensagem para publicação.
+     *
+     * @param message   O conteúdo da mensagem (o XML assinado do pacs.008), em UTF-8. O array
+     *                  é enviado sem cópia e não deve ser alterado até a conclusão do future.
+     * @param queueName O nome da fila de destino.
+     * @param priority  A faixa de despacho.
+     * @return Um future concluído quando o lote da mensagem for confirmado no MQ.
+     * @throws OverloadedException se a faixa continuar cheia após o tempo limite.
+     */
+    public CompletableFuture<Void> publishAsync(byte[] message, String queueName, MqPriority priority) {
+        return enqueue(List.of(new OutboundMessage(queueName, message)), priority);
+    }
+
+    /**
+     * Enfileira um grupo de mensagens enviado, na ordem da lista, em uma única transação.
+     * Usado quando a ordem de entrega precisa ser preservada (ex: relay da outbox), já que
+     * mensagens individuais podem ser despachadas por threads diferentes.
+     *
+     * @param messages As mensagens, na ordem de envio.
+     * @param priority A faixa de despacho do grupo.
+     * @return Um future concluído quando o lote que contém o grupo for confirmado no MQ.
+     * @throws OverloadedException se a faixa continuar cheia após o tempo limite.
+     */
+    public CompletableFuture<Void> publishAllAsync(List<OutboundMessage> messages, MqPriority priority) {
+        return enqueue(List.copyOf(messages), priority);
+    }
+
+    private CompletableFuture<Void> enqueue(List<OutboundMessage> messages, MqPriority priority) {
+        Shard shard = select(sharding.keyOf(messages.get(0).message()));
+        if (shard == null) {
+            throw new OverloadedException("Nenhum endpoint MQ disponível.", secondsToNextReconnect());
+        }
+        PendingMessage pending = new PendingMessage(messages, priority, new CompletableFuture<>());
+        boolean accepted;
+        try {
+            accepted = running && shard.buffer.offer(pending, priority, TimeUnit.MILLISECONDS.toNanos(enqueueTimeoutMs));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OverloadedException("Interrompido aguardando espaço no buffer de publicação.", 1, e);
+        }
+        if (!accepted) {
+            throw new OverloadedException("Buffer de publicação MQ cheio (" + bufferCapacity + " mensagens "
+                    + priority.name().toLowerCase() + ").", 1);
+        }
+        return pending.result();
+    }
+
+    /**
+     * Publicação de ensaio, usada no aquecimento da inicialização: em cada endpoint, abre a
+     * conexão (com o handshake TLS), a sessão e o producer da fila (que ficam em cache) e
+     * monta a mensagem, sem enviá-la. Nada é colocado na fila, nem mesmo em uma transação
+     * desfeita: a fila é a de produção do SPI.
+     *
+     * @return Os endpoints em que o ensaio falhou, com o motivo.
+     */
+    public Map<String, String> dryRun(byte[] message, String queueName) {
+        Map<String, String> failures = new LinkedHashMap<>();
+        for (Shard shard : shards) {
+            try {
+                shard.template.execute(session -> {
+                    MessageProducer producer = session.createProducer(resolveDestination(shard, session, queueName));
+                    try {
+                        createMessage(session, message);
+                    } finally {
+                        producer.close();
+                    }
+                    return null;
+                }, true);
+            } catch (Exception e) {
+                failures.put(shard.endpoint.name(), e.getMessage());
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Escolhe o endpoint da publicação entre os disponíveis: pela chave, se houver (o mesmo
+     * endpoint para a mesma chave, ou o próximo disponível), ou por rodízio.
+     *
+     * @return O endpoint, ou {@code null} se nenhum estiver disponível.
+     */
+    private Shard select(String key) {
+        int count = shards.size();
+        int first = key != null ? Math.floorMod(key.hashCode(), count) : Math.floorMod(nextShard.getAndIncrement(), count);
+        for (int i = 0; i < count; i++) {
+            Shard shard = shards.get((first + i) % count);
+            if (shard.up) {
+                return shard;
+            }
+        }
+        return null;
+    }
+
+    private long secondsToNextReconnect() {
+        long now = System.nanoTime();
+        long next = Long.MAX_VALUE;
+        for (Shard shard : shards) {
+            next = Math.min(next, Math.max(0, shard.retryAtNanos - now));
+        }
+        return TimeUnit.NANOSECONDS.toSeconds(next) + 1;
+    }
+
+    /** Quantidade de mensagens aguardando despacho, em todas as faixas e endpoints. */
+    public int getBufferedCount() {
+        int count = 0;
+        for (Shard shard : shards) {
+            count += shard.buffer.size();
+        }
+        return count;
+    }
+
+    /** Quantidade de mensagens aguardando despacho na faixa, em todos os endpoints. */
+    public int getBufferedCount(MqPriority priority) {
+        int count = 0;
+        for (Shard shard : shards) {
+            count += shard.buffer.size(priority);
+        }
+        return count;
+    }
+
+    /** Disponibilidade de cada endpoint ({@code true} = em uso), na ordem da configuração. */
+    public Map<String, Boolean> getEndpointStatus() {
+        Map<String, Boolean> status = new LinkedHashMap<>();
+        for (Shard shard : shards) {
+            status.put(shard.endpoint.name(), shard.up);
+        }
+        return status;
+    }
+
+    public int getBufferCapacity() {
+        return bufferCapacity;
+    }
+
+    private void dispatchLoop(Shard shard, boolean recovery) {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running || !shard.buffer.isEmpty()) {
+            try {
+                if (!shard.up) {
+                    if (!running) {
+                        // As mensagens restantes são concluídas com erro em stop()
+                        return;
+                    }
+                    if (recovery) {
+                        recover(shard);
+                    } else {
+                        Thread.sleep(100);
+                    }
+                    continue;
+                }
+                PendingMessage first = shard.buffer.poll(TimeUnit.MILLISECONDS.toNanos(100));
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collectBatch(shard, batch);
+                sendBatch(shard, batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (PendingMessage pending : batch) {
+                    pending.result().completeExceptionally(new IllegalStateException("Publicador MQ interrompido."));
+                }
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Completa o lote com as mensagens que chegarem até o tamanho máximo ou até o fim do linger.
+     */
+    private void collectBatch(Shard shard, List<PendingMessage> batch) throws InterruptedException {
+        shard.buffer.drainTo(batch, batchSize - batch.size());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        while (batch.size() < batchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            PendingMessage next = shard.buffer.poll(remaining);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            shard.buffer.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    private void sendBatch(Shard shard, List<PendingMessage> batch) {
+        try {
+            shard.template.execute(session -> {
+                Map<String, MessageProducer> producers = new HashMap<>();
+                try {
+                    for (PendingMessage pending : batch) {
+                        for (OutboundMessage outbound : pending.messages()) {
+                            MessageProducer producer = producers.get(outbound.queueName());
+                            if (producer == null) {
+                                producer = session.createProducer(resolveDestination(shard, session, outbound.queueName()));
+                                producers.put(outbound.queueName(), producer);
+                            }
+                            producer.send(createMessage(session, outbound.message()));
+                        }
+                    }
+                    // Um único commit confirma o lote inteiro (e os "puts" assíncronos)
+                    session.commit();
+                } catch (JMSException | RuntimeException e) {
+                    // Uma falha no rollback (ex: conexão perdida) não pode esconder a falha original
+                    try {
+                        session.rollback();
+                    } catch (JMSException | RuntimeException rollbackFailure) {
+                        e.addSuppressed(rollbackFailure);
+                    }
+                    throw e;
+                } finally {
+                    // Com a CachingConnectionFactory o close devolve o producer ao cache
+                    for (MessageProducer producer : producers.values()) {
+                        producer.close();
+                    }
+                }
+                return null;
+            }, true);
+
+            for (PendingMessage pending : batch) {
+                pending.result().complete(null);
+            }
+            log.debug("Lote de {} publicações confirmado no MQ ({})", batch.size(), shard.endpoint.name());
+        } catch (Exception e) {
+            log.error("Falha ao publicar lote de {} publicações no MQ ({}): {}", batch.size(), shard.endpoint.name(), e.getMessage(), e);
+            for (PendingMessage pending : batch) {
+                pending.result().completeExceptionally(e);
+            }
+            // Falha do lote (ex: fila inexistente) ou do queue manager: só o segundo tira o endpoint de uso
+            if (shard.up && !probe(shard)) {
+                markDown(shard);
+            }
+        }
+    }
+
+    /**
+     * Com o endpoint fora de uso: transfere o seu buffer para os demais e, a cada intervalo
+     * de espera (dobrado a cada tentativa, até {@code backoff-max-ms}), testa uma nova conexão.
+     */
+    private void recover(Shard shard) throws InterruptedException {
+        failover(shard);
+        long wait = shard.retryAtNanos - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(Math.min(wait, TimeUnit.MILLISECONDS.toNanos(100)));
+            return;
+        }
+        if (probe(shard)) {
+            shard.backoffNanos = TimeUnit.MILLISECONDS.toNanos(backoffInitialMs);
+            shard.up = true;
+            log.info("Endpoint MQ {} disponível novamente; de volta à distribuição", shard.endpoint.name());
+        } else {
+            shard.backoffNanos = Math.min(shard.backoffNanos * 2, TimeUnit.MILLISECONDS.toNanos(backoffMaxMs));
+            shard.retryAtNanos = System.nanoTime() + shard.backoffNanos;
+            log.warn("Endpoint MQ {} ainda indisponível; nova tentativa em {} ms",
+                    shard.endpoint.name(), TimeUnit.NANOSECONDS.toMillis(shard.backoffNanos));
+        }
+    }
+
+    /**
+     * Move as mensagens do buffer de um endpoint fora de uso para os endpoints disponíveis.
+     * As que não couberem (ou sem endpoint disponível) permanecem e seguem na reconexão; se
+     * nem o buffer de origem tiver espaço (ocupado por publicações aceitas enquanto o
+     * endpoint era retirado), elas são concluídas com {@link OverloadedException}.
+     */
+    private void failover(Shard shard) {
+        List<PendingMessage> pending = new ArrayList<>();
+        shard.buffer.drainTo(pending, Integer.MAX_VALUE);
+        int moved = 0;
+        int rejected = 0;
+        for (PendingMessage message : pending) {
+            Shard target = select(sharding.keyOf(message.messages().get(0).message()));
+            try {
+                if (target != null && target.buffer.offer(message, message.priority(), 0)) {
+                    moved++;
+                } else if (!shard.buffer.offer(message, message.priority(), 0)) {
+                    rejected++;
+                    message.result().completeExceptionally(new OverloadedException("Endpoint MQ " + shard.endpoint.name()
+                            + " indisponível e sem espaço nos buffers de publicação.", secondsToNextReconnect()));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                message.result().completeExceptionally(new IllegalStateException("Publicador MQ interrompido."));
+            }
+        }
+        if (moved > 0) {
+            log.info("{} publicação(ões) do endpoint MQ {} transferida(s) para outros endpoints", moved, shard.endpoint.name());
+        }
+        if (rejected > 0) {
+            log.warn("{} publicação(ões) do endpoint MQ {} recusada(s): sem espaço em nenhum buffer", rejected, shard.endpoint.name());
+        }
+    }
+
+    /**
+     * Verifica se o endpoint aceita uma nova conexão (sem o cache).
+     */
+    private boolean probe(Shard shard) {
+        try (Connection connection = shard.endpoint.connectionFactory().createConnection()) {
+            connection.getMetaData();
+            return true;
+        } catch (JMSException | RuntimeException e) {
+            log.debug("Endpoint MQ {} não aceitou a conexão: {}", shard.endpoint.name(), e.getMessage());
+            return false;
+        }
+    }
+
+    private void markDown(Shard shard) {
+        synchronized (shard) {
+            if (!shard.up) {
+                // Já retirado por outro despachante
+                return;
+            }
+            shard.backoffNanos = TimeUnit.MILLISECONDS.toNanos(backoffInitialMs);
+            shard.retryAtNanos = System.nanoTime() + shard.backoffNanos;
+            shard.up = false;
+        }
+        shard.failovers.increment();
+        // A conexão em cache está perdida: a próxima é aberta na reconexão
+        shard.connectionFactory.resetConnection();
+        log.warn("Endpoint MQ {} indisponível; retirado da distribuição ({} endpoint(s) restante(s))",
+                shard.endpoint.name(), shards.stream().filter(sh -> sh.up).count());
+    }
+
+    private Message createMessage(Session session, byte[] payload) throws JMSException {
+        if (textMessages) {
+            return session.createTextMessage(new String(payload, StandardCharsets.UTF_8));
+        }
+        BytesMessage message = session.createBytesMessage();
+        message.writeBytes(payload);
+        if (message instanceof JmsMessage) {
+            // IBM MQ: conteúdo em texto (MQSTR) codificado em UTF-8 (CCSID 1208)
+            message.setStringProperty(WMQConstants.JMS_IBM_FORMAT, MQConstants.MQFMT_STRING);
+            message.setStringProperty(WMQConstants.JMS_IBM_CHARACTER_SET, StandardCharsets.UTF_8.name());
+        }
+        return message;
+    }
+
+    private Destination resolveDestination(Shard shard, Session session, String queueName) throws JMSException {
+        Map<String, Destination> destinations = shard.destinations;
+        Destination destination = destinations.get(queueName);
+        if (destination == null) {
+            destination = session.createQueue(queueName);
+            if (asyncPut && destination instanceof JmsDestination mqDestination) {
+                // IBM MQ: o put não aguarda a resposta do queue manager; erros são reportados no commit
+                mqDestination.setIntProperty(WMQConstants.WMQ_PUT_ASYNC_ALLOWED, WMQConstants.WMQ_PUT_ASYNC_ALLOWED_ENABLED);
+            }
+            destinations.putIfAbsent(queueName, destination);
+        }
+        return destination;
+    }
+
+    private record PendingMessage(List<OutboundMessage> messages, MqPriority priority, CompletableFuture<Void> result) {
+    }
+
+    /**
+     * Um endpoint MQ com o seu buffer, a sua conexão em cache e o seu estado de failover.
+     */
+    private final class Shard {
+
+        final MqEndpoints.Endpoint endpoint;
+        final CachingConnectionFactory connectionFactory;
+        final JmsTemplate template;
+        final PriorityBuffer buffer;
+        final Map<String, Destination> destinations = new ConcurrentHashMap<>();
+        final LongAdder failovers = new LongAdder();
+        volatile boolean up = true;
+        // Alterados apenas pelo despachante de recuperação (e em markDown)
+        volatile long retryAtNanos;
+        volatile long backoffNanos;
+
+        Shard(MqEndpoints.Endpoint endpoint, int capacity) {
+            this.endpoint = endpoint;
+            this.connectionFactory = new CachingConnectionFactory(endpoint.connectionFactory());
+            connectionFactory.setSessionCacheSize(sessionCacheSize);
+            connectionFactory.setCacheProducers(true);
+            connectionFactory.setReconnectOnException(true);
+            this.template = new JmsTemplate(connectionFactory);
+            template.setSessionTransacted(true);
+            this.buffer = new PriorityBuffer(capacity);
+        }
+    }
+
+    /**
+     * Buffer limitado com uma fila por prioridade. As retiradas sempre vêm da faixa mais
+     * prioritária não vazia; cada faixa tem sua própria capacidade, de modo que uma carga em
+     * lote não ocupa o espaço dos pagamentos online.
+     */
+    private static final class PriorityBuffer {
+
+        private static final MqPriority[] PRIORITIES = MqPriority.values();
+
+        private final int capacity;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Map<MqPriority, ArrayDeque<PendingMessage>> lanes = new EnumMap<>(MqPriority.class);
+        private final Map<MqPriority, Condition> notFull = new EnumMap<>(MqPriority.class);
+        private int size;
+
+        PriorityBuffer(int capacity) {
+            this.capacity = capacity;
+            for (MqPriority priority : PRIORITIES) {
+                lanes.put(priority, new ArrayDeque<>());
+                notFull.put(priority, lock.newCondition());
+            }
+        }
+
+        boolean offer(PendingMessage pending, MqPriority priority, long timeoutNanos) throws InterruptedException {
+            ArrayDeque<PendingMessage> lane = lanes.get(priority);
+            lock.lockInterruptibly();
+            try {
+                long remaining = timeoutNanos;
+                while (lane.size() >= capacity) {
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    remaining = notFull.get(priority).awaitNanos(remaining);
+                }
+                lane.addLast(pending);
+                size++;
+                notEmpty.signal();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Retira a próxima mensagem, aguardando até o tempo limite; {@code null} se não houver. */
+        PendingMessage poll(long timeoutNanos) throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                long remaining = timeoutNanos;
+                while (size == 0) {
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    remaining = notEmpty.awaitNanos(remaining);
+                }
+                return take();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Retira a próxima mensagem sem aguardar; {@code null} se o buffer estiver vazio. */
+        PendingMessage poll() {
+            lock.lock();
+            try {
+                return size == 0 ? null : take();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Move até {@code max} mensagens para a lista, em ordem de prioridade. */
+        void drainTo(List<PendingMessage> target, int max) {
+            lock.lock();
+            try {
+                for (int i = 0; i < max && size > 0; i++) {
+                    target.add(take());
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private PendingMessage take() {
+            for (MqPriority priority : PRIORITIES) {
+                PendingMessage pending = lanes.get(priority).pollFirst();
+                if (pending != null) {
+                    size--;
+                    notFull.get(priority).signal();
+                    return pending;
+                }
+            }
+            throw new IllegalStateException("Buffer de publicação vazio.");
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size(MqPriority priority) {
+            lock.lock();
+            try {
+                return lanes.get(priority).size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean isEmpty() {
+            return size() == 0;
+        }
+    }
+}
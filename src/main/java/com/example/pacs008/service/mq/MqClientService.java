@@ -1,47 +1,304 @@
 package com.example.pacs008.service.mq;
 
+import com.example.pacs008.service.inbound.PaymentCorrelationIndex;
+import com.example.pacs008.service.metrics.PaymentMetrics;
+import com.example.pacs008.service.metrics.PaymentMetrics.Stage;
+import com.example.pacs008.service.reconciliation.SentMessageIndex;
+import com.example.pacs008.util.AdaptiveConcurrencyLimiter;
+import com.example.pacs008.util.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.jms.core.JmsTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
 /**
  * Cliente de Fila de Mensagens (MQ) para enviar mensagens ao SPI.
- * Utiliza o JmsTemplate do Spring para interagir com o servidor MQ configurado.
+ * As mensagens são entregues ao {@link MqBatchPublisher}, que as envia ao servidor MQ
+ * em lotes transacionados, reaproveitando conexões, sessões e producers.
+ * As mensagens confirmadas são registradas no {@link PaymentCorrelationIndex} e, se
+ * habilitado, no índice de conciliação ({@link SentMessageIndex}).
+ *
+ * <p>Cada publicação passa por duas proteções antes de entrar no buffer:
+ * <ul>
+ *     <li>um {@link CircuitBreaker}, que recusa as publicações imediatamente enquanto o MQ
+ *     estiver falhando ou lento demais;</li>
+ *     <li>um {@link AdaptiveConcurrencyLimiter}, que ajusta a quantidade de publicações em
+ *     andamento pela latência de confirmação: quando o queue manager fica lento, o limite
+ *     cai e as requisições excedentes são recusadas em vez de se acumularem.</li>
+ * </ul>
+ * As recusas são {@link com.example.pacs008.util.OverloadedException}, respondidas com 503 e
+ * {@code Retry-After}.
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j // Adiciona o logger SLF4J
 public class MqClientService {
 
-    private final JmsTemplate jmsTemplate;
+    private final MqBatchPublisher batchPublisher;
+    private final PaymentCorrelationIndex correlationIndex;
+    private final MeterRegistry meterRegistry;
+    private final PaymentMetrics metrics;
+    // Presente apenas com pix.reconciliation.enabled=true
+    private final Optional<SentMessageIndex> sentMessageIndex;
+
+    // Publicações simultâneas em andamento no canal MQ (limite máximo, com o modo adaptativo)
+    @Value("${pix.limits.mq.max-concurrent:2000}")
+    private int mqMaxConcurrent;
+    @Value("${pix.limits.mq.acquire-timeout-ms:1000}")
+    private long mqAcquireTimeoutMs;
+    @Value("${pix.limits.mq.adaptive:true}")
+    private boolean mqAdaptive;
+    @Value("${pix.limits.mq.initial-limit:200}")
+    private int mqInitialLimit;
+    @Value("${pix.limits.mq.min-limit:20}")
+    private int mqMinLimit;
+
+    @Value("${pix.mq.circuit.enabled:true}")
+    private boolean circuitEnabled;
+    @Value("${pix.mq.circuit.window-size:100}")
+    private int circuitWindowSize;
+    @Value("${pix.mq.circuit.minimum-calls:20}")
+    private int circuitMinimumCalls;
+    @Value("${pix.mq.circuit.failure-rate-threshold:50}")
+    private int circuitFailureRate;
+    @Value("${pix.mq.circuit.slow-call-rate-threshold:80}")
+    private int circuitSlowCallRate;
+    @Value("${pix.mq.circuit.slow-call-duration-ms:2000}")
+    private long circuitSlowCallMs;
+    @Value("${pix.mq.circuit.open-duration-ms:10000}")
+    private long circuitOpenDurationMs;
+    @Value("${pix.mq.circuit.half-open-calls:10}")
+    private int circuitHalfOpenCalls;
+
+    private AdaptiveConcurrencyLimiter mqLimiter;
+    private CircuitBreaker circuitBreaker;
+
+    @PostConstruct
+    public void init() {
+        // Sem o modo adaptativo, o limite é fixo em max-concurrent
+        mqLimiter = mqAdaptive
+                ? new AdaptiveConcurrencyLimiter("mq", mqInitialLimit, Math.min(mqMinLimit, mqMaxConcurrent), mqMaxConcurrent, mqAcquireTimeoutMs)
+                : new AdaptiveConcurrencyLimiter("mq", mqMaxConcurrent, mqMaxConcurrent, mqMaxConcurrent, mqAcquireTimeoutMs);
+        mqLimiter.bindTo(meterRegistry);
+        if (circuitEnabled) {
+            circuitBreaker = new CircuitBreaker("mq", circuitWindowSize, circuitMinimumCalls, circuitFailureRate,
+                    circuitSlowCallRate, circuitSlowCallMs, circuitOpenDurationMs, circuitHalfOpenCalls);
+            circuitBreaker.bindTo(meterRegistry);
+        }
+    }
 
     /**
-     * Publica uma mensagem em uma fila de destino no servidor MQ.
+     * Publica uma mensagem em uma fila de destino no servidor MQ e aguarda a confirmação.
      *
      * @param message O conteúdo da mensagem (o XML assinado do pacs.008).
      * @param queueName O nome da fila de destino no SPI.
      * @return Uma string confirmando o sucesso da publicação.
      */
     public String publish(String message, String queueName) {
-        if (message == null || message.isBlank()) {
+        return publish(toBytes(message, queueName), queueName);
+    }
+
+    /**
+     * Publica uma mensagem em UTF-8 (ex: {@code SignedPacs008Message#xml()}) e aguarda a confirmação.
+     *
+     * @param message O conteúdo da mensagem, enviado sem conversão para String.
+     * @param queueName O nome da fila de destino no SPI.
+     * @return Uma string confirmando o sucesso da publicação.
+     */
+    public String publish(byte[] message, String queueName) {
+        try {
+            publishAsync(message, queueName).join();
+            return "Mensagem publicada na fila '" + queueName + "' com sucesso.";
+        } catch (CompletionException e) {
+            // Em produção, uma exceção mais específica seria lançada para tratamento adequado.
+            throw new RuntimeException("Falha na comunicação com o servidor MQ.", e.getCause());
+        }
+    }
+
+    /**
+     * Publica uma mensagem em uma fila de destino no servidor MQ sem bloquear a thread chamadora.
+     *
+     * @param message O conteúdo da mensagem (o XML assinado do pacs.008).
+     * @param queueName O nome da fila de destino no SPI.
+     * @return Um future concluído quando a mensagem for confirmada no MQ.
+     * @throws com.example.pacs008.util.OverloadedException se o circuito estiver aberto ou o limite de
+     *                                                      publicações simultâneas ou o buffer estiverem esgotados.
+     */
+    public CompletableFuture<Void> publishAsync(String message, String queueName) {
+        return publishAsync(toBytes(message, queueName), queueName);
+    }
+
+    /**
+     * Publica uma mensagem em UTF-8 sem bloquear a thread chamadora, com a prioridade indicada
+     * no próprio pacs.008 ({@link MqPriority#of(byte[])}). O array é entregue ao publicador
+     * sem cópia e enviado como {@code BytesMessage}; ele não deve ser alterado até a
+     * conclusão do future.
+     *
+     * @param message O conteúdo da mensagem (o XML assinado do pacs.008), em UTF-8.
+     * @param queueName O nome da fila de destino no SPI.
+     * @return Um future concluído quando a mensagem for confirmada no MQ.
+     * @throws com.example.pacs008.util.OverloadedException se o circuito estiver aberto ou o limite de
+     *                                                      publicações simultâneas ou o buffer estiverem esgotados.
+     */
+    public CompletableFuture<Void> publishAsync(byte[] message, String queueName) {
+        if (message == null || message.length == 0) {
             log.error("Tentativa de publicar mensagem vazia na fila {}", queueName);
             throw new IllegalArgumentException("A mensagem para publicação não pode ser vazia.");
         }
+        return publishAsync(message, queueName, MqPriority.of(message));
+    }
 
-        try {
-            log.info("Publicando mensagem na fila: {}", queueName);
-            
-            // Envia a mensagem para a fila especificada
-            jmsTemplate.convertAndSend(queueName, message);
+    /**
+     * Publica uma mensagem em UTF-8 sem bloquear a thread chamadora, na faixa de despacho informada.
+     *
+     * @param message O conteúdo da mensagem (o XML assinado do pacs.008), em UTF-8.
+     * @param queueName O nome da fila de destino no SPI.
+     * @param priority A faixa de despacho (ex: {@link MqPriority#BULK} para cargas em lote).
+     * @return Um future concluído quando a mensagem for confirmada no MQ.
+     * @throws com.example.pacs008.util.OverloadedException se o circuito estiver aberto ou o limite de
+     *                                                      publicações simultâneas ou o buffer estiverem esgotados.
+     */
+    public CompletableFuture<Void> publishAsync(byte[] message, String queueName, MqPriority priority) {
+        if (message == null || message.length == 0) {
+            log.error("Tentativa de publicar mensagem vazia na fila {}", queueName);
+            throw new IllegalArgumentException("A mensagem para publicação não pode ser vazia.");
+        }
 
-            log.info("Mensagem publicada com sucesso na fila: {}", queueName);
-            return "Mensagem publicada na fila '" + queueName + "' com sucesso.";
+        // Log por mensagem apenas em debug: em INFO ele limita a vazão da publicação
+        log.debug("Publicando mensagem na fila: {}", queueName);
+        long start = System.nanoTime();
+        return guarded(() -> batchPublisher.publishAsync(message, queueName, priority))
+                .whenComplete((ignored, error) -> {
+                    metrics.recordStage(Stage.MQ_SEND, start);
+                    if (error == null) {
+                        correlationIndex.markSent(message);
+                        sentMessageIndex.ifPresent(index -> index.record(message, queueName));
+                        log.debug("Mensagem publicada com sucesso na fila: {}", queueName);
+                    } else {
+                        log.error("Falha ao publicar mensagem na fila {}: {}", queueName, error.getMessage());
+                    }
+                });
+    }
 
-        } catch (Exception e) {
-            log.error("Falha ao publicar mensagem na fila {}: {}", queueName, e.getMessage(), e);
-            // Em produção, uma exceção mais específica seria lançada para tratamento adequado.
-            throw new RuntimeException("Falha na comunicação com o servidor MQ.", e);
+    /**
+     * Publica um grupo de mensagens em uma única transação, preservando a ordem da lista. O
+     * grupo é despachado como {@link MqPriority#HIGH} se alguma das mensagens for prioritária.
+     *
+     * @param messages As mensagens, na ordem de envio.
+     * @return Um future concluído quando todas as mensagens forem confirmadas no MQ.
+     * @throws com.example.pacs008.util.OverloadedException se o circuito estiver aberto ou o limite de
+     *                                                      publicações simultâneas ou o buffer estiverem esgotados.
+     */
+    public CompletableFuture<Void> publishAllAsync(List<OutboundMessage> messages) {
+        MqPriority priority = MqPriority.NORMAL;
+        for (OutboundMessage message : messages) {
+            if (message.message() != null && priority != MqPriority.HIGH) {
+                priority = MqPriority.of(message.message());
+            }
+        }
+        return publishAllAsync(messages, priority);
+    }
+
+    /**
+     * Publica um grupo de mensagens em uma única transação, preservando a ordem da lista, na
+     * faixa de despacho informada.
+     *
+     * @param messages As mensagens, na ordem de envio.
+     * @param priority A faixa de despacho do grupo.
+     * @return Um future concluído quando todas as mensagens forem confirmadas no MQ.
+     * @throws com.example.pacs008.util.OverloadedException se o circuito estiver aberto ou o limite de
+     *                                                      publicações simultâneas ou o buffer estiverem esgotados.
+     */
+    public CompletableFuture<Void> publishAllAsync(List<OutboundMessage> messages, MqPriority priority) {
+        for (OutboundMessage message : messages) {
+            if (message.message() == null || message.message().length == 0) {
+                throw new IllegalArgumentException("A mensagem para publicação não pode ser vazia.");
+            }
+        }
+
+        long start = System.nanoTime();
+        return guarded(() -> batchPublisher.publishAllAsync(messages, priority))
+                .whenComplete((ignored, error) -> {
+                    metrics.recordStage(Stage.MQ_SEND, start);
+                    if (error == null) {
+                        for (OutboundMessage m : messages) {
+                            correlationIndex.markSent(m.message());
+                            sentMessageIndex.ifPresent(index -> index.record(m.message(), m.queueName()));
+                        }
+                        log.debug("Grupo de {} mensagens publicado com sucesso", messages.size());
+                    } else {
+                        log.error("Falha ao publicar grupo de {} mensagens: {}", messages.size(), error.getMessage());
+                    }
+                });
+    }
+
+    /** Estado do circuito do MQ ({@code CLOSED} se o circuit breaker estiver desabilitado). */
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker == null ? CircuitBreaker.State.CLOSED : circuitBreaker.getState();
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return mqLimiter;
+    }
+
+    /**
+     * Enfileira a publicação após obter a permissão do circuit breaker e do limitador, e
+     * informa a ambos o resultado (e a latência) da confirmação no MQ.
+     */
+    private CompletableFuture<Void> guarded(Supplier<CompletableFuture<Void>> enqueue) {
+        if (circuitBreaker != null) {
+            circuitBreaker.acquirePermission();
+        }
+        try {
+            mqLimiter.acquire();
+        } catch (RuntimeException e) {
+            if (circuitBreaker != null) {
+                circuitBreaker.onIgnored();
+            }
+            throw e;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Void> result;
+        try {
+            result = enqueue.get();
+        } catch (RuntimeException e) {
+            // Recusada pelo buffer: não chegou ao MQ
+            mqLimiter.release();
+            if (circuitBreaker != null) {
+                circuitBreaker.onIgnored();
+            }
+            throw e;
+        }
+        return result.whenComplete((ignored, error) -> {
+            long elapsed = System.nanoTime() - start;
+            if (error == null) {
+                mqLimiter.onSuccess(elapsed);
+                if (circuitBreaker != null) {
+                    circuitBreaker.onSuccess(elapsed);
+                }
+            } else {
+                mqLimiter.onDropped();
+                if (circuitBreaker != null) {
+                    circuitBreaker.onError();
+                }
+            }
+        });
+    }
+
+    private static byte[] toBytes(String message, String queueName) {
+        if (message == null || message.isBlank()) {
+            log.error("Tentativa de publicar mensagem vazia na fila {}", queueName);
+            throw new IllegalArgumentException("A mensagem para publicação não pode ser vazia.");
         }
+        return message.getBytes(StandardCharsets.UTF_8);
     }
-}
\ No newline at end of file
+}
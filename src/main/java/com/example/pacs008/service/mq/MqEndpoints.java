@@ -0,0 +1,44 @@
+package com.example.pacs008.service.mq;
+
+import jakarta.jms.ConnectionFactory;
+
+import java.util.List;
+
+/**
+ * Os endpoints MQ (queue manager + canal) disponíveis para publicação, na ordem da
+ * configuração. O primeiro é o endpoint principal, usado também pelos componentes que não
+ * distribuem a carga. Criados por {@code JmsConfig} (IBM MQ) ou {@code LocalBrokerConfig}
+ * (brokers Artemis embarcados no perfil {@code local}).
+ */
+public final class MqEndpoints {
+
+    /**
+     * Um endpoint MQ.
+     *
+     * @param name              Nome usado em logs, métricas e no health check.
+     * @param connectionFactory A ConnectionFactory do endpoint, sem cache.
+     */
+    public record Endpoint(String name, ConnectionFactory connectionFactory) {
+    }
+
+    private final List<Endpoint> endpoints;
+
+    public MqEndpoints(List<Endpoint> endpoints) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("Ao menos um endpoint MQ deve ser configurado.");
+        }
+        this.endpoints = List.copyOf(endpoints);
+    }
+
+    public List<Endpoint> all() {
+        return endpoints;
+    }
+
+    public Endpoint primary() {
+        return endpoints.get(0);
+    }
+
+    public int size() {
+        return endpoints.size();
+    }
+}
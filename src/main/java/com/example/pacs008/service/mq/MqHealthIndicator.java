@@ -0,0 +1,39 @@
+package com.example.pacs008.service.mq;
+
+import com.example.pacs008.util.AdaptiveConcurrencyLimiter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Expõe em {@code /actuator/health} o estado da camada de proteção do MQ: circuito, limite de
+ * concorrência, publicações aguardando despacho por faixa e disponibilidade de cada endpoint.
+ *
+ * <p>O estado é sempre {@code UP}: com o circuito aberto a aplicação continua atendendo (as
+ * publicações são recusadas com 503), e retirar as instâncias do balanceador ou reiniciá-las
+ * não resolveria uma lentidão do queue manager, compartilhado por todas. O circuito aberto
+ * é sinalizado nos detalhes e na métrica {@code pix.circuit.state}.
+ */
+@Component("mq")
+@RequiredArgsConstructor
+public class MqHealthIndicator implements HealthIndicator {
+
+    private final MqClientService mqClientService;
+    private final MqBatchPublisher batchPublisher;
+
+    @Override
+    public Health health() {
+        AdaptiveConcurrencyLimiter limiter = mqClientService.getLimiter();
+        Health.Builder health = Health.up()
+                .withDetail("circuit", mqClientService.getCircuitState())
+                .withDetail("limit", limiter.getLimit())
+                .withDetail("inUse", limiter.getInUse());
+        batchPublisher.getEndpointStatus().forEach((endpoint, up) ->
+                health.withDetail("endpoint." + endpoint, up ? "UP" : "DOWN"));
+        for (MqPriority priority : MqPriority.values()) {
+            health.withDetail("queue." + priority.name().toLowerCase(), batchPublisher.getBufferedCount(priority));
+        }
+        return health.build();
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.pacs008.service.mq;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Prioridade de despacho de uma publicação no {@link MqBatchPublisher}. Os despachantes
+ * sempre esvaziam as faixas mais prioritárias primeiro.
+ */
+public enum MqPriority {
+
+    /** Pagamentos prioritários ({@code InstrPrty HIGH} ou serviço {@code PAGPRI}). */
+    HIGH,
+    /** Demais publicações online. */
+    NORMAL,
+    /** Cargas em lote (ex: ingestão de arquivos), despachadas apenas com as outras faixas vazias. */
+    BULK;
+
+    private static final byte[] INSTRUCTION_PRIORITY_HIGH = "InstrPrty>HIGH<".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SERVICE_LEVEL_PAGPRI = ">PAGPRI<".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * A prioridade indicada no próprio pacs.008 ({@code PmtTpInf}): {@link #HIGH} para
+     * {@code InstrPrty HIGH} ou {@code SvcLvl/Prtry PAGPRI}, {@link #NORMAL} caso contrário.
+     */
+    public static MqPriority of(byte[] message) {
+        return contains(message, INSTRUCTION_PRIORITY_HIGH) || contains(message, SERVICE_LEVEL_PAGPRI) ? HIGH : NORMAL;
+    }
+
+    private static boolean contains(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0, last = data.length - pattern.length; i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
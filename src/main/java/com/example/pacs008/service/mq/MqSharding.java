@@ -0,0 +1,68 @@
+package com.example.pacs008.service.mq;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Distribuição das publicações entre os endpoints MQ ({@code pix.mq.sharding}).
+ */
+public enum MqSharding {
+
+    /** Endpoints alternados a cada publicação. */
+    ROUND_ROBIN,
+    /**
+     * Endpoint escolhido pelo ISPB do pagador ({@code DbtrAgt}): as mensagens de um mesmo
+     * participante seguem pelo mesmo queue manager enquanto ele estiver disponível.
+     */
+    PAYER_ISPB;
+
+    private static final byte[] DEBTOR_AGENT = "DbtrAgt>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MEMBER_ID = "MmbId>".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * @param value {@code round-robin} ou {@code payer-ispb}.
+     */
+    public static MqSharding of(String value) {
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+
+    /**
+     * A chave de distribuição da mensagem, ou {@code null} para distribuir por rodízio.
+     */
+    String keyOf(byte[] message) {
+        return this == PAYER_ISPB ? payerIspb(message) : null;
+    }
+
+    /**
+     * O ISPB do pagador ({@code DbtrAgt/FinInstnId/ClrSysMmbId/MmbId}) da primeira transação
+     * da pacs.008, ou {@code null} se não for encontrado.
+     */
+    static String payerIspb(byte[] message) {
+        int agent = indexOf(message, DEBTOR_AGENT, 0);
+        if (agent < 0) {
+            return null;
+        }
+        int start = indexOf(message, MEMBER_ID, agent + DEBTOR_AGENT.length);
+        if (start < 0) {
+            return null;
+        }
+        start += MEMBER_ID.length;
+        int end = start;
+        while (end < message.length && message[end] != '<') {
+            end++;
+        }
+        return end < message.length ? new String(message, start, end - start, StandardCharsets.US_ASCII) : null;
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern, int from) {
+        outer:
+        for (int i = from, last = data.length - pattern.length; i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
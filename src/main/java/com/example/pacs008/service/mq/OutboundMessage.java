@@ -0,0 +1,16 @@
+package com.example.pacs008.service.mq;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Mensagem a ser publicada no MQ.
+ *
+ * @param queueName O nome da fila de destino.
+ * @param message   O conteúdo da mensagem (o XML assinado do pacs.008), codificado em UTF-8.
+ */
+public record OutboundMessage(String queueName, byte[] message) {
+
+    public OutboundMessage(String queueName, String message) {
+        this(queueName, message == null ? null : message.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,594 @@
+package com.example.pacs008.service.outbox;
+
+import com.example.pacs008.service.mq.MqPriority;
+import com.example.pacs008.util.OverloadedException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Log de escrita antecipada (WAL) da outbox local de mensagens assinadas.
+ *
+ * <p>As mensagens são gravadas em segmentos mapeados em memória ({@code segment-size-mb}
+ * cada, nomeados pela primeira sequência que contêm). Cada registro tem o formato
+ * {@code [tamanho][CRC32C][sequência][prioridade e tamanho da fila][fila][mensagem]}; o
+ * tamanho é escrito por último, de modo que um registro incompleto ou corrompido marca o fim
+ * do log na recuperação. A faixa de despacho ({@link MqPriority}) ocupa os dois bits mais
+ * altos do tamanho da fila; registros gravados antes dela (bits zerados) são despachados com
+ * a prioridade indicada na própria mensagem.
+ *
+ * <p>A durabilidade é confirmada em grupo: a thread {@code outbox-flusher} aguarda até
+ * {@code commit-interval-ms} para acumular gravações e executa um único {@code force()} para
+ * todas elas, concluindo então os futures de cada {@link #append}. O relay
+ * ({@link OutboxRelay}) só lê registros já duráveis.
+ *
+ * <p>Se o {@code force()} falhar, as gravações ainda não confirmadas são desfeitas: o log
+ * volta ao último registro durável e os futures dessas gravações falham. Nenhuma delas é
+ * entregue ao MQ depois, de modo que o cliente pode reenviar a mensagem sem duplicá-la.
+ */
+@Component
+@ConditionalOnProperty(name = "pix.outbox.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class OutboxLog {
+
+    private static final String SEGMENT_SUFFIX = ".wal";
+    // Tamanho do corpo + CRC32C do corpo
+    private static final int HEADER_BYTES = 8;
+    // Sequência + prioridade e tamanho do nome da fila
+    private static final int BODY_FIXED_BYTES = 10;
+    private static final int MAX_QUEUE_NAME_BYTES = 0x3FFF;
+    private static final int PRIORITY_SHIFT = 14;
+    private static final MqPriority[] PRIORITIES = MqPriority.values();
+    // Espera entre as tentativas de confirmar em disco o descarte de gravações desfeitas
+    private static final long DISCARD_RETRY_MS = 100;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${pix.outbox.directory:./data/outbox}")
+    private String directory;
+    @Value("${pix.outbox.segment-size-mb:64}")
+    private int segmentSizeMb;
+    // Janela de agrupamento de gravações por fsync
+    @Value("${pix.outbox.commit-interval-ms:2}")
+    private long commitIntervalMs;
+
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ConcurrentLinkedQueue<DurabilityWaiter> waiters = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Condition written = writeLock.newCondition();
+    private final Condition flushed = writeLock.newCondition();
+
+    private Path dir;
+    private int segmentSize;
+    // Protegidos por writeLock
+    private Segment active;
+    private long nextSequence;
+    private long lastWrittenSequence;
+    // Registros desfeitos zerados, mas ainda não confirmados em disco: novas gravações são recusadas
+    private boolean discardPending;
+
+    private volatile long durableSequence;
+    private volatile boolean running;
+    private Thread flusher;
+
+    private Timer forceTimer;
+    private DistributionSummary groupCommitSize;
+
+    @PostConstruct
+    public void init() throws IOException {
+        segmentSize = Math.toIntExact(segmentSizeMb * 1024L * 1024L);
+        dir = Path.of(directory);
+        Files.createDirectories(dir);
+        recover();
+
+        forceTimer = Timer.builder("pix.outbox.fsync")
+                .description("Duração do force() de cada confirmação em grupo").register(meterRegistry);
+        groupCommitSize = DistributionSummary.builder("pix.outbox.group-commit.size")
+                .description("Mensagens confirmadas por force()").register(meterRegistry);
+        Gauge.builder("pix.outbox.segments", segments, Map::size).register(meterRegistry);
+
+        running = true;
+        flusher = new Thread(this::flushLoop, "outbox-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Confirma as gravações pendentes e encerra o flusher.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        writeLock.lock();
+        try {
+            running = false;
+            written.signalAll();
+        } finally {
+            writeLock.unlock();
+        }
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+        DurabilityWaiter waiter;
+        while ((waiter = waiters.poll()) != null) {
+            waiter.result().completeExceptionally(new IllegalStateException("Outbox encerrada."));
+        }
+    }
+
+    /**
+     * Grava uma mensagem na outbox, para ser despachada com a prioridade indicada no próprio
+     * pacs.008 ({@link MqPriority#of(byte[])}).
+     *
+     * @param queueName O nome da fila de destino.
+     * @param message   O conteúdo da mensagem (o XML assinado, em UTF-8).
+     * @return Um future concluído com a sequência da mensagem quando ela estiver gravada em disco.
+     * @throws IllegalArgumentException   se a mensagem não couber em um segmento.
+     * @throws RejectedExecutionException se a outbox estiver sendo encerrada.
+     */
+    public CompletableFuture<Long> append(String queueName, byte[] message) {
+        return append(queueName, message, MqPriority.of(message));
+    }
+
+    /**
+     * Grava uma mensagem na outbox, para ser despachada na faixa informada.
+     *
+     * @param queueName O nome da fila de destino.
+     * @param message   O conteúdo da mensagem (o XML assinado, em UTF-8).
+     * @param priority  A faixa de despacho (ex: {@link MqPriority#BULK} para cargas em lote).
+     * @return Um future concluído com a sequência da mensagem quando ela estiver gravada em disco.
+     * @throws IllegalArgumentException   se a mensagem não couber em um segmento.
+     * @throws RejectedExecutionException se a outbox estiver sendo encerrada.
+     */
+    public CompletableFuture<Long> append(String queueName, byte[] message, MqPriority priority) {
+        byte[] queue = queueName.getBytes(StandardCharsets.UTF_8);
+        if (queue.length > MAX_QUEUE_NAME_BYTES) {
+            throw new IllegalArgumentException("Nome de fila muito longo.");
+        }
+        int length = BODY_FIXED_BYTES + queue.length + message.length;
+        if (HEADER_BYTES + length > segmentSize) {
+            throw new IllegalArgumentException("A mensagem excede o tamanho do segmento da outbox (" + segmentSizeMb + " MB).");
+        }
+
+        CompletableFuture<Long> durable = new CompletableFuture<>();
+        writeLock.lock();
+        try {
+            if (!running) {
+                throw new RejectedExecutionException("Outbox encerrada.");
+            }
+            if (discardPending) {
+                throw new OverloadedException("Outbox indisponível: falha ao confirmar gravações em disco.", 1);
+            }
+            if (active.buffer().remaining() < HEADER_BYTES + length) {
+                roll();
+            }
+            long sequence = nextSequence++;
+            MappedByteBuffer buffer = active.buffer();
+            int start = buffer.position();
+            buffer.position(start + HEADER_BYTES);
+            buffer.putLong(sequence).putShort((short) ((priority.ordinal() + 1) << PRIORITY_SHIFT | queue.length))
+                    .put(queue).put(message);
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(start + HEADER_BYTES, length));
+            buffer.putInt(start + 4, (int) crc.getValue());
+            // O tamanho por último: até aqui o registro é ignorado pela leitura
+            buffer.putInt(start, length);
+
+            lastWrittenSequence = sequence;
+            waiters.add(new DurabilityWaiter(sequence, active.baseSequence(), start, durable));
+            written.signal();
+        } finally {
+            writeLock.unlock();
+        }
+        return durable;
+    }
+
+    /** Última sequência gravada (durável ou não). */
+    public long getLastSequence() {
+        writeLock.lock();
+        try {
+            return lastWrittenSequence;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public long getDurableSequence() {
+        return durableSequence;
+    }
+
+    Path getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Posiciona um cursor de leitura no primeiro registro com sequência maior que a informada.
+     */
+    Cursor cursorAfter(long sequence) {
+        Map.Entry<Long, Segment> start = segments.floorEntry(sequence + 1);
+        Cursor cursor = new Cursor(start != null ? start.getValue() : segments.firstEntry().getValue());
+        while (true) {
+            int position = cursor.view.position();
+            Entry entry = readEntry(cursor.view);
+            if (entry == null) {
+                Map.Entry<Long, Segment> next = segments.higherEntry(cursor.segment.baseSequence());
+                if (next == null) {
+                    return cursor;
+                }
+                cursor.moveTo(next.getValue());
+            } else if (entry.sequence() > sequence) {
+                cursor.view.position(position);
+                return cursor;
+            }
+        }
+    }
+
+    /**
+     * Lê, a partir do cursor, até {@code maxEntries} registros já duráveis.
+     */
+    List<Entry> read(Cursor cursor, int maxEntries) {
+        long durable = durableSequence;
+        List<Entry> entries = new ArrayList<>(Math.min(maxEntries, 64));
+        while (entries.size() < maxEntries) {
+            int position = cursor.view.position();
+            Entry entry = readEntry(cursor.view);
+            if (entry == null) {
+                // Fim do segmento: só avança se ele já foi fechado (existe um segmento seguinte)
+                Map.Entry<Long, Segment> next = segments.higherEntry(cursor.segment.baseSequence());
+                if (next == null || next.getKey() > durable + 1) {
+                    break;
+                }
+                cursor.moveTo(next.getValue());
+                continue;
+            }
+            if (entry.sequence() > durable) {
+                cursor.view.position(position);
+                break;
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Aguarda até que existam registros duráveis após a sequência informada.
+     */
+    void awaitDurable(long afterSequence, long timeoutMs) throws InterruptedException {
+        writeLock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (durableSequence <= afterSequence && remaining > 0 && running) {
+                remaining = flushed.awaitNanos(remaining);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Remove os segmentos fechados cujos registros já foram todos entregues.
+     */
+    void release(long relayedSequence) {
+        for (Map.Entry<Long, Segment> entry : segments.entrySet()) {
+            Long nextBase = segments.higherKey(entry.getKey());
+            if (nextBase == null || nextBase > relayedSequence + 1) {
+                return;
+            }
+            segments.remove(entry.getKey());
+            try {
+                Files.deleteIfExists(entry.getValue().path());
+                log.debug("Segmento da outbox removido: {}", entry.getValue().path());
+            } catch (IOException e) {
+                log.warn("Falha ao remover o segmento da outbox {}: {}", entry.getValue().path(), e.getMessage());
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long target;
+            Segment segment;
+            try {
+                writeLock.lock();
+                try {
+                    while (running && lastWrittenSequence == durableSequence && !discardPending) {
+                        written.await();
+                    }
+                    if (!running && (lastWrittenSequence == durableSequence || discardPending)) {
+                        return; // Encerrada e sem gravações pendentes
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+                if (discardPending) {
+                    if (!confirmDiscard()) {
+                        Thread.sleep(DISCARD_RETRY_MS);
+                    }
+                    continue;
+                }
+                if (commitIntervalMs > 0 && running) {
+                    Thread.sleep(commitIntervalMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            writeLock.lock();
+            try {
+                target = lastWrittenSequence;
+                segment = active;
+            } finally {
+                writeLock.unlock();
+            }
+
+            // Segmentos anteriores já foram confirmados na troca (roll)
+            long start = System.nanoTime();
+            try {
+                force(segment.buffer());
+            } catch (UncheckedIOException e) {
+                log.error("Falha ao confirmar a outbox em disco; desfazendo as gravações após a sequência {}: {}",
+                        durableSequence, e.getMessage(), e);
+                rollBack(e);
+                continue; // O descarte é confirmado no início do laço
+            }
+            forceTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            groupCommitSize.record(target - durableSequence);
+
+            writeLock.lock();
+            try {
+                durableSequence = target;
+                flushed.signalAll();
+            } finally {
+                writeLock.unlock();
+            }
+            completeWaiters(target, null);
+        }
+    }
+
+    private void completeWaiters(long upToSequence, Throwable error) {
+        DurabilityWaiter waiter;
+        while ((waiter = waiters.peek()) != null && waiter.sequence() <= upToSequence) {
+            waiters.poll();
+            if (error == null) {
+                waiter.result().complete(waiter.sequence());
+            } else {
+                waiter.result().completeExceptionally(error);
+            }
+        }
+    }
+
+    /**
+     * Descarta todos os registros após o último durável: o trecho do segmento entre o
+     * primeiro deles e a posição de escrita é zerado (a leitura e a recuperação param no
+     * início dele), os segmentos abertos depois dele são removidos e a escrita recomeça na sua
+     * posição, com a mesma sequência. O relay nunca lê além do último registro durável,
+     * portanto não viu nenhum dos registros descartados.
+     *
+     * <p>O trecho inteiro é zerado, e não só o primeiro cabeçalho: um registro novo do mesmo
+     * tamanho terminaria exatamente no início de um registro descartado seguinte, com a
+     * sequência esperada e CRC válido, que a recuperação aceitaria. Até o descarte ser
+     * confirmado em disco ({@link #confirmDiscard()}), novas gravações são recusadas.
+     */
+    private void rollBack(Throwable cause) {
+        writeLock.lock();
+        try {
+            DurabilityWaiter first = waiters.peek();
+            if (first != null) {
+                Segment segment = segments.get(first.segmentBase());
+                for (Segment later : segments.tailMap(first.segmentBase(), false).values()) {
+                    segments.remove(later.baseSequence());
+                    try {
+                        Files.deleteIfExists(later.path());
+                    } catch (IOException e) {
+                        log.warn("Falha ao remover o segmento da outbox {}: {}", later.path(), e.getMessage());
+                    }
+                }
+                MappedByteBuffer buffer = segment.buffer();
+                byte[] zeros = new byte[Math.min(64 * 1024, Math.max(1, buffer.position() - first.position()))];
+                for (int p = first.position(); p < buffer.position(); p += zeros.length) {
+                    buffer.put(p, zeros, 0, Math.min(zeros.length, buffer.position() - p));
+                }
+                buffer.position(first.position());
+                discardPending = true;
+                active = segment;
+                nextSequence = first.sequence();
+                lastWrittenSequence = first.sequence() - 1;
+            }
+            completeWaiters(Long.MAX_VALUE, new OutboxWriteException(
+                    "Falha ao gravar a mensagem na outbox em disco; a gravação foi desfeita e pode ser repetida.", cause));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Confirma em disco o descarte feito por {@link #rollBack} e volta a aceitar gravações.
+     * Executado pelo flusher, sem writeLock: enquanto o descarte está pendente, nenhuma
+     * gravação troca o segmento ativo.
+     *
+     * @return {@code false} se a confirmação falhar (é tentada de novo pelo flusher).
+     */
+    private boolean confirmDiscard() {
+        Segment segment;
+        writeLock.lock();
+        try {
+            if (!discardPending) {
+                return true;
+            }
+            segment = active;
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            force(segment.buffer());
+        } catch (UncheckedIOException e) {
+            log.error("Falha ao confirmar em disco o descarte das gravações desfeitas da outbox: {}", e.getMessage(), e);
+            return false;
+        }
+        writeLock.lock();
+        try {
+            discardPending = false;
+        } finally {
+            writeLock.unlock();
+        }
+        log.info("Descarte das gravações desfeitas da outbox confirmado; gravações liberadas");
+        return true;
+    }
+
+    /** Confirma o segmento em disco. */
+    void force(MappedByteBuffer buffer) {
+        buffer.force();
+    }
+
+    /**
+     * Fecha o segmento ativo (com {@code force()}) e abre um novo. Chamado com writeLock.
+     */
+    private void roll() {
+        force(active.buffer());
+        active = openSegment(nextSequence, true);
+        segments.put(active.baseSequence(), active);
+        log.debug("Novo segmento da outbox: {}", active.path());
+    }
+
+    /**
+     * Reabre os segmentos existentes e posiciona a escrita após o último registro válido.
+     */
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(dir)) {
+            files = listing.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+
+        long lastSequence = 0;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long base = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            Segment segment = openSegment(base, false);
+            ByteBuffer view = segment.buffer().duplicate();
+            long expected = base;
+            Entry entry;
+            while ((entry = readEntry(view)) != null && entry.sequence() == expected) {
+                expected++;
+            }
+            segment.buffer().position(view.position());
+            segments.put(base, segment);
+            lastSequence = Math.max(lastSequence, expected - 1);
+        }
+
+        nextSequence = lastSequence + 1;
+        if (segments.isEmpty()) {
+            segments.put(nextSequence, openSegment(nextSequence, true));
+        }
+        active = segments.lastEntry().getValue();
+        lastWrittenSequence = lastSequence;
+        durableSequence = lastSequence;
+        log.info("Outbox recuperada de {}: {} segmento(s), última sequência {}", dir, segments.size(), lastSequence);
+    }
+
+    private Segment openSegment(long baseSequence, boolean create) {
+        Path path = dir.resolve(String.format("%020d%s", baseSequence, SEGMENT_SUFFIX));
+        try (FileChannel channel = create
+                ? FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = create ? segmentSize : channel.size();
+            // O mapeamento continua válido após o fechamento do canal
+            return new Segment(baseSequence, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao abrir o segmento da outbox " + path, e);
+        }
+    }
+
+    /**
+     * Lê o registro na posição atual e avança, ou retorna null (sem avançar) se não houver
+     * um registro completo e íntegro.
+     */
+    private static Entry readEntry(ByteBuffer view) {
+        int start = view.position();
+        if (view.remaining() < HEADER_BYTES + BODY_FIXED_BYTES) {
+            return null;
+        }
+        int length = view.getInt(start);
+        if (length < BODY_FIXED_BYTES || length > view.remaining() - HEADER_BYTES) {
+            return null;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(view.slice(start + HEADER_BYTES, length));
+        if ((int) crc.getValue() != view.getInt(start + 4)) {
+            return null;
+        }
+        long sequence = view.getLong(start + HEADER_BYTES);
+        int queueField = view.getShort(start + HEADER_BYTES + 8) & 0xFFFF;
+        int queueLength = queueField & MAX_QUEUE_NAME_BYTES;
+        int priority = queueField >>> PRIORITY_SHIFT;
+        if (BODY_FIXED_BYTES + queueLength > length) {
+            return null;
+        }
+        byte[] queue = new byte[queueLength];
+        view.get(start + HEADER_BYTES + BODY_FIXED_BYTES, queue);
+        byte[] message = new byte[length - BODY_FIXED_BYTES - queueLength];
+        view.get(start + HEADER_BYTES + BODY_FIXED_BYTES + queueLength, message);
+        view.position(start + HEADER_BYTES + length);
+        return new Entry(sequence, new String(queue, StandardCharsets.UTF_8), message,
+                priority == 0 ? MqPriority.of(message) : PRIORITIES[priority - 1]);
+    }
+
+    /**
+     * Registro lido da outbox.
+     */
+    record Entry(long sequence, String queueName, byte[] message, MqPriority priority) {
+    }
+
+    /**
+     * Posição de leitura do relay. Usa uma visão própria do buffer de cada segmento.
+     */
+    static final class Cursor {
+        private Segment segment;
+        private ByteBuffer view;
+
+        private Cursor(Segment segment) {
+            moveTo(segment);
+        }
+
+        private void moveTo(Segment next) {
+            this.segment = next;
+            this.view = next.buffer().duplicate().position(0);
+        }
+    }
+
+    private record Segment(long baseSequence, Path path, MappedByteBuffer buffer) {
+    }
+
+    /**
+     * Gravação aguardando confirmação em disco, com a posição do registro para desfazê-la.
+     */
+    private record DurabilityWaiter(long sequence, long segmentBase, int position, CompletableFuture<Long> result) {
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.pacs008.service.outbox;
+
+import com.example.pacs008.service.mq.MqClientService;
+import com.example.pacs008.service.mq.MqPriority;
+import com.example.pacs008.service.mq.OutboundMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entrega ao MQ, na ordem de gravação, as mensagens da {@link OutboxLog}.
+ *
+ * <p>A thread {@code outbox-relay} lê lotes de até {@code relay.batch-size} registros duráveis
+ * e os publica com {@link MqClientService#publishAllAsync}, uma transação por sequência de
+ * registros consecutivos com a mesma faixa de despacho (a gravada com cada mensagem). Após a
+ * confirmação, a última sequência entregue é gravada no arquivo de checkpoint e os segmentos
+ * já entregues são removidos. Em caso de falha o mesmo lote é reenviado após
+ * {@code relay.retry-backoff-ms}; após uma queda, a entrega recomeça do checkpoint.
+ *
+ * <p>A garantia é "ao menos uma vez": uma queda entre o commit no MQ e a gravação do
+ * checkpoint reenvia o último lote.
+ */
+@Component
+@ConditionalOnProperty(name = "pix.outbox.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class OutboxRelay {
+
+    private static final String CHECKPOINT_FILE = "relay.checkpoint";
+
+    private final OutboxLog outboxLog;
+    private final MqClientService mqClientService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${pix.outbox.relay.batch-size:50}")
+    private int batchSize;
+    @Value("${pix.outbox.relay.retry-backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    private FileChannel checkpointChannel;
+    private final ByteBuffer checkpointBuffer = ByteBuffer.allocate(Long.BYTES);
+    private OutboxLog.Cursor cursor;
+    private volatile long relayedSequence;
+    private volatile boolean running;
+    private Thread relay;
+
+    private Counter relayed;
+    private Counter failures;
+
+    @PostConstruct
+    public void start() throws IOException {
+        checkpointChannel = FileChannel.open(outboxLog.getDirectory().resolve(CHECKPOINT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        relayedSequence = readCheckpoint();
+        if (relayedSequence > outboxLog.getLastSequence()) {
+            log.warn("Checkpoint da outbox ({}) além da última sequência gravada ({}); reiniciando o checkpoint",
+                    relayedSequence, outboxLog.getLastSequence());
+            relayedSequence = outboxLog.getLastSequence();
+            writeCheckpoint(relayedSequence);
+        }
+        cursor = outboxLog.cursorAfter(relayedSequence);
+        log.info("Outbox: {} mensagem(ns) pendente(s) de entrega ao MQ", outboxLog.getLastSequence() - relayedSequence);
+
+        relayed = Counter.builder("pix.outbox.relayed").register(meterRegistry);
+        failures = Counter.builder("pix.outbox.relay.failures").register(meterRegistry);
+        Gauge.builder("pix.outbox.depth", this, r -> outboxLog.getDurableSequence() - r.relayedSequence)
+                .description("Mensagens duráveis ainda não entregues ao MQ").register(meterRegistry);
+
+        running = true;
+        relay = new Thread(this::relayLoop, "outbox-relay");
+        relay.setDaemon(true);
+        relay.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        running = false;
+        relay.interrupt();
+        relay.join(TimeUnit.SECONDS.toMillis(10));
+        checkpointChannel.close();
+    }
+
+    private void relayLoop() {
+        List<OutboxLog.Entry> batch = List.of();
+        while (running) {
+            try {
+                if (batch.isEmpty()) {
+                    batch = outboxLog.read(cursor, batchSize);
+                    if (batch.isEmpty()) {
+                        outboxLog.awaitDurable(relayedSequence, 100);
+                        continue;
+                    }
+                }
+                deliver(batch);
+                batch = List.of();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException | RejectedExecutionException e) {
+                failures.increment();
+                log.warn("Falha ao entregar {} mensagem(ns) da outbox; nova tentativa em {} ms: {}",
+                        batch.size(), retryBackoffMs, e.getMessage());
+                if (!backOff()) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                // Erro inesperado (ex: UncheckedIOException): a thread não pode terminar, ou a outbox pararia de ser entregue
+                failures.increment();
+                log.error("Erro inesperado no relay da outbox ({} mensagem(ns) no lote); nova tentativa em {} ms: {}",
+                        batch.size(), retryBackoffMs, e.getMessage(), e);
+                if (!backOff()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Falso se a thread foi interrompida durante a espera.
+     */
+    private boolean backOff() {
+        try {
+            Thread.sleep(retryBackoffMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void deliver(List<OutboxLog.Entry> batch) throws InterruptedException, ExecutionException {
+        // Em ordem: cada sequência com a mesma prioridade é confirmada antes da seguinte
+        List<OutboundMessage> messages = new ArrayList<>(batch.size());
+        MqPriority priority = batch.get(0).priority();
+        for (OutboxLog.Entry entry : batch) {
+            if (entry.priority() != priority) {
+                mqClientService.publishAllAsync(messages, priority).get();
+                messages = new ArrayList<>(batch.size());
+                priority = entry.priority();
+            }
+            messages.add(new OutboundMessage(entry.queueName(), entry.message()));
+        }
+        mqClientService.publishAllAsync(messages, priority).get();
+
+        long last = batch.get(batch.size() - 1).sequence();
+        relayedSequence = last;
+        relayed.increment(batch.size());
+        // Sem force(): após uma queda do sistema operacional o checkpoint pode voltar um
+        // pouco, o que apenas reenvia mensagens (ao menos uma vez)
+        try {
+            writeCheckpoint(last);
+        } catch (IOException e) {
+            log.error("Falha ao gravar o checkpoint da outbox ({}): {}", last, e.getMessage(), e);
+            return;
+        }
+        outboxLog.release(last);
+    }
+
+    private long readCheckpoint() throws IOException {
+        checkpointBuffer.clear();
+        int read = checkpointChannel.read(checkpointBuffer, 0);
+        return read == Long.BYTES ? checkpointBuffer.getLong(0) : 0;
+    }
+
+    private void writeCheckpoint(long sequence) throws IOException {
+        checkpointBuffer.clear();
+        checkpointBuffer.putLong(0, sequence);
+        while (checkpointBuffer.hasRemaining()) {
+            checkpointChannel.write(checkpointBuffer, checkpointBuffer.position());
+        }
+    }
+}
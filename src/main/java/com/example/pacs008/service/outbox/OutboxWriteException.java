@@ -0,0 +1,12 @@
+package com.example.pacs008.service.outbox;
+
+/**
+ * Lançada quando uma gravação na outbox não pôde ser confirmada em disco. A gravação foi
+ * desfeita: a mensagem não será entregue ao MQ e pode ser enviada novamente.
+ */
+public class OutboxWriteException extends RuntimeException {
+
+    public OutboxWriteException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
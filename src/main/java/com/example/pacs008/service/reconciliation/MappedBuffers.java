@@ -0,0 +1,65 @@
+package com.example.pacs008.service.reconciliation;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Liberação explícita de mapeamentos de arquivo.
+ *
+ * <p>Sem ela, um {@link MappedByteBuffer} só é desmapeado quando coletado pelo GC, o que
+ * pode levar muito tempo em um heap pequeno e estável: o arquivo removido continua ocupando
+ * o disco e o espaço de endereçamento até lá. O JDK 21 não tem API pública para isso; é
+ * usado o {@code sun.misc.Unsafe.invokeCleaner} (módulo {@code jdk.unsupported}). Se ele não
+ * estiver disponível, o mapeamento fica, como antes, a cargo do GC.
+ *
+ * <p>Qualquer acesso ao buffer depois de {@link #unmap} derruba a JVM: o chamador garante que
+ * nenhuma outra thread ainda o utiliza.
+ */
+@Slf4j
+final class MappedBuffers {
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Desmapeamento explícito indisponível ({}); os arquivos removidos serão liberados pelo GC",
+                    e.toString());
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private MappedBuffers() {
+    }
+
+    /**
+     * Desmapeia o buffer imediatamente.
+     *
+     * @return {@code false} se o desmapeamento explícito não estiver disponível.
+     */
+    static boolean unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return false;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Falha ao desmapear o arquivo de conciliação: {}", e.toString());
+            return false;
+        }
+    }
+}
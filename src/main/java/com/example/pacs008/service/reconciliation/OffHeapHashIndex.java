@@ -0,0 +1,182 @@
+package com.example.pacs008.service.reconciliation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Tabela hash de endereçamento aberto (sondagem linear) mantida em um arquivo mapeado em
+ * memória, fora do heap. Cada posição guarda o hash de 64 bits da chave e a localização do
+ * registro ({@code [segmento][offset]}); a chave em si não é armazenada, e colisões de hash
+ * são resolvidas pelo chamador comparando o registro apontado.
+ *
+ * <p>O cabeçalho guarda a capacidade, a ocupação e a localização do próximo registro a
+ * indexar, a partir da qual a indexação é retomada na recuperação. Não é thread-safe: o
+ * acesso é coordenado pelo {@link SentMessageIndex}.
+ */
+final class OffHeapHashIndex {
+
+    private static final int MAGIC = 0x50495849; // "PIXI"
+    // Magic + capacidade + ocupação + próxima localização a indexar
+    private static final int HEADER_BYTES = 24;
+    // Hash + localização
+    private static final int SLOT_BYTES = 16;
+    static final int MAX_CAPACITY = Integer.highestOneBit((Integer.MAX_VALUE - HEADER_BYTES) / SLOT_BYTES);
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private long used;
+
+    private OffHeapHashIndex(Path path, MappedByteBuffer buffer, int capacity) {
+        this.path = path;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.used = buffer.getLong(8);
+    }
+
+    /**
+     * Abre o índice existente ou, se ele não existir ou for inválido, cria um vazio.
+     *
+     * @param capacity A capacidade (em posições) de um índice novo, arredondada para potência de 2.
+     */
+    static OffHeapHashIndex open(Path path, int capacity) {
+        if (Files.exists(path)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                int existing = buffer.capacity() >= HEADER_BYTES ? buffer.getInt(4) : 0;
+                if (buffer.getInt(0) == MAGIC && Integer.bitCount(existing) == 1
+                        && buffer.capacity() == HEADER_BYTES + (long) existing * SLOT_BYTES) {
+                    return new OffHeapHashIndex(path, buffer, existing);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Falha ao abrir o índice " + path, e);
+            }
+        }
+        return create(path, capacity);
+    }
+
+    private static OffHeapHashIndex create(Path path, int requestedCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(16, Math.min(requestedCapacity, MAX_CAPACITY)));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // O mapeamento estende o arquivo (com zeros) e continua válido após o fechamento do canal
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * SLOT_BYTES);
+            buffer.putInt(0, MAGIC).putInt(4, capacity).putLong(8, 0).putLong(16, 0);
+            return new OffHeapHashIndex(path, buffer, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao criar o índice " + path, e);
+        }
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    long used() {
+        return used;
+    }
+
+    /** {@code true} se a inclusão de mais {@code keys} chaves ultrapassar 75% de ocupação. */
+    boolean needsGrowth(int keys) {
+        return used + keys > (capacity >>> 2) * 3L;
+    }
+
+    /** A localização do próximo registro a indexar. */
+    long nextLocation() {
+        return buffer.getLong(16);
+    }
+
+    void nextLocation(long location) {
+        buffer.putLong(16, location);
+    }
+
+    /**
+     * Inclui uma chave. Uma entrada idêntica (mesmo hash e localização), como a gerada ao
+     * reindexar um registro na recuperação, é ignorada.
+     *
+     * @return {@code false} se a tabela estiver cheia.
+     */
+    boolean put(long hash, long location) {
+        if (used >= capacity - 1) {
+            return false;
+        }
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            int position = HEADER_BYTES + slot * SLOT_BYTES;
+            long current = buffer.getLong(position);
+            if (current == 0) {
+                // A localização antes do hash: uma posição com hash é sempre completa
+                buffer.putLong(position + 8, location);
+                buffer.putLong(position, hash);
+                buffer.putLong(8, ++used);
+                return true;
+            }
+            if (current == hash && buffer.getLong(position + 8) == location) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Entrega as localizações registradas com o hash informado (incluindo eventuais colisões).
+     */
+    void forEach(long hash, LongConsumer locations) {
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            int position = HEADER_BYTES + slot * SLOT_BYTES;
+            long current = buffer.getLong(position);
+            if (current == 0) {
+                return;
+            }
+            if (current == hash) {
+                locations.accept(buffer.getLong(position + 8));
+            }
+        }
+    }
+
+    /**
+     * Cria um novo índice com a capacidade informada contendo apenas as entradas cujas
+     * localizações ainda existem, e o coloca no lugar deste (troca atômica do arquivo).
+     */
+    OffHeapHashIndex rebuild(int newCapacity, LongPredicate live) {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        OffHeapHashIndex rebuilt = create(temporary, newCapacity);
+        for (int slot = 0; slot < capacity; slot++) {
+            int position = HEADER_BYTES + slot * SLOT_BYTES;
+            long hash = buffer.getLong(position);
+            long location = buffer.getLong(position + 8);
+            if (hash != 0 && live.test(location)) {
+                rebuilt.put(hash, location);
+            }
+        }
+        rebuilt.nextLocation(nextLocation());
+        rebuilt.force();
+        try {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            rebuilt.unmap();
+            throw new UncheckedIOException("Falha ao substituir o índice " + path, e);
+        }
+        return new OffHeapHashIndex(path, rebuilt.buffer, rebuilt.capacity);
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Libera o mapeamento do arquivo (ver {@link MappedBuffers}). O índice não pode mais ser
+     * usado depois disso.
+     */
+    void unmap() {
+        MappedBuffers.unmap(buffer);
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.pacs008.service.reconciliation;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Mensagem publicada no MQ, lida do {@link SentMessageIndex}.
+ *
+ * @param bizMsgIdr   O BizMsgIdr da mensagem (AppHdr), ou null se não encontrado.
+ * @param endToEndIds Os EndToEndIds das transações da mensagem (vários em uma mensagem agregada).
+ * @param queueName   A fila de destino.
+ * @param createdAt   O instante de criação da mensagem (GrpHdr/CreDtTm).
+ * @param sentAt      O instante da confirmação da publicação no MQ.
+ * @param xml         O XML assinado publicado, em UTF-8; null nas consultas por período.
+ */
+public record SentMessage(String bizMsgIdr, List<String> endToEndIds, String queueName,
+                          Instant createdAt, Instant sentAt, @JsonIgnore byte[] xml) {
+}
@@ -0,0 +1,896 @@
+package com.example.pacs008.service.reconciliation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Índice local das mensagens publicadas no MQ, consultável por EndToEndId, BizMsgIdr e
+ * período de criação (CreDtTm), para a conciliação com o SPI.
+ *
+ * <p>Cada mensagem confirmada no MQ é gravada, com o XML assinado comprimido (Deflate), em
+ * segmentos de apenas-acréscimo mapeados em memória ({@code segment-size-mb} cada). Os
+ * índices também ficam fora do heap, em arquivos mapeados, e o heap não cresce com a
+ * quantidade de mensagens retidas:
+ * <ul>
+ *     <li>um índice hash ({@link OffHeapHashIndex}) com o EndToEndId e o BizMsgIdr de cada
+ *     registro, para consultas pontuais em O(1);</li>
+ *     <li>um índice temporal por segmento ({@code .tix}, {@code [CreDtTm][offset]}), com o
+ *     intervalo de CreDtTm do segmento mantido em memória, para as consultas por período
+ *     percorrerem apenas os segmentos que o interceptam.</li>
+ * </ul>
+ *
+ * <p>A gravação é feita por uma única thread ({@code reconciliation-writer}), fora do caminho
+ * da publicação: {@link #record} apenas enfileira a mensagem, e as consultas a enxergam em
+ * poucos milissegundos. Com a fila cheia a mensagem não é indexada (a publicação não é
+ * afetada) e a métrica {@code pix.reconciliation.dropped} é incrementada.
+ *
+ * <p>O índice não é a fonte da verdade da entrega: a gravação em disco é confirmada a cada
+ * {@code flush-interval-ms}, e os registros incompletos após uma queda são descartados na
+ * recuperação (CRC32C). Os segmentos com todas as mensagens criadas antes de
+ * {@code retention-days} são removidos periodicamente, e o índice hash é então reconstruído
+ * sem as entradas removidas. Os mapeamentos dos arquivos removidos ou substituídos são
+ * liberados em seguida ({@link MappedBuffers}), sem esperar pelo GC.
+ */
+@Component
+@ConditionalOnProperty(name = "pix.reconciliation.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class SentMessageIndex {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TIME_INDEX_SUFFIX = ".tix";
+    private static final String HASH_INDEX_FILE = "messages.idx";
+    // Tamanho do corpo + CRC32C do corpo
+    private static final int HEADER_BYTES = 8;
+    // Envio + criação + tamanhos da fila e do BizMsgIdr + quantidade de EndToEndIds + tamanho original
+    private static final int BODY_FIXED_BYTES = 24;
+    // Quantidade de entradas do índice temporal
+    private static final int TIME_HEADER_BYTES = 8;
+    // CreDtTm + offset do registro
+    private static final int TIME_ENTRY_BYTES = 12;
+    // Tamanho médio mínimo esperado de um registro, para dimensionar o índice temporal
+    private static final int MIN_AVERAGE_RECORD_BYTES = 256;
+    private static final int WRITE_BATCH_SIZE = 256;
+
+    private static final byte KEY_END_TO_END_ID = 1;
+    private static final byte KEY_BIZ_MSG_IDR = 2;
+    private static final byte[] END_TO_END_ID_TAG = "EndToEndId>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BIZ_MSG_IDR_TAG = "BizMsgIdr>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CREATION_TIME_TAG = "CreDtTm>".getBytes(StandardCharsets.US_ASCII);
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${pix.reconciliation.directory:./data/reconciliation}")
+    private String directory;
+    @Value("${pix.reconciliation.segment-size-mb:64}")
+    private int segmentSizeMb;
+    // Posições iniciais do índice hash (16 bytes cada); dobra ao atingir 75% de ocupação
+    @Value("${pix.reconciliation.index-capacity:1048576}")
+    private int indexCapacity;
+    @Value("${pix.reconciliation.retention-days:30}")
+    private int retentionDays;
+    @Value("${pix.reconciliation.compaction-interval-ms:3600000}")
+    private long compactionIntervalMs;
+    @Value("${pix.reconciliation.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+    // Mensagens aguardando gravação
+    @Value("${pix.reconciliation.queue-capacity:100000}")
+    private int queueCapacity;
+
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Path dir;
+    private int segmentSize;
+    private int timeIndexCapacity;
+    private BlockingQueue<Pending> pending;
+    // Protegidos por lock
+    private Segment active;
+    private OffHeapHashIndex hashIndex;
+
+    private volatile boolean running;
+    private Thread writer;
+    private ScheduledExecutorService maintenance;
+
+    // Estado da thread de gravação, reaproveitado entre os registros
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer scratch = ByteBuffer.allocate(16 * 1024);
+    private int[] keyStarts = new int[8];
+    private int[] keyLengths = new int[8];
+    private long[] keyHashes = new long[8];
+
+    private Counter written;
+    private Counter dropped;
+
+    @PostConstruct
+    public void init() throws IOException {
+        segmentSize = Math.toIntExact(segmentSizeMb * 1024L * 1024L);
+        timeIndexCapacity = segmentSize / MIN_AVERAGE_RECORD_BYTES;
+        dir = Path.of(directory);
+        Files.createDirectories(dir);
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "reconciliation-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        recover();
+
+        pending = new ArrayBlockingQueue<>(queueCapacity);
+        written = Counter.builder("pix.reconciliation.records")
+                .description("Mensagens gravadas no índice de conciliação").register(meterRegistry);
+        dropped = Counter.builder("pix.reconciliation.dropped")
+                .description("Mensagens não indexadas (fila cheia ou mensagem maior que o segmento)").register(meterRegistry);
+        Gauge.builder("pix.reconciliation.segments", segments, Map::size).register(meterRegistry);
+        Gauge.builder("pix.reconciliation.queue", pending, BlockingQueue::size).register(meterRegistry);
+
+        running = true;
+        writer = new Thread(this::writeLoop, "reconciliation-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        maintenance.scheduleWithFixedDelay(this::force, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        maintenance.scheduleWithFixedDelay(this::compact, 0, compactionIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Grava as mensagens pendentes e confirma os arquivos em disco.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        maintenance.shutdownNow();
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        force();
+    }
+
+    /**
+     * Enfileira uma mensagem publicada para indexação, sem bloquear. O array não é copiado e
+     * não deve ser alterado depois da chamada.
+     *
+     * @param message   O XML assinado publicado, em UTF-8.
+     * @param queueName A fila de destino.
+     */
+    public void record(byte[] message, String queueName) {
+        if (message == null || !running || !pending.offer(new Pending(message, queueName, System.currentTimeMillis()))) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * As mensagens publicadas com o EndToEndId informado (normalmente uma; mais de uma se a
+     * mensagem foi reenviada), em ordem de envio e com o XML.
+     */
+    public List<SentMessage> findByEndToEndId(String endToEndId) {
+        return find(KEY_END_TO_END_ID, endToEndId);
+    }
+
+    /**
+     * As mensagens publicadas com o BizMsgIdr informado, em ordem de envio e com o XML.
+     */
+    public List<SentMessage> findByBizMsgIdr(String bizMsgIdr) {
+        return find(KEY_BIZ_MSG_IDR, bizMsgIdr);
+    }
+
+    /**
+     * As mensagens criadas (CreDtTm) no período {@code [from, to)}, em ordem de criação e sem
+     * o XML.
+     *
+     * @param limit A quantidade máxima de mensagens; as mais antigas do período são retornadas.
+     */
+    public List<SentMessage> findByCreationTime(Instant from, Instant to, int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        long start = from.toEpochMilli();
+        long end = to.toEpochMilli();
+        // As "limit" entradas mais antigas, com a mais recente no topo
+        PriorityQueue<TimeEntry> earliest = new PriorityQueue<>(Comparator.comparingLong(TimeEntry::createdAt).reversed());
+        lock.readLock().lock();
+        try {
+            for (Segment segment : segments.values()) {
+                if (segment.maxCreatedAt < start || segment.minCreatedAt >= end
+                        || (earliest.size() == limit && segment.minCreatedAt >= earliest.peek().createdAt())) {
+                    continue;
+                }
+                for (int i = 0; i < segment.count; i++) {
+                    int position = TIME_HEADER_BYTES + i * TIME_ENTRY_BYTES;
+                    long createdAt = segment.times.getLong(position);
+                    if (createdAt < start || createdAt >= end) {
+                        continue;
+                    }
+                    if (earliest.size() < limit) {
+                        earliest.add(new TimeEntry(createdAt, segment, segment.times.getInt(position + 8)));
+                    } else if (createdAt < earliest.peek().createdAt()) {
+                        earliest.poll();
+                        earliest.add(new TimeEntry(createdAt, segment, segment.times.getInt(position + 8)));
+                    }
+                }
+            }
+
+            TimeEntry[] entries = earliest.toArray(new TimeEntry[0]);
+            Arrays.sort(entries, Comparator.comparingLong(TimeEntry::createdAt));
+            List<SentMessage> messages = new ArrayList<>(entries.length);
+            for (TimeEntry entry : entries) {
+                SentMessage message = read(entry.segment(), entry.offset(), false);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+            return messages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<SentMessage> find(byte type, String key) {
+        if (key == null || key.isEmpty()) {
+            return List.of();
+        }
+        byte[] bytes = key.getBytes(StandardCharsets.US_ASCII);
+        List<SentMessage> messages = new ArrayList<>(1);
+        lock.readLock().lock();
+        try {
+            hashIndex.forEach(hash(type, bytes, 0, bytes.length), location -> {
+                Segment segment = segments.get(segmentId(location));
+                SentMessage message = segment == null ? null : read(segment, offset(location), true);
+                // O hash pode colidir: confirma a chave no registro
+                if (message != null && (type == KEY_BIZ_MSG_IDR
+                        ? key.equals(message.bizMsgIdr()) : message.endToEndIds().contains(key))) {
+                    messages.add(message);
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        messages.sort(Comparator.comparing(SentMessage::sentAt));
+        return messages;
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+        while (running || !pending.isEmpty()) {
+            try {
+                Pending first = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch, WRITE_BATCH_SIZE - 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            for (Pending message : batch) {
+                try {
+                    write(message);
+                } catch (RuntimeException e) {
+                    dropped.increment();
+                    log.error("Falha ao gravar a mensagem no índice de conciliação: {}", e.getMessage(), e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Monta o registro fora do lock (extração das chaves, compressão e CRC) e o grava no
+     * segmento ativo e nos índices.
+     *
+     * <p>Formato: {@code [tamanho][CRC32C][envio][criação][tamanho da fila][fila][tamanho do
+     * BizMsgIdr][BizMsgIdr][quantidade de EndToEndIds]([tamanho][EndToEndId])*[tamanho
+     * original][XML comprimido]}. Chaves e fila têm no máximo 255 bytes.
+     */
+    private void write(Pending message) {
+        byte[] xml = message.message();
+        byte[] queue = message.queueName().getBytes(StandardCharsets.UTF_8);
+        if (queue.length > 0xFF) {
+            throw new IllegalArgumentException("Nome de fila muito longo.");
+        }
+        int keys = locateKeys(xml);
+        long createdAt = creationTime(xml, message.sentAtMillis());
+
+        // Estimativa inicial; o buffer cresce durante a compressão, se necessário
+        int estimate = HEADER_BYTES + BODY_FIXED_BYTES + queue.length + 256 * keys + xml.length / 2;
+        if (scratch.capacity() < estimate) {
+            scratch = ByteBuffer.allocate(estimate);
+        }
+        scratch.clear().position(HEADER_BYTES);
+        scratch.putLong(message.sentAtMillis()).putLong(createdAt);
+        scratch.put((byte) queue.length).put(queue);
+        scratch.put((byte) keyLengths[0]).put(xml, keyStarts[0], keyLengths[0]);
+        scratch.putShort((short) (keys - 1));
+        for (int i = 1; i < keys; i++) {
+            scratch.put((byte) keyLengths[i]).put(xml, keyStarts[i], keyLengths[i]);
+        }
+        scratch.putInt(xml.length);
+        deflater.reset();
+        deflater.setInput(xml);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (!scratch.hasRemaining()) {
+                growScratch();
+            }
+            deflater.deflate(scratch);
+        }
+        int size = scratch.position();
+        int length = size - HEADER_BYTES;
+        crc.reset();
+        crc.update(scratch.array(), HEADER_BYTES, length);
+        scratch.putInt(0, length).putInt(4, (int) crc.getValue());
+        if (size > segmentSize) {
+            throw new IllegalArgumentException("A mensagem excede o tamanho do segmento (" + segmentSizeMb + " MB).");
+        }
+
+        for (int i = 0; i < keys; i++) {
+            keyHashes[i] = keyLengths[i] == 0 ? 0
+                    : hash(i == 0 ? KEY_BIZ_MSG_IDR : KEY_END_TO_END_ID, xml, keyStarts[i], keyLengths[i]);
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (active.data.remaining() < size || active.count == timeIndexCapacity) {
+                roll();
+            }
+            int offset = active.data.position();
+            active.data.put(scratch.array(), 0, size);
+            active.addTimeEntry(createdAt, offset);
+            index(location(active.id, offset), keyHashes, keys);
+            hashIndex.nextLocation(location(active.id, offset + size));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        written.increment();
+    }
+
+    /**
+     * Inclui as chaves de um registro no índice hash, dobrando a capacidade se necessário.
+     * Chamado com o lock de escrita.
+     */
+    private void index(long location, long[] hashes, int keys) {
+        if (hashIndex.needsGrowth(keys) && hashIndex.capacity() < OffHeapHashIndex.MAX_CAPACITY) {
+            long start = System.nanoTime();
+            OffHeapHashIndex previous = hashIndex;
+            hashIndex = previous.rebuild(previous.capacity() * 2, this::isLive);
+            release(previous::unmap);
+            log.info("Índice de conciliação ampliado para {} posições em {} ms", hashIndex.capacity(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        for (int i = 0; i < keys; i++) {
+            if (hashes[i] != 0 && !hashIndex.put(hashes[i], location)) {
+                log.warn("Índice de conciliação cheio: registro {} não indexado.", Long.toHexString(location));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Localiza o BizMsgIdr (chave 0) e os EndToEndIds (chaves seguintes) no XML, sem parsing
+     * completo, preenchendo {@code keyStarts}/{@code keyLengths}. Um BizMsgIdr ausente tem
+     * tamanho zero.
+     *
+     * @return A quantidade de chaves, incluindo o BizMsgIdr.
+     */
+    private int locateKeys(byte[] xml) {
+        int keys = 1;
+        keyLengths[0] = 0;
+        keyStarts[0] = 0;
+        int tag = indexOf(xml, BIZ_MSG_IDR_TAG, 0);
+        if (tag >= 0) {
+            int start = tag + BIZ_MSG_IDR_TAG.length;
+            int end = valueEnd(xml, start);
+            if (end > start && end - start <= 0xFF) {
+                keyStarts[0] = start;
+                keyLengths[0] = end - start;
+            }
+        }
+        int from = 0;
+        while ((tag = indexOf(xml, END_TO_END_ID_TAG, from)) >= 0) {
+            int start = tag + END_TO_END_ID_TAG.length;
+            int end = valueEnd(xml, start);
+            // A tag de fechamento (</EndToEndId>) também casa com o padrão, com conteúdo vazio
+            if (end > start && end - start <= 0xFF) {
+                if (keys == keyStarts.length) {
+                    keyStarts = Arrays.copyOf(keyStarts, keys * 2);
+                    keyLengths = Arrays.copyOf(keyLengths, keys * 2);
+                    keyHashes = Arrays.copyOf(keyHashes, keys * 2);
+                }
+                keyStarts[keys] = start;
+                keyLengths[keys] = end - start;
+                keys++;
+            }
+            from = end;
+        }
+        return keys;
+    }
+
+    /**
+     * O CreDtTm (GrpHdr) da mensagem em epoch ms, ou o instante informado se ele não for
+     * encontrado ou for inválido.
+     */
+    static long creationTime(byte[] xml, long fallback) {
+        int tag = indexOf(xml, CREATION_TIME_TAG, 0);
+        if (tag < 0) {
+            return fallback;
+        }
+        int start = tag + CREATION_TIME_TAG.length;
+        long parsed = parseDateTime(xml, start, valueEnd(xml, start));
+        return parsed == Long.MIN_VALUE ? fallback : parsed;
+    }
+
+    /**
+     * Converte um ISODateTime ({@code yyyy-MM-ddTHH:mm:ss[.fração][Z|±hh:mm]}) em epoch ms,
+     * diretamente dos bytes. Sem fuso, considera UTC.
+     *
+     * @return O instante, ou {@link Long#MIN_VALUE} se o valor for inválido.
+     */
+    static long parseDateTime(byte[] s, int start, int end) {
+        if (end - start < 19 || s[start + 4] != '-' || s[start + 7] != '-' || s[start + 10] != 'T'
+                || s[start + 13] != ':' || s[start + 16] != ':') {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(s, start, 4);
+        int month = digits(s, start + 5, 2);
+        int day = digits(s, start + 8, 2);
+        int hour = digits(s, start + 11, 2);
+        int minute = digits(s, start + 14, 2);
+        int second = digits(s, start + 17, 2);
+        if ((year | month | day | hour | minute | second) < 0 || hour > 23 || minute > 59 || second > 59) {
+            return Long.MIN_VALUE;
+        }
+        int p = start + 19;
+        int millis = 0;
+        if (p < end && s[p] == '.') {
+            p++;
+            for (int scale = 100; p < end && s[p] >= '0' && s[p] <= '9'; p++, scale /= 10) {
+                millis += (s[p] - '0') * scale;
+            }
+        }
+        int offsetMinutes = 0;
+        if (p < end && (s[p] == '+' || s[p] == '-')) {
+            int hours = end - p == 6 && s[p + 3] == ':' ? digits(s, p + 1, 2) : -1;
+            int minutes = hours < 0 ? -1 : digits(s, p + 4, 2);
+            if (minutes < 0) {
+                return Long.MIN_VALUE;
+            }
+            offsetMinutes = (s[p] == '-' ? -1 : 1) * (hours * 60 + minutes);
+            p += 6;
+        } else if (p < end && s[p] == 'Z') {
+            p++;
+        }
+        if (p != end) {
+            return Long.MIN_VALUE;
+        }
+        long epochDay;
+        try {
+            epochDay = LocalDate.of(year, month, day).toEpochDay();
+        } catch (DateTimeException e) {
+            return Long.MIN_VALUE;
+        }
+        long seconds = epochDay * 86_400 + hour * 3600L + minute * 60L + second - offsetMinutes * 60L;
+        return seconds * 1000 + millis;
+    }
+
+    private static int digits(byte[] s, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            if (s[i] < '0' || s[i] > '9') {
+                return -1;
+            }
+            value = value * 10 + (s[i] - '0');
+        }
+        return value;
+    }
+
+    private static int valueEnd(byte[] xml, int start) {
+        int end = start;
+        while (end < xml.length && xml[end] != '<') {
+            end++;
+        }
+        return end;
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern, int from) {
+        outer:
+        for (int i = from, last = data.length - pattern.length; i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Hash de 64 bits (FNV-1a seguido da finalização do MurmurHash3) da chave, distinto por
+     * tipo de chave. Nunca retorna 0, que marca uma posição vazia do índice.
+     */
+    private static long hash(byte type, byte[] data, int offset, int length) {
+        long h = 0xcbf29ce484222325L ^ type;
+        for (int i = offset; i < offset + length; i++) {
+            h ^= data[i] & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    private void growScratch() {
+        ByteBuffer larger = ByteBuffer.allocate(scratch.capacity() * 2);
+        scratch.flip();
+        larger.put(scratch);
+        scratch = larger;
+    }
+
+    /**
+     * Lê e valida o registro na posição informada.
+     *
+     * @param withXml Se o XML deve ser descomprimido.
+     * @return A mensagem, ou null se não houver um registro completo e íntegro na posição.
+     */
+    private static SentMessage read(Segment segment, int offset, boolean withXml) {
+        ByteBuffer data = segment.data;
+        int length = recordLength(data, offset);
+        if (length < 0) {
+            return null;
+        }
+        int p = offset + HEADER_BYTES;
+        long sentAt = data.getLong(p);
+        long createdAt = data.getLong(p + 8);
+        p += 16;
+        String queueName = readString(data, p, StandardCharsets.UTF_8);
+        p += 1 + (data.get(p) & 0xFF);
+        String bizMsgIdr = readString(data, p, StandardCharsets.US_ASCII);
+        p += 1 + (data.get(p) & 0xFF);
+        int count = data.getShort(p) & 0xFFFF;
+        p += 2;
+        List<String> endToEndIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            endToEndIds.add(readString(data, p, StandardCharsets.US_ASCII));
+            p += 1 + (data.get(p) & 0xFF);
+        }
+        int rawLength = data.getInt(p);
+        p += 4;
+
+        byte[] xml = null;
+        if (withXml) {
+            xml = new byte[rawLength];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data.slice(p, offset + HEADER_BYTES + length - p));
+                if (inflater.inflate(xml) != rawLength) {
+                    throw new DataFormatException("tamanho descomprimido diferente do original");
+                }
+            } catch (DataFormatException e) {
+                log.warn("Registro de conciliação corrompido em {}:{}: {}", segment.dataPath, offset, e.getMessage());
+                return null;
+            } finally {
+                inflater.end();
+            }
+        }
+        return new SentMessage(bizMsgIdr.isEmpty() ? null : bizMsgIdr, endToEndIds, queueName,
+                Instant.ofEpochMilli(createdAt), Instant.ofEpochMilli(sentAt), xml);
+    }
+
+    private static String readString(ByteBuffer data, int position, Charset charset) {
+        byte[] value = new byte[data.get(position) & 0xFF];
+        data.get(position + 1, value);
+        return new String(value, charset);
+    }
+
+    /**
+     * O tamanho do corpo do registro na posição informada, ou -1 se não houver um registro
+     * completo e íntegro.
+     */
+    private static int recordLength(ByteBuffer data, int offset) {
+        if (offset < 0 || offset > data.capacity() - HEADER_BYTES - BODY_FIXED_BYTES) {
+            return -1;
+        }
+        int length = data.getInt(offset);
+        if (length < BODY_FIXED_BYTES || length > data.capacity() - offset - HEADER_BYTES) {
+            return -1;
+        }
+        CRC32C check = new CRC32C();
+        check.update(data.slice(offset + HEADER_BYTES, length));
+        return (int) check.getValue() == data.getInt(offset + 4) ? length : -1;
+    }
+
+    /**
+     * Remove os segmentos com todas as mensagens fora da retenção e reconstrói o índice hash
+     * sem as entradas deles.
+     */
+    private void compact() {
+        long limit = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays);
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            for (Segment segment : segments.values()) {
+                if (segment == active || segment.maxCreatedAt >= limit) {
+                    continue;
+                }
+                segments.remove(segment.id);
+                removed++;
+                try {
+                    Files.deleteIfExists(segment.dataPath);
+                    Files.deleteIfExists(segment.timePath);
+                } catch (IOException e) {
+                    log.warn("Falha ao remover o segmento de conciliação {}: {}", segment.dataPath, e.getMessage());
+                }
+                // Sem isso o espaço dos arquivos removidos só é devolvido quando o GC coletar os buffers
+                release(segment::unmap);
+            }
+            if (removed > 0) {
+                long start = System.nanoTime();
+                OffHeapHashIndex previous = hashIndex;
+                hashIndex = previous.rebuild(previous.capacity(), this::isLive);
+                release(previous::unmap);
+                log.info("{} segmento(s) de conciliação fora da retenção removido(s); índice reconstruído em {} ms",
+                        removed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        } catch (RuntimeException e) {
+            log.error("Falha na compactação do índice de conciliação: {}", e.getMessage(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Desmapeia um segmento removido ou um índice hash substituído. Chamado com o lock de
+     * escrita, depois de retirá-lo do índice: as consultas (com o lock de leitura) não o
+     * alcançam mais, mas a confirmação em disco ({@link #force}) o usa fora do lock, na thread
+     * de manutenção. Por isso o desmapeamento é feito nela, após a confirmação em andamento.
+     * Depois do encerramento o mapeamento fica a cargo do GC.
+     */
+    private void release(Runnable unmap) {
+        try {
+            maintenance.execute(unmap);
+        } catch (RejectedExecutionException e) {
+            log.debug("Mapeamento de conciliação não liberado: manutenção encerrada");
+        }
+    }
+
+    private void force() {
+        Segment segment;
+        OffHeapHashIndex index;
+        lock.readLock().lock();
+        try {
+            segment = active;
+            index = hashIndex;
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            segment.data.force();
+            segment.times.force();
+            index.force();
+        } catch (UncheckedIOException e) {
+            log.warn("Falha ao confirmar o índice de conciliação em disco: {}", e.getMessage());
+        }
+    }
+
+    private boolean isLive(long location) {
+        return segments.containsKey(segmentId(location));
+    }
+
+    /**
+     * Fecha o segmento ativo (com {@code force()}) e abre um novo. Chamado com o lock de escrita.
+     */
+    private void roll() {
+        active.data.force();
+        active.times.force();
+        active = openSegment(active.id + 1, true);
+        segments.put(active.id, active);
+        log.debug("Novo segmento de conciliação: {}", active.dataPath);
+    }
+
+    /**
+     * Reabre os segmentos existentes, completa o índice temporal de cada um com os registros
+     * gravados após a última entrada, e retoma a indexação hash do ponto registrado no índice
+     * (ou a refaz por completo, se o índice não existir).
+     */
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(dir)) {
+            files = listing.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            Segment segment = openSegment(Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), false);
+            segment.recover();
+            segments.put(segment.id, segment);
+        }
+        if (segments.isEmpty()) {
+            segments.put(1, openSegment(1, true));
+        }
+        active = segments.lastEntry().getValue();
+
+        hashIndex = OffHeapHashIndex.open(dir.resolve(HASH_INDEX_FILE), indexCapacity);
+        long next = hashIndex.nextLocation();
+        long reindexed = 0;
+        long[] hashes = new long[8];
+        for (Segment segment : segments.tailMap(segmentId(next), true).values()) {
+            for (int i = 0; i < segment.count; i++) {
+                int offset = segment.times.getInt(TIME_HEADER_BYTES + i * TIME_ENTRY_BYTES + 8);
+                long location = location(segment.id, offset);
+                SentMessage message = location < next ? null : read(segment, offset, false);
+                if (message == null) {
+                    continue;
+                }
+                int keys = 1 + message.endToEndIds().size();
+                if (hashes.length < keys) {
+                    hashes = new long[keys];
+                }
+                hashes[0] = message.bizMsgIdr() == null ? 0 : hash(KEY_BIZ_MSG_IDR, message.bizMsgIdr());
+                for (int k = 1; k < keys; k++) {
+                    hashes[k] = hash(KEY_END_TO_END_ID, message.endToEndIds().get(k - 1));
+                }
+                index(location, hashes, keys);
+                reindexed++;
+            }
+        }
+        hashIndex.nextLocation(location(active.id, active.data.position()));
+        log.info("Índice de conciliação recuperado de {}: {} segmento(s), {} chave(s) no índice, {} registro(s) reindexado(s)",
+                dir, segments.size(), hashIndex.used(), reindexed);
+    }
+
+    private static long hash(byte type, String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.US_ASCII);
+        return hash(type, bytes, 0, bytes.length);
+    }
+
+    private Segment openSegment(int id, boolean create) {
+        Path dataPath = dir.resolve(String.format("%010d%s", id, SEGMENT_SUFFIX));
+        Path timePath = dir.resolve(String.format("%010d%s", id, TIME_INDEX_SUFFIX));
+        return new Segment(id, dataPath, timePath,
+                map(dataPath, create ? segmentSize : -1, create),
+                map(timePath, TIME_HEADER_BYTES + (long) timeIndexCapacity * TIME_ENTRY_BYTES, true));
+    }
+
+    /**
+     * Mapeia um arquivo para leitura e escrita.
+     *
+     * @param size O tamanho do mapeamento, ou -1 para o tamanho atual do arquivo.
+     */
+    private static MappedByteBuffer map(Path path, long size, boolean create) {
+        try (FileChannel channel = create
+                ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // O mapeamento continua válido após o fechamento do canal
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size < 0 ? channel.size() : size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao abrir o arquivo de conciliação " + path, e);
+        }
+    }
+
+    private static long location(int segmentId, int offset) {
+        return (long) segmentId << 32 | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+    /**
+     * Um segmento de dados e seu índice temporal. Os campos mutáveis são protegidos pelo lock
+     * do índice.
+     */
+    private final class Segment {
+        private final int id;
+        private final Path dataPath;
+        private final Path timePath;
+        private final MappedByteBuffer data;
+        private final MappedByteBuffer times;
+        private int count;
+        private long minCreatedAt = Long.MAX_VALUE;
+        private long maxCreatedAt = Long.MIN_VALUE;
+
+        private Segment(int id, Path dataPath, Path timePath, MappedByteBuffer data, MappedByteBuffer times) {
+            this.id = id;
+            this.dataPath = dataPath;
+            this.timePath = timePath;
+            this.data = data;
+            this.times = times;
+        }
+
+        private void addTimeEntry(long createdAt, int offset) {
+            int position = TIME_HEADER_BYTES + count * TIME_ENTRY_BYTES;
+            times.putLong(position, createdAt).putInt(position + 8, offset);
+            // A quantidade por último: até aqui a entrada é ignorada pela leitura
+            times.putInt(0, ++count);
+            minCreatedAt = Math.min(minCreatedAt, createdAt);
+            maxCreatedAt = Math.max(maxCreatedAt, createdAt);
+        }
+
+        private void unmap() {
+            MappedBuffers.unmap(data);
+            MappedBuffers.unmap(times);
+        }
+
+        /**
+         * Confere as entradas do índice temporal, inclui os registros íntegros gravados após
+         * a última delas e posiciona a escrita após o último registro.
+         */
+        private void recover() {
+            int entries = times.getInt(0);
+            int position = 0;
+            count = 0;
+            for (int i = 0; i < entries && i < timeIndexCapacity; i++) {
+                int entry = TIME_HEADER_BYTES + i * TIME_ENTRY_BYTES;
+                long createdAt = times.getLong(entry);
+                int offset = times.getInt(entry + 8);
+                int length = offset == position ? recordLength(data, offset) : -1;
+                if (length < 0) {
+                    break;
+                }
+                count++;
+                minCreatedAt = Math.min(minCreatedAt, createdAt);
+                maxCreatedAt = Math.max(maxCreatedAt, createdAt);
+                position = offset + HEADER_BYTES + length;
+            }
+            times.putInt(0, count);
+            int length;
+            while (count < timeIndexCapacity && (length = recordLength(data, position)) >= 0) {
+                addTimeEntry(data.getLong(position + HEADER_BYTES + 8), position);
+                position += HEADER_BYTES + length;
+            }
+            data.position(position);
+        }
+    }
+
+    private record Pending(byte[] message, String queueName, long sentAtMillis) {
+    }
+
+    private record TimeEntry(long createdAt, Segment segment, int offset) {
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.pacs008.service.signing;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Chave de assinatura em um keystore JKS (classpath ou sistema de arquivos), usada com o
+ * provider padrão do JCA. Todas as lanes compartilham a mesma chave: em software a
+ * operação RSA não tem estado, e o paralelismo é limitado apenas pelos processadores.
+ *
+ * <p>Quando o keystore está no sistema de arquivos, a data de modificação é monitorada
+ * para recarga em caso de rotação do certificado.
+ */
+@Component
+@ConditionalOnProperty(name = "pix.signature.backend", havingValue = "jks", matchIfMissing = true)
+@Slf4j
+public class JksSignerBackend implements SignerBackend {
+
+    private static final String CLASSPATH_PREFIX = "classpath:";
+    private static final String FILE_PREFIX = "file:";
+
+    @Value("${ibm.mq.ssl.key-store}")
+    private String keyStorePath;
+    @Value("${ibm.mq.ssl.key-store-password}")
+    private String keyStorePassword;
+    @Value("${ibm.mq.ssl.key-alias}")
+    private String keyAlias;
+    @Value("${ibm.mq.ssl.key-password}")
+    private String keyPassword;
+
+    private volatile FileTime lastModified;
+
+    @Override
+    public String name() {
+        return "jks";
+    }
+
+    @Override
+    public int defaultLanes() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public List<SigningKey> loadKeys(int lanes) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        FileTime modified = null;
+
+        if (keyStorePath.startsWith(CLASSPATH_PREFIX)) {
+            // Remove "classpath:" para carregar como recurso do sistema
+            String path = keyStorePath.substring(CLASSPATH_PREFIX.length());
+            try (InputStream is = getClass().getClassLoader().getResourceAsStream(path)) {
+                if (is == null) {
+                    throw new RuntimeException("Keystore não encontrado em: " + keyStorePath);
+                }
+                keyStore.load(is, keyStorePassword.toCharArray());
+            }
+        } else {
+            Path file = keyStoreFile();
+            modified = Files.getLastModifiedTime(file);
+            try (InputStream is = Files.newInputStream(file)) {
+                keyStore.load(is, keyStorePassword.toCharArray());
+            }
+        }
+
+        PrivateKey privateKey = (PrivateKey) keyStore.getKey(keyAlias, keyPassword.toCharArray());
+        X509Certificate certificate = (X509Certificate) keyStore.getCertificate(keyAlias);
+        if (privateKey == null || certificate == null) {
+            throw new RuntimeException("Chave ou certificado não encontrados no keystore para o alias: " + keyAlias);
+        }
+
+        log.info("Certificado de assinatura carregado: {} (válido até {})",
+                certificate.getSubjectX500Principal().getName(), certificate.getNotAfter());
+        lastModified = modified;
+        return Collections.nCopies(lanes, SigningKey.of(privateKey, certificate, null));
+    }
+
+    @Override
+    public boolean supportsReload() {
+        return !keyStorePath.startsWith(CLASSPATH_PREFIX);
+    }
+
+    @Override
+    public boolean hasChanged() throws Exception {
+        return !Files.getLastModifiedTime(keyStoreFile()).equals(lastModified);
+    }
+
+    private Path keyStoreFile() {
+        return Path.of(keyStorePath.startsWith(FILE_PREFIX) ? keyStorePath.substring(FILE_PREFIX.length()) : keyStorePath);
+    }
+}
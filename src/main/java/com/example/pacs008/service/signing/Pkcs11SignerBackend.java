@@ -0,0 +1,89 @@
+package com.example.pacs008.service.signing;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chave de assinatura em um token PKCS#11 (HSM, ou SoftHSM em desenvolvimento), acessada
+ * pelo provider SunPKCS11 do JDK. A chave privada não sai do token; cada assinatura é
+ * executada pelo provider do slot.
+ *
+ * <p>Cada arquivo de {@code pix.signature.pkcs11.config} configura um provider (um slot ou
+ * HSM). As lanes são distribuídas entre os slots em rodízio, {@code sessions-per-slot} por
+ * slot, de modo que a vazão cresce com a quantidade de slots e de sessões simultâneas que
+ * o HSM suporta.
+ */
+@Component
+@ConditionalOnProperty(name = "pix.signature.backend", havingValue = "pkcs11")
+@Slf4j
+public class Pkcs11SignerBackend implements SignerBackend {
+
+    // Um arquivo de configuração do SunPKCS11 por slot/HSM (library, slot, name)
+    @Value("${pix.signature.pkcs11.config}")
+    private String[] configFiles;
+    @Value("${pix.signature.pkcs11.pin}")
+    private String pin;
+    @Value("${pix.signature.pkcs11.key-alias:${ibm.mq.ssl.key-alias}}")
+    private String keyAlias;
+    @Value("${pix.signature.pkcs11.sessions-per-slot:4}")
+    private int sessionsPerSlot;
+
+    private List<SigningKey> slotKeys;
+
+    @Override
+    public String name() {
+        return "pkcs11";
+    }
+
+    @Override
+    public int defaultLanes() {
+        return configFiles.length * sessionsPerSlot;
+    }
+
+    @Override
+    public synchronized List<SigningKey> loadKeys(int lanes) throws Exception {
+        if (slotKeys == null) {
+            List<SigningKey> keys = new ArrayList<>(configFiles.length);
+            for (String configFile : configFiles) {
+                keys.add(loadSlot(configFile.trim()));
+            }
+            slotKeys = keys;
+        }
+        List<SigningKey> laneKeys = new ArrayList<>(lanes);
+        for (int i = 0; i < lanes; i++) {
+            laneKeys.add(slotKeys.get(i % slotKeys.size()));
+        }
+        return laneKeys;
+    }
+
+    private SigningKey loadSlot(String configFile) throws Exception {
+        Provider provider = Security.getProvider("SunPKCS11");
+        if (provider == null) {
+            throw new IllegalStateException("Provider SunPKCS11 não disponível neste JDK.");
+        }
+        provider = provider.configure(configFile);
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS11", provider);
+        keyStore.load(null, pin.toCharArray());
+        PrivateKey privateKey = (PrivateKey) keyStore.getKey(keyAlias, null);
+        X509Certificate certificate = (X509Certificate) keyStore.getCertificate(keyAlias);
+        if (privateKey == null || certificate == null) {
+            throw new IllegalStateException("Chave ou certificado não encontrados no token " + provider.getName()
+                    + " para o alias: " + keyAlias);
+        }
+
+        log.info("Chave de assinatura PKCS#11 carregada do token {}: {} (válido até {})", provider.getName(),
+                certificate.getSubjectX500Principal().getName(), certificate.getNotAfter());
+        return SigningKey.of(privateKey, certificate, provider);
+    }
+}
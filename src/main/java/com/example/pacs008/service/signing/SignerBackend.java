@@ -0,0 +1,37 @@
+package com.example.pacs008.service.signing;
+
+import java.util.List;
+
+/**
+ * Origem das chaves de assinatura ({@code pix.signature.backend}): keystore JKS em software
+ * ({@link JksSignerBackend}) ou token PKCS#11/HSM ({@link Pkcs11SignerBackend}).
+ */
+public interface SignerBackend {
+
+    /** Nome curto do backend, usado em logs. */
+    String name();
+
+    /** Quantidade de lanes quando {@code pix.signature.lanes} não é informado. */
+    int defaultLanes();
+
+    /**
+     * Carrega o material de assinatura de cada lane.
+     *
+     * @param lanes A quantidade de lanes.
+     * @return Uma chave por lane, na ordem das lanes.
+     */
+    List<SigningKey> loadKeys(int lanes) throws Exception;
+
+    /** Indica se a origem pode ser monitorada para recarga ({@link #hasChanged()}). */
+    default boolean supportsReload() {
+        return false;
+    }
+
+    /**
+     * Indica se as chaves foram alteradas na origem desde o último carregamento
+     * (ex: rotação do keystore em disco).
+     */
+    default boolean hasChanged() throws Exception {
+        return false;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.pacs008.service.signing;
+
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
+import javax.xml.crypto.dsig.keyinfo.X509Data;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Material de assinatura de uma lane: a chave privada, o KeyInfo (certificado) incluído
+ * na assinatura e o provider JCA que executa a operação RSA.
+ *
+ * @param privateKey A chave privada (em memória ou uma referência a um objeto do HSM).
+ * @param keyInfo    O KeyInfo imutável, compartilhado por todas as assinaturas.
+ * @param provider   O provider da assinatura, ou {@code null} para a seleção padrão do JCA.
+ */
+public record SigningKey(PrivateKey privateKey, KeyInfo keyInfo, Provider provider) {
+
+    /**
+     * Cria o material com o KeyInfo padrão: X509Data com o nome do titular e o certificado.
+     */
+    public static SigningKey of(PrivateKey privateKey, X509Certificate certificate, Provider provider) {
+        KeyInfoFactory kif = XMLSignatureFactory.getInstance("DOM").getKeyInfoFactory();
+        X509Data x509Data = kif.newX509Data(List.of(certificate.getSubjectX500Principal().getName(), certificate));
+        return new SigningKey(privateKey, kif.newKeyInfo(Collections.singletonList(x509Data)), provider);
+    }
+}
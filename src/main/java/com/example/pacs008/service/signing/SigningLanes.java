@@ -0,0 +1,376 @@
+package com.example.pacs008.service.signing;
+
+import com.example.pacs008.util.OverloadedException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Lanes de assinatura: cada lane tem uma thread, uma fila e o seu material de assinatura
+ * (a mesma chave em software, ou um slot/sessão do HSM). Uma assinatura é colocada na
+ * menor fila entre duas lanes sorteadas; uma lane ociosa rouba trabalho do fim da fila das
+ * demais, de modo que nenhuma lane fica parada enquanto houver assinaturas pendentes.
+ *
+ * <p>Sem trabalho em nenhuma fila, as lanes ficam paradas em uma condição compartilhada,
+ * sinalizada a cada submissão (apenas quando há lanes paradas), em vez de consultarem as filas
+ * periodicamente.
+ *
+ * <p>A quantidade de assinaturas em andamento é limitada por quem chama (o
+ * {@code ConcurrencyLimiter} de assinatura); as filas em si não têm limite. Quem chama espera
+ * no máximo {@code timeoutMs} pelo resultado: uma sessão travada no HSM não prende a
+ * requisição indefinidamente. Uma assinatura expirada ainda na fila é descartada; uma já em
+ * execução não pode ser interrompida, e os recursos de quem chama usados por ela (objetos não
+ * thread-safe, permissões do limitador) passam para a lane, que os libera ao terminar
+ * ({@link #execute(Task, Supplier)}). No encerramento, as assinaturas ainda na fila e as
+ * submetidas depois dele falham com {@link IllegalStateException}.
+ *
+ * <p>Métricas ({@link #bindTo(MeterRegistry)}):
+ * <ul>
+ *     <li>{@code pix.signature.lane.busy{lane}}: tempo ocupado acumulado, cuja taxa é a utilização da lane;</li>
+ *     <li>{@code pix.signature.lane.queue{lane}}: assinaturas na fila da lane;</li>
+ *     <li>{@code pix.signature.queue-wait}: espera entre a submissão e o início da assinatura;</li>
+ *     <li>{@code pix.signature.steals}: assinaturas executadas por uma lane diferente da escolhida.</li>
+ * </ul>
+ */
+@Slf4j
+public class SigningLanes {
+
+    private final Lane[] lanes;
+    private final long timeoutMs;
+    // Assinaturas nas filas (pode ficar negativo por um instante, entre a retirada e a contagem da submissão)
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger idleLanes = new AtomicInteger();
+    private final ReentrantLock idleLock = new ReentrantLock();
+    private final Condition workAvailable = idleLock.newCondition();
+    private final LongAdder steals = new LongAdder();
+    private volatile Timer queueWait;
+    private volatile boolean running = true;
+
+    /**
+     * Cria e inicia uma lane para cada material de assinatura.
+     *
+     * @param keys      O material de cada lane.
+     * @param timeoutMs Espera máxima de quem chama pelo resultado de uma assinatura.
+     */
+    public SigningLanes(List<SigningKey> keys, long timeoutMs) {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("É necessária ao menos uma lane de assinatura.");
+        }
+        this.timeoutMs = timeoutMs;
+        lanes = new Lane[keys.size()];
+        for (int i = 0; i < lanes.length; i++) {
+            Lane lane = new Lane(i, keys.get(i));
+            lanes[i] = lane;
+            Thread t = new Thread(() -> work(lane), "signing-lane-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * Tarefa de assinatura executada por uma lane, com o material dessa lane.
+     */
+    @FunctionalInterface
+    public interface Task<T> {
+        T run(SigningKey key) throws Exception;
+    }
+
+    public int size() {
+        return lanes.length;
+    }
+
+    /**
+     * Substitui o material de assinatura das lanes (ex: rotação do certificado). As
+     * assinaturas em andamento terminam com o material anterior.
+     */
+    public void replaceKeys(List<SigningKey> keys) {
+        if (keys.size() != lanes.length) {
+            throw new IllegalArgumentException("Esperado material para " + lanes.length + " lanes, recebido " + keys.size() + ".");
+        }
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i].key = keys.get(i);
+        }
+    }
+
+    /**
+     * Executa a tarefa em uma lane e aguarda o resultado. A tarefa não pode usar recursos de
+     * quem chama que precisem ser liberados por ele (ver {@link #execute(Task, Supplier)}).
+     *
+     * @throws IllegalStateException se as lanes estiverem encerradas.
+     * @throws OverloadedException   se a assinatura não for concluída em {@code timeoutMs}; se
+     *                               ainda estiver na fila, ela é descartada.
+     * @throws Exception             a exceção lançada pela tarefa.
+     */
+    public <T> T execute(Task<T> task) throws Exception {
+        return execute(task, () -> null);
+    }
+
+    /**
+     * Executa a tarefa em uma lane e aguarda o resultado. Se o prazo expirar com a tarefa já
+     * em execução, {@code handOver} é chamado (na thread de quem chama, uma única vez) para
+     * transferir à lane os recursos usados pela tarefa: ele devolve a ação que os libera, que
+     * a lane executa quando a tarefa terminar. Nesse caso quem chama não deve mais usá-los nem
+     * liberá-los; em todos os outros, os recursos continuam com quem chama.
+     *
+     * @param handOver Transfere os recursos e devolve a ação que os libera ({@code null} se não há o que liberar).
+     * @throws IllegalStateException se as lanes estiverem encerradas.
+     * @throws OverloadedException   se a assinatura não for concluída em {@code timeoutMs}; se
+     *                               ainda estiver na fila, ela é descartada.
+     * @throws Exception             a exceção lançada pela tarefa.
+     */
+    public <T> T execute(Task<T> task, Supplier<Runnable> handOver) throws Exception {
+        if (!running) {
+            throw new IllegalStateException("Lanes de assinatura encerradas.");
+        }
+        Job<T> job = new Job<>(task, System.nanoTime());
+        Lane lane = choose();
+        lane.queue.offerLast(job);
+        queued.incrementAndGet();
+        if (!running) {
+            // Encerramento concorrente: as lanes podem já ter esvaziado as filas e terminado
+            if (lane.queue.remove(job)) {
+                queued.decrementAndGet();
+                job.result.completeExceptionally(new IllegalStateException("Lanes de assinatura encerradas."));
+            }
+        } else if (idleLanes.get() > 0) {
+            signalWork();
+        }
+        try {
+            return job.result.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (TimeoutException e) {
+            if (lane.queue.remove(job)) {
+                // Ainda na fila: descartada sem ter sido iniciada
+                queued.decrementAndGet();
+            } else if (!job.abandon(handOver)) {
+                // Concluída no limite do prazo
+                try {
+                    return job.result.get();
+                } catch (ExecutionException completed) {
+                    throw unwrap(completed);
+                }
+            }
+            throw new OverloadedException("Assinatura não concluída em " + timeoutMs + " ms.", 1, e);
+        }
+    }
+
+    private static Exception unwrap(ExecutionException e) {
+        return e.getCause() instanceof Exception cause ? cause : e;
+    }
+
+    /**
+     * Encerra as lanes: as assinaturas em execução terminam, as que estão na fila falham.
+     */
+    public void shutdown() {
+        running = false;
+        idleLock.lock();
+        try {
+            workAvailable.signalAll();
+        } finally {
+            idleLock.unlock();
+        }
+    }
+
+    public void bindTo(MeterRegistry registry) {
+        queueWait = Timer.builder("pix.signature.queue-wait")
+                .description("Espera entre a submissão e o início da assinatura")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(registry);
+        FunctionCounter.builder("pix.signature.steals", steals, LongAdder::sum)
+                .description("Assinaturas executadas por uma lane diferente da escolhida")
+                .register(registry);
+        for (Lane lane : lanes) {
+            String tag = Integer.toString(lane.index);
+            FunctionCounter.builder("pix.signature.lane.busy", lane.busyNanos, busy -> busy.sum() / 1e9)
+                    .description("Tempo ocupado da lane de assinatura (segundos)")
+                    .baseUnit("seconds")
+                    .tag("lane", tag)
+                    .register(registry);
+            Gauge.builder("pix.signature.lane.queue", lane.queue, LinkedBlockingDeque::size)
+                    .description("Assinaturas na fila da lane")
+                    .tag("lane", tag)
+                    .register(registry);
+        }
+    }
+
+    /** A menor fila entre duas lanes sorteadas. */
+    private Lane choose() {
+        if (lanes.length == 1) {
+            return lanes[0];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Lane a = lanes[random.nextInt(lanes.length)];
+        Lane b = lanes[random.nextInt(lanes.length)];
+        return a.queue.size() <= b.queue.size() ? a : b;
+    }
+
+    private void work(Lane lane) {
+        while (running) {
+            Job<?> job = lane.queue.pollFirst();
+            if (job == null) {
+                job = steal(lane);
+            }
+            if (job != null) {
+                queued.decrementAndGet();
+                run(lane, job);
+            } else if (!awaitWork()) {
+                break;
+            }
+        }
+        // Encerramento: as assinaturas ainda na fila falham em vez de deixar quem chamou esperando
+        Job<?> pending;
+        while ((pending = lane.queue.pollFirst()) != null) {
+            queued.decrementAndGet();
+            pending.result.completeExceptionally(new IllegalStateException("Lanes de assinatura encerradas."));
+        }
+    }
+
+    /**
+     * Para a lane até haver assinaturas em alguma fila ou até o encerramento. A lane se declara
+     * parada antes de conferir a contagem, e quem submete conta a assinatura antes de conferir
+     * as lanes paradas: ao menos um dos dois vê o outro, e o sinal não se perde.
+     *
+     * @return falso se a thread foi interrompida.
+     */
+    private boolean awaitWork() {
+        idleLock.lock();
+        idleLanes.incrementAndGet();
+        try {
+            while (running && queued.get() <= 0) {
+                workAvailable.await();
+            }
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            idleLanes.decrementAndGet();
+            idleLock.unlock();
+        }
+    }
+
+    private void signalWork() {
+        idleLock.lock();
+        try {
+            workAvailable.signal();
+        } finally {
+            idleLock.unlock();
+        }
+    }
+
+    private Job<?> steal(Lane thief) {
+        for (int i = 1; i < lanes.length; i++) {
+            Job<?> job = lanes[(thief.index + i) % lanes.length].queue.pollLast();
+            if (job != null) {
+                steals.increment();
+                return job;
+            }
+        }
+        return null;
+    }
+
+    private <T> void run(Lane lane, Job<T> job) {
+        if (job.isAbandoned()) {
+            // Expirada entre a retirada da fila e o início (ex: roubada por outra lane)
+            release(job.finish());
+            return;
+        }
+        long start = System.nanoTime();
+        Timer wait = queueWait;
+        if (wait != null) {
+            wait.record(start - job.submittedAtNanos, TimeUnit.NANOSECONDS);
+        }
+        try {
+            job.result.complete(job.task.run(lane.key));
+        } catch (Throwable e) {
+            job.result.completeExceptionally(e);
+        } finally {
+            lane.busyNanos.add(System.nanoTime() - start);
+            release(job.finish());
+        }
+    }
+
+    /** Libera os recursos transferidos por quem desistiu da assinatura, se houver. */
+    private static void release(Runnable release) {
+        if (release == null) {
+            return;
+        }
+        try {
+            release.run();
+        } catch (RuntimeException e) {
+            log.error("Falha ao liberar os recursos de uma assinatura expirada: {}", e.getMessage(), e);
+        }
+    }
+
+    private static final class Lane {
+        private final int index;
+        private final LinkedBlockingDeque<Job<?>> queue = new LinkedBlockingDeque<>();
+        private final LongAdder busyNanos = new LongAdder();
+        private volatile SigningKey key;
+
+        private Lane(int index, SigningKey key) {
+            this.index = index;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Assinatura submetida. A conclusão pela lane e a desistência de quem chama são
+     * serializadas no próprio job: ou a lane termina antes e quem chama usa o resultado, ou
+     * quem chama desiste antes e a lane libera os recursos transferidos ao terminar.
+     */
+    private static final class Job<T> {
+        private final Task<T> task;
+        private final long submittedAtNanos;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private boolean finished;
+        private boolean abandoned;
+        private Runnable release;
+
+        private Job(Task<T> task, long submittedAtNanos) {
+            this.task = task;
+            this.submittedAtNanos = submittedAtNanos;
+        }
+
+        /**
+         * Desiste da assinatura, transferindo os recursos à lane.
+         *
+         * @return {@code false} se a lane já terminou (os recursos continuam com quem chama).
+         */
+        private synchronized boolean abandon(Supplier<Runnable> handOver) {
+            if (finished) {
+                return false;
+            }
+            abandoned = true;
+            release = handOver.get();
+            return true;
+        }
+
+        private synchronized boolean isAbandoned() {
+            return abandoned;
+        }
+
+        /** Marca a assinatura como terminada e devolve a ação de liberação transferida, se houver. */
+        private synchronized Runnable finish() {
+            finished = true;
+            Runnable transferred = release;
+            release = null;
+            return transferred;
+        }
+    }
+}
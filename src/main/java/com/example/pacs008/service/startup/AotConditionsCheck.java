@@ -0,0 +1,160 @@
+package com.example.pacs008.service.startup;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aot.AotDetector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.MergedAnnotation;
+import org.springframework.core.annotation.MergedAnnotations;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Confere, na inicialização com o Spring AOT ({@code -Dspring.aot.enabled=true}), se a
+ * configuração atual leva às mesmas definições de beans geradas no build.
+ *
+ * <p>Com o AOT, os perfis e as condições dos beans ({@code @Profile},
+ * {@code @ConditionalOnProperty}: {@code pix.outbox.enabled}, {@code pix.reconciliation.enabled},
+ * {@code pix.pacs008.aggregation.enabled}, {@code pix.signature.backend} etc.) são avaliados
+ * no build e ignorados em tempo de execução: um {@code -Dpix.outbox.enabled=true} no
+ * {@code JAVA_OPTS} de uma imagem gerada sem ele não habilita o outbox. As condições do build
+ * são gravadas por {@link AotConditionsRecorder} e reavaliadas aqui com a configuração atual.
+ * Com {@code pix.startup.aot-check=fail} (padrão), uma diferença impede a inicialização; com
+ * {@code warn}, é apenas registrada em log; com {@code off}, não é conferida.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AotConditionsCheck {
+
+    static final String RESOURCE = "META-INF/pixspi/aot-conditions.properties";
+    static final String PROFILES_KEY = "profiles";
+
+    private final Environment environment;
+
+    @Value("${pix.startup.aot-check:fail}")
+    private String mode;
+
+    @PostConstruct
+    public void check() throws IOException {
+        if (!AotDetector.useGeneratedArtifacts() || "off".equalsIgnoreCase(mode)) {
+            return;
+        }
+        ClassPathResource resource = new ClassPathResource(RESOURCE);
+        if (!resource.exists()) {
+            log.warn("Spring AOT habilitado sem o registro das condições do build ({}): a configuração não foi conferida", RESOURCE);
+            return;
+        }
+        verify(PropertiesLoaderUtils.loadProperties(resource));
+    }
+
+    /**
+     * Compara as condições do build com a configuração atual e, conforme o modo, registra
+     * as diferenças em log ou interrompe a inicialização.
+     */
+    void verify(Properties build) {
+        List<String> differences = differences(build, environment);
+        if (differences.isEmpty()) {
+            log.debug("Configuração compatível com as condições do build AOT");
+            return;
+        }
+        String message = "A configuração difere da usada no build AOT, cujas definições de beans estão em uso: "
+                + String.join("; ", differences) + ". Gere a imagem com essa configuração (AOT_ARGUMENTS) ou "
+                + "sem o AOT (SPRING_AOT=false).";
+        if ("warn".equalsIgnoreCase(mode)) {
+            log.warn(message);
+        } else {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    static List<String> differences(Properties build, Environment environment) {
+        List<String> differences = new ArrayList<>();
+        String profiles = profiles(environment);
+        String buildProfiles = build.getProperty(PROFILES_KEY, profiles);
+        if (!profiles.equals(buildProfiles)) {
+            differences.add("perfis [" + profiles + "], no build [" + buildProfiles + "]");
+        }
+        for (String typeName : new TreeSet<>(build.stringPropertyNames())) {
+            if (typeName.equals(PROFILES_KEY) || !ClassUtils.isPresent(typeName, AotConditionsCheck.class.getClassLoader())) {
+                continue;
+            }
+            Class<?> type = ClassUtils.resolveClassName(typeName, AotConditionsCheck.class.getClassLoader());
+            boolean included = Boolean.parseBoolean(build.getProperty(typeName));
+            if (matches(type, environment) != included) {
+                differences.add(type.getSimpleName() + " (" + describe(type) + ") "
+                        + (included ? "incluído no build e desabilitado" : "excluído no build e habilitado")
+                        + " pela configuração atual");
+            }
+        }
+        return differences;
+    }
+
+    /** Os perfis ativos (ou os padrão, se nenhum estiver ativo), em ordem alfabética. */
+    static String profiles(Environment environment) {
+        String[] active = environment.getActiveProfiles();
+        return String.join(",", new TreeSet<>(Arrays.asList(active.length > 0 ? active : environment.getDefaultProfiles())));
+    }
+
+    /**
+     * Se as condições de tipo do componente ({@code @Profile} e {@code @ConditionalOnProperty},
+     * com a mesma semântica do Spring Boot) são atendidas pela configuração.
+     */
+    static boolean matches(Class<?> type, Environment environment) {
+        MergedAnnotations annotations = MergedAnnotations.from(type);
+        MergedAnnotation<Profile> profile = annotations.get(Profile.class);
+        if (profile.isPresent() && !environment.acceptsProfiles(Profiles.of(profile.getStringArray("value")))) {
+            return false;
+        }
+        return annotations.stream(ConditionalOnProperty.class).allMatch(condition -> {
+            for (String name : propertyNames(condition)) {
+                String value = environment.getProperty(name);
+                String havingValue = condition.getString("havingValue");
+                boolean match = value == null ? condition.getBoolean("matchIfMissing")
+                        : havingValue.isEmpty() ? !"false".equalsIgnoreCase(value) : havingValue.equalsIgnoreCase(value);
+                if (!match) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    private static List<String> propertyNames(MergedAnnotation<ConditionalOnProperty> condition) {
+        String prefix = condition.getString("prefix").trim();
+        if (!prefix.isEmpty() && !prefix.endsWith(".")) {
+            prefix += ".";
+        }
+        String[] names = condition.getStringArray("name");
+        List<String> properties = new ArrayList<>();
+        for (String name : names.length > 0 ? names : condition.getStringArray("value")) {
+            properties.add(prefix + name);
+        }
+        return properties;
+    }
+
+    private static String describe(Class<?> type) {
+        MergedAnnotations annotations = MergedAnnotations.from(type);
+        List<String> conditions = new ArrayList<>();
+        MergedAnnotation<Profile> profile = annotations.get(Profile.class);
+        if (profile.isPresent()) {
+            conditions.add("@Profile " + String.join(",", profile.getStringArray("value")));
+        }
+        annotations.stream(ConditionalOnProperty.class).forEach(condition -> conditions.addAll(propertyNames(condition)));
+        return String.join(", ", conditions);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.pacs008.service.startup;
+
+import org.springframework.beans.factory.aot.BeanFactoryInitializationAotContribution;
+import org.springframework.beans.factory.aot.BeanFactoryInitializationAotProcessor;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackages;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.util.ClassUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Registra, no processamento AOT do build (perfil Maven {@code startup}), as condições com
+ * que as definições de beans foram geradas: os perfis ativos e, para cada componente da
+ * aplicação com {@code @Profile} ou {@code @ConditionalOnProperty}, se ele foi incluído. O
+ * resultado é gravado no recurso {@value AotConditionsCheck#RESOURCE} e conferido na
+ * inicialização por {@link AotConditionsCheck}.
+ *
+ * <p>Registrado em {@code META-INF/spring/aot.factories}; não é usado em tempo de execução.
+ */
+public class AotConditionsRecorder implements BeanFactoryInitializationAotProcessor {
+
+    // Pacote da aplicação, se o contexto não tiver os pacotes de @SpringBootApplication
+    private static final String APPLICATION_PACKAGE = "com.example.pacs008";
+
+    @Override
+    public BeanFactoryInitializationAotContribution processAheadOfTime(ConfigurableListableBeanFactory beanFactory) {
+        Environment environment = beanFactory.getBean(ConfigurableApplicationContext.ENVIRONMENT_BEAN_NAME, Environment.class);
+        Map<String, String> conditions = new TreeMap<>();
+        for (Class<?> type : conditionalComponents(beanFactory, environment)) {
+            boolean included = beanFactory.getBeanNamesForType(type, true, false).length > 0;
+            conditions.put(type.getName(), Boolean.toString(included));
+        }
+
+        StringBuilder content = new StringBuilder("# Condições das definições de beans geradas pelo processamento AOT\n");
+        content.append(AotConditionsCheck.PROFILES_KEY).append('=').append(AotConditionsCheck.profiles(environment)).append('\n');
+        conditions.forEach((type, included) -> content.append(type).append('=').append(included).append('\n'));
+        return (generationContext, code) -> {
+            generationContext.getGeneratedFiles().addResourceFile(AotConditionsCheck.RESOURCE, content);
+            generationContext.getRuntimeHints().resources().registerPattern(AotConditionsCheck.RESOURCE);
+        };
+    }
+
+    private static List<Class<?>> conditionalComponents(ConfigurableListableBeanFactory beanFactory, Environment environment) {
+        List<String> packages = AutoConfigurationPackages.has(beanFactory)
+                ? AutoConfigurationPackages.get(beanFactory) : List.of(APPLICATION_PACKAGE);
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false, environment) {
+            // Todos os componentes condicionais, inclusive os excluídos pelas condições do build
+            @Override
+            protected boolean isCandidateComponent(MetadataReader metadataReader) {
+                AnnotationMetadata metadata = metadataReader.getAnnotationMetadata();
+                return metadata.isAnnotated(Profile.class.getName()) || metadata.isAnnotated(ConditionalOnProperty.class.getName());
+            }
+        };
+        ClassLoader classLoader = beanFactory.getBeanClassLoader();
+        return packages.stream()
+                .flatMap(basePackage -> scanner.findCandidateComponents(basePackage).stream())
+                .map(BeanDefinition::getBeanClassName)
+                .distinct()
+                .<Class<?>>map(name -> ClassUtils.resolveClassName(name, classLoader))
+                .toList();
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.pacs008.service.startup;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Registra, a partir do início da JVM, o tempo até a aplicação ficar pronta para tráfego
+ * (após o aquecimento, {@link StartupWarmup}) e até a chegada da primeira requisição da API.
+ * Os dois tempos são emitidos em log e nas métricas {@code pix.startup.readiness} e
+ * {@code pix.startup.first-request}. Depois da primeira requisição o filtro não faz mais nada.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StartupTimings extends OncePerRequestFilter {
+
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicBoolean firstRequest = new AtomicBoolean(true);
+    private volatile boolean firstRequestPending = true;
+
+    @EventListener
+    public void onReadiness(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() != ReadinessState.ACCEPTING_TRAFFIC) {
+            return;
+        }
+        long readyMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        TimeGauge.builder("pix.startup.readiness", () -> readyMs, TimeUnit.MILLISECONDS)
+                .description("Tempo desde o início da JVM até a prontidão para tráfego").register(meterRegistry);
+        log.info("Pronta para tráfego {} ms após o início da JVM", readyMs);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !firstRequestPending || !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (firstRequest.compareAndSet(true, false)) {
+            firstRequestPending = false;
+            long firstRequestMs = ManagementFactory.getRuntimeMXBean().getUptime();
+            TimeGauge.builder("pix.startup.first-request", () -> firstRequestMs, TimeUnit.MILLISECONDS)
+                    .description("Tempo desde o início da JVM até a primeira requisição da API").register(meterRegistry);
+            log.info("Primeira requisição da API ({} {}) recebida {} ms após o início da JVM",
+                    request.getMethod(), request.getRequestURI(), firstRequestMs);
+        }
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.pacs008.service.startup;
+
+import com.example.pacs008.dto.PaymentRequestDto;
+import com.example.pacs008.service.Pacs008Service;
+import com.example.pacs008.service.SignedPacs008Message;
+import com.example.pacs008.service.inbound.PaymentCorrelationIndex;
+import com.example.pacs008.service.metrics.PaymentMetrics;
+import com.example.pacs008.service.mq.MqBatchPublisher;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aquecimento da aplicação antes de ela receber tráfego.
+ *
+ * <p>Sem o aquecimento, a criação do contexto JAXB e dos marshallers, a carga do provedor
+ * XMLDSig e das fábricas de transformação, a compilação JIT do fluxo e o primeiro handshake
+ * mTLS com o MQ acontecem nas primeiras requisições reais. Com
+ * {@code pix.startup.warmup.enabled=true}, são geradas e assinadas {@code iterations}
+ * mensagens pacs.008 sintéticas, em paralelo, e com a última delas é feito um ensaio de
+ * publicação em cada endpoint MQ ({@link MqBatchPublisher#dryRun}: conexão, sessão e
+ * producer abertos, sem envio). Nas threads do aquecimento, e nas assinaturas que elas
+ * submetem às lanes, o registro das etapas em {@code pix.stage} fica suspenso
+ * ({@link PaymentMetrics#suspendStages()}), para que as mensagens sintéticas não entrem nos
+ * percentis; as requisições reais recebidas durante o aquecimento continuam medidas.
+ *
+ * <p>O aquecimento é executado como {@link ApplicationRunner}: o Spring Boot só muda o
+ * estado de prontidão ({@code /actuator/health/readiness}) para {@code ACCEPTING_TRAFFIC}
+ * depois dele. Falhas são registradas em log e não impedem a inicialização. As mensagens
+ * sintéticas não são publicadas e são removidas do índice de correlação.
+ *
+ * <p>Com {@code pix.startup.exit-after-warmup=true}, a aplicação é encerrada ao final do
+ * aquecimento: é a execução de treinamento que gera o arquivo CDS no {@code Dockerfile}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StartupWarmup implements ApplicationRunner {
+
+    // ISPB fictício das mensagens sintéticas
+    private static final String WARMUP_ISPB = "99999999";
+
+    private final Pacs008Service pacs008Service;
+    private final PaymentCorrelationIndex correlationIndex;
+    private final MqBatchPublisher batchPublisher;
+    private final ObjectMapper objectMapper;
+    private final PaymentMetrics metrics;
+    private final ApplicationContext applicationContext;
+
+    // Propriedade lida em tempo de execução (e não @ConditionalOnProperty), para valer também com o Spring AOT
+    @Value("${pix.startup.warmup.enabled:false}")
+    private boolean enabled;
+    @Value("${pix.startup.warmup.iterations:2000}")
+    private int iterations;
+    // Threads do aquecimento (0 = número de processadores)
+    @Value("${pix.startup.warmup.threads:0}")
+    private int threads;
+    // Tempo máximo do aquecimento; ao atingi-lo, a aplicação fica pronta com as mensagens já geradas
+    @Value("${pix.startup.warmup.max-duration-ms:30000}")
+    private long maxDurationMs;
+    @Value("${pix.startup.warmup.mq-dry-run:true}")
+    private boolean mqDryRun;
+    @Value("${pix.startup.exit-after-warmup:false}")
+    private boolean exitAfterWarmup;
+    @Value("${ibm.mq.outbound-queue}")
+    private String outboundQueue;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabled) {
+            metrics.suspendStages();
+            try {
+                warmUp();
+            } catch (Exception e) {
+                log.error("Falha no aquecimento da inicialização: {}", e.getMessage(), e);
+            } finally {
+                metrics.resumeStages();
+            }
+        }
+        if (exitAfterWarmup) {
+            log.info("Encerrando após o aquecimento (pix.startup.exit-after-warmup=true).");
+            System.exit(SpringApplication.exit(applicationContext));
+        }
+    }
+
+    private void warmUp() throws Exception {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxDurationMs);
+
+        // Desserialização do JSON das requisições
+        PaymentRequestDto sample = objectMapper.readValue(objectMapper.writeValueAsBytes(samplePayment()), PaymentRequestDto.class);
+
+        long first = System.nanoTime();
+        SignedPacs008Message last = generate(sample);
+        long firstNanos = System.nanoTime() - first;
+
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger remaining = new AtomicInteger(iterations - 1);
+        AtomicLong generated = new AtomicLong(1);
+        AtomicLong lastWindowNanos = new AtomicLong();
+        AtomicLong lastWindowCount = new AtomicLong();
+        int lastWindowStart = iterations / 10;
+        List<Thread> workers = new ArrayList<>(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            Thread t = new Thread(() -> {
+                metrics.suspendStages();
+                int n;
+                while ((n = remaining.decrementAndGet()) >= 0 && System.nanoTime() < deadline) {
+                    long messageStart = System.nanoTime();
+                    try {
+                        generate(sample);
+                    } catch (Exception e) {
+                        log.warn("Falha ao gerar mensagem de aquecimento: {}", e.getMessage());
+                        return;
+                    }
+                    generated.incrementAndGet();
+                    if (n < lastWindowStart) {
+                        lastWindowNanos.addAndGet(System.nanoTime() - messageStart);
+                        lastWindowCount.incrementAndGet();
+                    }
+                }
+            }, "startup-warmup-" + (i + 1));
+            t.start();
+            workers.add(t);
+        }
+        for (Thread t : workers) {
+            t.join();
+        }
+
+        String mqResult = "desabilitado";
+        if (mqDryRun) {
+            long mqStart = System.nanoTime();
+            Map<String, String> failures = batchPublisher.dryRun(last.xml(), outboundQueue);
+            mqResult = failures.isEmpty()
+                    ? "ok em " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mqStart) + " ms"
+                    : "falha em " + failures;
+            if (!failures.isEmpty()) {
+                log.warn("Ensaio de publicação no MQ falhou: {}", failures);
+            }
+        }
+
+        long windowCount = lastWindowCount.get();
+        log.info("Aquecimento concluído em {} ms: {} mensagem(ns) gerada(s) e assinada(s) em {} thread(s); "
+                        + "primeira em {} ms, últimas em {} ms em média; publicação de ensaio no MQ: {}",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), generated.get(), parallelism,
+                TimeUnit.NANOSECONDS.toMillis(firstNanos),
+                windowCount == 0 ? "-" : String.format("%.2f", lastWindowNanos.get() / 1e6 / windowCount), mqResult);
+    }
+
+    private SignedPacs008Message generate(PaymentRequestDto request) throws Exception {
+        SignedPacs008Message message = pacs008Service.createSignedPacs008Message(request);
+        // A mensagem não será enviada: nenhuma resposta do SPI deve ser aguardada
+        correlationIndex.complete(message.endToEndId());
+        return message;
+    }
+
+    private static PaymentRequestDto samplePayment() {
+        PaymentRequestDto request = new PaymentRequestDto();
+        request.setPayerName("Aquecimento");
+        request.setPayerCpfCnpj("00000000000");
+        request.setPayerIspb(WARMUP_ISPB);
+        request.setPayerAgency("0001");
+        request.setPayerAccount("0000001");
+        request.setPayerAccountType("CACC");
+        request.setReceiverName("Aquecimento");
+        request.setReceiverCpfCnpj("00000000000");
+        request.setReceiverIspb(WARMUP_ISPB);
+        request.setReceiverAgency("0001");
+        request.setReceiverAccount("0000002");
+        request.setReceiverAccountType("CACC");
+        request.setReceiverPixKey("aquecimento@example.com");
+        request.setAmount(new BigDecimal("0.01"));
+        request.setDescription("Aquecimento");
+        return request;
+    }
+}
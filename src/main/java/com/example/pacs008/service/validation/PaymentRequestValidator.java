@@ -0,0 +1,128 @@
+package com.example.pacs008.service.validation;
+
+import com.example.pacs008.dto.PaymentRequestDto;
+import com.example.pacs008.service.validation.PaymentValidationException.Violation;
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Valida uma {@link PaymentRequestDto} contra as facetas do XSD da pacs.008 antes de
+ * qualquer trabalho de JAXB ou assinatura.
+ *
+ * <p>Na inicialização, as facetas dos tipos do XSD ({@code xs:pattern}, tamanhos,
+ * enumerações e dígitos do valor) são lidas e compiladas; cada campo do DTO é associado
+ * ao tipo do elemento em que é escrito. A validação percorre os campos uma única vez e só
+ * aloca quando encontra uma violação, devolvendo todas de uma vez.
+ *
+ * <p>As associações refletem o que {@code Pacs008Service} efetivamente escreve: o nome do
+ * recebedor não faz parte da mensagem e não é validado; agência, chave Pix e valor são
+ * obrigatórios porque sempre são escritos.
+ */
+@Component
+public class PaymentRequestValidator {
+
+    /** XSD da pacs.008 no classpath. */
+    public static final String SCHEMA = "xsd/pacs.008.spi.1.13.xsd";
+
+    private static final String AMOUNT_TYPE = "ActiveCurrencyAndAmount_SimpleType";
+    private static final String REQUIRED = "é obrigatório";
+
+    private static final FieldBinding[] BINDINGS = {
+            new FieldBinding("payerName", "Max140Text", true, PaymentRequestDto::getPayerName),
+            new FieldBinding("payerCpfCnpj", "PICpfCnpj", true, PaymentRequestDto::getPayerCpfCnpj),
+            new FieldBinding("payerIspb", "ISPBType", true, PaymentRequestDto::getPayerIspb),
+            new FieldBinding("payerAgency", "Max4Numeric", true, PaymentRequestDto::getPayerAgency),
+            new FieldBinding("payerAccount", "Max20Numeric", true, PaymentRequestDto::getPayerAccount),
+            new FieldBinding("payerAccountType", "ExternalCashAccountType1Code", true, PaymentRequestDto::getPayerAccountType),
+            new FieldBinding("receiverCpfCnpj", "PICpfCnpj", true, PaymentRequestDto::getReceiverCpfCnpj),
+            new FieldBinding("receiverIspb", "ISPBType", true, PaymentRequestDto::getReceiverIspb),
+            new FieldBinding("receiverAgency", "Max4Numeric", true, PaymentRequestDto::getReceiverAgency),
+            new FieldBinding("receiverAccount", "Max20Numeric", true, PaymentRequestDto::getReceiverAccount),
+            new FieldBinding("receiverAccountType", "ExternalCashAccountType1Code", true, PaymentRequestDto::getReceiverAccountType),
+            new FieldBinding("receiverPixKey", "Max77Text", true, PaymentRequestDto::getReceiverPixKey),
+            new FieldBinding("description", "Max140Text", false, PaymentRequestDto::getDescription),
+            new FieldBinding("serviceLevel", "PrtrySvcLvlCode", false, PaymentRequestDto::getServiceLevel),
+    };
+
+    private XsdSimpleType[] fieldTypes;
+    private XsdSimpleType amountType;
+
+    @PostConstruct
+    public void init() throws Exception {
+        Map<String, XsdSimpleType> types;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(SCHEMA)) {
+            if (is == null) {
+                throw new IllegalStateException("XSD não encontrado no classpath: " + SCHEMA);
+            }
+            types = XsdSimpleType.loadAll(is);
+        }
+        fieldTypes = new XsdSimpleType[BINDINGS.length];
+        for (int i = 0; i < BINDINGS.length; i++) {
+            fieldTypes[i] = requireType(types, BINDINGS[i].xsdType());
+        }
+        amountType = requireType(types, AMOUNT_TYPE);
+    }
+
+    /**
+     * Valida a solicitação.
+     *
+     * @param request A solicitação de pagamento.
+     * @throws PaymentValidationException com todas as violações, se houver alguma.
+     */
+    public void validate(PaymentRequestDto request) {
+        List<Violation> violations = null;
+        for (int i = 0; i < BINDINGS.length; i++) {
+            FieldBinding binding = BINDINGS[i];
+            String value = binding.getter().apply(request);
+            String message;
+            if (value == null) {
+                message = binding.required() ? REQUIRED : null;
+            } else {
+                message = fieldTypes[i].check(value);
+            }
+            if (message != null) {
+                violations = add(violations, binding.field(), binding.xsdType(), message);
+            }
+        }
+
+        BigDecimal amount = request.getAmount();
+        String amountMessage = amount == null ? REQUIRED : amountType.check(amount);
+        if (amountMessage != null) {
+            violations = add(violations, "amount", AMOUNT_TYPE, amountMessage);
+        }
+
+        if (violations != null) {
+            throw new PaymentValidationException(violations);
+        }
+    }
+
+    private static List<Violation> add(List<Violation> violations, String field, String xsdType, String message) {
+        if (violations == null) {
+            violations = new ArrayList<>(4);
+        }
+        violations.add(new Violation(field, xsdType, message));
+        return violations;
+    }
+
+    private static XsdSimpleType requireType(Map<String, XsdSimpleType> types, String name) {
+        XsdSimpleType type = types.get(name);
+        if (type == null) {
+            throw new IllegalStateException("Tipo '" + name + "' não encontrado no XSD " + SCHEMA);
+        }
+        return type;
+    }
+
+    /**
+     * Campo do DTO e o tipo do XSD do elemento em que ele é escrito.
+     */
+    private record FieldBinding(String field, String xsdType, boolean required,
+                                Function<PaymentRequestDto, String> getter) {
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.pacs008.service.validation;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Lançada quando uma solicitação de pagamento viola as regras do XSD da pacs.008.
+ * Reúne todas as violações encontradas, e não apenas a primeira.
+ */
+public class PaymentValidationException extends IllegalArgumentException {
+
+    private final transient List<Violation> violations;
+
+    public PaymentValidationException(List<Violation> violations) {
+        super(violations.stream()
+                .map(v -> v.field() + " " + v.message())
+                .collect(Collectors.joining("; ")));
+        this.violations = List.copyOf(violations);
+    }
+
+    public List<Violation> getViolations() {
+        return violations;
+    }
+
+    /**
+     * Uma violação: o campo do DTO, o tipo do XSD ao qual ele é mapeado e a regra violada.
+     */
+    public record Violation(String field, String xsdType, String message) {
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.pacs008.service.validation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Auditoria por amostragem: valida uma fração das mensagens assinadas contra o XSD completo,
+ * fora do caminho crítico, para detectar regras que a validação do DTO
+ * ({@link PaymentRequestValidator}) não cobre.
+ *
+ * <p>Com {@code pix.validation.audit-sample-rate} maior que zero, a mensagem sorteada é
+ * validada em uma thread dedicada com fila limitada ({@code audit-queue-capacity}); com a
+ * fila cheia a amostra é descartada, sem afetar a requisição. O conteúdo de {@code Sgntr}
+ * ({@code xs:any} do XMLDSig, cujo XSD não acompanha o do SPI) é ignorado. Os resultados
+ * são contados em {@code pix.validation.audit{result}} e as violações registradas em log.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SchemaAuditor {
+
+    // Erro do Xerces para o elemento ds:Signature dentro do xs:any estrito de Sgntr
+    private static final String MISSING_WILDCARD_DECLARATION = "cvc-complex-type.2.4.c";
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${pix.validation.audit-sample-rate:0}")
+    private double sampleRate;
+    @Value("${pix.validation.audit-queue-capacity:100}")
+    private int queueCapacity;
+
+    private Schema schema;
+    private ThreadPoolExecutor executor;
+    private Counter valid;
+    private Counter invalid;
+    private Counter failed;
+    private Counter skipped;
+
+    @PostConstruct
+    public void init() throws Exception {
+        if (sampleRate <= 0) {
+            return;
+        }
+        URL xsd = getClass().getClassLoader().getResource(PaymentRequestValidator.SCHEMA);
+        if (xsd == null) {
+            throw new IllegalStateException("XSD não encontrado no classpath: " + PaymentRequestValidator.SCHEMA);
+        }
+        SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        schema = factory.newSchema(xsd);
+
+        valid = counter("valid");
+        invalid = counter("invalid");
+        failed = counter("error");
+        skipped = counter("skipped");
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread t = new Thread(r, "schema-auditor");
+            t.setDaemon(true);
+            return t;
+        }, (task, pool) -> skipped.increment());
+        log.info("Auditoria de XSD ativa para {}% das mensagens.", sampleRate * 100);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Agenda a validação completa da mensagem, se ela for sorteada.
+     *
+     * @param bizMsgIdr O identificador da mensagem, para o log.
+     * @param signedXml O XML assinado, que não deve ser alterado depois desta chamada.
+     */
+    public void maybeAudit(String bizMsgIdr, byte[] signedXml) {
+        if (executor == null || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        executor.execute(() -> audit(bizMsgIdr, signedXml));
+    }
+
+    private void audit(String bizMsgIdr, byte[] signedXml) {
+        List<String> errors = new ArrayList<>();
+        try {
+            Validator validator = schema.newValidator();
+            validator.setErrorHandler(new ErrorHandler() {
+                @Override
+                public void warning(SAXParseException e) {
+                }
+
+                @Override
+                public void error(SAXParseException e) {
+                    if (e.getMessage() == null || !e.getMessage().startsWith(MISSING_WILDCARD_DECLARATION)) {
+                        errors.add("linha " + e.getLineNumber() + ", coluna " + e.getColumnNumber() + ": " + e.getMessage());
+                    }
+                }
+
+                @Override
+                public void fatalError(SAXParseException e) throws SAXParseException {
+                    throw e;
+                }
+            });
+            validator.validate(new StreamSource(new ByteArrayInputStream(signedXml)));
+        } catch (Exception e) {
+            failed.increment();
+            log.warn("Auditoria de XSD da mensagem {} não concluída: {}", bizMsgIdr, e.getMessage());
+            return;
+        }
+        if (errors.isEmpty()) {
+            valid.increment();
+        } else {
+            invalid.increment();
+            log.warn("Mensagem {} não está de acordo com o XSD {}: {}", bizMsgIdr, PaymentRequestValidator.SCHEMA, errors);
+        }
+    }
+
+    private Counter counter(String result) {
+        return Counter.builder("pix.validation.audit")
+                .description("Mensagens assinadas auditadas contra o XSD completo")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.pacs008.service.validation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Padrão ({@code xs:pattern}) do XSD compilado para verificação sem alocação.
+ *
+ * <p>Os padrões do SPI são sequências de classes de caracteres ASCII com repetição
+ * ({@code [0-9A-Z]{8}}, {@code [0-9]{1,20}}) e alternativas de primeiro nível
+ * ({@code [0-9]{11}|[0-9A-Z]{12}[0-9]{2}}). Esse subconjunto é compilado para termos com
+ * máscaras de bits; qualquer outra construção (grupos, escapes, {@code .}) usa
+ * {@link Pattern} como alternativa, com o mesmo resultado e maior custo.
+ */
+final class XsdPattern {
+
+    private static final String UNSUPPORTED = "().\\^$";
+
+    private final String source;
+    private final Term[][] alternatives;
+    private final Pattern fallback;
+
+    private XsdPattern(String source, Term[][] alternatives, Pattern fallback) {
+        this.source = source;
+        this.alternatives = alternatives;
+        this.fallback = fallback;
+    }
+
+    static XsdPattern compile(String regex) {
+        try {
+            String[] branches = regex.split("\\|", -1);
+            Term[][] alternatives = new Term[branches.length][];
+            for (int i = 0; i < branches.length; i++) {
+                alternatives[i] = parseBranch(branches[i]);
+            }
+            return new XsdPattern(regex, alternatives, null);
+        } catch (IllegalArgumentException e) {
+            // Padrões XSD são implicitamente ancorados, como Matcher.matches()
+            return new XsdPattern(regex, null, Pattern.compile(regex));
+        }
+    }
+
+    String source() {
+        return source;
+    }
+
+    boolean matches(CharSequence value) {
+        if (alternatives == null) {
+            return fallback.matcher(value).matches();
+        }
+        for (Term[] terms : alternatives) {
+            if (match(terms, 0, value, 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean match(Term[] terms, int index, CharSequence value, int position) {
+        if (index == terms.length) {
+            return position == value.length();
+        }
+        Term term = terms[index];
+        int count = 0;
+        while (count < term.max && position + count < value.length() && term.accepts(value.charAt(position + count))) {
+            count++;
+        }
+        for (int n = count; n >= term.min; n--) {
+            if (match(terms, index + 1, value, position + n)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Term[] parseBranch(String branch) {
+        List<Term> terms = new ArrayList<>();
+        int i = 0;
+        while (i < branch.length()) {
+            char c = branch.charAt(i);
+            long low = 0;
+            long high = 0;
+            if (c == '[') {
+                int end = branch.indexOf(']', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException(branch);
+                }
+                for (int j = i + 1; j < end; j++) {
+                    char from = branch.charAt(j);
+                    char to = from;
+                    if (j + 2 < end && branch.charAt(j + 1) == '-') {
+                        to = branch.charAt(j + 2);
+                        j += 2;
+                    }
+                    if (from == '^' || from == '\\' || to > 127 || from > to) {
+                        throw new IllegalArgumentException(branch);
+                    }
+                    for (char ch = from; ch <= to; ch++) {
+                        if (ch < 64) {
+                            low |= 1L << ch;
+                        } else {
+                            high |= 1L << (ch - 64);
+                        }
+                    }
+                }
+                i = end + 1;
+            } else if (UNSUPPORTED.indexOf(c) >= 0 || c > 127 || "{}*+?".indexOf(c) >= 0) {
+                throw new IllegalArgumentException(branch);
+            } else {
+                if (c < 64) {
+                    low = 1L << c;
+                } else {
+                    high = 1L << (c - 64);
+                }
+                i++;
+            }
+
+            int min = 1;
+            int max = 1;
+            if (i < branch.length()) {
+                char q = branch.charAt(i);
+                if (q == '{') {
+                    int end = branch.indexOf('}', i);
+                    if (end < 0) {
+                        throw new IllegalArgumentException(branch);
+                    }
+                    String[] bounds = branch.substring(i + 1, end).split(",", -1);
+                    min = Integer.parseInt(bounds[0].trim());
+                    max = bounds.length == 1 ? min
+                            : bounds[1].isBlank() ? Integer.MAX_VALUE : Integer.parseInt(bounds[1].trim());
+                    i = end + 1;
+                } else if (q == '?') {
+                    min = 0;
+                    i++;
+                } else if (q == '*') {
+                    min = 0;
+                    max = Integer.MAX_VALUE;
+                    i++;
+                } else if (q == '+') {
+                    max = Integer.MAX_VALUE;
+                    i++;
+                }
+            }
+            terms.add(new Term(low, high, min, max));
+        }
+        return terms.toArray(new Term[0]);
+    }
+
+    /**
+     * Classe de caracteres ASCII (máscara de 128 bits) e repetição mínima/máxima.
+     */
+    private record Term(long low, long high, int min, int max) {
+
+        boolean accepts(char c) {
+            if (c < 64) {
+                return (low & (1L << c)) != 0;
+            }
+            return c < 128 && (high & (1L << (c - 64))) != 0;
+        }
+    }
+}
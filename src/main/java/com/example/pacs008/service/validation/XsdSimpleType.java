@@ -0,0 +1,213 @@
+package com.example.pacs008.service.validation;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Facetas de um {@code xs:simpleType} nomeado do XSD (tamanho, padrão, enumeração e
+ * dígitos), lidas uma única vez na inicialização.
+ *
+ * <p>As mensagens de violação são montadas na leitura do XSD; a verificação de um valor
+ * apenas devolve a mensagem da primeira faceta violada (ou {@code null}), sem alocação.
+ * As mensagens descrevem a regra, nunca o valor recebido.
+ *
+ * <p>Além das facetas, todo valor textual deve conter apenas caracteres permitidos em XML 1.0
+ * (sem caracteres de controle além de tabulação e quebras de linha, nem surrogates isolados):
+ * o XSD não os restringe, mas o DOM assinado e o parser do SPI os recusam, e a falha só
+ * apareceria na serialização, depois de a solicitação já ter entrado em um grupo agregado.
+ */
+final class XsdSimpleType {
+
+    private static final String XS = XMLConstants.W3C_XML_SCHEMA_NS_URI;
+    private static final String XML_CHAR_MESSAGE = "contém caracteres não permitidos em XML";
+
+    private final String name;
+    private int minLength = -1;
+    private int maxLength = -1;
+    private XsdPattern pattern;
+    private Set<String> enumeration;
+    private int totalDigits = -1;
+    private int fractionDigits = -1;
+    private BigDecimal minInclusive;
+
+    private String minLengthMessage;
+    private String maxLengthMessage;
+    private String patternMessage;
+    private String enumerationMessage;
+    private String digitsMessage;
+    private String minInclusiveMessage;
+
+    private XsdSimpleType(String name) {
+        this.name = name;
+    }
+
+    String name() {
+        return name;
+    }
+
+    /**
+     * Lê todos os {@code xs:simpleType} nomeados do XSD.
+     */
+    static Map<String, XsdSimpleType> loadAll(InputStream xsd) throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        dbf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        Document schema = dbf.newDocumentBuilder().parse(xsd);
+
+        Map<String, XsdSimpleType> types = new HashMap<>();
+        NodeList simpleTypes = schema.getElementsByTagNameNS(XS, "simpleType");
+        for (int i = 0; i < simpleTypes.getLength(); i++) {
+            Element simpleType = (Element) simpleTypes.item(i);
+            String name = simpleType.getAttribute("name");
+            if (!name.isEmpty()) {
+                types.put(name, read(name, simpleType));
+            }
+        }
+        return types;
+    }
+
+    private static XsdSimpleType read(String name, Element simpleType) {
+        XsdSimpleType type = new XsdSimpleType(name);
+        NodeList restrictions = simpleType.getElementsByTagNameNS(XS, "restriction");
+        if (restrictions.getLength() == 0) {
+            return type;
+        }
+        Set<String> enumeration = new LinkedHashSet<>();
+        StringBuilder patterns = new StringBuilder();
+        for (Node facet = restrictions.item(0).getFirstChild(); facet != null; facet = facet.getNextSibling()) {
+            if (!(facet instanceof Element element) || !XS.equals(element.getNamespaceURI())) {
+                continue;
+            }
+            String value = element.getAttribute("value");
+            switch (element.getLocalName()) {
+                case "length" -> {
+                    type.minLength = Integer.parseInt(value);
+                    type.maxLength = type.minLength;
+                }
+                case "minLength" -> type.minLength = Integer.parseInt(value);
+                case "maxLength" -> type.maxLength = Integer.parseInt(value);
+                // Vários xs:pattern no mesmo passo de derivação são alternativas
+                case "pattern" -> patterns.append(patterns.isEmpty() ? "" : "|").append(value);
+                case "enumeration" -> enumeration.add(value);
+                case "totalDigits" -> type.totalDigits = Integer.parseInt(value);
+                case "fractionDigits" -> type.fractionDigits = Integer.parseInt(value);
+                case "minInclusive" -> type.minInclusive = new BigDecimal(value);
+                default -> {
+                    // Demais facetas não ocorrem nos campos validados antes do marshalling
+                }
+            }
+        }
+        if (!patterns.isEmpty()) {
+            type.pattern = XsdPattern.compile(patterns.toString());
+        }
+        if (!enumeration.isEmpty()) {
+            type.enumeration = Set.copyOf(enumeration);
+            type.enumerationMessage = "deve ser um dos valores " + String.join(", ", enumeration);
+        }
+        type.buildMessages();
+        return type;
+    }
+
+    private void buildMessages() {
+        if (minLength > 0) {
+            minLengthMessage = minLength == 1 ? "não pode ser vazio" : "deve ter no mínimo " + minLength + " caracteres";
+        }
+        if (maxLength >= 0) {
+            maxLengthMessage = "deve ter no máximo " + maxLength + " caracteres";
+        }
+        if (pattern != null) {
+            patternMessage = "deve seguir o padrão " + pattern.source();
+        }
+        if (totalDigits >= 0 || fractionDigits >= 0) {
+            digitsMessage = "deve ter no máximo " + (totalDigits >= 0 ? totalDigits + " dígitos" : "")
+                    + (totalDigits >= 0 && fractionDigits >= 0 ? ", " : "")
+                    + (fractionDigits >= 0 ? fractionDigits + " casas decimais" : "");
+        }
+        if (minInclusive != null) {
+            minInclusiveMessage = "deve ser maior ou igual a " + minInclusive.toPlainString();
+        }
+    }
+
+    /**
+     * Verifica um valor textual contra as facetas do tipo.
+     *
+     * @return A mensagem da primeira faceta violada, ou {@code null} se o valor é válido.
+     */
+    String check(String value) {
+        int length = value.length();
+        if (minLengthMessage != null && length < minLength) {
+            return minLengthMessage;
+        }
+        if (maxLengthMessage != null && length > maxLength) {
+            return maxLengthMessage;
+        }
+        if (!isXmlText(value)) {
+            return XML_CHAR_MESSAGE;
+        }
+        if (enumeration != null && !enumeration.contains(value)) {
+            return enumerationMessage;
+        }
+        if (pattern != null && !pattern.matches(value)) {
+            return patternMessage;
+        }
+        return null;
+    }
+
+    /**
+     * Verifica um valor decimal contra as facetas numéricas do tipo.
+     *
+     * @return A mensagem da primeira faceta violada, ou {@code null} se o valor é válido.
+     */
+    String check(BigDecimal value) {
+        if (minInclusive != null && value.compareTo(minInclusive) < 0) {
+            return minInclusiveMessage;
+        }
+        if (digitsMessage != null && exceedsDigits(value.precision(), value.scale())) {
+            // Zeros à direita não contam no XSD: só no caminho de erro vale o custo de removê-los
+            BigDecimal stripped = value.stripTrailingZeros();
+            if (exceedsDigits(stripped.precision(), stripped.scale())) {
+                return digitsMessage;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Se o texto contém apenas caracteres da produção {@code Char} do XML 1.0:
+     * {@code #x9 | #xA | #xD | [#x20-#xD7FF] | [#xE000-#xFFFD] | [#x10000-#x10FFFF]}.
+     */
+    static boolean isXmlText(String value) {
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x20) {
+                if (c != '\t' && c != '\n' && c != '\r') {
+                    return false;
+                }
+            } else if (Character.isHighSurrogate(c)) {
+                if (++i == length || !Character.isLowSurrogate(value.charAt(i))) {
+                    return false;
+                }
+            } else if (Character.isLowSurrogate(c) || c == '\uFFFE' || c == '\uFFFF') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean exceedsDigits(int precision, int scale) {
+        int digits = scale < 0 ? precision - scale : Math.max(precision, scale);
+        return (fractionDigits >= 0 && scale > fractionDigits) || (totalDigits >= 0 && digits > totalDigits);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.pacs008.service.xml;
+
+import br.gov.bcb.pi.pacs008.v1.SPIEnvelopeMessage;
+import com.example.pacs008.util.ObjectPool;
+import com.example.pacs008.util.ObjectPoolMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.Unmarshaller;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Mantém o {@link JAXBContext} do modelo {@code SPIEnvelopeMessage}, criado uma única vez
+ * na inicialização, e pools limitados de {@link Marshaller}/{@link Unmarshaller}
+ * pré-configurados. Marshallers e Unmarshallers não são thread-safe, por isso cada
+ * requisição toma um emprestado e o devolve ao final.
+ *
+ * <p>Na inicialização todos os marshallers são aquecidos com um envelope vazio, para que
+ * a primeira mensagem real após um deploy não pague o custo de carga de classes e JIT.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class JaxbMarshallerPool {
+
+    private final MeterRegistry meterRegistry;
+
+    // Tamanho dos pools (0 = 2x o número de processadores)
+    @Value("${pix.jaxb.pool-size:0}")
+    private int poolSize;
+    @Value("${pix.jaxb.pool-timeout-ms:5000}")
+    private long poolTimeoutMs;
+    @Value("${pix.pacs008.formatted-output:false}")
+    private boolean formattedOutput;
+
+    private JAXBContext context;
+    private ObjectPool<Marshaller> marshallers;
+    private ObjectPool<Unmarshaller> unmarshallers;
+
+    @PostConstruct
+    public void init() throws Exception {
+        long start = System.nanoTime();
+        context = JAXBContext.newInstance(SPIEnvelopeMessage.class);
+
+        int size = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors() * 2;
+        marshallers = new ObjectPool<>("jaxb-marshaller", size, poolTimeoutMs, this::newMarshaller);
+        unmarshallers = new ObjectPool<>("jaxb-unmarshaller", size, poolTimeoutMs, context::createUnmarshaller);
+        ObjectPoolMetrics.bind(marshallers, meterRegistry);
+        ObjectPoolMetrics.bind(unmarshallers, meterRegistry);
+
+        warmUp(size);
+        log.info("JAXBContext criado e {} marshallers aquecidos em {} ms", size, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Empresta um Marshaller configurado com UTF-8 (e indentação, se habilitada).
+     * Deve ser usado em try-with-resources.
+     */
+    public ObjectPool.Lease<Marshaller> borrowMarshaller() {
+        return marshallers.borrow();
+    }
+
+    /**
+     * Empresta um Unmarshaller do modelo pacs.008. Deve ser usado em try-with-resources.
+     */
+    public ObjectPool.Lease<Unmarshaller> borrowUnmarshaller() {
+        return unmarshallers.borrow();
+    }
+
+    public JAXBContext getContext() {
+        return context;
+    }
+
+    private Marshaller newMarshaller() throws Exception {
+        Marshaller marshaller = context.createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, formattedOutput);
+        return marshaller;
+    }
+
+    /**
+     * Executa um ciclo de marshalling/unmarshalling com cada objeto do pool.
+     */
+    private void warmUp(int size) throws Exception {
+        SPIEnvelopeMessage envelope = new SPIEnvelopeMessage();
+        byte[] xml = null;
+        for (int i = 0; i < size; i++) {
+            try (ObjectPool.Lease<Marshaller> lease = marshallers.borrow()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+                lease.get().marshal(envelope, out);
+                xml = out.toByteArray();
+            }
+        }
+        try (ObjectPool.Lease<Unmarshaller> lease = unmarshallers.borrow()) {
+            lease.get().unmarshal(new ByteArrayInputStream(xml));
+        }
+    }
+}
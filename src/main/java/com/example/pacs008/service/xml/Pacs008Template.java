@@ -0,0 +1,270 @@
+package com.example.pacs008.service.xml;
+
+import com.example.pacs008.dto.PaymentRequestDto;
+
+import javax.xml.crypto.Data;
+import javax.xml.crypto.OctetStreamData;
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.TransformService;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Modelo pré-compilado da pacs.008 para o modo de escrita rápida ({@code pix.pacs008.writer=template}).
+ *
+ * <p>O modelo é extraído da própria saída do JAXB: um envelope de exemplo, com valores
+ * sentinela nos campos variáveis, é serializado uma vez e recortado nas posições desses
+ * valores. Os trechos constantes (declarações de namespace, cabeçalho do grupo, códigos
+ * fixos, ISPB do BCB) ficam pré-codificados em UTF-8; por mensagem, apenas os campos
+ * variáveis são escritos, com escape de XML, em um {@link Buffer} reaproveitado.
+ *
+ * <p>Como a descrição é opcional (sem ela, o elemento {@code Ustrd} não é gerado), o modelo
+ * guarda duas formas: com e sem descrição.
+ */
+public final class Pacs008Template {
+
+    /**
+     * Campos variáveis da mensagem.
+     */
+    public enum Field {
+        BIZ_MSG_IDR, END_TO_END_ID, TIMESTAMP,
+        PAYER_NAME, PAYER_CPF_CNPJ, PAYER_ISPB, PAYER_AGENCY, PAYER_ACCOUNT, PAYER_ACCOUNT_TYPE,
+        RECEIVER_CPF_CNPJ, RECEIVER_ISPB, RECEIVER_AGENCY, RECEIVER_ACCOUNT, RECEIVER_ACCOUNT_TYPE, RECEIVER_PIX_KEY,
+        AMOUNT, DESCRIPTION
+    }
+
+    private final Shape withDescription;
+    private final Shape withoutDescription;
+
+    private Pacs008Template(Shape withDescription, Shape withoutDescription) {
+        this.withDescription = withDescription;
+        this.withoutDescription = withoutDescription;
+    }
+
+    /**
+     * Compila o modelo a partir de duas mensagens de exemplo geradas pelo JAXB.
+     *
+     * @param withDescription    Exemplo com todos os campos preenchidos com os sentinelas.
+     * @param withoutDescription O mesmo exemplo, sem descrição.
+     * @param sentinels          O texto sentinela de cada campo variável.
+     * @throws IllegalStateException se algum campo não for encontrado no exemplo.
+     */
+    public static Pacs008Template compile(byte[] withDescription, byte[] withoutDescription, Map<Field, String> sentinels) {
+        return new Pacs008Template(Shape.compile(withDescription, sentinels, true),
+                Shape.compile(withoutDescription, sentinels, false));
+    }
+
+    /**
+     * Escreve a mensagem (sem assinatura) no buffer, substituindo seu conteúdo anterior.
+     *
+     * @param out        O buffer de destino.
+     * @param request    Os dados do pagamento, já validados.
+     * @param bizMsgIdr  O BizMsgIdr (também usado como MsgId).
+     * @param endToEndId O EndToEndId.
+     * @param timestamp  O instante da mensagem, já formatado ({@code XMLGregorianCalendar#toXMLFormat()}).
+     * @throws IllegalArgumentException se algum campo contiver caracteres não permitidos em XML.
+     */
+    public void write(Buffer out, PaymentRequestDto request, String bizMsgIdr, String endToEndId, String timestamp) {
+        Shape shape = request.getDescription() != null ? withDescription : withoutDescription;
+        out.reset();
+        for (int i = 0; i < shape.fields.length; i++) {
+            out.write(shape.segments[i]);
+            switch (shape.fields[i]) {
+                case BIZ_MSG_IDR -> out.writeText(bizMsgIdr);
+                case END_TO_END_ID -> out.writeText(endToEndId);
+                case TIMESTAMP -> out.writeText(timestamp);
+                case PAYER_NAME -> out.writeText(request.getPayerName());
+                case PAYER_CPF_CNPJ -> out.writeText(request.getPayerCpfCnpj());
+                case PAYER_ISPB -> out.writeText(request.getPayerIspb());
+                case PAYER_AGENCY -> out.writeInteger(request.getPayerAgency());
+                case PAYER_ACCOUNT -> out.writeInteger(request.getPayerAccount());
+                case PAYER_ACCOUNT_TYPE -> out.writeText(request.getPayerAccountType());
+                case RECEIVER_CPF_CNPJ -> out.writeText(request.getReceiverCpfCnpj());
+                case RECEIVER_ISPB -> out.writeText(request.getReceiverIspb());
+                case RECEIVER_AGENCY -> out.writeInteger(request.getReceiverAgency());
+                case RECEIVER_ACCOUNT -> out.writeInteger(request.getReceiverAccount());
+                case RECEIVER_ACCOUNT_TYPE -> out.writeText(request.getReceiverAccountType());
+                case RECEIVER_PIX_KEY -> out.writeText(request.getReceiverPixKey());
+                case AMOUNT -> out.writeText(request.getAmount().toPlainString());
+                case DESCRIPTION -> out.writeText(request.getDescription());
+            }
+        }
+        out.write(shape.segments[shape.fields.length]);
+    }
+
+    /**
+     * Forma canônica (Canonical XML 1.0, a mesma da assinatura) de um documento, usada para
+     * comparar a saída do modelo com a do JAXB independentemente de declaração XML, ordem de
+     * atributos e escapes equivalentes.
+     */
+    public static byte[] canonicalize(byte[] xml, int length) throws Exception {
+        TransformService c14n = TransformService.getInstance(CanonicalizationMethod.INCLUSIVE, "DOM");
+        c14n.init(null);
+        Data result = c14n.transform(new OctetStreamData(new ByteArrayInputStream(xml, 0, length)), null);
+        return ((OctetStreamData) result).getOctetStream().readAllBytes();
+    }
+
+    /**
+     * Uma forma da mensagem: trechos constantes intercalados com campos variáveis
+     * ({@code segments.length == fields.length + 1}).
+     */
+    private record Shape(byte[][] segments, Field[] fields) {
+
+        static Shape compile(byte[] sample, Map<Field, String> sentinels, boolean withDescription) {
+            List<int[]> slots = new ArrayList<>(); // {início, fim, ordinal do campo}
+            for (Map.Entry<Field, String> sentinel : sentinels.entrySet()) {
+                if (sentinel.getKey() == Field.DESCRIPTION && !withDescription) {
+                    continue;
+                }
+                // O valor é procurado como conteúdo de texto completo de um elemento: >valor<
+                byte[] needle = ('>' + sentinel.getValue() + '<').getBytes(StandardCharsets.UTF_8);
+                int found = 0;
+                for (int pos = indexOf(sample, needle, 0); pos >= 0; pos = indexOf(sample, needle, pos + needle.length)) {
+                    slots.add(new int[]{pos + 1, pos + needle.length - 1, sentinel.getKey().ordinal()});
+                    found++;
+                }
+                if (found == 0) {
+                    throw new IllegalStateException("Campo " + sentinel.getKey() + " não encontrado na mensagem de exemplo.");
+                }
+            }
+            slots.sort(Comparator.comparingInt(slot -> slot[0]));
+
+            byte[][] segments = new byte[slots.size() + 1][];
+            Field[] fields = new Field[slots.size()];
+            int last = 0;
+            for (int i = 0; i < slots.size(); i++) {
+                int[] slot = slots.get(i);
+                if (slot[0] < last) {
+                    throw new IllegalStateException("Sentinelas sobrepostos na mensagem de exemplo.");
+                }
+                segments[i] = Arrays.copyOfRange(sample, last, slot[0]);
+                fields[i] = Field.values()[slot[2]];
+                last = slot[1];
+            }
+            segments[slots.size()] = Arrays.copyOfRange(sample, last, sample.length);
+            return new Shape(segments, fields);
+        }
+
+        private static int indexOf(byte[] data, byte[] needle, int from) {
+            outer:
+            for (int i = from; i <= data.length - needle.length; i++) {
+                for (int j = 0; j < needle.length; j++) {
+                    if (data[i + j] != needle[j]) {
+                        continue outer;
+                    }
+                }
+                return i;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Buffer de bytes UTF-8 reaproveitável entre mensagens. Não é thread-safe: cada
+     * instância é usada por uma única thread por vez (através de um {@code ObjectPool}).
+     */
+    public static final class Buffer {
+
+        private byte[] bytes;
+        private int size;
+
+        public Buffer(int initialCapacity) {
+            bytes = new byte[initialCapacity];
+        }
+
+        /** O array interno; apenas os primeiros {@link #size()} bytes são válidos. */
+        public byte[] array() {
+            return bytes;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        void write(byte[] segment) {
+            ensureCapacity(segment.length);
+            System.arraycopy(segment, 0, bytes, size, segment.length);
+            size += segment.length;
+        }
+
+        /**
+         * Escreve um número inteiro (só dígitos, já validado) na forma do {@code BigInteger}
+         * usado pelo JAXB, isto é, sem zeros à esquerda.
+         */
+        void writeInteger(String digits) {
+            int start = 0;
+            while (start < digits.length() - 1 && digits.charAt(start) == '0') {
+                start++;
+            }
+            ensureCapacity(digits.length() - start);
+            for (int i = start; i < digits.length(); i++) {
+                bytes[size++] = (byte) digits.charAt(i);
+            }
+        }
+
+        /**
+         * Escreve um conteúdo de texto em UTF-8, com escape de {@code & < >} e de CR (que o
+         * parser normalizaria para LF, alterando o valor assinado).
+         */
+        void writeText(String text) {
+            // Pior caso: 6 bytes por caractere (&#xD;), mas 3 bytes bastam para o texto comum
+            ensureCapacity(text.length() * 3);
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (size + 6 > bytes.length) {
+                    ensureCapacity(6);
+                }
+                if (c < 0x80) {
+                    switch (c) {
+                        case '&' -> writeAscii("&amp;");
+                        case '<' -> writeAscii("&lt;");
+                        case '>' -> writeAscii("&gt;");
+                        case '\r' -> writeAscii("&#xD;");
+                        default -> {
+                            if (c < 0x20 && c != '\t' && c != '\n') {
+                                throw new IllegalArgumentException("Caractere de controle não permitido em XML (posição " + i + ").");
+                            }
+                            bytes[size++] = (byte) c;
+                        }
+                    }
+                } else if (c < 0x800) {
+                    bytes[size++] = (byte) (0xC0 | (c >> 6));
+                    bytes[size++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, text.charAt(++i));
+                    bytes[size++] = (byte) (0xF0 | (cp >> 18));
+                    bytes[size++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    bytes[size++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    bytes[size++] = (byte) (0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(c) || c == 0xFFFE || c == 0xFFFF) {
+                    throw new IllegalArgumentException("Caractere não permitido em XML (posição " + i + ").");
+                } else {
+                    bytes[size++] = (byte) (0xE0 | (c >> 12));
+                    bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    bytes[size++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private void writeAscii(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                bytes[size++] = (byte) text.charAt(i);
+            }
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+}
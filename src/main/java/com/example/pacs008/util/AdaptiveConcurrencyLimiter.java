@@ -0,0 +1,237 @@
+package com.example.pacs008.util;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limite de concorrência adaptativo por gradiente de latência, para recursos cuja capacidade
+ * varia (ex: o queue manager do MQ).
+ *
+ * <p>Cada operação concluída informa sua latência. O limitador mantém uma média curta e uma
+ * média longa (a latência "normal") e ajusta o limite pelo gradiente entre elas:
+ * {@code limite = limite * clamp(tolerância * longa / curta, 0.5, 1) + sqrt(limite)}, suavizado.
+ * Enquanto a latência se mantém, o limite cresce aos poucos; quando ela sobe (fila se
+ * formando no recurso), o limite cai antes que as requisições se acumulem. Falhas reduzem
+ * o limite em 10%. O limite fica entre {@code minLimit} e {@code maxLimit}; com os dois
+ * iguais, o limitador é fixo.
+ *
+ * <p>Usa {@link ReentrantLock}, que estaciona threads virtuais sem prender a thread portadora.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    // Latência tolerada acima da média longa antes de reduzir o limite
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double SHORT_RTT_ALPHA = 0.1;
+    private static final double LONG_RTT_ALPHA = 1.0 / 600;
+    private static final int WARMUP_SAMPLES = 10;
+    private static final double DROP_FACTOR = 0.9;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long acquireTimeoutMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final LongAdder rejected = new LongAdder();
+
+    // Protegidos por lock
+    private double estimatedLimit;
+    private int inUse;
+    private int waiting;
+    private double shortRttNanos;
+    private double longRttNanos;
+    private long samples;
+
+    /**
+     * @param name                 Nome do recurso protegido (usado em mensagens e métricas).
+     * @param initialLimit         Limite inicial.
+     * @param minLimit             Limite mínimo.
+     * @param maxLimit             Limite máximo.
+     * @param acquireTimeoutMillis Tempo máximo de espera por uma permissão.
+     */
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, long acquireTimeoutMillis) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limites de concorrência inválidos para '" + name + "': " + minLimit + ".." + maxLimit);
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Obtém uma permissão, aguardando até o tempo limite. Deve ser devolvida com
+     * {@link #onSuccess(long)}, {@link #onDropped()} ou {@link #release()}.
+     *
+     * @throws OverloadedException se o limite continuar esgotado após o tempo limite.
+     */
+    public void acquire() {
+        lock.lock();
+        try {
+            if (inUse < getLimitLocked()) {
+                inUse++;
+                return;
+            }
+            long remaining = TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+            waiting++;
+            try {
+                while (inUse >= getLimitLocked()) {
+                    if (remaining <= 0) {
+                        rejected.increment();
+                        throw new OverloadedException("Limite de concorrência de '" + name + "' esgotado (" + getLimitLocked() + ").", 1);
+                    }
+                    remaining = available.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OverloadedException("Interrompido aguardando permissão de '" + name + "'.", 1, e);
+            } finally {
+                waiting--;
+            }
+            inUse++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Devolve a permissão de uma operação concluída e ajusta o limite pela sua latência.
+     *
+     * @param rttNanos A duração da operação.
+     */
+    public void onSuccess(long rttNanos) {
+        lock.lock();
+        try {
+            int inFlight = inUse;
+            inUse--;
+            update(rttNanos, inFlight);
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Devolve a permissão de uma operação que falhou (ex: timeout ou erro do recurso) e reduz o limite.
+     */
+    public void onDropped() {
+        lock.lock();
+        try {
+            inUse--;
+            estimatedLimit = Math.max(minLimit, estimatedLimit * DROP_FACTOR);
+            // Mesmo com o limite reduzido pode haver vaga: quem aguarda verifica novamente
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Devolve a permissão de uma operação que não chegou ao recurso, sem ajustar o limite.
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inUse--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void update(long rttNanos, int inFlight) {
+        samples++;
+        if (samples <= WARMUP_SAMPLES) {
+            // Médias simples até ter amostras suficientes
+            shortRttNanos = longRttNanos = longRttNanos + (rttNanos - longRttNanos) / samples;
+            return;
+        }
+        shortRttNanos += (rttNanos - shortRttNanos) * SHORT_RTT_ALPHA;
+        longRttNanos += (shortRttNanos - longRttNanos) * LONG_RTT_ALPHA;
+        if (longRttNanos > shortRttNanos * 2) {
+            // A latência normal caiu (ex: após um período degradado): acompanha mais rápido
+            longRttNanos = longRttNanos * 0.95 + shortRttNanos * 0.05;
+        }
+        if (inFlight < estimatedLimit / 2) {
+            // O recurso não está sendo usado perto do limite: não há evidência para aumentá-lo
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / shortRttNanos));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        double previous = estimatedLimit;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+        if ((int) estimatedLimit > (int) previous) {
+            available.signalAll();
+        }
+    }
+
+    private int getLimitLocked() {
+        return (int) estimatedLimit;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return getLimitLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInUse() {
+        lock.lock();
+        try {
+            return inUse;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Média longa da latência (a latência "normal" do recurso), em milissegundos. */
+    public double getBaselineLatencyMillis() {
+        lock.lock();
+        try {
+            return longRttNanos / 1e6;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Registra as métricas {@code pix.limiter.*} (as mesmas do {@link ConcurrencyLimiter}) e
+     * a latência de referência {@code pix.limiter.baseline-latency}.
+     */
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("pix.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit).tag("resource", name).register(registry);
+        Gauge.builder("pix.limiter.in-use", this, AdaptiveConcurrencyLimiter::getInUse).tag("resource", name).register(registry);
+        Gauge.builder("pix.limiter.waiting", this, AdaptiveConcurrencyLimiter::getWaiting).tag("resource", name).register(registry);
+        Gauge.builder("pix.limiter.baseline-latency", this, AdaptiveConcurrencyLimiter::getBaselineLatencyMillis)
+                .baseUnit("milliseconds").tag("resource", name).register(registry);
+        FunctionCounter.builder("pix.limiter.rejected", this, AdaptiveConcurrencyLimiter::getRejectedCount).tag("resource", name).register(registry);
+    }
+}
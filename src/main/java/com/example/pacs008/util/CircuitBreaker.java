@@ -0,0 +1,238 @@
+package com.example.pacs008.util;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Disjuntor (circuit breaker) para um recurso remoto: quando a taxa de falhas ou de chamadas
+ * lentas nas últimas {@code windowSize} chamadas passa do limite, o circuito abre e as
+ * chamadas são recusadas imediatamente com {@link OverloadedException}, em vez de se
+ * acumularem aguardando um recurso que não responde.
+ *
+ * <ul>
+ *     <li>{@link State#CLOSED}: chamadas permitidas; resultados registrados na janela.</li>
+ *     <li>{@link State#OPEN}: chamadas recusadas durante {@code openDurationMillis}.</li>
+ *     <li>{@link State#HALF_OPEN}: até {@code halfOpenCalls} chamadas de teste; o circuito
+ *     fecha se elas ficarem abaixo dos limites e volta a abrir caso contrário.</li>
+ * </ul>
+ *
+ * <p>Os resultados podem ser informados por qualquer thread (ex: na conclusão de um future).
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final byte SUCCESS = 0;
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private final String name;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongAdder rejected = new LongAdder();
+
+    // Protegidos por lock. Janela circular com os resultados das últimas chamadas.
+    private final byte[] window;
+    private int windowCount;
+    private int windowNext;
+    private int failures;
+    private int slowCalls;
+    private volatile State state = State.CLOSED;
+    private long openUntilNanos;
+    private int halfOpenPermitted;
+
+    /**
+     * @param name                  Nome do recurso protegido (usado em mensagens e métricas).
+     * @param windowSize            Quantidade de chamadas consideradas no cálculo das taxas.
+     * @param minimumCalls          Chamadas necessárias na janela antes de avaliar as taxas.
+     * @param failureRatePercent    Taxa de falhas, em %, que abre o circuito.
+     * @param slowCallRatePercent   Taxa de chamadas lentas, em %, que abre o circuito.
+     * @param slowCallMillis        Duração a partir da qual uma chamada é considerada lenta.
+     * @param openDurationMillis    Tempo em que o circuito permanece aberto.
+     * @param halfOpenCalls         Chamadas de teste permitidas com o circuito semiaberto.
+     */
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRatePercent, int slowCallRatePercent,
+                          long slowCallMillis, long openDurationMillis, int halfOpenCalls) {
+        if (windowSize < 1 || minimumCalls < 1 || halfOpenCalls < 1) {
+            throw new IllegalArgumentException("Parâmetros inválidos para o circuit breaker de '" + name + "'.");
+        }
+        this.name = name;
+        this.window = new byte[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRatePercent / 100.0;
+        this.slowCallRateThreshold = slowCallRatePercent / 100.0;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    /**
+     * Verifica se uma chamada pode ser feita. Cada permissão concedida deve ter seu resultado
+     * informado com {@link #onSuccess(long)}, {@link #onError()} ou {@link #onIgnored()}.
+     *
+     * @throws OverloadedException com o circuito aberto (ou semiaberto, sem chamadas de teste
+     *                             disponíveis), sugerindo o tempo restante até a próxima tentativa.
+     */
+    public void acquirePermission() {
+        if (state == State.CLOSED) {
+            return;
+        }
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            if (state == State.OPEN && now - openUntilNanos >= 0) {
+                transitionTo(State.HALF_OPEN);
+            }
+            switch (state) {
+                case CLOSED -> {
+                    return;
+                }
+                case HALF_OPEN -> {
+                    if (halfOpenPermitted < halfOpenCalls) {
+                        halfOpenPermitted++;
+                        return;
+                    }
+                }
+                case OPEN -> {
+                }
+            }
+            rejected.increment();
+            long retryAfter = state == State.OPEN
+                    ? TimeUnit.NANOSECONDS.toSeconds(openUntilNanos - now + TimeUnit.SECONDS.toNanos(1) - 1)
+                    : 1;
+            throw new OverloadedException("Circuito de '" + name + "' aberto: recurso indisponível.", retryAfter);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registra uma chamada concluída com sucesso (lenta se a duração passar do limite).
+     */
+    public void onSuccess(long durationNanos) {
+        record(durationNanos >= slowCallNanos ? SLOW : SUCCESS);
+    }
+
+    /**
+     * Registra uma chamada que falhou.
+     */
+    public void onError() {
+        record(FAILURE);
+    }
+
+    /**
+     * Devolve uma permissão cuja chamada não chegou ao recurso (ex: recusada localmente).
+     */
+    public void onIgnored() {
+        if (state != State.HALF_OPEN) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN && halfOpenPermitted > 0) {
+                halfOpenPermitted--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void record(byte outcome) {
+        lock.lock();
+        try {
+            if (state == State.OPEN) {
+                // Chamadas iniciadas antes da abertura: não alteram o estado
+                return;
+            }
+            add(outcome);
+            if (state == State.HALF_OPEN) {
+                if (windowCount >= halfOpenCalls) {
+                    transitionTo(exceedsThresholds() ? State.OPEN : State.CLOSED);
+                }
+            } else if (windowCount >= minimumCalls && exceedsThresholds()) {
+                transitionTo(State.OPEN);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void add(byte outcome) {
+        if (windowCount == window.length) {
+            byte evicted = window[windowNext];
+            if (evicted == FAILURE) {
+                failures--;
+            } else if (evicted == SLOW) {
+                slowCalls--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowNext] = outcome;
+        windowNext = (windowNext + 1) % window.length;
+        if (outcome == FAILURE) {
+            failures++;
+        } else if (outcome == SLOW) {
+            slowCalls++;
+        }
+    }
+
+    private boolean exceedsThresholds() {
+        return failures >= failureRateThreshold * windowCount || slowCalls >= slowCallRateThreshold * windowCount;
+    }
+
+    private void transitionTo(State next) {
+        State previous = state;
+        windowCount = 0;
+        windowNext = 0;
+        failures = 0;
+        slowCalls = 0;
+        halfOpenPermitted = 0;
+        if (next == State.OPEN) {
+            openUntilNanos = System.nanoTime() + openDurationNanos;
+        }
+        state = next;
+        if (next == State.OPEN) {
+            log.warn("Circuito de '{}' aberto ({} -> {}); chamadas recusadas por {} ms",
+                    name, previous, next, TimeUnit.NANOSECONDS.toMillis(openDurationNanos));
+        } else {
+            log.info("Circuito de '{}': {} -> {}", name, previous, next);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Registra as métricas {@code pix.circuit.state} (0 = fechado, 1 = aberto, 2 = semiaberto)
+     * e {@code pix.circuit.rejected}.
+     */
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("pix.circuit.state", this, c -> c.getState().ordinal())
+                .description("0 = fechado, 1 = aberto, 2 = semiaberto").tag("resource", name).register(registry);
+        FunctionCounter.builder("pix.circuit.rejected", this, CircuitBreaker::getRejectedCount).tag("resource", name).register(registry);
+    }
+}
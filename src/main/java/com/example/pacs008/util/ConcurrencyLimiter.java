@@ -0,0 +1,114 @@
+package com.example.pacs008.util;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limita a quantidade de operações simultâneas sobre um recurso compartilhado
+ * (keystore/HSM, canal MQ). Baseado em {@link Semaphore}, que estaciona threads virtuais
+ * sem prender a thread portadora (ao contrário de blocos {@code synchronized}).
+ *
+ * <p>Com threads virtuais o número de requisições simultâneas deixa de ser limitado pelo
+ * pool do servidor; este limitador passa a ser a proteção explícita do recurso.
+ */
+public class ConcurrencyLimiter {
+
+    private final String name;
+    private final int limit;
+    private final long acquireTimeoutMillis;
+    private final Semaphore permits;
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param name                 Nome do recurso protegido (usado em mensagens e métricas).
+     * @param limit                Quantidade máxima de operações simultâneas.
+     * @param acquireTimeoutMillis Tempo máximo de espera por uma permissão.
+     */
+    public ConcurrencyLimiter(String name, int limit, long acquireTimeoutMillis) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("O limite de concorrência de '" + name + "' deve ser maior que zero.");
+        }
+        this.name = name;
+        this.limit = limit;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.permits = new Semaphore(limit, true);
+    }
+
+    /**
+     * Obtém uma permissão, aguardando até o tempo limite. Deve ser liberada com {@link #release()}.
+     *
+     * @throws OverloadedException se o limite continuar esgotado após o tempo limite.
+     */
+    public void acquire() {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OverloadedException("Interrompido aguardando permissão de '" + name + "'.", 1, e);
+        }
+        if (!acquired) {
+            rejected.increment();
+            throw new OverloadedException("Limite de concorrência de '" + name + "' esgotado (" + limit + ").", 1);
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * Executa a operação dentro do limite de concorrência.
+     */
+    public <T> T call(Operation<T> operation) throws Exception {
+        acquire();
+        try {
+            return operation.execute();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Operação executada dentro do limite de concorrência.
+     */
+    @FunctionalInterface
+    public interface Operation<T> {
+        T execute() throws Exception;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInUse() {
+        return limit - permits.availablePermits();
+    }
+
+    public int getWaiting() {
+        return permits.getQueueLength();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Registra as métricas {@code pix.limiter.*} (limite, em uso, aguardando, rejeitadas).
+     */
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("pix.limiter.limit", this, ConcurrencyLimiter::getLimit).tag("resource", name).register(registry);
+        Gauge.builder("pix.limiter.in-use", this, ConcurrencyLimiter::getInUse).tag("resource", name).register(registry);
+        Gauge.builder("pix.limiter.waiting", this, ConcurrencyLimiter::getWaiting).tag("resource", name).register(registry);
+        FunctionCounter.builder("pix.limiter.rejected", this, ConcurrencyLimiter::getRejectedCount).tag("resource", name).register(registry);
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.pacs008.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool limitado e thread-safe de objetos caros de criar e que não podem ser
+ * compartilhados entre threads (parsers, transformers, fábricas XMLDSig, marshallers).
+ * Todas as instâncias são criadas na construção do pool (aquecimento antecipado);
+ * quando o pool está vazio, quem pede o objeto aguarda até o tempo limite configurado.
+ *
+ * <p>Uso típico:
+ * <pre>{@code
+ * try (ObjectPool.Lease<Transformer> lease = pool.borrow()) {
+ *     lease.get().transform(source, result);
+ * }
+ * }</pre>
+ *
+ * @param <T> O tipo do objeto mantido no pool.
+ */
+public class ObjectPool<T> {
+
+    /**
+     * Fábrica dos objetos do pool. Pode lançar exceções checadas (ex: ParserConfigurationException).
+     */
+    @FunctionalInterface
+    public interface Factory<T> {
+        T create() throws Exception;
+    }
+
+    private final String name;
+    private final int capacity;
+    private final long borrowTimeoutMillis;
+    private final BlockingQueue<T> idle;
+
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder waitCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+
+    /**
+     * Cria o pool e instancia imediatamente todos os seus objetos.
+     *
+     * @param name                Nome do pool (usado em mensagens de erro e métricas).
+     * @param capacity            Quantidade de objetos mantidos no pool.
+     * @param borrowTimeoutMillis Tempo máximo de espera por um objeto livre.
+     * @param factory             Fábrica dos objetos.
+     */
+    public ObjectPool(String name, int capacity, long borrowTimeoutMillis, Factory<T> factory) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("A capacidade do pool '" + name + "' deve ser maior que zero.");
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idle = new ArrayBlockingQueue<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            try {
+                idle.add(factory.create());
+            } catch (Exception e) {
+                throw new IllegalStateException("Não foi possível criar os objetos do pool '" + name + "'.", e);
+            }
+        }
+    }
+
+    /**
+     * Obtém um objeto do pool, aguardando se necessário.
+     *
+     * @return Um empréstimo que devolve o objeto ao pool quando fechado.
+     * @throws IllegalStateException se nenhum objeto ficar livre dentro do tempo limite.
+     */
+    public Lease<T> borrow() {
+        borrowCount.increment();
+        T instance = idle.poll();
+        if (instance == null) {
+            long start = System.nanoTime();
+            try {
+                instance = idle.poll(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrompido aguardando objeto do pool '" + name + "'.", e);
+            } finally {
+                waitCount.increment();
+                totalWaitNanos.add(System.nanoTime() - start);
+            }
+            if (instance == null) {
+                throw new IllegalStateException("Tempo esgotado aguardando objeto do pool '" + name + "'.");
+            }
+        }
+        return new Lease<>(this, instance);
+    }
+
+    private void release(T instance) {
+        idle.offer(instance);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** Quantidade de objetos livres neste instante. */
+    public int getAvailable() {
+        return idle.size();
+    }
+
+    /** Total de empréstimos realizados. */
+    public long getBorrowCount() {
+        return borrowCount.sum();
+    }
+
+    /** Total de empréstimos que precisaram aguardar um objeto livre. */
+    public long getWaitCount() {
+        return waitCount.sum();
+    }
+
+    /** Tempo total (em nanossegundos) gasto aguardando objetos livres. */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.sum();
+    }
+
+    /**
+     * Empréstimo de um objeto do pool. Deve ser usado em try-with-resources.
+     */
+    public static final class Lease<T> implements AutoCloseable {
+
+        private final ObjectPool<T> pool;
+        private T instance;
+
+        private Lease(ObjectPool<T> pool, T instance) {
+            this.pool = pool;
+            this.instance = instance;
+        }
+
+        public T get() {
+            if (instance == null) {
+                throw new IllegalStateException("O objeto já foi devolvido ao pool '" + pool.name + "'.");
+            }
+            return instance;
+        }
+
+        /**
+         * Transfere o objeto para um novo empréstimo (ex: para outra thread, que o devolve ao
+         * terminar de usá-lo); este empréstimo fica vazio e o seu {@code close()} não devolve nada.
+         */
+        public Lease<T> transfer() {
+            Lease<T> transferred = new Lease<>(pool, get());
+            instance = null;
+            return transferred;
+        }
+
+        @Override
+        public void close() {
+            if (instance != null) {
+                pool.release(instance);
+                instance = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.pacs008.util;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registra as métricas de um {@link ObjectPool} no Micrometer:
+ * <ul>
+ *     <li>{@code pix.pool.size} - capacidade do pool;</li>
+ *     <li>{@code pix.pool.available} - objetos livres;</li>
+ *     <li>{@code pix.pool.borrows} - total de empréstimos;</li>
+ *     <li>{@code pix.pool.wait} - quantidade e tempo total de esperas por um objeto livre.</li>
+ * </ul>
+ * Todas as métricas recebem a tag {@code pool} com o nome do pool.
+ */
+public final class ObjectPoolMetrics {
+
+    private ObjectPoolMetrics() {
+    }
+
+    public static void bind(ObjectPool<?> pool, MeterRegistry registry) {
+        Gauge.builder("pix.pool.size", pool, ObjectPool::getCapacity)
+                .tag("pool", pool.getName())
+                .description("Capacidade do pool")
+                .register(registry);
+        Gauge.builder("pix.pool.available", pool, ObjectPool::getAvailable)
+                .tag("pool", pool.getName())
+                .description("Objetos livres no pool")
+                .register(registry);
+        FunctionCounter.builder("pix.pool.borrows", pool, ObjectPool::getBorrowCount)
+                .tag("pool", pool.getName())
+                .description("Total de empréstimos do pool")
+                .register(registry);
+        FunctionTimer.builder("pix.pool.wait", pool, ObjectPool::getWaitCount,
+                        ObjectPool::getTotalWaitNanos, TimeUnit.NANOSECONDS)
+                .tag("pool", pool.getName())
+                .description("Esperas por um objeto livre no pool")
+                .register(registry);
+    }
+}
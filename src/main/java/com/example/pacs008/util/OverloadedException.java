@@ -0,0 +1,35 @@
+package com.example.pacs008.util;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Operação recusada por sobrecarga (limite de concorrência esgotado, buffer cheio ou
+ * circuito aberto), com a sugestão de quando tentar novamente. Respondida com
+ * {@code 503 Service Unavailable} e o cabeçalho {@code Retry-After}.
+ */
+public class OverloadedException extends RejectedExecutionException {
+
+    private final long retryAfterSeconds;
+
+    public OverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+    }
+
+    public OverloadedException(String message, long retryAfterSeconds, Throwable cause) {
+        super(message, cause);
+        this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+    }
+
+    /** Segundos sugeridos até uma nova tentativa (ao menos 1). */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Segundos até uma nova tentativa para qualquer recusa: o valor sugerido, se houver, ou 1.
+     */
+    public static long retryAfterSeconds(RejectedExecutionException e) {
+        return e instanceof OverloadedException overloaded ? overloaded.getRetryAfterSeconds() : 1;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.pacs008;
+
+import com.example.pacs008.dto.PaymentRequestDto;
+
+import java.math.BigDecimal;
+
+/**
+ * Solicitações de pagamento válidas usadas nos testes.
+ */
+public final class TestPayments {
+
+    private TestPayments() {
+    }
+
+    /**
+     * @return Uma solicitação válida segundo o XSD da pacs.008 (e nova a cada chamada).
+     */
+    public static PaymentRequestDto valid() {
+        PaymentRequestDto request = new PaymentRequestDto();
+        request.setPayerName("Fulano de Tal");
+        request.setPayerCpfCnpj("12345678901");
+        request.setPayerIspb("12345678");
+        request.setPayerAgency("0001");
+        request.setPayerAccount("123456");
+        request.setPayerAccountType("CACC");
+        request.setReceiverName("Beltrano");
+        request.setReceiverCpfCnpj("10987654321");
+        request.setReceiverIspb("87654321");
+        request.setReceiverAgency("0002");
+        request.setReceiverAccount("654321");
+        request.setReceiverAccountType("SVGS");
+        request.setReceiverPixKey("beltrano@example.com");
+        request.setAmount(new BigDecimal("10.50"));
+        request.setDescription("Pagamento de teste");
+        return request;
+    }
+}
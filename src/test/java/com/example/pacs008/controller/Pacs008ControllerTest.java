@@ -0,0 +1,91 @@
+package com.example.pacs008.controller;
+
+import com.example.pacs008.TestPayments;
+import com.example.pacs008.service.Pacs008Service;
+import com.example.pacs008.service.aggregation.AggregatedPayment;
+import com.example.pacs008.service.aggregation.Pacs008Aggregator;
+import com.example.pacs008.service.batch.BatchPaymentService;
+import com.example.pacs008.service.idempotency.IdempotencyStore;
+import com.example.pacs008.service.metrics.PaymentMetrics;
+import com.example.pacs008.util.OverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Respostas do endpoint de pagamento com a agregação habilitada.
+ */
+class Pacs008ControllerTest {
+
+    private static final String RECEIPT = "<payment status=\"PUBLISHED\"><BizMsgIdr>M1</BizMsgIdr>"
+            + "<EndToEndId>E1</EndToEndId></payment>";
+
+    private final Pacs008Aggregator aggregator = mock(Pacs008Aggregator.class);
+    private IdempotencyStore idempotencyStore;
+    private Pacs008Controller controller;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        idempotencyStore = new IdempotencyStore(registry);
+        ReflectionTestUtils.setField(idempotencyStore, "maxEntries", 100);
+        ReflectionTestUtils.setField(idempotencyStore, "ttlMs", 60_000L);
+        ReflectionTestUtils.setField(idempotencyStore, "logFile", "");
+        idempotencyStore.init();
+        controller = new Pacs008Controller(mock(Pacs008Service.class), mock(BatchPaymentService.class), idempotencyStore,
+                new PaymentMetrics(registry), Optional.of(aggregator));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        idempotencyStore.shutdown();
+    }
+
+    @Test
+    void aggregatedPaymentReturnsOnlyTheCallerIds() throws Exception {
+        when(aggregator.submitAndWait(any())).thenReturn(new AggregatedPayment("M1", "E1"));
+
+        ResponseEntity<String> response = controller.createPixPayment(TestPayments.valid(), null);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(202);
+        assertThat(response.getBody()).isEqualTo(RECEIPT);
+    }
+
+    @Test
+    void idempotentReplayReturnsTheSameIdsWithoutPublishingAgain() throws Exception {
+        when(aggregator.submitAndWait(any())).thenReturn(new AggregatedPayment("M1", "E1"));
+
+        ResponseEntity<String> first = controller.createPixPayment(TestPayments.valid(), "chave-1");
+        ResponseEntity<String> replay = controller.createPixPayment(TestPayments.valid(), "chave-1");
+
+        assertThat(first.getStatusCode().value()).isEqualTo(202);
+        assertThat(replay.getStatusCode().value()).isEqualTo(200);
+        assertThat(replay.getHeaders().getFirst("Idempotent-Replayed")).isEqualTo("true");
+        assertThat(replay.getBody()).isEqualTo(RECEIPT);
+        verify(aggregator, times(1)).submitAndWait(any());
+    }
+
+    @Test
+    void overloadedAggregatorAnswersServiceUnavailable() throws Exception {
+        when(aggregator.submitAndWait(any())).thenThrow(new OverloadedException("Fila cheia", 3));
+
+        ResponseEntity<String> response = controller.createPixPayment(TestPayments.valid(), null);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(503);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("3");
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.pacs008.service;
+
+import br.gov.bcb.pi.pacs008.v1.PrtrySvcLvlCode;
+import com.example.pacs008.TestPayments;
+import com.example.pacs008.dto.PaymentRequestDto;
+import com.example.pacs008.service.id.PixIdGenerator;
+import com.example.pacs008.service.inbound.PaymentCorrelationIndex;
+import com.example.pacs008.service.metrics.PaymentMetrics;
+import com.example.pacs008.service.validation.PaymentRequestValidator;
+import com.example.pacs008.service.validation.SchemaAuditor;
+import com.example.pacs008.service.xml.JaxbMarshallerPool;
+import com.example.pacs008.service.xml.Pacs008Template;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Compara, na forma canônica, a saída do modelo ({@code pix.pacs008.writer=template}) e a do
+ * JAXB com os arquivos de referência em {@code src/test/resources/pacs008/golden}.
+ *
+ * <p>Uma diferença apenas no JAXB indica mudança nas classes geradas do XSD (e o arquivo de
+ * referência deve ser revisto); uma diferença apenas no modelo indica erro de escrita ou de escape.
+ */
+class Pacs008TemplateGoldenTest {
+
+    private static final String BIZ_MSG_IDR = "M12345678AB0lXr2Tk9000001aBcDeFg";
+    private static final String END_TO_END_ID = "E12345678202405101345AB000001xYz";
+    private static final String TIMESTAMP = "2024-05-10T13:45:30.123Z";
+
+    private static Pacs008Service service;
+    private static Map<PrtrySvcLvlCode, Pacs008Template> templates;
+    private static Pacs008Template template;
+
+    @BeforeAll
+    static void compileTemplate() throws Exception {
+        JaxbMarshallerPool jaxbMarshallerPool = new JaxbMarshallerPool(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(jaxbMarshallerPool, "poolSize", 1);
+        ReflectionTestUtils.setField(jaxbMarshallerPool, "poolTimeoutMs", 5000L);
+        jaxbMarshallerPool.init();
+        service = new Pacs008Service(mock(SignatureService.class), jaxbMarshallerPool, mock(PixIdGenerator.class),
+                mock(PaymentCorrelationIndex.class), new PaymentMetrics(new SimpleMeterRegistry()),
+                mock(PaymentRequestValidator.class), mock(SchemaAuditor.class), new SimpleMeterRegistry());
+        templates = new EnumMap<>(PrtrySvcLvlCode.class);
+        for (PrtrySvcLvlCode serviceLevel : PrtrySvcLvlCode.values()) {
+            templates.put(serviceLevel, service.compileTemplate(serviceLevel));
+        }
+        template = templates.get(PrtrySvcLvlCode.PAGPRI);
+    }
+
+    static Stream<Arguments> cases() {
+        PaymentRequestDto escapes = TestPayments.valid();
+        escapes.setPayerName("José & Filhos <Comércio> \"Ltda\" 'ME' ção 😀");
+        // Sem CR: na saída em stream o JAXB não o escapa (o parser o normalizaria), ao contrário do DOM assinado
+        escapes.setDescription("Pagamento > R$ 10 & <teste>\nsegunda linha\tç");
+
+        PaymentRequestDto leadingZeros = TestPayments.valid();
+        leadingZeros.setPayerAgency("0000");
+        leadingZeros.setPayerAccount("0001234567");
+        leadingZeros.setReceiverAgency("0");
+        leadingZeros.setReceiverCpfCnpj("12345678000195");
+        leadingZeros.setReceiverAccountType("TRAN");
+        leadingZeros.setReceiverPixKey("+5561999999999");
+
+        PaymentRequestDto withoutDescription = TestPayments.valid();
+        withoutDescription.setDescription(null);
+
+        PaymentRequestDto minimumAmount = TestPayments.valid();
+        minimumAmount.setAmount(new BigDecimal("0.01"));
+
+        PaymentRequestDto integerAmount = TestPayments.valid();
+        integerAmount.setAmount(new BigDecimal("1000"));
+
+        PaymentRequestDto largeAmount = TestPayments.valid();
+        largeAmount.setAmount(new BigDecimal("1234567890123456.70"));
+
+        PaymentRequestDto scheduled = TestPayments.valid();
+        scheduled.setServiceLevel("PAGAGD");
+
+        return Stream.of(
+                Arguments.of("padrao", TestPayments.valid()),
+                Arguments.of("escapes", escapes),
+                Arguments.of("zeros-a-esquerda", leadingZeros),
+                Arguments.of("sem-descricao", withoutDescription),
+                Arguments.of("valor-minimo", minimumAmount),
+                Arguments.of("valor-inteiro", integerAmount),
+                Arguments.of("valor-grande", largeAmount),
+                Arguments.of("agendado", scheduled));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("cases")
+    void templateAndJaxbMatchGoldenFile(String name, PaymentRequestDto request) throws Exception {
+        String golden = golden(name);
+        XMLGregorianCalendar now = DatatypeFactory.newInstance().newXMLGregorianCalendar(TIMESTAMP);
+
+        byte[] jaxb = service.marshalUnsigned(request, BIZ_MSG_IDR, END_TO_END_ID, now);
+        // Buffer pequeno: também exercita o crescimento durante a escrita
+        Pacs008Template.Buffer buffer = new Pacs008Template.Buffer(64);
+        PrtrySvcLvlCode serviceLevel = request.getServiceLevel() == null
+                ? PrtrySvcLvlCode.PAGPRI : PrtrySvcLvlCode.fromValue(request.getServiceLevel());
+        templates.get(serviceLevel).write(buffer, request, BIZ_MSG_IDR, END_TO_END_ID, now.toXMLFormat());
+
+        assertThat(canonical(jaxb, jaxb.length)).as("JAXB").isEqualTo(golden);
+        assertThat(canonical(buffer.array(), buffer.size())).as("modelo").isEqualTo(golden);
+    }
+
+    @Test
+    void reusedBufferDoesNotKeepPreviousMessage() throws Exception {
+        Pacs008Template.Buffer buffer = new Pacs008Template.Buffer(64);
+        template.write(buffer, TestPayments.valid(), BIZ_MSG_IDR, END_TO_END_ID, TIMESTAMP);
+        PaymentRequestDto withoutDescription = TestPayments.valid();
+        withoutDescription.setDescription(null);
+        template.write(buffer, withoutDescription, BIZ_MSG_IDR, END_TO_END_ID, TIMESTAMP);
+
+        assertThat(canonical(buffer.array(), buffer.size())).isEqualTo(golden("sem-descricao"));
+    }
+
+    @Test
+    void controlCharacterIsRejected() {
+        PaymentRequestDto request = TestPayments.valid();
+        request.setDescription("Pagamento\u0001");
+
+        assertThatThrownBy(() -> template.write(new Pacs008Template.Buffer(64), request, BIZ_MSG_IDR, END_TO_END_ID, TIMESTAMP))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static String canonical(byte[] xml, int length) throws Exception {
+        return new String(Pacs008Template.canonicalize(xml, length), StandardCharsets.UTF_8);
+    }
+
+    private static String golden(String name) throws IOException {
+        try (InputStream in = Pacs008TemplateGoldenTest.class.getResourceAsStream("/pacs008/golden/" + name + ".xml")) {
+            assertThat(in).as("arquivo de referência " + name).isNotNull();
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).strip();
+        }
+    }
+}
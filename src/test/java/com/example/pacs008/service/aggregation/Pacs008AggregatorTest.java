@@ -0,0 +1,203 @@
+package com.example.pacs008.service.aggregation;
+
+import com.example.pacs008.TestPayments;
+import com.example.pacs008.dto.PaymentRequestDto;
+import com.example.pacs008.service.Pacs008Service;
+import com.example.pacs008.service.SignedPacs008Message;
+import com.example.pacs008.service.inbound.PaymentCorrelationIndex;
+import com.example.pacs008.service.mq.MqClientService;
+import com.example.pacs008.service.mq.MqPriority;
+import com.example.pacs008.service.outbox.OutboxLog;
+import com.example.pacs008.service.validation.PaymentRequestValidator;
+import com.example.pacs008.util.OverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class Pacs008AggregatorTest {
+
+    private static final String QUEUE = "QL.REQ.TEST";
+    private static final String BIZ_MSG_IDR = "M12345678AB0lXr2Tk9000001aBcDeFg";
+    private static final byte[] GROUP_XML = "<Envelope>grupo</Envelope>".getBytes(StandardCharsets.UTF_8);
+
+    private final Pacs008Service pacs008Service = mock(Pacs008Service.class);
+    private final MqClientService mqClientService = mock(MqClientService.class);
+    private final PaymentCorrelationIndex correlationIndex = mock(PaymentCorrelationIndex.class);
+    private Pacs008Aggregator aggregator;
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        if (aggregator != null) {
+            aggregator.shutdown();
+        }
+    }
+
+    @Test
+    void groupIsPublishedOnceAndEachCallerReceivesOnlyItsOwnIds() throws Exception {
+        signGroupsAs(GROUP_XML);
+        when(mqClientService.publishAsync(any(byte[].class), anyString(), any(MqPriority.class))).thenReturn(CompletableFuture.completedFuture(null));
+        aggregator = aggregator(3, 1, 0, Optional.empty());
+
+        List<CompletableFuture<AggregatedPayment>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(aggregator.submit(TestPayments.valid()));
+        }
+
+        List<String> endToEndIds = new ArrayList<>();
+        for (CompletableFuture<AggregatedPayment> result : results) {
+            AggregatedPayment payment = result.get(5, TimeUnit.SECONDS);
+            assertThat(payment.bizMsgIdr()).isEqualTo(BIZ_MSG_IDR);
+            endToEndIds.add(payment.endToEndId());
+        }
+        assertThat(endToEndIds).containsExactly("E0", "E1", "E2");
+        verify(mqClientService, times(1)).publishAsync(GROUP_XML, QUEUE, MqPriority.HIGH);
+    }
+
+    @Test
+    void lingerClosesAnIncompleteGroup() throws Exception {
+        signGroupsAs(GROUP_XML);
+        when(mqClientService.publishAsync(any(byte[].class), anyString(), any(MqPriority.class))).thenReturn(CompletableFuture.completedFuture(null));
+        aggregator = aggregator(20, 1, 0, Optional.empty());
+
+        CompletableFuture<AggregatedPayment> first = aggregator.submit(TestPayments.valid());
+        CompletableFuture<AggregatedPayment> second = aggregator.submit(TestPayments.valid());
+
+        assertThat(first.get(5, TimeUnit.SECONDS).endToEndId()).isEqualTo("E0");
+        assertThat(second.get(5, TimeUnit.SECONDS).endToEndId()).isEqualTo("E1");
+        verify(mqClientService, times(1)).publishAsync(GROUP_XML, QUEUE, MqPriority.HIGH);
+    }
+
+    @Test
+    void serviceLevelsAreGroupedApartAndPublishedInTheirOwnLane() throws Exception {
+        signGroupsAs(GROUP_XML);
+        when(mqClientService.publishAsync(any(byte[].class), anyString(), any(MqPriority.class))).thenReturn(CompletableFuture.completedFuture(null));
+        aggregator = aggregator(2, 1, 0, Optional.empty());
+        PaymentRequestDto scheduled = TestPayments.valid();
+        scheduled.setServiceLevel("PAGAGD");
+
+        CompletableFuture<AggregatedPayment> online = aggregator.submit(TestPayments.valid());
+        CompletableFuture<AggregatedPayment> later = aggregator.submit(scheduled);
+
+        online.get(5, TimeUnit.SECONDS);
+        later.get(5, TimeUnit.SECONDS);
+        // Sem misturar os níveis: dois grupos de uma transação, cada um na faixa do seu InstrPrty
+        verify(pacs008Service, times(2)).createSignedPacs008Message(any(PaymentRequestDto.class));
+        verify(mqClientService).publishAsync(GROUP_XML, QUEUE, MqPriority.HIGH);
+        verify(mqClientService).publishAsync(GROUP_XML, QUEUE, MqPriority.NORMAL);
+    }
+
+    @Test
+    void publishFailureFailsEveryCallerOfTheGroup() {
+        signGroupsAs(GROUP_XML);
+        IllegalStateException failure = new IllegalStateException("MQ indisponível");
+        when(mqClientService.publishAsync(any(byte[].class), anyString(), any(MqPriority.class))).thenReturn(CompletableFuture.failedFuture(failure));
+        aggregator = aggregator(2, 1, 0, Optional.empty());
+
+        CompletableFuture<AggregatedPayment> first = aggregator.submit(TestPayments.valid());
+        CompletableFuture<AggregatedPayment> second = aggregator.submit(TestPayments.valid());
+
+        for (CompletableFuture<AggregatedPayment> result : List.of(first, second)) {
+            assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCause(failure);
+        }
+        // A mensagem não foi enviada: as transações deixam de aguardar resposta do SPI
+        verify(correlationIndex).complete("E0");
+        verify(correlationIndex).complete("E1");
+    }
+
+    @Test
+    void outboxReceivesTheGroupWhenEnabled() throws Exception {
+        signGroupsAs(GROUP_XML);
+        OutboxLog outbox = mock(OutboxLog.class);
+        when(outbox.append(anyString(), any(byte[].class), any(MqPriority.class))).thenReturn(CompletableFuture.completedFuture(1L));
+        aggregator = aggregator(2, 1, 0, Optional.of(outbox));
+
+        CompletableFuture<AggregatedPayment> first = aggregator.submit(TestPayments.valid());
+        CompletableFuture<AggregatedPayment> second = aggregator.submit(TestPayments.valid());
+
+        assertThat(first.get(5, TimeUnit.SECONDS).endToEndId()).isEqualTo("E0");
+        assertThat(second.get(5, TimeUnit.SECONDS).endToEndId()).isEqualTo("E1");
+        verify(outbox, times(1)).append(QUEUE, GROUP_XML, MqPriority.HIGH);
+        verify(mqClientService, never()).publishAsync(any(byte[].class), anyString(), any(MqPriority.class));
+    }
+
+    @Test
+    void fullQueueRejectsNewRequests() throws Exception {
+        CountDownLatch signing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(pacs008Service.createSignedPacs008Message(any(PaymentRequestDto.class))).thenAnswer(invocation -> {
+            signing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new SignedPacs008Message(BIZ_MSG_IDR, "E0", GROUP_XML);
+        });
+        when(mqClientService.publishAsync(any(byte[].class), anyString(), any(MqPriority.class))).thenReturn(CompletableFuture.completedFuture(null));
+        aggregator = aggregator(1, 1, 1, Optional.empty());
+
+        // A única thread fica ocupada com o primeiro grupo e o segundo ocupa a única posição da fila
+        CompletableFuture<AggregatedPayment> first = aggregator.submit(TestPayments.valid());
+        assertThat(signing.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<AggregatedPayment> second = aggregator.submit(TestPayments.valid());
+
+        assertThatThrownBy(() -> aggregator.submit(TestPayments.valid()))
+                .isInstanceOf(OverloadedException.class);
+
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isNotNull();
+        assertThat(second.get(5, TimeUnit.SECONDS)).isNotNull();
+    }
+
+    /**
+     * Cada grupo é assinado com o mesmo BizMsgIdr e XML e um EndToEndId por transação (E0, E1...).
+     */
+    private void signGroupsAs(byte[] xml) {
+        try {
+            when(pacs008Service.createSignedPacs008Message(anyList())).thenAnswer(invocation -> {
+                List<?> requests = invocation.getArgument(0);
+                List<SignedPacs008Message> messages = new ArrayList<>();
+                for (int i = 0; i < requests.size(); i++) {
+                    messages.add(new SignedPacs008Message(BIZ_MSG_IDR, "E" + i, xml));
+                }
+                return messages;
+            });
+            when(pacs008Service.createSignedPacs008Message(any(PaymentRequestDto.class)))
+                    .thenReturn(new SignedPacs008Message(BIZ_MSG_IDR, "E0", xml));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Pacs008Aggregator aggregator(int maxTransactions, int workers, int queueCapacity, Optional<OutboxLog> outbox) {
+        Pacs008Aggregator created = new Pacs008Aggregator(pacs008Service, mock(PaymentRequestValidator.class),
+                mqClientService, correlationIndex, outbox, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(created, "maxTransactions", maxTransactions);
+        ReflectionTestUtils.setField(created, "maxMessageKb", 100);
+        ReflectionTestUtils.setField(created, "lingerMs", 20L);
+        ReflectionTestUtils.setField(created, "workers", workers);
+        ReflectionTestUtils.setField(created, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(created, "outboundQueue", QUEUE);
+        created.init();
+        return created;
+    }
+}
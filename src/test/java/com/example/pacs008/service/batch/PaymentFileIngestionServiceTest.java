@@ -0,0 +1,186 @@
+package com.example.pacs008.service.batch;
+
+import com.example.pacs008.TestPayments;
+import com.example.pacs008.dto.PaymentRequestDto;
+import com.example.pacs008.service.Pacs008Service;
+import com.example.pacs008.service.SignedPacs008Message;
+import com.example.pacs008.service.mq.MqClientService;
+import com.example.pacs008.service.mq.MqPriority;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Registro da mensagem assinada antes da publicação e reenvio dos mesmos bytes na retomada.
+ */
+class PaymentFileIngestionServiceTest {
+
+    private static final String QUEUE = "QL.REQ.TEST";
+    private static final String FILE_NAME = "pagamentos.ndjson";
+    private static final SignedPacs008Message SIGNED = new SignedPacs008Message("M1", "E1",
+            "<Envelope>assinado</Envelope>".getBytes(StandardCharsets.UTF_8));
+
+    @TempDir
+    Path tempDir;
+
+    private final Pacs008Service pacs008Service = mock(Pacs008Service.class);
+    private final MqClientService mqClientService = mock(MqClientService.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private PaymentFileIngestionService service;
+    private Path file;
+    private Path progressFile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        service = new PaymentFileIngestionService(pacs008Service, mqClientService, Optional.empty(), objectMapper,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "outboundQueue", QUEUE);
+        ReflectionTestUtils.setField(service, "inputDirectory", tempDir.resolve("in").toString());
+        ReflectionTestUtils.setField(service, "outputDirectory", tempDir.resolve("out").toString());
+        ReflectionTestUtils.setField(service, "processedDirectory", tempDir.resolve("processed").toString());
+        ReflectionTestUtils.setField(service, "pollIntervalMs", 3_600_000L);
+        ReflectionTestUtils.setField(service, "workers", 2);
+        ReflectionTestUtils.setField(service, "chunkKb", 64);
+        ReflectionTestUtils.setField(service, "checkpointInterval", 1000);
+        ReflectionTestUtils.setField(service, "csvDelimiter", ',');
+        service.init();
+
+        // Fora do diretório verificado pelo serviço: processado apenas pelas chamadas a ingest
+        file = Files.createDirectories(tempDir.resolve("arquivos")).resolve(FILE_NAME);
+        Files.write(file, objectMapper.writeValueAsBytes(TestPayments.valid()));
+        progressFile = tempDir.resolve("out").resolve(FILE_NAME + ".progress");
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        service.shutdown();
+    }
+
+    @Test
+    void signedMessageIsOnDiskBeforeItIsPublished() throws Exception {
+        when(pacs008Service.createSignedPacs008Message(any(PaymentRequestDto.class))).thenReturn(SIGNED);
+        when(mqClientService.publishAsync(any(byte[].class), anyString(), any(MqPriority.class))).thenAnswer(invocation -> {
+            // Uma parada neste ponto não pode levar a uma nova assinatura na retomada
+            try (IngestionProgress progress = IngestionProgress.open(progressFile)) {
+                assertThat(progress.signedBefore(0)).isNotNull();
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+
+        assertThat(service.ingest(file)).isTrue();
+
+        verify(mqClientService).publishAsync(SIGNED.xml(), QUEUE, MqPriority.BULK);
+        assertThat(results()).contains("\"status\":\"PUBLISHED\"", "\"bizMsgIdr\":\"M1\"", "\"endToEndId\":\"E1\"");
+    }
+
+    @Test
+    void resumeResendsTheSameMessageWhenThePublicationWasNotRecorded() throws Exception {
+        Files.createDirectories(progressFile.getParent());
+        try (IngestionProgress progress = IngestionProgress.open(progressFile)) {
+            progress.markSigned(0, SIGNED).join();
+        }
+        when(mqClientService.publishAsync(any(byte[].class), anyString(), any(MqPriority.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        assertThat(service.ingest(file)).isTrue();
+
+        verify(pacs008Service, never()).createSignedPacs008Message(any(PaymentRequestDto.class));
+        verify(mqClientService).publishAsync(SIGNED.xml(), QUEUE, MqPriority.BULK);
+        assertThat(results()).contains("\"bizMsgIdr\":\"M1\"", "\"endToEndId\":\"E1\"");
+    }
+
+    @Test
+    void resumeDoesNotResendARecordedPublication() throws Exception {
+        Files.createDirectories(progressFile.getParent());
+        try (IngestionProgress progress = IngestionProgress.open(progressFile)) {
+            progress.markSigned(0, SIGNED).join();
+            progress.markPublished(0, SIGNED.bizMsgIdr(), SIGNED.endToEndId());
+        }
+
+        assertThat(service.ingest(file)).isTrue();
+
+        verify(pacs008Service, never()).createSignedPacs008Message(any(PaymentRequestDto.class));
+        verify(mqClientService, never()).publishAsync(any(byte[].class), anyString(), any(MqPriority.class));
+        assertThat(results()).contains("\"bizMsgIdr\":\"M1\"", "\"endToEndId\":\"E1\"");
+    }
+
+    @Test
+    void concurrentSignedLinesAreAllConfirmed() throws Exception {
+        Files.createDirectories(progressFile.getParent());
+        try (IngestionProgress progress = IngestionProgress.open(progressFile)) {
+            List<CompletableFuture<Void>> durable = IntStream.range(0, 200).parallel()
+                    .mapToObj(number -> progress.markSigned(number, signed(number))).toList();
+            CompletableFuture.allOf(durable.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        }
+        try (IngestionProgress progress = IngestionProgress.open(progressFile)) {
+            for (int number = 0; number < 200; number++) {
+                assertThat(progress.signedBefore(number).bizMsgIdr()).isEqualTo("M" + number);
+            }
+        }
+    }
+
+    @Test
+    void checkpointCompactsTheProgressFile() throws Exception {
+        Files.createDirectories(progressFile.getParent());
+        try (IngestionProgress progress = IngestionProgress.open(progressFile)) {
+            for (int number = 0; number < 4; number++) {
+                progress.markSigned(number, signed(number)).join();
+            }
+            progress.markPublished(0, "M0", "E0");
+            progress.markPublished(1, "M1", "E1");
+            progress.markPublished(2, "M2", "E2");
+
+            progress.checkpoint(new IngestionProgress.Checkpoint(100, 2, 50));
+            // Gravada depois da compactação, no novo arquivo
+            progress.markSigned(4, signed(4)).join();
+        }
+
+        assertThat(Files.readAllLines(progressFile)).extracting(line -> line.substring(0, line.indexOf('\t', 2)))
+                .containsExactly("C\t100", "P\t2", "S\t3", "S\t4");
+        try (IngestionProgress progress = IngestionProgress.open(progressFile)) {
+            assertThat(progress.checkpoint()).isEqualTo(new IngestionProgress.Checkpoint(100, 2, 50));
+            assertThat(progress.publishedBefore(2)).containsExactly("M2", "E2");
+            assertThat(progress.signedBefore(3).xml()).isEqualTo(signed(3).xml());
+            assertThat(progress.signedBefore(4)).isNotNull();
+        }
+    }
+
+    @Test
+    void interruptedSignedLineIsIgnored() throws Exception {
+        Files.createDirectories(progressFile.getParent());
+        Files.writeString(progressFile, "S\t0\tM1\tE1\tPEVudmVsb3Bl");
+        try (IngestionProgress progress = IngestionProgress.open(progressFile)) {
+            assertThat(progress.signedBefore(0)).isNull();
+        }
+    }
+
+    private static SignedPacs008Message signed(int number) {
+        return new SignedPacs008Message("M" + number, "E" + number,
+                ("<Envelope>" + number + "</Envelope>").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String results() throws Exception {
+        return Files.readString(tempDir.resolve("out").resolve(FILE_NAME + ".results.ndjson"));
+    }
+}
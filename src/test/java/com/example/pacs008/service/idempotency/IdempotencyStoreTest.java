@@ -0,0 +1,111 @@
+package com.example.pacs008.service.idempotency;
+
+import com.example.pacs008.service.SignedPacs008Message;
+import com.example.pacs008.util.OverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Descarte por tamanho: as entradas em andamento nunca são descartadas.
+ */
+class IdempotencyStoreTest {
+
+    private static final String FINGERPRINT = "f".repeat(64);
+
+    private final AtomicInteger generated = new AtomicInteger();
+    private IdempotencyStore store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = new IdempotencyStore(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(store, "maxEntries", 2);
+        ReflectionTestUtils.setField(store, "ttlMs", 3_600_000L);
+        ReflectionTestUtils.setField(store, "logFile", "");
+        store.init();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        store.shutdown();
+    }
+
+    @Test
+    void inFlightEntryIsNotEvictedBySize() throws Exception {
+        store.getOrCompute("A", FINGERPRINT, this::message);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<IdempotencyStore.Result> inFlight = CompletableFuture.supplyAsync(() -> compute("B", () -> {
+            release.await();
+            return message();
+        }));
+        awaitGenerated(2);
+
+        // Acima do limite: descarta A (concluída), não B (em andamento)
+        store.getOrCompute("C", FINGERPRINT, this::message);
+        release.countDown();
+
+        SignedPacs008Message first = inFlight.get(5, TimeUnit.SECONDS).message();
+        IdempotencyStore.Result retry = store.getOrCompute("B", FINGERPRINT, this::message);
+        assertThat(retry.replayed()).isTrue();
+        assertThat(retry.message().endToEndId()).isEqualTo(first.endToEndId());
+        assertThat(store.getOrCompute("A", FINGERPRINT, this::message).replayed()).isFalse();
+    }
+
+    @Test
+    void newKeyIsRejectedWhenOnlyInFlightEntriesRemain() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<?> first = CompletableFuture.supplyAsync(() -> compute("A", () -> {
+            release.await();
+            return message();
+        }));
+        CompletableFuture<?> second = CompletableFuture.supplyAsync(() -> compute("B", () -> {
+            release.await();
+            return message();
+        }));
+        awaitGenerated(2);
+
+        assertThatThrownBy(() -> store.getOrCompute("C", FINGERPRINT, this::message))
+                .isInstanceOf(OverloadedException.class);
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        // A chave recusada fica livre para uma nova tentativa
+        assertThat(store.getOrCompute("C", FINGERPRINT, this::message).replayed()).isFalse();
+    }
+
+    private IdempotencyStore.Result compute(String key, IdempotencyStore.Computation computation) {
+        try {
+            return store.getOrCompute(key, FINGERPRINT, () -> {
+                generated.incrementAndGet();
+                return computation.compute();
+            });
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private SignedPacs008Message message() {
+        int n = generated.incrementAndGet();
+        return new SignedPacs008Message("M" + n, "E" + n, ("<Envelope>" + n + "</Envelope>").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void awaitGenerated(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (generated.get() < count) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.pacs008.service.idempotency;
+
+import com.example.pacs008.TestPayments;
+import com.example.pacs008.dto.PaymentRequestDto;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestFingerprintTest {
+
+    @Test
+    void sameDataHasSameFingerprint() {
+        assertThat(RequestFingerprint.of(TestPayments.valid())).isEqualTo(RequestFingerprint.of(TestPayments.valid()))
+                .hasSize(64);
+    }
+
+    @Test
+    void amountScaleDoesNotChangeFingerprint() {
+        PaymentRequestDto scaled = TestPayments.valid();
+        scaled.setAmount(new BigDecimal("10.500"));
+
+        assertThat(RequestFingerprint.of(scaled)).isEqualTo(RequestFingerprint.of(TestPayments.valid()));
+    }
+
+    @Test
+    void differentAmountChangesFingerprint() {
+        PaymentRequestDto other = TestPayments.valid();
+        other.setAmount(new BigDecimal("10.51"));
+
+        assertThat(RequestFingerprint.of(other)).isNotEqualTo(RequestFingerprint.of(TestPayments.valid()));
+    }
+
+    @Test
+    void fieldBoundariesAreNotAmbiguous() {
+        PaymentRequestDto first = TestPayments.valid();
+        first.setPayerAgency("00011");
+        first.setPayerAccount("234");
+        PaymentRequestDto second = TestPayments.valid();
+        second.setPayerAgency("0001");
+        second.setPayerAccount("1234");
+
+        assertThat(RequestFingerprint.of(first)).isNotEqualTo(RequestFingerprint.of(second));
+    }
+
+    @Test
+    void absentFieldDiffersFromEmptyField() {
+        PaymentRequestDto absent = TestPayments.valid();
+        absent.setDescription(null);
+        PaymentRequestDto empty = TestPayments.valid();
+        empty.setDescription("");
+
+        assertThat(RequestFingerprint.of(absent)).isNotEqualTo(RequestFingerprint.of(empty));
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.pacs008.service.inbound;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.SignedInfo;
+import javax.xml.crypto.dsig.Transform;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMSignContext;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
+import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
+import javax.xml.crypto.dsig.spec.TransformParameterSpec;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.SignatureException;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Verificação da assinatura das respostas do SPI e leitura dos dados apenas da parte assinada.
+ */
+class SpiResponseParserTest {
+
+    private static final String PASSWORD = "changeit";
+    private static final String NAMESPACE = "https://www.bcb.gov.br/pi/pacs.002/1.13";
+    private static final String RESPONSE = "<Envelope xmlns=\"" + NAMESPACE + "\"><AppHdr><BizMsgIdr>M00000000RESPOSTA0000000000000001</BizMsgIdr>"
+            + "<MsgDefIdr>pacs.002.spi.1.13</MsgDefIdr><Sgntr/></AppHdr><Document><FIToFIPmtStsRpt><GrpHdr>"
+            + "<MsgId>M00000000RESPOSTA0000000000000001</MsgId></GrpHdr><OrgnlGrpInfAndSts>"
+            + "<OrgnlMsgId>M12345678ORIGINAL0000000000000001</OrgnlMsgId></OrgnlGrpInfAndSts><TxInfAndSts>"
+            + "<OrgnlEndToEndId>E12345678202405101345AB000001xYz</OrgnlEndToEndId><TxSts>RJCT</TxSts>"
+            + "<StsRsnInf><Rsn><Cd>AC03</Cd></Rsn></StsRsnInf></TxInfAndSts></FIToFIPmtStsRpt></Document></Envelope>";
+
+    @TempDir
+    static Path tempDir;
+
+    private static PrivateKey privateKey;
+    private static X509Certificate certificate;
+    private static SpiResponseParser parser;
+
+    @BeforeAll
+    static void createKeyAndParser() throws Exception {
+        Path keyStore = tempDir.resolve("spi.jks");
+        Process keytool = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+                "-genkeypair", "-alias", "spi", "-keyalg", "RSA", "-keysize", "2048", "-sigalg", "SHA256withRSA",
+                "-dname", "CN=spi-test", "-validity", "2", "-storetype", "JKS", "-keystore", keyStore.toString(),
+                "-storepass", PASSWORD, "-keypass", PASSWORD).redirectErrorStream(true).start();
+        keytool.getInputStream().transferTo(OutputStream.nullOutputStream());
+        assertThat(keytool.waitFor()).isZero();
+        KeyStore store = KeyStore.getInstance("JKS");
+        try (InputStream in = Files.newInputStream(keyStore)) {
+            store.load(in, PASSWORD.toCharArray());
+        }
+        privateKey = (PrivateKey) store.getKey("spi", PASSWORD.toCharArray());
+        certificate = (X509Certificate) store.getCertificate("spi");
+
+        // O próprio certificado do SPI no truststore
+        Path trustStorePath = tempDir.resolve("truststore.jks");
+        KeyStore trustStore = KeyStore.getInstance("JKS");
+        trustStore.load(null, null);
+        trustStore.setCertificateEntry("spi", certificate);
+        try (OutputStream out = Files.newOutputStream(trustStorePath)) {
+            trustStore.store(out, PASSWORD.toCharArray());
+        }
+        parser = new SpiResponseParser(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(parser, "trustStorePath", "file:" + trustStorePath);
+        ReflectionTestUtils.setField(parser, "trustStorePassword", PASSWORD);
+        ReflectionTestUtils.setField(parser, "verifySignature", true);
+        ReflectionTestUtils.setField(parser, "poolSize", 1);
+        parser.init();
+    }
+
+    @Test
+    void signedResponseIsParsed() throws Exception {
+        SpiResponse response = parser.parse(serialize(sign(RESPONSE)));
+
+        assertThat(response.msgDefIdr()).isEqualTo("pacs.002.spi.1.13");
+        assertThat(response.bizMsgIdr()).isEqualTo("M00000000RESPOSTA0000000000000001");
+        assertThat(response.originalMsgId()).isEqualTo("M12345678ORIGINAL0000000000000001");
+        assertThat(response.transactions()).containsExactly(
+                new SpiResponse.TransactionResult("E12345678202405101345AB000001xYz", "RJCT", "AC03"));
+    }
+
+    @Test
+    void responseWithoutMsgDefIdrHasUnknownType() throws Exception {
+        SpiResponse withoutType = parser.parse(serialize(sign(RESPONSE.replace("<MsgDefIdr>pacs.002.spi.1.13</MsgDefIdr>", ""))));
+        SpiResponse blankType = parser.parse(serialize(sign(RESPONSE.replace("pacs.002.spi.1.13", " "))));
+
+        assertThat(withoutType.msgDefIdr()).isNull();
+        assertThat(withoutType.messageType()).isEqualTo("unknown");
+        assertThat(blankType.messageType()).isEqualTo("unknown");
+        assertThat(new SpiResponse("pacs.002.spi.1.13", null, null, List.of()).messageType()).isEqualTo("pacs.002");
+    }
+
+    @Test
+    void tamperedResponseIsRejected() throws Exception {
+        String tampered = new String(serialize(sign(RESPONSE)), StandardCharsets.UTF_8)
+                .replace("<TxSts>RJCT</TxSts>", "<TxSts>ACSP</TxSts>");
+
+        assertThatThrownBy(() -> parser.parse(tampered.getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(SignatureException.class).hasMessageContaining("inválida");
+    }
+
+    @Test
+    void dataWrappedInADsObjectIsRejected() throws Exception {
+        Document doc = sign(RESPONSE);
+        // Um Document falso em ds:Object, fora do digest (a referência exclui a assinatura)
+        Element object = doc.createElementNS(XMLSignature.XMLNS, "ds:Object");
+        object.appendChild(doc.importNode(parse(RESPONSE.replace("RJCT", "ACSP")).getDocumentElement(), true));
+        signature(doc).appendChild(object);
+
+        assertThatThrownBy(() -> parser.parse(serialize(doc)))
+                .isInstanceOf(SignatureException.class).hasMessageContaining("ds:Object");
+    }
+
+    @Test
+    void dataWrappedInTheKeyInfoIsIgnored() throws Exception {
+        Document doc = sign(RESPONSE);
+        // Uma transação e um BizMsgIdr falsos no KeyInfo, que não é coberto pela assinatura
+        Element fake = (Element) doc.importNode(parse(RESPONSE.replace("RJCT", "ACSP").replace("AC03", "XX99")
+                .replace("RESPOSTA", "FALSA000")).getDocumentElement(), true);
+        Element keyInfo = (Element) signature(doc).getElementsByTagNameNS(XMLSignature.XMLNS, "KeyInfo").item(0);
+        keyInfo.appendChild(fake);
+
+        SpiResponse response = parser.parse(serialize(doc));
+
+        assertThat(response.bizMsgIdr()).isEqualTo("M00000000RESPOSTA0000000000000001");
+        assertThat(response.transactions()).containsExactly(
+                new SpiResponse.TransactionResult("E12345678202405101345AB000001xYz", "RJCT", "AC03"));
+    }
+
+    @Test
+    void signatureOutsideTheHeaderIsRejected() throws Exception {
+        Document doc = sign(RESPONSE);
+        Element signature = signature(doc);
+        // Mesmo conteúdo assinado: com a transformação enveloped, o local da assinatura não entra no digest
+        doc.getDocumentElement().appendChild(signature);
+
+        assertThatThrownBy(() -> parser.parse(serialize(doc)))
+                .isInstanceOf(SignatureException.class).hasMessageContaining("AppHdr/Sgntr");
+    }
+
+    /** Assina como o SPI: referência ao documento inteiro, enveloped-signature, em AppHdr/Sgntr. */
+    private static Document sign(String xml) throws Exception {
+        Document doc = parse(xml);
+        XMLSignatureFactory fac = XMLSignatureFactory.getInstance("DOM");
+        Reference reference = fac.newReference("", fac.newDigestMethod(DigestMethod.SHA256, null),
+                Collections.singletonList(fac.newTransform(Transform.ENVELOPED, (TransformParameterSpec) null)), null, null);
+        SignedInfo signedInfo = fac.newSignedInfo(
+                fac.newCanonicalizationMethod(CanonicalizationMethod.INCLUSIVE, (C14NMethodParameterSpec) null),
+                fac.newSignatureMethod("http://www.w3.org/2001/04/xmldsig-more#rsa-sha256", null),
+                Collections.singletonList(reference));
+        KeyInfoFactory keyInfoFactory = fac.getKeyInfoFactory();
+        KeyInfo keyInfo = keyInfoFactory.newKeyInfo(List.of(keyInfoFactory.newX509Data(List.of(certificate))));
+        DOMSignContext context = new DOMSignContext(privateKey, doc.getElementsByTagNameNS("*", "Sgntr").item(0));
+        context.setDefaultNamespacePrefix("ds");
+        fac.newXMLSignature(signedInfo, keyInfo).sign(context);
+        return doc;
+    }
+
+    private static Element signature(Document doc) {
+        return (Element) doc.getElementsByTagNameNS(XMLSignature.XMLNS, "Signature").item(0);
+    }
+
+    private static Document parse(String xml) throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        return dbf.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] serialize(Document doc) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        TransformerFactory.newInstance().newTransformer().transform(new DOMSource(doc), new StreamResult(output));
+        return output.toByteArray();
+    }
+}
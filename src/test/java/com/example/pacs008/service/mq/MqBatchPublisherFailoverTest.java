@@ -0,0 +1,127 @@
+package com.example.pacs008.service.mq;
+
+import com.example.pacs008.config.LocalBrokerConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.jms.Connection;
+import jakarta.jms.JMSException;
+import jakarta.jms.MessageConsumer;
+import jakarta.jms.Session;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.apache.activemq.artemis.jms.client.ActiveMQConnectionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Failover entre os brokers embarcados do perfil {@code local} ({@link LocalBrokerConfig}):
+ * um broker é parado, as publicações passam para o outro e o endpoint volta à distribuição
+ * depois que o broker é reiniciado.
+ */
+class MqBatchPublisherFailoverTest {
+
+    private static final String QUEUE = "QL.REQ.FAILOVER";
+    private static final int BATCH_SIZE = 10;
+
+    private LocalBrokerConfig localBrokers;
+    private List<EmbeddedActiveMQ> brokers;
+    private MqBatchPublisher publisher;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        localBrokers = new LocalBrokerConfig();
+        ReflectionTestUtils.setField(localBrokers, "brokerCount", 2);
+        MqEndpoints endpoints = localBrokers.mqEndpoints();
+        brokers = (List<EmbeddedActiveMQ>) ReflectionTestUtils.getField(localBrokers, "brokers");
+
+        publisher = new MqBatchPublisher(endpoints, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(publisher, "bufferCapacity", 1000);
+        ReflectionTestUtils.setField(publisher, "batchSize", BATCH_SIZE);
+        ReflectionTestUtils.setField(publisher, "lingerMs", 5L);
+        ReflectionTestUtils.setField(publisher, "enqueueTimeoutMs", 100L);
+        // Um despachante por endpoint: no máximo um lote em andamento no broker parado
+        ReflectionTestUtils.setField(publisher, "dispatchers", 1);
+        ReflectionTestUtils.setField(publisher, "asyncPut", true);
+        ReflectionTestUtils.setField(publisher, "messageType", "bytes");
+        ReflectionTestUtils.setField(publisher, "sessionCacheSize", 4);
+        ReflectionTestUtils.setField(publisher, "shardingMode", "round-robin");
+        ReflectionTestUtils.setField(publisher, "backoffInitialMs", 100L);
+        ReflectionTestUtils.setField(publisher, "backoffMaxMs", 400L);
+        publisher.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        publisher.stop();
+        localBrokers.stopBrokers();
+    }
+
+    @Test
+    void stoppedBrokerLeavesTheDistributionAndRejoinsAfterRestart() throws Exception {
+        assertThat(await(publish(20))).isEqualTo(20);
+        assertThat(drain(0)).isPositive();
+        assertThat(drain(1)).isPositive();
+
+        brokers.get(0).stop();
+        List<CompletableFuture<Void>> burst = publish(200);
+        int published = await(burst);
+
+        // Só o lote em andamento no broker parado falha; o restante do seu buffer passa para o outro
+        assertThat(200 - published).isLessThanOrEqualTo(BATCH_SIZE);
+        assertThat(publisher.getEndpointStatus()).containsEntry("local-0", false).containsEntry("local-1", true);
+        assertThat(drain(1)).isEqualTo(published);
+
+        brokers.get(0).start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!publisher.getEndpointStatus().get("local-0")) {
+            assertThat(System.nanoTime()).as("reconexão do endpoint local-0").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+
+        assertThat(await(publish(20))).isEqualTo(20);
+        assertThat(drain(0)).isPositive();
+    }
+
+    private List<CompletableFuture<Void>> publish(int count) {
+        List<CompletableFuture<Void>> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] message = ("<Envelope><Id>" + i + "</Id></Envelope>").getBytes(StandardCharsets.UTF_8);
+            results.add(publisher.publishAsync(message, QUEUE, MqPriority.NORMAL));
+        }
+        return results;
+    }
+
+    /**
+     * Aguarda a conclusão de todas as publicações.
+     *
+     * @return Quantas foram confirmadas.
+     */
+    private static int await(List<CompletableFuture<Void>> results) throws Exception {
+        CompletableFuture.allOf(results.stream().map(r -> r.exceptionally(e -> null)).toArray(CompletableFuture[]::new))
+                .get(15, TimeUnit.SECONDS);
+        return (int) results.stream().filter(r -> !r.isCompletedExceptionally()).count();
+    }
+
+    /** Consome e conta as mensagens da fila no broker. */
+    private static int drain(int broker) throws JMSException {
+        try (Connection connection = new ActiveMQConnectionFactory("vm://" + broker).createConnection()) {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(session.createQueue(QUEUE));
+            int count = 0;
+            while (consumer.receive(200) != null) {
+                count++;
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.pacs008.service.outbox;
+
+import com.example.pacs008.util.OverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Falha no {@code force()}: as gravações pendentes são desfeitas e nenhuma delas é
+ * recuperada depois que a sequência é reutilizada.
+ */
+class OutboxLogTest {
+
+    private static final String QUEUE = "QL.REQ.TEST";
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicInteger forceFailures = new AtomicInteger();
+    private OutboxLog outboxLog;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        outboxLog.shutdown();
+    }
+
+    @Test
+    void rolledBackRecordsAreNotRecoveredAfterTheSequenceIsReused() throws Exception {
+        outboxLog = open(50);
+        outboxLog.append(QUEUE, message(1)).get(5, TimeUnit.SECONDS);
+
+        forceFailures.set(1);
+        CompletableFuture<Long> second = outboxLog.append(QUEUE, message(2));
+        CompletableFuture<Long> third = outboxLog.append(QUEUE, message(3));
+        assertRolledBack(second);
+        assertRolledBack(third);
+
+        // Mesmo tamanho do registro 2: termina exatamente no início do registro 3 descartado
+        assertThat(appendWhenAccepted(message(4)).get(5, TimeUnit.SECONDS)).isEqualTo(2);
+        outboxLog.shutdown();
+
+        outboxLog = open(0);
+        assertThat(outboxLog.getDurableSequence()).isEqualTo(2);
+        assertThat(outboxLog.read(outboxLog.cursorAfter(0), 10)).extracting(entry -> new String(entry.message(), StandardCharsets.UTF_8))
+                .containsExactly("<Envelope><Id>1</Id></Envelope>", "<Envelope><Id>4</Id></Envelope>");
+    }
+
+    @Test
+    void appendsAreRefusedUntilTheDiscardIsForced() throws Exception {
+        outboxLog = open(0);
+        // Falham o force() das gravações e as confirmações do descarte até o disco voltar
+        forceFailures.set(Integer.MAX_VALUE);
+        assertRolledBack(outboxLog.append(QUEUE, message(1)));
+
+        assertThatThrownBy(() -> outboxLog.append(QUEUE, message(2))).isInstanceOf(OverloadedException.class);
+
+        forceFailures.set(0);
+        assertThat(appendWhenAccepted(message(2)).get(5, TimeUnit.SECONDS)).isEqualTo(1);
+    }
+
+    private OutboxLog open(long commitIntervalMs) throws IOException {
+        OutboxLog log = new OutboxLog(new SimpleMeterRegistry()) {
+            @Override
+            void force(MappedByteBuffer buffer) {
+                if (forceFailures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                    throw new UncheckedIOException(new IOException("falha simulada"));
+                }
+                super.force(buffer);
+            }
+        };
+        ReflectionTestUtils.setField(log, "directory", tempDir.toString());
+        ReflectionTestUtils.setField(log, "segmentSizeMb", 1);
+        ReflectionTestUtils.setField(log, "commitIntervalMs", commitIntervalMs);
+        log.init();
+        return log;
+    }
+
+    /** Grava assim que a outbox voltar a aceitar gravações (confirmação do descarte). */
+    private CompletableFuture<Long> appendWhenAccepted(byte[] message) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            try {
+                return outboxLog.append(QUEUE, message);
+            } catch (OverloadedException e) {
+                assertThat(System.nanoTime()).isLessThan(deadline);
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static void assertRolledBack(CompletableFuture<Long> result) {
+        assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(OutboxWriteException.class);
+    }
+
+    private static byte[] message(int id) {
+        return ("<Envelope><Id>" + id + "</Id></Envelope>").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.pacs008.service.outbox;
+
+import com.example.pacs008.service.mq.MqClientService;
+import com.example.pacs008.service.mq.MqPriority;
+import com.example.pacs008.service.mq.OutboundMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * A faixa de despacho gravada com cada mensagem é mantida na entrega pelo relay.
+ */
+class OutboxRelayTest {
+
+    private static final String QUEUE = "QL.REQ.TEST";
+    private static final byte[] ONLINE = "<PmtTpInf><InstrPrty>HIGH</InstrPrty></PmtTpInf>".getBytes(StandardCharsets.UTF_8);
+    // Também com InstrPrty HIGH: a faixa BULK vem da gravação, não do conteúdo
+    private static final byte[] FILE_1 = "<PmtTpInf><InstrPrty>HIGH</InstrPrty></PmtTpInf><Id>1</Id>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FILE_2 = "<PmtTpInf><InstrPrty>HIGH</InstrPrty></PmtTpInf><Id>2</Id>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FILE_3 = "<PmtTpInf><InstrPrty>HIGH</InstrPrty></PmtTpInf><Id>3</Id>".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path tempDir;
+
+    private final MqClientService mqClientService = mock(MqClientService.class);
+    private OutboxLog outboxLog;
+    private OutboxRelay relay;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        outboxLog = new OutboxLog(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(outboxLog, "directory", tempDir.toString());
+        ReflectionTestUtils.setField(outboxLog, "segmentSizeMb", 1);
+        ReflectionTestUtils.setField(outboxLog, "commitIntervalMs", 0L);
+        outboxLog.init();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (relay != null) {
+            relay.stop();
+        }
+        outboxLog.shutdown();
+    }
+
+    @Test
+    void recordedPriorityIsReadBack() throws Exception {
+        outboxLog.append(QUEUE, FILE_1, MqPriority.BULK).get(5, TimeUnit.SECONDS);
+        outboxLog.append(QUEUE, ONLINE).get(5, TimeUnit.SECONDS);
+        outboxLog.append(QUEUE, "<Envelope/>".getBytes(StandardCharsets.UTF_8)).get(5, TimeUnit.SECONDS);
+
+        List<OutboxLog.Entry> entries = outboxLog.read(outboxLog.cursorAfter(0), 10);
+
+        assertThat(entries).extracting(OutboxLog.Entry::priority)
+                .containsExactly(MqPriority.BULK, MqPriority.HIGH, MqPriority.NORMAL);
+        assertThat(entries).extracting(OutboxLog.Entry::queueName).containsOnly(QUEUE);
+        assertThat(entries.get(0).message()).isEqualTo(FILE_1);
+    }
+
+    @Test
+    void relayPublishesEachRunOfMessagesWithItsOwnPriorityInOrder() throws Exception {
+        when(mqClientService.publishAllAsync(anyList(), any(MqPriority.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        outboxLog.append(QUEUE, FILE_1, MqPriority.BULK);
+        outboxLog.append(QUEUE, FILE_2, MqPriority.BULK);
+        outboxLog.append(QUEUE, ONLINE);
+        outboxLog.append(QUEUE, FILE_3, MqPriority.BULK).get(5, TimeUnit.SECONDS);
+
+        relay = new OutboxRelay(outboxLog, mqClientService, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(relay, "batchSize", 50);
+        ReflectionTestUtils.setField(relay, "retryBackoffMs", 100L);
+        relay.start();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<OutboundMessage>> messages = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<MqPriority> priorities = ArgumentCaptor.forClass(MqPriority.class);
+        verify(mqClientService, timeout(5000).times(3)).publishAllAsync(messages.capture(), priorities.capture());
+
+        assertThat(priorities.getAllValues()).containsExactly(MqPriority.BULK, MqPriority.HIGH, MqPriority.BULK);
+        assertThat(messages.getAllValues().get(0)).extracting(OutboundMessage::message).containsExactly(FILE_1, FILE_2);
+        assertThat(messages.getAllValues().get(1)).extracting(OutboundMessage::message).containsExactly(ONLINE);
+        assertThat(messages.getAllValues().get(2)).extracting(OutboundMessage::message).containsExactly(FILE_3);
+        verify(mqClientService, times(0)).publishAllAsync(anyList());
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.pacs008.service.reconciliation;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Remoção dos segmentos fora da retenção e liberação dos mapeamentos dos arquivos removidos
+ * (segmentos e índices hash substituídos na ampliação e na compactação).
+ */
+class SentMessageIndexTest {
+
+    private static final String QUEUE = "QL.REQ.TEST";
+    private static final Path PROC_MAPS = Path.of("/proc/self/maps");
+    // Mais que a capacidade do índice temporal de um segmento de 1 MB (4096 registros)
+    private static final int OLD_MESSAGES = 9000;
+    private static final int RECENT_MESSAGES = 10;
+
+    @TempDir
+    Path tempDir;
+
+    private SimpleMeterRegistry registry;
+    private SentMessageIndex index;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        registry = new SimpleMeterRegistry();
+        index = new SentMessageIndex(registry);
+        ReflectionTestUtils.setField(index, "directory", tempDir.toString());
+        ReflectionTestUtils.setField(index, "segmentSizeMb", 1);
+        // Pequena, para que o índice hash seja ampliado várias vezes
+        ReflectionTestUtils.setField(index, "indexCapacity", 16);
+        ReflectionTestUtils.setField(index, "retentionDays", 30);
+        ReflectionTestUtils.setField(index, "compactionIntervalMs", 3_600_000L);
+        ReflectionTestUtils.setField(index, "flushIntervalMs", 1000L);
+        ReflectionTestUtils.setField(index, "queueCapacity", 20_000);
+        index.init();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        index.shutdown();
+    }
+
+    @Test
+    void compactionDeletesExpiredSegmentsAndReleasesTheirMappings() throws Exception {
+        for (int i = 0; i < OLD_MESSAGES; i++) {
+            index.record(message(i, "2020-01-01T10:00:00.000Z"), QUEUE);
+        }
+        String now = Instant.now().toString();
+        for (int i = OLD_MESSAGES; i < OLD_MESSAGES + RECENT_MESSAGES; i++) {
+            index.record(message(i, now), QUEUE);
+        }
+        awaitWritten(OLD_MESSAGES + RECENT_MESSAGES);
+        assertThat(index.findByEndToEndId(endToEndId(0))).hasSize(1);
+
+        ReflectionTestUtils.invokeMethod(index, "compact");
+
+        assertThat(tempDir.resolve("0000000001.seg")).doesNotExist();
+        assertThat(tempDir.resolve("0000000001.tix")).doesNotExist();
+        assertThat(index.findByEndToEndId(endToEndId(0))).isEmpty();
+        List<SentMessage> recent = index.findByEndToEndId(endToEndId(OLD_MESSAGES));
+        assertThat(recent).hasSize(1);
+        assertThat(recent.get(0).xml()).isEqualTo(message(OLD_MESSAGES, now));
+        // Mensagem antiga em um segmento mantido (que também tem mensagens recentes)
+        assertThat(index.findByBizMsgIdr(bizMsgIdr(OLD_MESSAGES - 1))).hasSize(1);
+
+        awaitNoDeletedMappings();
+    }
+
+    @Test
+    void indexGrowthKeepsEveryKeyAndReleasesTheReplacedIndex() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            index.record(message(i, "2026-01-01T10:00:00.000Z"), QUEUE);
+        }
+        awaitWritten(1000);
+
+        for (int i = 0; i < 1000; i += 97) {
+            assertThat(index.findByEndToEndId(endToEndId(i))).extracting(SentMessage::bizMsgIdr)
+                    .containsExactly(bizMsgIdr(i));
+        }
+        awaitNoDeletedMappings();
+    }
+
+    /** Uma pacs.008 mínima, com as chaves e o CreDtTm indexados. */
+    private static byte[] message(int i, String createdAt) {
+        return ("<Envelope><AppHdr><BizMsgIdr>" + bizMsgIdr(i) + "</BizMsgIdr></AppHdr><Document><GrpHdr>"
+                + "<CreDtTm>" + createdAt + "</CreDtTm></GrpHdr><CdtTrfTxInf><PmtId><EndToEndId>" + endToEndId(i)
+                + "</EndToEndId></PmtId></CdtTrfTxInf></Document></Envelope>").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String bizMsgIdr(int i) {
+        return String.format("M12345678%08d", i);
+    }
+
+    private static String endToEndId(int i) {
+        return String.format("E12345678%08d", i);
+    }
+
+    private void awaitWritten(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (registry.get("pix.reconciliation.records").counter().count() < count) {
+            assertThat(System.nanoTime()).as("gravação das mensagens").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Aguarda até que nenhum arquivo removido do diretório continue mapeado pelo processo
+     * (Linux; ignorado em outros sistemas).
+     */
+    private void awaitNoDeletedMappings() throws Exception {
+        assumeTrue(Files.isReadable(PROC_MAPS), "/proc/self/maps indisponível");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            List<String> deleted = Files.readAllLines(PROC_MAPS).stream()
+                    .filter(line -> line.contains(tempDir.toString()) && line.endsWith("(deleted)"))
+                    .toList();
+            if (deleted.isEmpty()) {
+                return;
+            }
+            assertThat(System.nanoTime()).as("mapeamentos de arquivos removidos: %s", deleted).isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
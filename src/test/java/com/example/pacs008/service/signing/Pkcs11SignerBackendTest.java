@@ -0,0 +1,183 @@
+package com.example.pacs008.service.signing;
+
+import com.example.pacs008.service.SignatureService;
+import com.example.pacs008.service.metrics.PaymentMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Assinatura com a chave em um token PKCS#11 do SoftHSM (backend {@code pkcs11}), em várias
+ * lanes simultâneas. Ignorado se o SoftHSM ({@code softhsm2-util} e {@code libsofthsm2.so})
+ * não estiver instalado; a biblioteca pode ser indicada pela variável {@code SOFTHSM2_LIB}.
+ * O token é criado no diretório configurado em {@code SOFTHSM2_CONF} (ou no padrão) e
+ * removido ao final.
+ */
+class Pkcs11SignerBackendTest {
+
+    private static final String PIN = "123456";
+    private static final String SO_PIN = "654321";
+    private static final String KEY_ALIAS = "pixspi-test";
+    private static final String UNSIGNED = "<Envelope xmlns=\"urn:pixspi:test\"><AppHdr><BizMsgIdr>M1</BizMsgIdr>"
+            + "<Sgntr/></AppHdr><Document><Valor>10.50</Valor></Document></Envelope>";
+    private static final List<String> LIBRARY_PATHS = List.of(
+            "/usr/lib/softhsm/libsofthsm2.so",
+            "/usr/lib/x86_64-linux-gnu/softhsm/libsofthsm2.so",
+            "/usr/lib/aarch64-linux-gnu/softhsm/libsofthsm2.so",
+            "/usr/lib64/pkcs11/libsofthsm2.so",
+            "/usr/local/lib/softhsm/libsofthsm2.so",
+            "/opt/homebrew/lib/softhsm/libsofthsm2.so");
+
+    @TempDir
+    static Path tempDir;
+
+    private static String tokenLabel;
+    private static Path slotConfig;
+    private static X509Certificate certificate;
+
+    @BeforeAll
+    static void createToken() throws Exception {
+        String library = softHsmLibrary();
+        assumeTrue(library != null && onPath("softhsm2-util"), "SoftHSM não instalado");
+
+        tokenLabel = "pixspi-" + UUID.randomUUID().toString().substring(0, 8);
+        String output = run("softhsm2-util", "--init-token", "--free", "--label", tokenLabel, "--pin", PIN, "--so-pin", SO_PIN);
+        Matcher slot = Pattern.compile("reassigned to slot (\\d+)").matcher(output);
+        assumeTrue(slot.find(), "Não foi possível criar o token do SoftHSM: " + output);
+
+        slotConfig = tempDir.resolve("softhsm.cfg");
+        Files.writeString(slotConfig, "name = PixSpiTest\nlibrary = " + library + "\nslot = " + slot.group(1) + "\n");
+
+        // Par de chaves gerado pelo keytool e importado no token (a chave privada passa a existir apenas no token)
+        Path softwareStore = tempDir.resolve("origem.p12");
+        run(Path.of(System.getProperty("java.home"), "bin", "keytool").toString(), "-genkeypair",
+                "-alias", KEY_ALIAS, "-keyalg", "RSA", "-keysize", "2048", "-sigalg", "SHA256withRSA",
+                "-dname", "CN=pixspi-pkcs11-test", "-validity", "2", "-storetype", "PKCS12",
+                "-keystore", softwareStore.toString(), "-storepass", PIN, "-keypass", PIN);
+        KeyStore source = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(softwareStore)) {
+            source.load(in, PIN.toCharArray());
+        }
+        certificate = (X509Certificate) source.getCertificate(KEY_ALIAS);
+
+        Provider provider = Security.getProvider("SunPKCS11").configure(slotConfig.toString());
+        KeyStore token = KeyStore.getInstance("PKCS11", provider);
+        token.load(null, PIN.toCharArray());
+        token.setKeyEntry(KEY_ALIAS, (PrivateKey) source.getKey(KEY_ALIAS, PIN.toCharArray()), null,
+                new Certificate[]{certificate});
+    }
+
+    @AfterAll
+    static void deleteToken() throws Exception {
+        if (tokenLabel != null) {
+            run("softhsm2-util", "--delete-token", "--token", tokenLabel);
+        }
+    }
+
+    @Test
+    void signsInParallelLanesWithTheTokenKey() throws Exception {
+        Pkcs11SignerBackend backend = new Pkcs11SignerBackend();
+        ReflectionTestUtils.setField(backend, "configFiles", new String[]{slotConfig.toString()});
+        ReflectionTestUtils.setField(backend, "pin", PIN);
+        ReflectionTestUtils.setField(backend, "keyAlias", KEY_ALIAS);
+        ReflectionTestUtils.setField(backend, "sessionsPerSlot", 2);
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SignatureService signatureService = new SignatureService(registry, new PaymentMetrics(registry), backend);
+        ReflectionTestUtils.setField(signatureService, "poolSize", 4);
+        ReflectionTestUtils.setField(signatureService, "poolTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(signatureService, "signingTimeoutMs", 10_000L);
+        ReflectionTestUtils.setField(signatureService, "signingAcquireTimeoutMs", 5000L);
+        signatureService.init();
+        try {
+            List<CompletableFuture<byte[]>> signed = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                signed.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return signatureService.signXmlToBytes(UNSIGNED);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }));
+            }
+            for (CompletableFuture<byte[]> xml : signed) {
+                assertThat(isValid(xml.get(30, TimeUnit.SECONDS))).isTrue();
+            }
+        } finally {
+            signatureService.shutdown();
+        }
+    }
+
+    /** Valida a assinatura com a chave pública do certificado, fora do token. */
+    private static boolean isValid(byte[] xml) throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        Document doc = dbf.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+        NodeList signatures = doc.getElementsByTagNameNS(XMLSignature.XMLNS, "Signature");
+        assertThat(signatures.getLength()).isEqualTo(1);
+        DOMValidateContext context = new DOMValidateContext(certificate.getPublicKey(), signatures.item(0));
+        return XMLSignatureFactory.getInstance("DOM").unmarshalXMLSignature(context).validate(context);
+    }
+
+    private static String softHsmLibrary() {
+        String configured = System.getenv("SOFTHSM2_LIB");
+        if (configured != null && new File(configured).isFile()) {
+            return configured;
+        }
+        return LIBRARY_PATHS.stream().filter(path -> new File(path).isFile()).findFirst().orElse(null);
+    }
+
+    private static boolean onPath(String command) {
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return false;
+        }
+        for (String dir : path.split(File.pathSeparator)) {
+            if (new File(dir, command).canExecute()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String run(String... command) throws Exception {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        if (!process.waitFor(60, TimeUnit.SECONDS) || process.exitValue() != 0) {
+            throw new IllegalStateException(String.join(" ", command[0], command[1]) + " falhou: " + output);
+        }
+        return output;
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.pacs008.service.signing;
+
+import com.example.pacs008.util.OverloadedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SigningLanesTest {
+
+    private SigningLanes lanes;
+
+    @AfterEach
+    void shutdown() {
+        if (lanes != null) {
+            lanes.shutdown();
+        }
+    }
+
+    @Test
+    void taskRunsWithTheLaneKey() throws Exception {
+        SigningKey key = new SigningKey(null, null, null);
+        lanes = new SigningLanes(List.of(key), 5000);
+
+        SigningKey used = lanes.execute(laneKey -> laneKey);
+
+        assertThat(used).isSameAs(key);
+    }
+
+    @Test
+    void taskExceptionIsRethrown() {
+        lanes = new SigningLanes(keys(2), 5000);
+
+        assertThatThrownBy(() -> lanes.execute(key -> {
+            throw new IllegalArgumentException("falha na assinatura");
+        })).isInstanceOf(IllegalArgumentException.class).hasMessage("falha na assinatura");
+    }
+
+    @Test
+    void idleLanesWakeUpAndDrainWorkWhileOneLaneIsBlocked() throws Exception {
+        lanes = new SigningLanes(keys(4), 5000);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Object> blocker = CompletableFuture.supplyAsync(() -> call(() -> lanes.execute(key -> {
+            blocked.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        })));
+        assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+        // Lanes paradas: sem trabalho, nenhuma delas consome CPU consultando as filas
+        Thread.sleep(50);
+
+        AtomicInteger done = new AtomicInteger();
+        List<CompletableFuture<Object>> tasks = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            tasks.add(CompletableFuture.supplyAsync(() -> call(() -> lanes.execute(key -> done.incrementAndGet()))));
+        }
+        CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        // Inclusive as tarefas colocadas na fila da lane bloqueada foram executadas pelas demais
+        assertThat(done).hasValue(200);
+        assertThat(blocker).isNotDone();
+        release.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void callerGivesUpAfterTheTimeoutAndQueuedTaskIsDiscarded() throws Exception {
+        lanes = new SigningLanes(keys(1), 100);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Object> hung = CompletableFuture.supplyAsync(() -> call(() -> lanes.execute(key -> {
+            running.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        })));
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+        AtomicInteger ran = new AtomicInteger();
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> lanes.execute(key -> ran.incrementAndGet()))
+                .isInstanceOf(OverloadedException.class);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+
+        // Quem chamou a tarefa travada também desiste, antes de ela terminar
+        assertThatThrownBy(() -> hung.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        release.countDown();
+        // A lane volta a aceitar trabalho e não executa a tarefa abandonada na fila
+        String result = lanes.execute(key -> "ok");
+        assertThat(result).isEqualTo("ok");
+        assertThat(ran).hasValue(0);
+    }
+
+    @Test
+    void resourcesOfATaskRunningPastTheTimeoutAreReleasedByTheLaneWhenItEnds() throws Exception {
+        lanes = new SigningLanes(keys(1), 100);
+        CountDownLatch finish = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        AtomicInteger held = new AtomicInteger(1);
+        AtomicReference<String> releasedBy = new AtomicReference<>();
+
+        assertThatThrownBy(() -> lanes.execute(key -> {
+            finish.await(5, TimeUnit.SECONDS);
+            return "atrasada";
+        }, () -> () -> {
+            releasedBy.set(Thread.currentThread().getName());
+            held.decrementAndGet();
+            released.countDown();
+        })).isInstanceOf(OverloadedException.class);
+
+        // Quem chama desistiu, mas o recurso continua em uso pela lane
+        Thread.sleep(50);
+        assertThat(held).hasValue(1);
+        finish.countDown();
+        assertThat(released.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(held).hasValue(0);
+        assertThat(releasedBy.get()).startsWith("signing-lane-");
+
+        // Concluída no prazo: os recursos continuam com quem chama
+        AtomicInteger handOvers = new AtomicInteger();
+        String result = lanes.execute(key -> "ok", () -> {
+            handOvers.incrementAndGet();
+            return null;
+        });
+        assertThat(result).isEqualTo("ok");
+        assertThat(handOvers).hasValue(0);
+    }
+
+    @Test
+    void shutdownFailsQueuedAndLaterTasks() throws Exception {
+        lanes = new SigningLanes(keys(1), 5000);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Object> inProgress = CompletableFuture.supplyAsync(() -> call(() -> lanes.execute(key -> {
+            running.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return "concluída";
+        })));
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Object> queued = CompletableFuture.supplyAsync(() -> call(() -> lanes.execute(key -> "na fila")));
+        Thread.sleep(50);
+
+        lanes.shutdown();
+        release.countDown();
+
+        assertThat(inProgress.get(5, TimeUnit.SECONDS)).isEqualTo("concluída");
+        assertThatThrownBy(() -> queued.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> lanes.execute(key -> "depois")).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static List<SigningKey> keys(int count) {
+        List<SigningKey> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            keys.add(new SigningKey(null, null, null));
+        }
+        return keys;
+    }
+
+    private static Object call(Callable<Object> callable) {
+        try {
+            return callable.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.pacs008.service.startup;
+
+import com.example.pacs008.config.LocalBrokerConfig;
+import com.example.pacs008.service.inbound.SpiResponseListener;
+import com.example.pacs008.service.outbox.OutboxLog;
+import com.example.pacs008.service.outbox.OutboxRelay;
+import com.example.pacs008.service.signing.JksSignerBackend;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.generate.ClassNameGenerator;
+import org.springframework.aot.generate.DefaultGenerationContext;
+import org.springframework.aot.generate.GeneratedFiles.Kind;
+import org.springframework.aot.generate.InMemoryGeneratedFiles;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.javapoet.ClassName;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.StringReader;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Condições gravadas no processamento AOT e conferidas com a configuração da inicialização.
+ */
+class AotConditionsCheckTest {
+
+    @Test
+    void sameConfigurationHasNoDifferences() throws Exception {
+        MockEnvironment build = new MockEnvironment().withProperty("pix.outbox.enabled", "true");
+
+        Properties recorded = record(build, JksSignerBackend.class, SpiResponseListener.class, OutboxLog.class, OutboxRelay.class);
+
+        assertThat(recorded.getProperty(AotConditionsCheck.PROFILES_KEY)).isEqualTo("default");
+        assertThat(recorded.getProperty(OutboxLog.class.getName())).isEqualTo("true");
+        assertThat(recorded.getProperty(LocalBrokerConfig.class.getName())).isEqualTo("false");
+        assertThat(AotConditionsCheck.differences(recorded, build)).isEmpty();
+        // Mesmo resultado das condições com outros valores: pix.signature.backend=jks é o padrão
+        assertThat(AotConditionsCheck.differences(recorded, new MockEnvironment()
+                .withProperty("pix.outbox.enabled", "TRUE").withProperty("pix.signature.backend", "jks"))).isEmpty();
+    }
+
+    @Test
+    void runtimeProfilesAndFlagsDifferentFromTheBuildAreReported() throws Exception {
+        Properties recorded = record(new MockEnvironment(), JksSignerBackend.class, SpiResponseListener.class);
+        MockEnvironment runtime = new MockEnvironment().withProperty("pix.outbox.enabled", "true")
+                .withProperty("pix.inbound.enabled", "false");
+        runtime.setActiveProfiles("local");
+
+        assertThat(AotConditionsCheck.differences(recorded, runtime)).containsExactlyInAnyOrder(
+                "perfis [local], no build [default]",
+                "LocalBrokerConfig (@Profile local) excluído no build e habilitado pela configuração atual",
+                "OutboxLog (pix.outbox.enabled) excluído no build e habilitado pela configuração atual",
+                "OutboxRelay (pix.outbox.enabled) excluído no build e habilitado pela configuração atual",
+                "SpiResponseListener (pix.inbound.enabled) incluído no build e desabilitado pela configuração atual");
+    }
+
+    @Test
+    void differenceFailsTheStartupUnlessInWarnMode() throws Exception {
+        Properties recorded = record(new MockEnvironment(), JksSignerBackend.class, SpiResponseListener.class);
+        AotConditionsCheck check = new AotConditionsCheck(new MockEnvironment().withProperty("pix.outbox.enabled", "true"));
+
+        ReflectionTestUtils.setField(check, "mode", "fail");
+        assertThatThrownBy(() -> check.verify(recorded)).isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("OutboxLog (pix.outbox.enabled)");
+
+        ReflectionTestUtils.setField(check, "mode", "warn");
+        assertThatCode(() -> check.verify(recorded)).doesNotThrowAnyException();
+    }
+
+    /**
+     * Executa o {@link AotConditionsRecorder} em uma fábrica com as definições informadas e
+     * lê o recurso gerado.
+     */
+    private static Properties record(MockEnvironment environment, Class<?>... included) throws Exception {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton(ConfigurableApplicationContext.ENVIRONMENT_BEAN_NAME, environment);
+        for (Class<?> type : included) {
+            beanFactory.registerBeanDefinition(type.getSimpleName(), new RootBeanDefinition(type));
+        }
+        InMemoryGeneratedFiles files = new InMemoryGeneratedFiles();
+        DefaultGenerationContext generationContext = new DefaultGenerationContext(
+                new ClassNameGenerator(ClassName.get(AotConditionsCheckTest.class)), files);
+
+        new AotConditionsRecorder().processAheadOfTime(beanFactory).applyTo(generationContext, mock());
+
+        Properties recorded = new Properties();
+        recorded.load(new StringReader(files.getGeneratedFileContent(Kind.RESOURCE, AotConditionsCheck.RESOURCE)));
+        return recorded;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.pacs008.service.startup;
+
+import com.example.pacs008.config.LocalBrokerConfig;
+import com.example.pacs008.dto.PaymentRequestDto;
+import com.example.pacs008.service.Pacs008Service;
+import com.example.pacs008.service.SignedPacs008Message;
+import com.example.pacs008.service.inbound.PaymentCorrelationIndex;
+import com.example.pacs008.service.metrics.PaymentMetrics;
+import com.example.pacs008.service.metrics.PaymentMetrics.Stage;
+import com.example.pacs008.service.mq.MqBatchPublisher;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.jms.Connection;
+import jakarta.jms.JMSException;
+import jakarta.jms.MessageConsumer;
+import jakarta.jms.Session;
+import org.apache.activemq.artemis.jms.client.ActiveMQConnectionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * O aquecimento não entra nos temporizadores de etapa (as requisições reais simultâneas
+ * entram) e o ensaio de publicação não coloca
+ * nada na fila (broker embarcado do perfil {@code local}).
+ */
+class StartupWarmupTest {
+
+    private static final String QUEUE = "QL.REQ.WARMUP";
+    private static final int ITERATIONS = 50;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PaymentMetrics metrics = new PaymentMetrics(registry);
+    private final Pacs008Service pacs008Service = mock(Pacs008Service.class);
+    private LocalBrokerConfig localBrokers;
+    private MqBatchPublisher publisher;
+    private StartupWarmup warmup;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        localBrokers = new LocalBrokerConfig();
+        ReflectionTestUtils.setField(localBrokers, "brokerCount", 1);
+        publisher = new MqBatchPublisher(localBrokers.mqEndpoints(), registry);
+        ReflectionTestUtils.setField(publisher, "bufferCapacity", 100);
+        ReflectionTestUtils.setField(publisher, "batchSize", 10);
+        ReflectionTestUtils.setField(publisher, "lingerMs", 5L);
+        ReflectionTestUtils.setField(publisher, "enqueueTimeoutMs", 100L);
+        ReflectionTestUtils.setField(publisher, "dispatchers", 1);
+        ReflectionTestUtils.setField(publisher, "asyncPut", true);
+        ReflectionTestUtils.setField(publisher, "messageType", "bytes");
+        ReflectionTestUtils.setField(publisher, "sessionCacheSize", 4);
+        ReflectionTestUtils.setField(publisher, "shardingMode", "round-robin");
+        ReflectionTestUtils.setField(publisher, "backoffInitialMs", 100L);
+        ReflectionTestUtils.setField(publisher, "backoffMaxMs", 400L);
+        publisher.start();
+
+        warmup = new StartupWarmup(pacs008Service, mock(PaymentCorrelationIndex.class), publisher, new ObjectMapper(),
+                metrics, mock(ApplicationContext.class));
+        ReflectionTestUtils.setField(warmup, "enabled", true);
+        ReflectionTestUtils.setField(warmup, "iterations", ITERATIONS);
+        ReflectionTestUtils.setField(warmup, "threads", 2);
+        ReflectionTestUtils.setField(warmup, "maxDurationMs", 10_000L);
+        ReflectionTestUtils.setField(warmup, "mqDryRun", true);
+        ReflectionTestUtils.setField(warmup, "outboundQueue", QUEUE);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        publisher.stop();
+        localBrokers.stopBrokers();
+    }
+
+    @Test
+    void warmupMessagesAreNotTimedAndNothingIsSent() throws Exception {
+        AtomicInteger sequence = new AtomicInteger();
+        when(pacs008Service.createSignedPacs008Message(any(PaymentRequestDto.class))).thenAnswer(invocation -> {
+            // A assinatura é medida em outra thread (lane de assinatura), como no SignatureService
+            boolean timed = !metrics.stagesSuspended();
+            CompletableFuture.runAsync(() -> {
+                if (timed) {
+                    metrics.recordStage(Stage.SIGN, System.nanoTime());
+                }
+            }).join();
+            metrics.recordStage(Stage.HEADER, System.nanoTime());
+            int n = sequence.incrementAndGet();
+            if (n == ITERATIONS / 2) {
+                // Requisição real recebida durante o aquecimento, em outra thread
+                CompletableFuture.runAsync(() -> metrics.recordStage(Stage.HEADER, System.nanoTime())).join();
+            }
+            return new SignedPacs008Message("M" + n, "E" + n,
+                    ("<Envelope><Id>" + n + "</Id></Envelope>").getBytes(StandardCharsets.UTF_8));
+        });
+
+        warmup.run(null);
+
+        verify(pacs008Service, times(ITERATIONS)).createSignedPacs008Message(any(PaymentRequestDto.class));
+        assertThat(stageCount("sign")).isZero();
+        assertThat(stageCount("header")).isEqualTo(1);
+        assertThat(drain()).isZero();
+
+        metrics.recordStage(Stage.SIGN, System.nanoTime());
+        assertThat(stageCount("sign")).isEqualTo(1);
+    }
+
+    @Test
+    void dryRunOpensTheEndpointWithoutSending() throws Exception {
+        assertThat(publisher.dryRun("<Envelope/>".getBytes(StandardCharsets.UTF_8), QUEUE)).isEmpty();
+        assertThat(drain()).isZero();
+    }
+
+    private long stageCount(String stage) {
+        return registry.get("pix.stage").tag("stage", stage).timer().count();
+    }
+
+    private static int drain() throws JMSException {
+        try (Connection connection = new ActiveMQConnectionFactory("vm://0").createConnection()) {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(session.createQueue(QUEUE));
+            int count = 0;
+            while (consumer.receive(200) != null) {
+                count++;
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.pacs008.service.validation;
+
+import com.example.pacs008.TestPayments;
+import com.example.pacs008.dto.PaymentRequestDto;
+import com.example.pacs008.service.validation.PaymentValidationException.Violation;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+import static org.assertj.core.api.Assertions.tuple;
+
+class PaymentRequestValidatorTest {
+
+    private static final PaymentRequestValidator validator = new PaymentRequestValidator();
+
+    @BeforeAll
+    static void loadSchema() throws Exception {
+        validator.init();
+    }
+
+    @Test
+    void acceptsValidRequest() {
+        assertThatCode(() -> validator.validate(TestPayments.valid())).doesNotThrowAnyException();
+    }
+
+    @Test
+    void acceptsCnpjAndMissingDescription() {
+        PaymentRequestDto request = TestPayments.valid();
+        request.setReceiverCpfCnpj("12ABC34501DE35");
+        request.setDescription(null);
+
+        assertThatCode(() -> validator.validate(request)).doesNotThrowAnyException();
+    }
+
+    @Test
+    void reportsEveryViolationAtOnce() {
+        PaymentRequestDto request = TestPayments.valid();
+        request.setPayerIspb("1234");
+        request.setPayerAccountType("XXXX");
+        request.setReceiverAgency("12345");
+        request.setReceiverPixKey(null);
+
+        PaymentValidationException e = catchThrowableOfType(() -> validator.validate(request), PaymentValidationException.class);
+
+        assertThat(e.getViolations()).extracting(Violation::field, Violation::xsdType).containsExactly(
+                tuple("payerIspb", "ISPBType"),
+                tuple("payerAccountType", "ExternalCashAccountType1Code"),
+                tuple("receiverAgency", "Max4Numeric"),
+                tuple("receiverPixKey", "Max77Text"));
+        assertThat(e.getViolations().get(3).message()).isEqualTo("é obrigatório");
+    }
+
+    @Test
+    void violationMessagesDoNotEchoTheValue() {
+        PaymentRequestDto request = TestPayments.valid();
+        request.setPayerCpfCnpj("segredo-123");
+
+        PaymentValidationException e = catchThrowableOfType(() -> validator.validate(request), PaymentValidationException.class);
+
+        assertThat(e.getMessage()).contains("payerCpfCnpj").doesNotContain("segredo-123");
+    }
+
+    @Test
+    void rejectsTextLongerThanTheSchemaAllows() {
+        PaymentRequestDto request = TestPayments.valid();
+        request.setDescription("x".repeat(141));
+
+        assertThatThrownBy(() -> validator.validate(request))
+                .isInstanceOf(PaymentValidationException.class)
+                .hasMessageContaining("description deve ter no máximo 140 caracteres");
+    }
+
+    @Test
+    void rejectsCharactersNotAllowedInXml() {
+        PaymentRequestDto request = TestPayments.valid();
+        request.setPayerName("Fulano\u0000de Tal");
+        request.setDescription("Pagamento \u001B teste \uD83D");
+
+        PaymentValidationException e = catchThrowableOfType(() -> validator.validate(request), PaymentValidationException.class);
+
+        assertThat(e.getViolations()).extracting(Violation::field, Violation::message).containsExactly(
+                tuple("payerName", "contém caracteres não permitidos em XML"),
+                tuple("description", "contém caracteres não permitidos em XML"));
+    }
+
+    @Test
+    void acceptsLineBreaksTabsAndSupplementaryCharacters() {
+        PaymentRequestDto request = TestPayments.valid();
+        request.setPayerName("José & Filhos 😀");
+        request.setDescription("primeira linha\r\nsegunda\tlinha");
+
+        assertThatCode(() -> validator.validate(request)).doesNotThrowAnyException();
+    }
+
+    @Test
+    void amountFacets() {
+        assertThat(violationOf(new BigDecimal("10.500"))).isNull();
+        assertThat(violationOf(new BigDecimal("0"))).isNull();
+        assertThat(violationOf(new BigDecimal("9999999999999999.99"))).isNull();
+        assertThat(violationOf(new BigDecimal("10.501"))).isEqualTo("deve ter no máximo 18 dígitos, 2 casas decimais");
+        assertThat(violationOf(new BigDecimal("99999999999999999.99"))).isEqualTo("deve ter no máximo 18 dígitos, 2 casas decimais");
+        assertThat(violationOf(new BigDecimal("-0.01"))).isEqualTo("deve ser maior ou igual a 0");
+        assertThat(violationOf(null)).isEqualTo("é obrigatório");
+    }
+
+    private static String violationOf(BigDecimal amount) {
+        PaymentRequestDto request = TestPayments.valid();
+        request.setAmount(amount);
+        try {
+            validator.validate(request);
+            return null;
+        } catch (PaymentValidationException e) {
+            assertThat(e.getViolations()).singleElement().extracting(Violation::field).isEqualTo("amount");
+            return e.getViolations().get(0).message();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.pacs008.service.validation;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.InputStream;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * O {@link XsdPattern} compilado deve dar o mesmo resultado que {@link Pattern} para todos os
+ * {@code xs:pattern} do XSD da pacs.008.
+ */
+class XsdPatternTest {
+
+    private static final List<String> SAMPLES = List.of(
+            "", "0", "1234", "12345", "12345678", "1234567A", "ABCDEFGH", "abcdefgh", "1234 678",
+            "12345678901", "1234567890", "12ABC34501DE35", "12ABC34501DEX5", "00000000000000000000",
+            "000000000000000000001", "CACC", "HIGH", "2024-05-01T12:30:45.123Z", "2024-05-01T12:30:45Z",
+            "E1234567820240501123012345678901", "M1234567820240501123012345678901", "x".repeat(35),
+            "PAGPRI", "FGTS", "Ç", "12.50", "-1");
+
+    @Test
+    void compiledPatternsMatchJavaRegex() throws Exception {
+        Set<String> patterns = schemaPatterns();
+        assertThat(patterns).isNotEmpty();
+        for (String regex : patterns) {
+            XsdPattern compiled = XsdPattern.compile(regex);
+            Pattern reference = Pattern.compile(regex);
+            for (String sample : samplesFor(regex)) {
+                assertThat(compiled.matches(sample))
+                        .as("%s ~ %s", sample, regex)
+                        .isEqualTo(reference.matcher(sample).matches());
+            }
+        }
+    }
+
+    @Test
+    void alternativesAndRepetitionBounds() {
+        XsdPattern cpfCnpj = XsdPattern.compile("[0-9]{11}|[0-9A-Z]{12}[0-9]{2}");
+        assertThat(cpfCnpj.matches("12345678901")).isTrue();
+        assertThat(cpfCnpj.matches("12ABC34501DE35")).isTrue();
+        assertThat(cpfCnpj.matches("1234567890")).isFalse();
+        assertThat(cpfCnpj.matches("123456789012")).isFalse();
+
+        XsdPattern account = XsdPattern.compile("[0-9]{1,20}");
+        assertThat(account.matches("")).isFalse();
+        assertThat(account.matches("1")).isTrue();
+        assertThat(account.matches("1".repeat(20))).isTrue();
+        assertThat(account.matches("1".repeat(21))).isFalse();
+    }
+
+    /**
+     * As amostras fixas e, para cada padrão, valores gerados a partir dele (o mínimo e o máximo
+     * de cada repetição), para que todo padrão tenha casos positivos.
+     */
+    private static Set<String> samplesFor(String regex) {
+        Set<String> samples = new LinkedHashSet<>(SAMPLES);
+        for (String branch : regex.split("\\|")) {
+            samples.add(generate(branch, false));
+            samples.add(generate(branch, true));
+        }
+        return samples;
+    }
+
+    private static String generate(String branch, boolean max) {
+        StringBuilder value = new StringBuilder();
+        int i = 0;
+        while (i < branch.length()) {
+            char c = branch.charAt(i);
+            String unit;
+            if (c == '[') {
+                int end = branch.indexOf(']', i);
+                unit = String.valueOf(branch.charAt(i + 1));
+                i = end + 1;
+            } else if (c == '\\' && i + 1 < branch.length()) {
+                unit = String.valueOf(branch.charAt(i + 1));
+                i += 2;
+            } else {
+                unit = String.valueOf(c);
+                i++;
+            }
+            int min = 1;
+            int maxCount = 1;
+            if (i < branch.length() && branch.charAt(i) == '{') {
+                int end = branch.indexOf('}', i);
+                String[] bounds = branch.substring(i + 1, end).split(",");
+                min = Integer.parseInt(bounds[0]);
+                maxCount = bounds.length > 1 ? Integer.parseInt(bounds[1]) : min;
+                i = end + 1;
+            }
+            value.append(unit.repeat(max ? maxCount : min));
+        }
+        return value.toString();
+    }
+
+    private static Set<String> schemaPatterns() throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        Set<String> patterns = new LinkedHashSet<>();
+        try (InputStream xsd = XsdPatternTest.class.getClassLoader().getResourceAsStream(PaymentRequestValidator.SCHEMA)) {
+            NodeList nodes = dbf.newDocumentBuilder().parse(xsd).getElementsByTagNameNS(XMLConstants.W3C_XML_SCHEMA_NS_URI, "pattern");
+            for (int i = 0; i < nodes.getLength(); i++) {
+                patterns.add(((Element) nodes.item(i)).getAttribute("value"));
+            }
+        }
+        return patterns;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.pacs008.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    void droppedPermitWakesUpAWaitingCaller() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("teste", 1, 1, 10, 5000);
+        limiter.acquire();
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(limiter::acquire);
+        awaitWaiting(limiter);
+
+        long start = System.nanoTime();
+        limiter.onDropped();
+
+        waiting.get(2, TimeUnit.SECONDS);
+        // Acordado pela devolução, não pelo tempo limite de 5 s
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+        assertThat(limiter.getInUse()).isEqualTo(1);
+    }
+
+    @Test
+    void exhaustedLimitRejectsAfterTheTimeout() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("teste", 1, 1, 10, 50);
+        limiter.acquire();
+
+        assertThatThrownBy(limiter::acquire).isInstanceOf(OverloadedException.class);
+        assertThat(limiter.getRejectedCount()).isEqualTo(1);
+    }
+
+    private static void awaitWaiting(AdaptiveConcurrencyLimiter limiter) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (limiter.getWaiting() == 0) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+}